@@ -1,8 +1,17 @@
 import java.io.FileNotFoundException;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * This is the BackendDeveloper's class implements the methods describes in the BackendInterface
@@ -10,18 +19,54 @@ import java.util.Scanner;
  * @implements BackendInterface
  * @author dianakotsonis
  */
-public class BackendDeveloperIndividual<T extends Comparable<T>> implements BackendInterface<IterableMultiKeyRBT<T>> {
+public class BackendDeveloperIndividual<T extends Comparable<T>> implements BackendInterface<IterableMultiKeySortedCollectionInterface<T>> {
   public IterableMultiKeyRBT<Movie> movieList; // The RBT that holds the Movie objects based on
-                                               // duration
+                                               // duration, or null if the movies are held in
+                                               // another kind of tree (see getMovieTree())
+  private IterableMultiKeySortedCollectionInterface<Movie> movieTree; // the tree readFile() adds
+                                               // movies to (movieList, or an IntrusiveMovieTree)
+  private DurationBucketIndex durationIndex = new DurationBucketIndex(); // indexes the movies read
+                                               // by readFile() by duration, or null if their
+                                               // durations span too many minutes to index
+  private long indexedModifications = -1; // the tree's modificationCount() when the duration index
+                                          // last held exactly its movies, or -1 if it never did
+  private MovieTable movieTable; // the table readFile() loads movies into in ReadMode.TABLE, or
+                                 // null if its movies are in the tree
+  private LazyMovieCatalog movieCatalog; // the catalog of the last file read in ReadMode.LAZY, or
+                                         // null if its movies are in the tree
+  private long rowsModifications; // the tree's modificationCount() when the movieTable or
+                                  // movieCatalog was created
+  private volatile PipelinedMovieReader pipelineReader; // the reader of the last stream read, or
+                                                        // null if no stream was read
+  // These encode the genre and country of every movie readFile() and readStream() add to the tree
+  private final StringDictionary genres = new StringDictionary();
+  private final StringDictionary countries = new StringDictionary();
+
+  // The number of decoded rows the catalog of a file read in ReadMode.LAZY keeps in memory
+  private static final int LAZY_CACHE_CAPACITY = 10000;
 
   /**
-   * This constructor initializes the movieList instance variable and creates a
-   * BackendDeveloperIndividual object
+   * This constructor creates a BackendDeveloperIndividual object that reads movies into any tree
+   * that holds Movie objects based on duration, such as an IterableMultiKeyRBT, an
+   * IntrusiveMovieTree (which links the Movie objects themselves instead of storing them in
+   * KeyLists and RBT nodes), or a ConcurrentMultiKeySkipList. The queries accept the tree the same
+   * way as an RBT. If the tree is not an IterableMultiKeyRBT, the movieList instance variable is
+   * null, and getMovieTree() returns the tree instead.
+   * <p>
+   * If the tree allows concurrent writers, several threads may read files or streams into it at
+   * once (see allowsConcurrentWriters()). The duration index only follows a tree with one writer,
+   * so no index is kept for such a tree, and the queries are answered from the tree itself.
    * 
-   * @param movieList the RBT that holds the Movie objects based on duration
+   * @param movieTree the tree that holds the Movie objects based on duration
    */
-  public BackendDeveloperIndividual(IterableMultiKeyRBT<Movie> movieList) {
-    this.movieList = movieList;
+  public BackendDeveloperIndividual(IterableMultiKeySortedCollectionInterface<Movie> movieTree) {
+    this.movieTree = movieTree;
+    if (movieTree instanceof IterableMultiKeyRBT) {
+      this.movieList = (IterableMultiKeyRBT<Movie>) movieTree;
+    }
+    if (movieTree != null && movieTree.allowsConcurrentWriters()) {
+      this.durationIndex = null;
+    }
   }
 
   /**
@@ -33,89 +78,336 @@ public class BackendDeveloperIndividual<T extends Comparable<T>> implements Back
    * @throws FileNotFoundException if the file name is invalid
    */
   public void readFile(String fileName) {
+    readFile(fileName, ReadMode.SCANNER);
+  }
+
+  /**
+   * This method reads in a csv file the same way as readFile(fileName), but lets the caller choose
+   * how the file is ingested. ReadMode.SCANNER reads the file line by line with a Scanner,
+   * ReadMode.MAPPED maps the file into memory and tokenizes the rows from the mapped bytes,
+   * ReadMode.PARALLEL tokenizes ranges of the mapped file on every available core,
+   * ReadMode.TABLE stores the rows in a MovieTable instead of the RBT (see getMovieTable()), and
+   * ReadMode.LAZY only records the duration and position of every row, decoding rows from the file
+   * when they are needed (see getMovieCatalog()), and ReadMode.PIPELINED reads, parses and inserts
+   * the rows on separate threads (see readStream()).
+   * <p>
+   * The movies read by readFile() are only ever held in one place, so every query sees every movie
+   * that was read. ReadMode.TABLE and ReadMode.LAZY only keep movies outside the tree while the
+   * tree is empty and unchanged: once a file is read into the tree in another mode, or the tree is
+   * changed directly (for example with insertSingleKey()), the movies in the table or catalog are
+   * moved into the tree first, and later files read in ReadMode.TABLE or ReadMode.LAZY are read
+   * into the tree the same way as ReadMode.MAPPED.
+   * <p>
+   * A file read in ReadMode.LAZY stays open until its movies are moved into the tree, another file
+   * is read in ReadMode.LAZY, or close() is called.
+   * 
+   * @param fileName the name of the file to read from
+   * @param mode     the way the file should be read
+   */
+  public void readFile(String fileName, ReadMode mode) {
+    readFile(fileName, mode, MovieField.MOVIE_FIELDS);
+  }
+
+  /**
+   * This method reads in a csv file the same way as readFile(fileName, mode), but only reads the
+   * given fields of every movie (the other fields are left empty, or 0). The file's header line
+   * decides which column each field is read from, so files with their columns in another order,
+   * or with extra columns, are read the same way. Each row is only scanned up to the last column
+   * that is read. In ReadMode.LAZY, only durations are read up front, and fields only decides
+   * which fields of the catalog's movies are decoded later.
+   * 
+   * @param fileName the name of the file to read from
+   * @param mode     the way the file should be read
+   * @param fields   the fields to read from every row
+   */
+  public void readFile(String fileName, ReadMode mode, Set<MovieField> fields) {
+    switch (mode) {
+      case MAPPED:
+        readMappedFile(fileName, fields);
+        break;
+      case PARALLEL:
+        readFileInParallel(fileName, fields);
+        break;
+      case TABLE:
+        readFileIntoTable(fileName, fields);
+        break;
+      case LAZY:
+        readFileLazily(fileName, fields);
+        break;
+      case PIPELINED:
+        readFileInPipeline(fileName, fields);
+        break;
+      default:
+        readFileWithScanner(fileName, fields);
+    }
+  }
+
+  /**
+   * This method reads in a csv file by mapping it into memory, and adds a Movie object for every
+   * row to the RedBlackTree movieList object.
+   * 
+   * @param fileName the name of the file to read from
+   * @param fields   the fields to read from every row
+   */
+  private void readMappedFile(String fileName, Set<MovieField> fields) {
+    moveRowsIntoTree();
+    try {
+      new MappedMovieFileReader(fields).read(fileName, this::addMovie);
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+    }
+  }
+
+  /**
+   * This method reads in a csv file by parsing ranges of it on all available cores, and then adds
+   * a Movie object for every row to the RedBlackTree movieList object all at once with bulkLoad()
+   * (keeping movies with the same duration in the same order as the rows appear in the file).
+   * 
+   * @param fileName the name of the file to read from
+   * @param fields   the fields to read from every row
+   */
+  private void readFileInParallel(String fileName, Set<MovieField> fields) {
+    moveRowsIntoTree();
+    try {
+      ArrayList<Movie> movies = new ArrayList<Movie>();
+      new MappedMovieFileReader(fields).readParallel(fileName,
+          Runtime.getRuntime().availableProcessors(), movies::add);
+      if (this.movieList != null) {
+        syncDurationIndex();
+        for (Movie movie : movies) {
+          movie.encodeWith(this.genres, this.countries);
+        }
+        this.movieList.bulkLoad(movies);
+        movies.forEach(this::indexMovie);
+        this.indexedModifications = this.movieTree.modificationCount();
+      } else {
+        movies.forEach(this::addMovie);
+      }
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+    }
+  }
+
+  /**
+   * This method reads in a csv file by mapping it into memory, and adds every row to the
+   * movieTable's columns without creating Movie objects. Queries about this backend's RBT are then
+   * answered from the table. If the tree already holds movies (or a file was read in
+   * ReadMode.LAZY), the file is read into the tree instead, with readMappedFile().
+   * 
+   * @param fileName the name of the file to read from
+   * @param fields   the fields to read from every row
+   */
+  private void readFileIntoTable(String fileName, Set<MovieField> fields) {
+    moveRowsIfTreeChanged();
+    if (this.movieCatalog != null || this.movieTree.numKeys() > 0) {
+      readMappedFile(fileName, fields);
+      return;
+    }
+    if (this.movieTable == null) {
+      this.movieTable = new MovieTable();
+      this.rowsModifications = this.movieTree.modificationCount();
+    }
+    try {
+      new MappedMovieFileReader(fields).readRows(fileName,
+          row -> row.appendTo(this.movieTable));
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+    }
+  }
+
+  /**
+   * This method reads in a csv file by mapping it into memory, and only records the duration of
+   * every row and where the row is in the file, in a new movieCatalog (closing the catalog of any
+   * file read before). Each row is only scanned up to its duration column, and no Strings are
+   * decoded from the file until a query needs them. Queries about this backend's RBT are then
+   * answered from the catalog. If the tree already holds movies (or a file was read in
+   * ReadMode.TABLE), the file is read into the tree instead, with readMappedFile().
+   * 
+   * @param fileName the name of the file to read from
+   * @param fields   the fields of the catalog's movies to decode when they are needed
+   */
+  private void readFileLazily(String fileName, Set<MovieField> fields) {
+    moveRowsIfTreeChanged();
+    if (this.movieTable != null || this.movieTree.numKeys() > 0) {
+      readMappedFile(fileName, fields);
+      return;
+    }
+    LazyMovieCatalog catalog = null;
+    try {
+      catalog = new LazyMovieCatalog(fileName, LAZY_CACHE_CAPACITY);
+      LazyMovieCatalog newCatalog = catalog;
+      MappedMovieFileReader reader = new MappedMovieFileReader(EnumSet.of(MovieField.DURATION));
+      reader.readRows(fileName, row -> newCatalog.addRow(reader.currentRowOffset(),
+          reader.currentRowLength(), row.toDuration()));
+      catalog.setColumns(reader.getColumns().project(fields));
+      if (this.movieCatalog != null) {
+        this.movieCatalog.close();
+      }
+      this.movieCatalog = catalog;
+      this.rowsModifications = this.movieTree.modificationCount();
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+      try {
+        if (catalog != null) {
+          catalog.close();
+        }
+      } catch (IOException closeException) {
+        // The file could not be read, so it does not matter whether it could be closed
+      }
+    }
+  }
+
+  /**
+   * This method reads in a csv file through the same pipeline as readStream(), and adds a Movie
+   * object for every row to the RedBlackTree movieList object.
+   * 
+   * @param fileName the name of the file to read from
+   * @param fields   the fields to read from every row
+   */
+  private void readFileInPipeline(String fileName, Set<MovieField> fields) {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      readStream(channel, fields);
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+    }
+  }
+
+  /**
+   * This method reads in movie csv data from a stream (such as System.in, or the output of another
+   * process) and adds a Movie object for every row to the RedBlackTree movieList object. Reading
+   * the stream, parsing the rows and inserting the movies run as separate stages of a pipeline
+   * (see PipelinedMovieReader), whose counters can be read with getPipelineReader() while the
+   * stream is being read. The stream is not closed.
+   * 
+   * @param in the stream to read from
+   * @throws IOException if the stream cannot be read
+   */
+  public void readStream(InputStream in) throws IOException {
+    readStream(Channels.newChannel(in), MovieField.MOVIE_FIELDS);
+  }
+
+  /**
+   * This method reads in movie csv data from a channel the same way as readStream(in), but only
+   * reads the given fields of every movie (the other fields are left empty, or 0).
+   * 
+   * @param channel the channel to read from
+   * @param fields  the fields to read from every row
+   * @throws IOException if the channel cannot be read
+   */
+  public void readStream(ReadableByteChannel channel, Set<MovieField> fields) throws IOException {
+    moveRowsIntoTree();
+    PipelinedMovieReader reader = new PipelinedMovieReader(fields);
+    this.pipelineReader = reader;
+    reader.read(channel, this::addMovie);
+  }
+
+  /**
+   * @return the tree readFile() and readStream() add movies to, which is movieList or the
+   *         IntrusiveMovieTree this backend was created with (it is never null)
+   */
+  public IterableMultiKeySortedCollectionInterface<Movie> getMovieTree() {
+    return this.movieTree;
+  }
+
+  /**
+   * @return the reader of the last stream readStream() read (or is reading), whose counters
+   *         describe each stage of the pipeline, or null if no stream was read
+   */
+  public PipelinedMovieReader getPipelineReader() {
+    return this.pipelineReader;
+  }
+
+  /**
+   * @return the catalog of the last file readFile() read in ReadMode.LAZY, or null if no file was
+   *         read in that mode (or its movies were moved into the tree)
+   */
+  public LazyMovieCatalog getMovieCatalog() {
+    return this.movieCatalog;
+  }
+
+  /**
+   * @return the dictionary the genre of every movie readFile() or readStream() adds to the tree is
+   *         encoded with (see Movie.getGenreCode())
+   */
+  public StringDictionary getGenres() {
+    return this.genres;
+  }
+
+  /**
+   * @return the dictionary the country of every movie readFile() or readStream() adds to the tree
+   *         is encoded with (see Movie.getCountryCode())
+   */
+  public StringDictionary getCountries() {
+    return this.countries;
+  }
+
+  /**
+   * Closes the file of the last file readFile() read in ReadMode.LAZY, if its movies are still in
+   * the movieCatalog. Since the catalog's movies cannot be decoded without the file, they are
+   * dropped, and getMovieCatalog() returns null afterwards. Movies in the tree or the movieTable
+   * are kept, and the backend can still read files.
+   */
+  public void close() {
+    if (this.movieCatalog != null) {
+      LazyMovieCatalog catalog = this.movieCatalog;
+      this.movieCatalog = null;
+      try {
+        catalog.close();
+      } catch (IOException e) {
+        // The catalog is no longer used, so it does not matter whether it could be closed
+      }
+    }
+  }
+
+  /**
+   * @return the table that readFile() loads movies into in ReadMode.TABLE, or null if no file was
+   *         read in that mode (or its movies were moved into the tree)
+   */
+  public MovieTable getMovieTable() {
+    return this.movieTable;
+  }
+
+  /**
+   * This method reads in a csv file line by line using a Scanner, and adds a Movie object for
+   * every line to the RedBlackTree movieList object.
+   * 
+   * @param fileName the name of the file to read from
+   * @param fields   the fields to read from every row
+   */
+  private void readFileWithScanner(String fileName, Set<MovieField> fields) {
+    moveRowsIntoTree();
     try {
       // Create a file object (using the fileName given) and read from it using scanner
       File movieFile = new File(fileName);
       Scanner scnr = new Scanner(movieFile);
-      ArrayList<String> lineContents = new ArrayList<String>(); // Holds the contents in each line
-                                                                // as string objects
-
-      int quoteAmount = 0; // The number of quotes in a line
-      int previousChar = 0; // The last character that we added to lineContents
-
-      // Skip the title line
-      scnr.nextLine();
-
-      while (scnr.hasNextLine()) {
-        String movieLine = scnr.nextLine(); // Stores the next line in the file
-        previousChar = 0;
-        quoteAmount = 0;
-
-        // For each character in movieLine, check if there is a comma separating two objects. Split
-        // the string into substrings based on these comma separating characters, and add them to
-        // the lineContents ArrayList
-        for (int i = 0; i < movieLine.length(); i++) {
-          // We don't need any content other than the Movie properties describes in the Movie class.
-          // These can be found in the first 5 comma separated strings of each line.
-          if (lineContents.size() > 5) {
-            break;
-          }
-          char currentChar = movieLine.charAt(i);
-          // If the current character is a quotation, increment the quoteAmount variable
-          if (currentChar == '"') {
-            quoteAmount++;
-          }
-          // If the current character is a comma and not in-between quotation marks, create a
-          // substring from previousChar to the current character
-          if (currentChar == ',' && (quoteAmount == 0 || quoteAmount == 2)) {
-            if (previousChar == 0) {
-              lineContents.add(movieLine.substring(previousChar, i));
-            } else {
-              lineContents.add(movieLine.substring(previousChar + 1, i));
-            }
-            // Reset quoteAmount to 0 for the next substring
-            quoteAmount = 0;
-            // Update the previous char variable
-            previousChar = i;
-          } else if (i == movieLine.length() - 1) {
-            // If we are on the last character in the string, add a substring from the prevous char
-            // to the end of the string
-            lineContents.add(movieLine.substring(previousChar + 1, i + 1));
-          }
-        }
+      // Only split lines at "\n", so a "\r\n" line break inside a quoted field is kept the same
+      // way as in the bytes the other read modes tokenize
+      scnr.useDelimiter("\n");
+      MovieRowTokenizer tokenizer = new MovieRowTokenizer(); // Splits each line into its fields
 
-        // Save the String values in lineContents into their respective Movie property variables
-        String title = "";
-        String genre = "";
-        String year = "";
-        Integer year1 = 0;
-        String country = "";
-        String duration = "";
-        Integer duration1 = 0;
-
-        if (lineContents.size() > 1 && lineContents.get(1) != null) {
-          title = lineContents.get(1);
-        }
-        if (lineContents.size() > 3 && lineContents.get(3) != null) {
-          genre = lineContents.get(3);
-        }
-        if (lineContents.size() > 2 && lineContents.get(2) != null) {
-          year = lineContents.get(2);
-          year1 = Integer.parseInt(year);
-        }
-        if (lineContents.size() > 5 && lineContents.get(5) != null) {
-          country = lineContents.get(5);
+      // Find which column each field is in from the title line
+      tokenizer.setColumns(MovieColumnMap.fromHeader(scnr.next()).project(fields));
+
+      StringBuilder row = new StringBuilder(); // the lines of the current row
+      while (scnr.hasNext()) {
+        // Join the lines of a row whose quoted field holds a line break, and skip blank rows the
+        // same way the other read modes do
+        String line = scnr.next();
+        row.setLength(0);
+        row.append(line);
+        boolean inQuotes = MovieRowTokenizer.endsInsideQuotes(line, false);
+        while (inQuotes && scnr.hasNext()) {
+          line = scnr.next();
+          row.append('\n').append(line);
+          inQuotes = MovieRowTokenizer.endsInsideQuotes(line, inQuotes);
         }
-        if (lineContents.size() > 4 && lineContents.get(4) != null) {
-          duration = lineContents.get(4);
-          duration1 = Integer.parseInt(duration);
+        if (MovieRowTokenizer.isBlankRow(row)) {
+          continue;
         }
-
-        // Create a Movie object using these saved properties and insert it into movieList
-        Movie movieToAdd = new Movie(title, genre, year1, country, duration1);
-        this.movieList.insertSingleKey(movieToAdd);
-        // Clear line contents so it is empty for the next line in the file
-        lineContents.clear();
+        // Split the row into its comma separated fields, then create a Movie object from these
+        // fields and insert it into movieList
+        tokenizer.tokenize(row);
+        addMovie(tokenizer.toMovie());
       }
       scnr.close();
     } catch (FileNotFoundException e) {
@@ -123,70 +415,311 @@ public class BackendDeveloperIndividual<T extends Comparable<T>> implements Back
     }
   }
 
+  /**
+   * Moves the movies in the movieTable or movieCatalog (if a file was read in ReadMode.TABLE or
+   * ReadMode.LAZY) into the tree, in the order they were read, and drops the table or closes the
+   * catalog. This is called before any other file is read into the tree, so the queries, which
+   * are answered from only one of them, see the movies of every file.
+   */
+  private void moveRowsIntoTree() {
+    if (this.movieTable != null) {
+      MovieTable table = this.movieTable;
+      this.movieTable = null;
+      for (int row = 0; row < table.rowCount(); row++) {
+        addMovie(table.getMovie(row));
+      }
+    }
+    if (this.movieCatalog != null) {
+      LazyMovieCatalog catalog = this.movieCatalog;
+      this.movieCatalog = null;
+      int[] rows = new int[catalog.rowCount()];
+      for (int row = 0; row < rows.length; row++) {
+        rows[row] = row;
+      }
+      for (Movie movie : catalog.getMovies(rows)) {
+        addMovie(movie);
+      }
+      try {
+        catalog.close();
+      } catch (IOException e) {
+        // Every movie was already read from the catalog, so it does not matter if it was closed
+      }
+    }
+  }
+
+  /**
+   * Moves the movies in the movieTable or movieCatalog into the tree (see moveRowsIntoTree()) if
+   * the tree was changed directly, rather than by readFile(), since the table or catalog was
+   * created. They only hold the movies of the tree while the tree itself is empty, so once
+   * anything is inserted into the tree (or it is otherwise changed), their movies have to join
+   * them there.
+   */
+  private void moveRowsIfTreeChanged() {
+    if ((this.movieTable != null || this.movieCatalog != null)
+        && this.movieTree.modificationCount() != this.rowsModifications) {
+      moveRowsIntoTree();
+    }
+  }
+
+  /**
+   * Inserts a movie that was read from a file into the tree the movies are read into, and adds it
+   * to the duration index. Its genre and country are encoded with this backend's dictionaries
+   * first.
+   * 
+   * @param movie the movie to add
+   */
+  private void addMovie(Movie movie) {
+    movie.encodeWith(this.genres, this.countries);
+    if (this.movieTree.allowsConcurrentWriters()) {
+      // Other threads may be adding movies at the same time, so no duration index is kept
+      this.movieTree.insertSingleKey(movie);
+      return;
+    }
+    syncDurationIndex();
+    this.movieTree.insertSingleKey(movie);
+    indexMovie(movie);
+    this.indexedModifications = this.movieTree.modificationCount();
+  }
+
+  /**
+   * Rebuilds the duration index from the tree if the tree was changed since the index last held
+   * exactly its movies (because movies were inserted into the tree directly, or it was cleared),
+   * so the movies readFile() adds next are indexed along with every movie already in the tree. No
+   * index is kept for a tree that allows concurrent writers.
+   */
+  private void syncDurationIndex() {
+    if (this.movieTree.modificationCount() == this.indexedModifications
+        || this.movieTree.allowsConcurrentWriters()) {
+      return;
+    }
+    this.durationIndex = new DurationBucketIndex();
+    Iterator<Movie> movies = this.movieTree.iteratorFrom(null);
+    while (movies.hasNext()) {
+      indexMovie(movies.next());
+    }
+    this.indexedModifications = this.movieTree.modificationCount();
+  }
+
+  /**
+   * Adds a movie to the duration index. If the movie's duration is too far from the other movies'
+   * durations to be indexed, the index is dropped and queries are answered from the RBT instead.
+   * 
+   * @param movie the movie to add to the index
+   */
+  private void indexMovie(Movie movie) {
+    if (this.durationIndex != null) {
+      try {
+        this.durationIndex.add(movie);
+      } catch (IllegalArgumentException e) {
+        this.durationIndex = null;
+      }
+    }
+  }
+
+  /**
+   * Checks if the duration index holds exactly the movies in a RBT, so queries about that RBT can
+   * be answered from the index. This is only true for the tree this backend reads movies into,
+   * when the tree was not changed (by anything other than readFile()) since readFile() last added
+   * movies to it and the index.
+   * 
+   * @param movieList the RBT a query is about
+   * @return true if the query can be answered from the duration index
+   */
+  private boolean indexCovers(IterableMultiKeySortedCollectionInterface<T> movieList) {
+    return this.durationIndex != null && (Object) movieList == this.movieTree
+        && this.movieTree.modificationCount() == this.indexedModifications;
+  }
+
+  /**
+   * Checks if the movieTable holds exactly the movies of a RBT, so queries about that RBT should be
+   * answered from the table. This is true when the RBT is the tree this backend reads movies into,
+   * a file was read in ReadMode.TABLE, and the tree itself was not changed since (readFile() keeps
+   * it empty while the table is in use). If the tree was changed directly, the table's movies are
+   * moved into it first, and the query is answered from the tree.
+   * 
+   * @param movieList the RBT a query is about
+   * @return true if the query should be answered from the movieTable
+   */
+  private boolean tableCovers(IterableMultiKeySortedCollectionInterface<T> movieList) {
+    if ((Object) movieList != this.movieTree) {
+      return false;
+    }
+    moveRowsIfTreeChanged();
+    return this.movieTable != null;
+  }
+
+  /**
+   * Checks if the movieCatalog holds exactly the movies of a RBT, so queries about that RBT should
+   * be answered from the catalog. This is true when the RBT is the tree this backend reads movies
+   * into, a file was read in ReadMode.LAZY, and the tree itself was not changed since. If the tree
+   * was changed directly, the catalog's movies are moved into it first, and the query is answered
+   * from the tree.
+   * 
+   * @param movieList the RBT a query is about
+   * @return true if the query should be answered from the movieCatalog
+   */
+  private boolean catalogCovers(IterableMultiKeySortedCollectionInterface<T> movieList) {
+    if ((Object) movieList != this.movieTree) {
+      return false;
+    }
+    moveRowsIfTreeChanged();
+    return this.movieCatalog != null;
+  }
 
   /**
    * This method creates an ArrayList of movie titles that have the minimum duration in the Red
    * Black Tree. If there are multiple movie titles with the same minimum duration, add them all to
    * the ArrayList.
+   * <p>
+   * The movies with the minimum duration are all stored in the tree's first KeyList, so only that
+   * KeyList is read instead of iterating over the whole tree. If the movies were all read by
+   * readFile(), they are read from the duration index's bucket for the minimum duration instead,
+   * and if the file was read in ReadMode.TABLE or ReadMode.LAZY, they are read from the
+   * movieTable or decoded by the movieCatalog.
    * 
    * @param movieList the RBT of movie objects based on duration
    * @return ArrayList<String> of movie titles with the minimum duration.
    */
   @Override
-  public ArrayList<String> getMinDurationList(IterableMultiKeyRBT<T> movieList) {
-    // If the movieList object is null, return null
-    if (movieList == null) {
+  public ArrayList<String> getMinDurationList(
+      IterableMultiKeySortedCollectionInterface<T> movieList) {
+    if (tableCovers(movieList)) {
+      return movieTable.rowCount() == 0 ? null
+          : getTableTitles(movieTable.minDuration(), movieTable.minDuration());
+    }
+    if (catalogCovers(movieList)) {
+      return movieCatalog.rowCount() == 0 ? null
+          : orderTitles(getCatalogTitles(movieCatalog.minDuration(), movieCatalog.minDuration()));
+    }
+    // If the movieList object is null, or it has 0 keys, return null
+    if (movieList == null || movieList.numKeys() == 0) {
       return null;
     }
-    ArrayList<String> minMovieList = new ArrayList<String>(); // the ArrayList storing the titles
-                                                              // for the Movies with the smallest
-                                                              // duration
-    // Cast movieList to become an instance of the IterableyMultiKeyRBT class
-    IterableMultiKeyRBT<T> movieList1 = (IterableMultiKeyRBT<T>) movieList;
-    // If the movieList has 0 keys, return null
-    if (movieList1.numKeys() == 0) {
+    if (indexCovers(movieList)) {
+      return getTitles(durationIndex.moviesWithDuration(durationIndex.minDuration()));
+    }
+    return getTitles(movieList.firstKeyList());
+  }
+
+  /**
+   * This method creates an ArrayList of movie titles that have the maximum duration in the Red
+   * Black Tree. If there are multiple movie titles with the same maximum duration, add them all to
+   * the ArrayList.
+   * <p>
+   * The movies with the maximum duration are all stored in the tree's last KeyList, so only that
+   * KeyList is read instead of iterating over the whole tree. If the movies were all read by
+   * readFile(), they are read from the duration index's bucket for the maximum duration instead,
+   * and if the file was read in ReadMode.TABLE or ReadMode.LAZY, they are read from the
+   * movieTable or decoded by the movieCatalog.
+   * 
+   * @param movieList the RBT of movie objects based on duration
+   * @return ArrayList<String> of movie titles with the maximum duration.
+   */
+  @Override
+  public ArrayList<String> getMaxDurationList(
+      IterableMultiKeySortedCollectionInterface<T> movieList) {
+    if (tableCovers(movieList)) {
+      return movieTable.rowCount() == 0 ? null
+          : getTableTitles(movieTable.maxDuration(), movieTable.maxDuration());
+    }
+    if (catalogCovers(movieList)) {
+      return movieCatalog.rowCount() == 0 ? null
+          : orderTitles(getCatalogTitles(movieCatalog.maxDuration(), movieCatalog.maxDuration()));
+    }
+    // If the movieList object is null, or it has 0 keys, return null
+    if (movieList == null || movieList.numKeys() == 0) {
       return null;
     }
-    // Initialize an iterator for the IterableMultiKeyRBT object
-    Iterator<T> iterator = movieList1.iterator();
-    // Set the minimum duration value to a very high value to start
-    int currentMinDuration = 100000;
-    Movie currentMinMovie = null;
-    // Iterate through the RBT using the iterator object
-    while (iterator.hasNext()) {
-      Movie movie = (Movie) iterator.next();
-     // Movie movie = iterator.next();
-      // If the movie's getDuration value is less than the currently saved minimum duration, update
-      // the currently saved minimum duration movie to equal this movie, and update the currently
-      // saved minimum duration value to its duration.
-      if (movie.getDuration() <= currentMinDuration) {
-        currentMinMovie = movie;
-        currentMinDuration = movie.getDuration();
-      }
+    if (indexCovers(movieList)) {
+      return getTitles(durationIndex.moviesWithDuration(durationIndex.maxDuration()));
     }
-    // Add the minimum duration movie to the arrayList
-    minMovieList.add(currentMinMovie.getTitle());
-    // Create another iterator object and go through the RBT again, this time saving all references
-    // that have an equal duration to the saved minimum duration value.
-    Iterator<T> iterator2 = movieList1.iterator();
-    
-    while (iterator2.hasNext()) {
-      Movie movie = (Movie) iterator2.next();
-      if (movie.getDuration() == currentMinDuration) {
-        if (movie.getTitle().equals(currentMinMovie.getTitle())){
-          continue;
-        }
-        minMovieList.add(movie.getTitle());
+    return getTitles(movieList.lastKeyList());
+  }
+
+  /**
+   * Creates an ArrayList of the titles of movies with the same duration. The title of the movie
+   * that was inserted last comes first, followed by the titles of the other movies in the order
+   * they were inserted (skipping any that have the same title as the first one).
+   * 
+   * @param movies the KeyList (or duration index bucket) of movies that have the same duration
+   * @return ArrayList<String> of the movie titles
+   */
+  private ArrayList<String> getTitles(Iterable<?> movies) {
+    ArrayList<String> titles = new ArrayList<String>();
+    for (Object key : movies) {
+      titles.add(((Movie) key).getTitle());
+    }
+    return orderTitles(titles);
+  }
+
+  /**
+   * Creates an ArrayList of the titles of the movies in the movieTable that have a duration
+   * between lowerDuration and upperDuration, in the same order as getTitles(). Only the title
+   * column of the table is read.
+   * 
+   * @param lowerDuration the shortest duration to include
+   * @param upperDuration the longest duration to include
+   * @return ArrayList<String> of the movie titles
+   */
+  private ArrayList<String> getTableTitles(int lowerDuration, int upperDuration) {
+    ArrayList<String> titles = new ArrayList<String>();
+    MovieTable.RowCursor cursor =
+        movieTable.rangeCursor(lowerDuration, upperDuration, MovieTable.Column.TITLE);
+    while (cursor.next()) {
+      titles.add(cursor.getTitle());
+    }
+    return orderTitles(titles);
+  }
+
+  /**
+   * Creates an ArrayList of the titles of the movies in the movieCatalog that have a duration
+   * between lowerDuration and upperDuration, in order of duration (and in file order for movies
+   * with the same duration). Only the rows in the range are decoded from the file, in as few reads
+   * as possible (see LazyMovieCatalog.getMovies()).
+   * 
+   * @param lowerDuration the shortest duration to include
+   * @param upperDuration the longest duration to include
+   * @return ArrayList<String> of the movie titles
+   */
+  private ArrayList<String> getCatalogTitles(int lowerDuration, int upperDuration) {
+    ArrayList<String> titles = new ArrayList<String>();
+    for (Movie movie : movieCatalog.getMoviesInRange(lowerDuration, upperDuration)) {
+      titles.add(movie.getTitle());
+    }
+    return titles;
+  }
+
+  /**
+   * Orders the titles of movies with the same duration (given in the order they were inserted):
+   * the title of the movie that was inserted last comes first, followed by the other titles in
+   * the order they were inserted (skipping any that are the same as the first one).
+   * 
+   * @param titles the titles of the movies, in the order they were inserted
+   * @return ArrayList<String> of the ordered titles
+   */
+  private ArrayList<String> orderTitles(ArrayList<String> titles) {
+    ArrayList<String> titleList = new ArrayList<String>(); // the ArrayList storing the titles
+    // Add the title of the movie that was inserted last first
+    String lastTitle = titles.get(titles.size() - 1);
+    titleList.add(lastTitle);
+    // Add the titles of every other movie with a different title
+    for (String title : titles) {
+      if (!title.equals(lastTitle)) {
+        titleList.add(title);
       }
     }
-    // Return the minMovieList ArrayList
-    return minMovieList;
+    return titleList;
   }
 
   /**
    * This method gets an ArrayList of all the movie titles that have a duration within the given
    * threshold. Note that if a movie has a duration equal to one of the threshold bounds, it is
    * included in the ArrayList.
+   * <p>
+   * If the movies were all read by readFile(), the titles are collected from the duration index's
+   * buckets for the durations within the threshold, without walking the RBT. If the file was read
+   * in ReadMode.TABLE, only the title column of the movieTable's rows in the threshold is read, and
+   * if it was read in ReadMode.LAZY, only the rows in the threshold are decoded from the file.
    * 
    * @param movieList the RBT of Movie objects
    * @lowerThreshold the lower bound of the threshold
@@ -195,31 +728,53 @@ public class BackendDeveloperIndividual<T extends Comparable<T>> implements Back
    */
   @Override
   public ArrayList<String> getThresholdDurationList(
-      IterableMultiKeyRBT<T> movieList, int lowerThreshold, int upperThreshold) {
+      IterableMultiKeySortedCollectionInterface<T> movieList, int lowerThreshold,
+      int upperThreshold) {
     
     // If the movieLIst object is null, or if the lower and upper thresholds do not make sense,
     // return null
     if (movieList == null || lowerThreshold > upperThreshold || upperThreshold < lowerThreshold) {
       return null;
     }
-    // Cast movieList to become an instance of the IterableMultiKeyRBT class
-    IterableMultiKeyRBT<T> movieList1 = (IterableMultiKeyRBT<T>) movieList;
+    if (tableCovers(movieList)) {
+      if (movieTable.rowCount() == 0) {
+        return null;
+      }
+      ArrayList<String> thresholdDurationList = new ArrayList<String>();
+      MovieTable.RowCursor cursor =
+          movieTable.rangeCursor(lowerThreshold, upperThreshold, MovieTable.Column.TITLE);
+      while (cursor.next()) {
+        thresholdDurationList.add(cursor.getTitle());
+      }
+      return thresholdDurationList;
+    }
+    if (catalogCovers(movieList)) {
+      return movieCatalog.rowCount() == 0 ? null
+          : getCatalogTitles(lowerThreshold, upperThreshold);
+    }
     // If the movieList has 0 keys, return null
     if (movieList.numKeys() == 0) {
       return null;
     }
-    // Create an iterator object from the IterableMultiKeyRBT class
-    Iterator<T> iterator = movieList1.iterator();
     ArrayList<String> thresholdDurationList = new ArrayList<String>(); // the ArrayList containing
     // movie titles with a duration within the given threshold
+    if (indexCovers(movieList)) {
+      durationIndex.forEachInRange(lowerThreshold, upperThreshold,
+          movie -> thresholdDurationList.add(movie.getTitle()));
+      return thresholdDurationList;
+    }
+    // Create Movie objects with the threshold durations to use as the bounds of the iteration
+    @SuppressWarnings("unchecked")
+    Comparable<T> lowerBound = (Comparable<T>) new Movie("", "", 0, "", lowerThreshold);
+    @SuppressWarnings("unchecked")
+    Comparable<T> upperBound = (Comparable<T>) new Movie("", "", 0, "", upperThreshold);
+    // Create an iterator object that only iterates over the movies within the threshold
+    Iterator<T> iterator = movieList.rangeIterator(lowerBound, upperBound);
 
-    // Iterate through the entire RBT using the iterator object
+    // Add the title of every movie within the threshold to the thresholdDurationList
     while (iterator.hasNext()) {
       Movie movie = (Movie) iterator.next();
-      // If the movie's duration is within the given threshold, add it to the thresholdDurationList
-      if (movie.getDuration() <= upperThreshold && movie.getDuration() >= lowerThreshold) {
-        thresholdDurationList.add(movie.getTitle());
-      }
+      thresholdDurationList.add(movie.getTitle());
     }
     // Return the arrayList containing movie titles that have durations within the threshold.
     return thresholdDurationList;
@@ -233,8 +788,10 @@ public class BackendDeveloperIndividual<T extends Comparable<T>> implements Back
    * @param args unused
    */
   public static void main(String[] args) {
-    // Initialize a Backend object and its required parameters
+    // Initialize a Backend object and its required parameters (the RBT keeps the sum of the
+    // movies' durations in every subtree)
     IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    movieList.setMeasure(Movie::getDuration);
     BackendDeveloperIndividual<Movie> backend = new BackendDeveloperIndividual<Movie>(movieList);
 
     // Initialize a Frontend object and its required parameters
@@ -1,8 +1,16 @@
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.Scanner;
 
@@ -71,6 +79,1606 @@ public class BackendDeveloperTests {
     }
   }
 
+  /**
+   * This tests reading a file with ReadMode.MAPPED by confirming that the RBT it creates holds the
+   * same movies, in the same order, as the RBT created when reading with ReadMode.SCANNER, even
+   * when the file has blank rows and quoted fields that contain line breaks.
+   * 
+   * @throws IOException if the temporary test file cannot be written
+   */
+  @Test
+  public void testReadingMappedFile() throws IOException {
+    // 1. Read the same valid file with both modes, and confirm the movies match
+    {
+      IterableMultiKeyRBT<Movie> scannerList = new IterableMultiKeyRBT<Movie>();
+      new BackendDeveloperIndividual<Movie>(scannerList).readFile("MovieList.csv", ReadMode.SCANNER);
+      IterableMultiKeyRBT<Movie> mappedList = new IterableMultiKeyRBT<Movie>();
+      new BackendDeveloperIndividual<Movie>(mappedList).readFile("MovieList.csv", ReadMode.MAPPED);
+
+      assertSameMovies(scannerList, mappedList, "Mapped");
+    }
+    // 2. Use an invalid file name and confirm no exception escapes readFile
+    {
+      try {
+        IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+        new BackendDeveloperIndividual<Movie>(movieList).readFile("invalidName.pdf",
+            ReadMode.MAPPED);
+        assertEquals(0, movieList.numKeys(), "Movies were read from an invalid file");
+      } catch (Exception e) {
+        assertEquals(1, 0, "Exception was thrown when an invalid filename was used");
+      }
+    }
+    // 3. Read a file with blank rows ("\n" and "\r\n") and quoted "\n" and "\r\n" line breaks in
+    // every mode, and confirm every mode skips the blank rows and keeps each line break as it is
+    {
+      File movieFile = File.createTempFile("blankRowMovies", ".csv");
+      movieFile.deleteOnExit();
+      try (PrintWriter writer = new PrintWriter(movieFile)) {
+        writer.print("id,title,year,genre,duration,country,director,actor\n");
+        writer.print("\n");
+        writer.print("1,\"Title, with a comma\n and a line break\",1999,Drama,120,Italy,d,a\n");
+        writer.print("\n\r\n");
+        writer.print("2,Plain,2001,Comedy,95,\"United\nStates\",d,a\r\n");
+        writer.print("\r\n\n");
+        writer.print("3,\"Carriage\r\nreturn\",2005,Drama,100,Spain,d,a\r\n");
+        writer.print("4,Last,2010,Horror,88,Japan,d,a");
+      }
+
+      IterableMultiKeyRBT<Movie> scannerList = new IterableMultiKeyRBT<Movie>();
+      new BackendDeveloperIndividual<Movie>(scannerList).readFile(movieFile.getPath(),
+          ReadMode.SCANNER);
+      assertEquals(4, scannerList.numKeys(), "Scanner read did not skip the blank rows");
+      boolean foundLineBreak = false;
+      boolean foundCarriageReturn = false;
+      for (Movie movie : scannerList) {
+        foundLineBreak |= movie.getTitle().contains("comma\n and a line break");
+        foundCarriageReturn |= movie.getTitle().contains("Carriage\r\nreturn");
+      }
+      assertTrue(foundLineBreak, "Scanner read did not keep the quoted line break in the title");
+      assertTrue(foundCarriageReturn,
+          "Scanner read did not keep the quoted \"\\r\\n\" line break in the title");
+      for (ReadMode mode : new ReadMode[] {ReadMode.MAPPED, ReadMode.PARALLEL,
+          ReadMode.PIPELINED}) {
+        IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+        new BackendDeveloperIndividual<Movie>(movieList).readFile(movieFile.getPath(), mode);
+        assertSameMovies(scannerList, movieList, mode.toString());
+      }
+    }
+  }
+
+  /**
+   * Confirms that two RBTs hold the same movies in the same order, comparing every field.
+   * 
+   * @param expected the movies read with the reference mode
+   * @param actual   the movies read with another mode
+   * @param mode     the name of the other mode, used in the failure messages
+   */
+  private static void assertSameMovies(IterableMultiKeyRBT<Movie> expected,
+      IterableMultiKeyRBT<Movie> actual, String mode) {
+    assertEquals(expected.numKeys(), actual.numKeys(),
+        mode + " read did not read the same number of movies");
+    assertEquals(expected.size(), actual.size(),
+        mode + " read did not create the same number of nodes");
+    Iterator<Movie> expectedIterator = expected.iterator();
+    Iterator<Movie> actualIterator = actual.iterator();
+    while (expectedIterator.hasNext()) {
+      Movie expectedMovie = expectedIterator.next();
+      Movie actualMovie = actualIterator.next();
+      assertEquals(expectedMovie.getTitle(), actualMovie.getTitle(),
+          mode + " movie title is incorrect");
+      assertEquals(expectedMovie.getGenre(), actualMovie.getGenre(),
+          mode + " movie genre is incorrect");
+      assertEquals(expectedMovie.getYear(), actualMovie.getYear(),
+          mode + " movie year is incorrect");
+      assertEquals(expectedMovie.getCountry(), actualMovie.getCountry(),
+          mode + " movie country is incorrect");
+      assertEquals(expectedMovie.getDuration(), actualMovie.getDuration(),
+          mode + " movie duration is incorrect");
+    }
+  }
+
+  /**
+   * This tests reading a file with ReadMode.PARALLEL by confirming that the RBT it creates holds the
+   * same movies in the same order as a sequential read, even when quoted fields contain commas and
+   * line breaks that could be mistaken for the end of a row, and that every movie read into a
+   * backend's tree has its genre and country encoded with that backend's own dictionaries.
+   * 
+   * @throws IOException if the temporary test file cannot be written
+   */
+  @Test
+  public void testReadingFileInParallel() throws IOException {
+    // Create a file with enough rows to be split into many ranges
+    File movieFile = File.createTempFile("parallelMovies", ".csv");
+    movieFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < 2000; i++) {
+        String title = (i % 3 == 0) ? "\"Title, with a comma\n and a line break " + i + "\""
+            : "Title" + i;
+        writer.print(i + "," + title + "," + (1950 + i % 70) + ",Drama," + (60 + i % 90)
+            + (i % 2 == 0 ? ",Italy" : ",Spain") + ",director,actor\n");
+      }
+    }
+
+    // Read the file sequentially and in parallel
+    IterableMultiKeyRBT<Movie> sequentialList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> sequentialBackend =
+        new BackendDeveloperIndividual<Movie>(sequentialList);
+    sequentialBackend.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    IterableMultiKeyRBT<Movie> parallelList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> parallelBackend =
+        new BackendDeveloperIndividual<Movie>(parallelList);
+    parallelBackend.readFile(movieFile.getPath(), ReadMode.PARALLEL);
+
+    // Confirm that both trees hold the same movies in the same order
+    assertEquals(2000, sequentialList.numKeys(), "Sequential read did not read every row");
+    assertSameMovies(sequentialList, parallelList, "Parallel");
+
+    // Confirm that every movie in each tree (including a file read again in another mode) is
+    // encoded with its backend's dictionaries, which share one String for each value
+    parallelBackend.readFile(movieFile.getPath(), ReadMode.SCANNER);
+    assertEquals(4000, parallelList.numKeys(), "The second read did not add every row");
+    for (BackendDeveloperIndividual<Movie> backend : Arrays.asList(sequentialBackend,
+        parallelBackend)) {
+      StringDictionary genres = backend.getGenres();
+      StringDictionary countries = backend.getCountries();
+      assertEquals(1, genres.size(), "The backend's genre dictionary is incorrect");
+      assertEquals(2, countries.size(), "The backend's country dictionary is incorrect");
+      for (Movie movie : backend.getMovieTree()) {
+        assertTrue(genres.decode(movie.getGenreCode()) == movie.getGenre(),
+            "A movie's genre was not encoded with its backend's dictionary");
+        assertTrue(countries.decode(movie.getCountryCode()) == movie.getCountry(),
+            "A movie's country was not encoded with its backend's dictionary");
+      }
+    }
+    assertTrue(sequentialBackend.getGenres() != parallelBackend.getGenres(),
+        "Backends share their genre dictionary");
+    assertEquals(-1, new Movie("Title", "Drama", 2000, "Italy", 90).getGenreCode(),
+        "A movie that no backend read has a genre code");
+  }
+
+  /**
+   * This tests MovieSnapshot by confirming that a saved RBT of movies is loaded back with the same
+   * movies in the same order, and that snapshots that were changed after being saved are rejected.
+   * 
+   * @throws IOException if the temporary snapshot file cannot be written
+   */
+  @Test
+  public void testMovieSnapshot() throws IOException {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    movieList.insertSingleKey(new Movie("Title1", "Drama", 2000, "Italy", 120));
+    movieList.insertSingleKey(new Movie("Title2", "Comedy", 2001, "Italy", 90));
+    movieList.insertSingleKey(new Movie("Title3", "Drama", 2002, "Greece", 120));
+    movieList.insertSingleKey(new Movie("Title4", "Horror", 2003, "United States", 150));
+    File snapshot = File.createTempFile("movies", ".snapshot");
+    snapshot.deleteOnExit();
+    MovieSnapshot.save(movieList, snapshot.getPath());
+
+    // 1. Load the snapshot and confirm it holds the same movies in the same order
+    {
+      IterableMultiKeyRBT<Movie> loadedList = new IterableMultiKeyRBT<Movie>();
+      MovieSnapshot.load(snapshot.getPath(), loadedList);
+      assertEquals(movieList.numKeys(), loadedList.numKeys(),
+          "Loaded snapshot has the wrong number of movies");
+      assertEquals(movieList.size(), loadedList.size(), "Loaded snapshot has the wrong size");
+      Iterator<Movie> expectedIterator = movieList.iterator();
+      for (Movie actual : loadedList) {
+        Movie expected = expectedIterator.next();
+        assertEquals(expected.getTitle(), actual.getTitle(), "Loaded movie title is incorrect");
+        assertEquals(expected.getGenre(), actual.getGenre(), "Loaded movie genre is incorrect");
+        assertEquals(expected.getYear(), actual.getYear(), "Loaded movie year is incorrect");
+        assertEquals(expected.getCountry(), actual.getCountry(),
+            "Loaded movie country is incorrect");
+        assertEquals(expected.getDuration(), actual.getDuration(),
+            "Loaded movie duration is incorrect");
+      }
+    }
+    // 2. Change a byte of a movie record and confirm the snapshot is rejected
+    {
+      byte[] bytes = Files.readAllBytes(snapshot.toPath());
+      bytes[bytes.length - 1]++;
+      File changedSnapshot = File.createTempFile("changedMovies", ".snapshot");
+      changedSnapshot.deleteOnExit();
+      Files.write(changedSnapshot.toPath(), bytes);
+      try {
+        MovieSnapshot.load(changedSnapshot.getPath(), new IterableMultiKeyRBT<Movie>());
+        assertEquals(1, 0, "A snapshot that does not match its checksum was loaded");
+      } catch (IOException e) {
+        // A changed snapshot is expected to throw an IOException
+      }
+    }
+    // 3. Change the version in the header and confirm the snapshot is rejected
+    {
+      byte[] bytes = Files.readAllBytes(snapshot.toPath());
+      bytes[7] = 99;
+      File oldSnapshot = File.createTempFile("oldMovies", ".snapshot");
+      oldSnapshot.deleteOnExit();
+      Files.write(oldSnapshot.toPath(), bytes);
+      try {
+        MovieSnapshot.load(oldSnapshot.getPath(), new IterableMultiKeyRBT<Movie>());
+        assertEquals(1, 0, "A snapshot with a different version was loaded");
+      } catch (IOException e) {
+        // A snapshot from a different version is expected to throw an IOException
+      }
+    }
+    // 4. Save a tree with an iteration start point set and movies with a null genre or country,
+    // and confirm every movie is saved and loaded back with its null fields
+    {
+      movieList.insertSingleKey(new Movie("Title5", null, 2004, "Italy", 60));
+      movieList.insertSingleKey(new Movie("Title6", "Drama", 2005, null, 200));
+      movieList.setIterationStartPoint(new Movie("", "", 0, "", 100));
+      MovieSnapshot.save(movieList, snapshot.getPath());
+      IterableMultiKeyRBT<Movie> loadedList = new IterableMultiKeyRBT<Movie>();
+      MovieSnapshot.load(snapshot.getPath(), loadedList);
+      assertEquals(6, loadedList.numKeys(),
+          "A snapshot left out the movies before the start point");
+      Iterator<Movie> expectedIterator = movieList.iteratorFrom(null);
+      for (Movie actual : loadedList) {
+        Movie expected = expectedIterator.next();
+        assertEquals(expected.getTitle(), actual.getTitle(), "Loaded movie title is incorrect");
+        assertEquals(expected.getGenre(), actual.getGenre(), "Loaded movie genre is incorrect");
+        assertEquals(expected.getCountry(), actual.getCountry(),
+            "Loaded movie country is incorrect");
+        assertEquals(expected.getDuration(), actual.getDuration(),
+            "Loaded movie duration is incorrect");
+      }
+      assertEquals(null, loadedList.firstKeyList().get(0).getGenre(),
+          "A null genre was not loaded back as null");
+      assertEquals(null, loadedList.lastKeyList().get(0).getCountry(),
+          "A null country was not loaded back as null");
+    }
+  }
+
+  /**
+   * This tests the MovieRowTokenizer by confirming that rows are split into the correct fields,
+   * including quoted fields that contain commas and escaped ("") quotes, whether the row is given as
+   * a String or as bytes.
+   */
+  @Test
+  public void testMovieRowTokenizer() {
+    String row = "7,\"Hello, \"\"World\"\"\",1999,Comedy,95,United States,director7,actor 7";
+    MovieRowTokenizer tokenizer = new MovieRowTokenizer();
+    // 1. Tokenize the row as a String
+    {
+      assertEquals(6, tokenizer.tokenize(row), "Tokenizer did not stop after the sixth field");
+      Movie movie = tokenizer.toMovie();
+      assertEquals("Hello, \"World\"", movie.getTitle(), "Quoted title was not unescaped");
+      assertEquals(1999, movie.getYear(), "Year was not decoded correctly");
+      assertEquals("Comedy", movie.getGenre(), "Genre was not decoded correctly");
+      assertEquals(95, movie.getDuration(), "Duration was not decoded correctly");
+      assertEquals("United States", movie.getCountry(), "Country was not decoded correctly");
+    }
+    // 2. Tokenize the same row as UTF-8 bytes (ending in a \r\n line break)
+    {
+      byte[] bytes = (row + "\r\n").getBytes(StandardCharsets.UTF_8);
+      tokenizer.tokenize(ByteBuffer.wrap(bytes), 0, bytes.length - 1);
+      Movie movie = tokenizer.toMovie();
+      assertEquals("Hello, \"World\"", movie.getTitle(), "Quoted title was not unescaped");
+      assertEquals(95, movie.getDuration(), "Duration was not decoded correctly");
+      assertEquals("United States", movie.getCountry(), "Country was not decoded correctly");
+    }
+    // 3. A row with missing fields leaves the missing properties empty
+    {
+      assertEquals(3, tokenizer.tokenize("1,Short,2001"), "Incorrect number of fields found");
+      Movie movie = tokenizer.toMovie();
+      assertEquals("Short", movie.getTitle(), "Title was not decoded correctly");
+      assertEquals(2001, movie.getYear(), "Year was not decoded correctly");
+      assertEquals(0, movie.getDuration(), "Missing duration was not left as 0");
+      assertEquals("", movie.getCountry(), "Missing country was not left empty");
+    }
+    // 4. Every row with the same genre and country shares one String for each, from the
+    // tokenizer's own dictionaries (or the dictionaries it shares with another tokenizer)
+    {
+      byte[] bytes = "2,Other,2005,Comedy,80,United States\n".getBytes(StandardCharsets.UTF_8);
+      tokenizer.tokenize(ByteBuffer.wrap(bytes), 0, bytes.length - 1);
+      Movie mappedMovie = tokenizer.toMovie();
+      tokenizer.tokenize(row);
+      Movie movie = tokenizer.toMovie();
+      assertTrue(mappedMovie.getGenre() == movie.getGenre(), "Genre String was not shared");
+      assertTrue(mappedMovie.getCountry() == movie.getCountry(), "Country String was not shared");
+      StringDictionary genres = tokenizer.getGenres();
+      assertTrue(genres.codeOf("Comedy") >= 0
+          && genres.decode(genres.codeOf("Comedy")) == movie.getGenre(),
+          "Genre was not encoded with the tokenizer's dictionary");
+      MovieRowTokenizer sharingTokenizer =
+          new MovieRowTokenizer(tokenizer.getGenres(), tokenizer.getCountries());
+      sharingTokenizer.tokenize(ByteBuffer.wrap(bytes), 0, bytes.length - 1);
+      assertTrue(sharingTokenizer.toMovie().getCountry() == movie.getCountry(),
+          "Tokenizers sharing dictionaries do not share Strings");
+      // Creating movies does not encode anything, so a new tokenizer starts with no values
+      new Movie("Title", "Western", 2005, "Peru", 80);
+      assertEquals(0, new MovieRowTokenizer().getGenres().size(),
+          "A new tokenizer does not start with an empty genre dictionary");
+      assertEquals(-1, tokenizer.getGenres().codeOf("Western"),
+          "Creating a Movie added its genre to a dictionary");
+    }
+  }
+
+  /**
+   * This tests IntKeyedMultiKeyRBT by inserting the same random movies into it and into an
+   * IterableMultiKeyRBT, and confirming that both trees iterate over the same movies in the same
+   * order, including over ranges of durations and from an iteration start point.
+   */
+  @Test
+  public void testIntKeyedMultiKeyRBT() {
+    java.util.Random random = new java.util.Random(11);
+    IntKeyedMultiKeyRBT<Movie> intKeyedList = new IntKeyedMultiKeyRBT<Movie>(Movie::getDuration);
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    // 1. Inserting returns true only for new durations, and the trees have the same sizes
+    for (int i = 0; i < 3000; i++) {
+      Movie movie = new Movie("Title" + i, "Genre", 2000, "Country", 60 + random.nextInt(400));
+      assertEquals(movieList.insertSingleKey(movie), intKeyedList.insertSingleKey(movie),
+          "insertSingleKey() did not return whether the duration was new");
+    }
+    assertEquals(movieList.numKeys(), intKeyedList.numKeys(), "numKeys() is incorrect");
+    assertEquals(movieList.size(), intKeyedList.size(), "size() is incorrect");
+    // 2. Both trees iterate over the same movies in the same order
+    {
+      Iterator<Movie> expected = movieList.iterator();
+      for (Movie movie : intKeyedList) {
+        assertTrue(expected.next() == movie, "The movies were not iterated over in order");
+      }
+      assertTrue(!expected.hasNext(), "Not every movie was iterated over");
+    }
+    // 3. Ranges of durations, given as ints and as Movie bounds
+    for (int test = 0; test < 50; test++) {
+      int lower = 50 + random.nextInt(420);
+      int upper = lower + random.nextInt(60);
+      Movie lowerMovie = new Movie("", "", 0, "", lower);
+      Movie upperMovie = new Movie("", "", 0, "", upper);
+      Iterator<Movie> expected = movieList.rangeIterator(lowerMovie, upperMovie);
+      Iterator<Movie> intRange = intKeyedList.rangeIterator(lower, upper);
+      Iterator<Movie> movieRange = intKeyedList.rangeIterator(lowerMovie, upperMovie);
+      while (expected.hasNext()) {
+        Movie movie = expected.next();
+        assertTrue(intRange.next() == movie, "rangeIterator(int, int) returned the wrong movie");
+        assertTrue(movieRange.next() == movie, "rangeIterator() returned the wrong movie");
+      }
+      assertTrue(!intRange.hasNext() && !movieRange.hasNext(),
+          "rangeIterator() returned a movie past its upper bound");
+    }
+    // 4. The first and last KeyLists, lookups, and iteration start points
+    {
+      assertEquals(0, movieList.firstKeyList().compareTo(intKeyedList.firstKeyList()),
+          "firstKeyList() did not return the shortest movies");
+      assertEquals(0, movieList.lastKeyList().compareTo(intKeyedList.lastKeyList()),
+          "lastKeyList() did not return the longest movies");
+      Movie shortest = movieList.firstKeyList().iterator().next();
+      assertEquals(movieList.firstKeyList().size(),
+          intKeyedList.valueCount(shortest.getDuration()), "valueCount() is incorrect");
+      assertTrue(intKeyedList.containsKey(shortest.getDuration()) && !intKeyedList.containsKey(1),
+          "containsKey() is incorrect");
+      assertTrue(intKeyedList.contains(new KeyList<Movie>(shortest))
+          && !intKeyedList.contains(new KeyList<Movie>(new Movie("", "", 0, "", 1))),
+          "contains() is incorrect for a KeyList");
+      // A Comparable that is not a KeyList is compared to the values of each node
+      Comparable<KeyListInterface<Movie>> shortestDuration =
+          keyList -> Integer.compare(shortest.getDuration(), keyList.get(0).getDuration());
+      Comparable<KeyListInterface<Movie>> noDuration =
+          keyList -> Integer.compare(1, keyList.get(0).getDuration());
+      assertTrue(intKeyedList.contains(shortestDuration) && !intKeyedList.contains(noDuration),
+          "contains() is incorrect for a Comparable");
+
+      Movie startPoint = new Movie("", "", 0, "", 300);
+      movieList.setIterationStartPoint(startPoint);
+      intKeyedList.setIterationStartPoint(startPoint);
+      Iterator<Movie> expected = movieList.iterator();
+      for (Movie movie : intKeyedList) {
+        assertTrue(expected.next() == movie, "The start point was not used by iterator()");
+      }
+      intKeyedList.setIterationStartPoint(null);
+      Iterator<Movie> fromStart = intKeyedList.iteratorFrom(startPoint);
+      expected = movieList.iterator();
+      while (expected.hasNext()) {
+        assertTrue(fromStart.next() == expected.next(), "iteratorFrom() did not start at start");
+      }
+      assertTrue(!fromStart.hasNext(), "iteratorFrom() returned too many movies");
+      boolean thrown = false;
+      try {
+        fromStart.next();
+      } catch (java.util.NoSuchElementException e) {
+        thrown = true;
+      }
+      assertTrue(thrown, "next() did not throw a NoSuchElementException after the last movie");
+      intKeyedList.clear();
+      assertTrue(intKeyedList.isEmpty() && !intKeyedList.iterator().hasNext(),
+          "clear() did not remove every movie");
+    }
+  }
+
+  /**
+   * This tests IntrusiveMovieTree by inserting the same random movies into it and into an
+   * IterableMultiKeyRBT, and confirming that both trees iterate over the same movies in the same
+   * order, and that a backend reading into an IntrusiveMovieTree answers the same queries.
+   * 
+   * @throws IOException if the temporary test file cannot be written
+   */
+  @Test
+  public void testIntrusiveMovieTree() throws IOException {
+    java.util.Random random = new java.util.Random(15);
+    IntrusiveMovieTree movieTree = new IntrusiveMovieTree();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    // 1. Inserting returns true only for new durations, and the trees have the same sizes
+    for (int i = 0; i < 3000; i++) {
+      Movie movie = new Movie("Title" + i, "Genre", 2000, "Country", 60 + random.nextInt(400));
+      assertEquals(movieList.insertSingleKey(movie), movieTree.insertSingleKey(movie),
+          "insertSingleKey() did not return whether the duration was new");
+    }
+    assertEquals(movieList.numKeys(), movieTree.numKeys(), "numKeys() is incorrect");
+    assertEquals(movieList.size(), movieTree.size(), "size() is incorrect");
+    // 2. Both trees iterate over the same movies in the same order, including over ranges
+    {
+      Iterator<Movie> expected = movieList.iterator();
+      for (Movie movie : movieTree) {
+        assertTrue(expected.next() == movie, "The movies were not iterated over in order");
+      }
+      assertTrue(!expected.hasNext(), "Not every movie was iterated over");
+      for (int test = 0; test < 50; test++) {
+        int lower = 50 + random.nextInt(420);
+        Movie lowerMovie = new Movie("", "", 0, "", lower);
+        Movie upperMovie = new Movie("", "", 0, "", lower + random.nextInt(60));
+        expected = movieList.rangeIterator(lowerMovie, upperMovie);
+        Iterator<Movie> actual = movieTree.rangeIterator(lowerMovie, upperMovie);
+        while (expected.hasNext()) {
+          assertTrue(actual.next() == expected.next(), "rangeIterator() returned the wrong movie");
+        }
+        assertTrue(!actual.hasNext(), "rangeIterator() returned a movie past its upper bound");
+        expected = movieList.iteratorFrom(lowerMovie);
+        actual = movieTree.iteratorFrom(lowerMovie);
+        while (expected.hasNext()) {
+          assertTrue(actual.next() == expected.next(), "iteratorFrom() returned the wrong movie");
+        }
+        assertTrue(!actual.hasNext(), "iteratorFrom() returned too many movies");
+      }
+    }
+    // 3. The first and last KeyLists hold the same movies, and inserting a movie twice fails
+    {
+      KeyListInterface<Movie> expected = movieList.lastKeyList();
+      KeyListInterface<Movie> actual = movieTree.lastKeyList();
+      assertEquals(expected.size(), actual.size(), "lastKeyList() is the wrong size");
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue(expected.get(i) == actual.get(i), "lastKeyList() holds the wrong movies");
+      }
+      KeyListSnapshot<Movie> snapshot = KeyListSnapshot.of(actual);
+      assertEquals(expected.size(), snapshot.size(), "A snapshot of lastKeyList() is the wrong size");
+      for (int i = 0; i < expected.size(); i++) {
+        assertTrue(expected.get(i) == snapshot.get(i),
+            "A snapshot of lastKeyList() holds the wrong movies");
+      }
+      assertEquals(0, movieList.firstKeyList().compareTo(movieTree.firstKeyList()),
+          "firstKeyList() did not return the shortest movies");
+      assertEquals(movieList.firstKeyList().size(), movieTree.firstKeyList().size(),
+          "firstKeyList() is the wrong size");
+      assertTrue(movieTree.contains(new KeyList<Movie>(expected.get(0))),
+          "contains() is incorrect");
+      boolean thrown = false;
+      try {
+        movieTree.insertSingleKey(expected.get(0));
+      } catch (IllegalArgumentException e) {
+        thrown = true;
+      }
+      assertTrue(thrown, "Inserting a movie that is already in the tree did not throw");
+    }
+    // 4. clear() unlinks the movies, so they can be inserted into another tree
+    {
+      movieTree.clear();
+      assertTrue(movieTree.isEmpty() && !movieTree.iterator().hasNext(),
+          "clear() did not remove every movie");
+      IntrusiveMovieTree reinserted = new IntrusiveMovieTree();
+      for (Movie movie : movieList) {
+        reinserted.insertSingleKey(movie);
+      }
+      Iterator<Movie> expected = movieList.iterator();
+      for (Movie movie : reinserted) {
+        assertTrue(expected.next() == movie, "The cleared movies were not inserted again");
+      }
+      assertEquals(movieList.lastKeyList().size(), reinserted.lastKeyList().size(),
+          "The cleared movies were not counted again");
+    }
+    // 5. A backend that reads into an IntrusiveMovieTree returns the same lists as an RBT
+    File movieFile = File.createTempFile("intrusiveMovies", ".csv");
+    movieFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < 500; i++) {
+        writer.print(i + ",Title" + i + ",2000,Drama," + (70 + (i * 37) % 61) + ",Italy,d,a\n");
+      }
+    }
+    for (ReadMode mode : EnumSet.range(ReadMode.SCANNER, ReadMode.PARALLEL)) {
+      IterableMultiKeyRBT<Movie> treeList = new IterableMultiKeyRBT<Movie>();
+      BackendDeveloperIndividual<Movie> tree = new BackendDeveloperIndividual<Movie>(treeList);
+      tree.readFile(movieFile.getPath(), mode);
+      IntrusiveMovieTree intrusiveTree = new IntrusiveMovieTree();
+      BackendDeveloperIndividual<Movie> intrusive =
+          new BackendDeveloperIndividual<Movie>(intrusiveTree);
+      intrusive.readFile(movieFile.getPath(), mode);
+      assertTrue(intrusive.getMovieTree() == intrusiveTree,
+          "getMovieTree() did not return the IntrusiveMovieTree");
+      assertEquals(treeList.numKeys(), intrusiveTree.numKeys(), "Not every movie was read");
+      assertEquals(tree.getMinDurationList(treeList), intrusive.getMinDurationList(intrusiveTree),
+          "getMinDurationList() is incorrect for an IntrusiveMovieTree");
+      assertEquals(tree.getMaxDurationList(treeList), intrusive.getMaxDurationList(intrusiveTree),
+          "getMaxDurationList() is incorrect for an IntrusiveMovieTree");
+      assertEquals(tree.getThresholdDurationList(treeList, 80, 95),
+          intrusive.getThresholdDurationList(intrusiveTree, 80, 95),
+          "getThresholdDurationList() is incorrect for an IntrusiveMovieTree");
+      // A backend that did not read the movies answers from the tree instead of its index
+      assertEquals(tree.getThresholdDurationList(treeList, 0, 1000),
+          tree.getThresholdDurationList(intrusiveTree, 0, 1000),
+          "getThresholdDurationList() is incorrect for an IntrusiveMovieTree");
+    }
+  }
+
+  /**
+   * This tests MovieTable by adding the same random movies to it and to an IterableMultiKeyRBT,
+   * and confirming that its columns, duration ranges and cursors match the tree. It also confirms
+   * that a backend reading a file in ReadMode.TABLE returns the same lists as one reading into a
+   * RBT.
+   * 
+   * @throws IOException if the temporary test file cannot be written
+   */
+  @Test
+  public void testMovieTable() throws IOException {
+    java.util.Random random = new java.util.Random(16);
+    MovieTable table = new MovieTable();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    String[] genres = {"Drama", "Comedy", "Horror"};
+    // 1. Every row can be read back from the columns, and as a Movie
+    for (int i = 0; i < 3000; i++) {
+      Movie movie = new Movie("Title \u00e9" + i, genres[i % 3], 1900 + i % 100,
+          "Country" + random.nextInt(5), 60 + random.nextInt(400));
+      int row = table.addRow(movie.getTitle(), movie.getGenre(), movie.getYear(),
+          movie.getCountry(), movie.getDuration());
+      assertEquals(i, row, "addRow() did not return the next row id");
+      movieList.insertSingleKey(movie);
+      Movie rowMovie = table.getMovie(row);
+      assertTrue(rowMovie.getTitle().equals(movie.getTitle())
+          && rowMovie.getGenre().equals(movie.getGenre()) && rowMovie.getYear() == movie.getYear()
+          && rowMovie.getCountry().equals(movie.getCountry())
+          && rowMovie.getDuration() == movie.getDuration(), "getMovie() returned the wrong row");
+      assertEquals(table.getCountries().codeOf(movie.getCountry()), table.getCountryCode(row),
+          "getCountryCode() does not match the table's country dictionary");
+    }
+    assertEquals(3000, table.rowCount(), "rowCount() is incorrect");
+    assertEquals(table.getGenres().codeOf("Comedy"), table.getGenreCode(1),
+        "getGenreCode() is incorrect");
+    assertEquals(3, table.getGenres().size(), "The table's genre dictionary is incorrect");
+    assertEquals(0, new MovieTable().getGenres().size(), "Tables share their genre dictionary");
+    // 2. Cursors over ranges of durations return the same movies, in the same order, as the tree
+    for (int test = 0; test < 50; test++) {
+      int lower = 50 + random.nextInt(420);
+      int upper = lower + random.nextInt(60);
+      Iterator<Movie> expected = movieList.rangeIterator(new Movie("", "", 0, "", lower),
+          new Movie("", "", 0, "", upper));
+      MovieTable.RowCursor cursor = table.rangeCursor(lower, upper, MovieTable.Column.TITLE,
+          MovieTable.Column.DURATION);
+      int count = 0;
+      while (cursor.next()) {
+        Movie movie = expected.next();
+        assertTrue(cursor.getTitle().equals(movie.getTitle())
+            && cursor.getDuration() == movie.getDuration(), "The cursor returned the wrong row");
+        count++;
+      }
+      assertTrue(!expected.hasNext(), "The cursor did not return every row in the range");
+      assertEquals(count, table.countInRange(lower, upper), "countInRange() is incorrect");
+    }
+    assertEquals(movieList.firstKeyList().get(0).getDuration(), table.minDuration(),
+        "minDuration() is incorrect");
+    assertEquals(movieList.lastKeyList().get(0).getDuration(), table.maxDuration(),
+        "maxDuration() is incorrect");
+    // 3. Columns that were not requested cannot be read from a cursor
+    {
+      MovieTable.RowCursor cursor = table.rangeCursor(0, 1000, MovieTable.Column.DURATION);
+      cursor.next();
+      boolean thrown = false;
+      try {
+        cursor.getTitle();
+      } catch (IllegalStateException e) {
+        thrown = true;
+      }
+      assertTrue(thrown, "A column that was not requested was read from the cursor");
+    }
+    // 4. A backend that read a file into a MovieTable returns the same lists as a RBT
+    File movieFile = File.createTempFile("tableMovies", ".csv");
+    movieFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < 500; i++) {
+        writer.print(i + ",\"Title, " + i + "\",2000,Drama," + (70 + (i * 37) % 61)
+            + ",Italy,d,a\n");
+      }
+    }
+    IterableMultiKeyRBT<Movie> treeList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> tree = new BackendDeveloperIndividual<Movie>(treeList);
+    tree.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    IterableMultiKeyRBT<Movie> emptyList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> tableBackend =
+        new BackendDeveloperIndividual<Movie>(emptyList);
+    tableBackend.readFile(movieFile.getPath(), ReadMode.TABLE);
+    assertEquals(500, tableBackend.getMovieTable().rowCount(), "Not every row was read");
+    assertEquals(0, emptyList.numKeys(), "ReadMode.TABLE added movies to the RBT");
+    assertEquals(tree.getMinDurationList(treeList), tableBackend.getMinDurationList(emptyList),
+        "getMinDurationList() is incorrect for a MovieTable");
+    assertEquals(tree.getMaxDurationList(treeList), tableBackend.getMaxDurationList(emptyList),
+        "getMaxDurationList() is incorrect for a MovieTable");
+    assertEquals(tree.getThresholdDurationList(treeList, 80, 95),
+        tableBackend.getThresholdDurationList(emptyList, 80, 95),
+        "getThresholdDurationList() is incorrect for a MovieTable");
+    // 5. Reading another file in another mode after ReadMode.TABLE (or reading a file in
+    // ReadMode.TABLE after another mode) keeps the movies of both files
+    File otherFile = File.createTempFile("otherTableMovies", ".csv");
+    otherFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(otherFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < 300; i++) {
+        writer.print(i + ",Other " + i + ",2001,Comedy," + (40 + (i * 13) % 101) + ",Spain,d,a\n");
+      }
+    }
+    tree.readFile(otherFile.getPath(), ReadMode.MAPPED);
+    tableBackend.readFile(otherFile.getPath(), ReadMode.SCANNER);
+    assertEquals(null, tableBackend.getMovieTable(), "The table was kept after a SCANNER read");
+    assertEquals(800, emptyList.numKeys(), "The table's movies were not moved into the RBT");
+    IterableMultiKeyRBT<Movie> otherList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> otherBackend =
+        new BackendDeveloperIndividual<Movie>(otherList);
+    otherBackend.readFile(movieFile.getPath(), ReadMode.PARALLEL);
+    otherBackend.readFile(otherFile.getPath(), ReadMode.TABLE);
+    assertEquals(null, otherBackend.getMovieTable(), "A table was used for a non-empty RBT");
+    assertEquals(800, otherList.numKeys(), "A TABLE read after a PARALLEL read lost movies");
+    for (BackendDeveloperIndividual<Movie> backend : Arrays.asList(tableBackend, otherBackend)) {
+      IterableMultiKeyRBT<Movie> backendList = (backend == tableBackend) ? emptyList : otherList;
+      assertEquals(tree.getMinDurationList(treeList), backend.getMinDurationList(backendList),
+          "getMinDurationList() is incorrect after mixing ReadMode.TABLE with another mode");
+      assertEquals(tree.getMaxDurationList(treeList), backend.getMaxDurationList(backendList),
+          "getMaxDurationList() is incorrect after mixing ReadMode.TABLE with another mode");
+      assertEquals(tree.getThresholdDurationList(treeList, 60, 95),
+          backend.getThresholdDurationList(backendList, 60, 95),
+          "getThresholdDurationList() is incorrect after mixing ReadMode.TABLE with another mode");
+    }
+    // 6. Inserting a movie into the tree directly after ReadMode.TABLE moves the table's movies
+    // into the tree, so no query loses them
+    try (PrintWriter writer = new PrintWriter(otherFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      writer.print("1,Table A,2000,Drama,90,Italy,d,a\n");
+      writer.print("2,Table B,2000,Drama,110,Italy,d,a\n");
+    }
+    IterableMultiKeyRBT<Movie> directList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> directBackend =
+        new BackendDeveloperIndividual<Movie>(directList);
+    directBackend.readFile(otherFile.getPath(), ReadMode.TABLE);
+    directList.insertSingleKey(new Movie("Direct", "Drama", 2000, "Italy", 100));
+    assertEquals(Arrays.asList("Table A", "Direct", "Table B"),
+        directBackend.getThresholdDurationList(directList, 0, 1000),
+        "The table's movies were lost after inserting into the tree directly");
+    assertEquals(null, directBackend.getMovieTable(), "The table was kept after a direct insert");
+    assertEquals(3, directList.numKeys(), "The table's movies were not moved into the RBT");
+    assertEquals(Arrays.asList("Table A"), directBackend.getMinDurationList(directList),
+        "getMinDurationList() is incorrect after inserting into the tree directly");
+    directBackend.readFile(otherFile.getPath(), ReadMode.TABLE);
+    assertEquals(5, directList.numKeys(), "A TABLE read after a direct insert lost movies");
+  }
+
+  /**
+   * This tests LazyMovieCatalog by reading a file in ReadMode.LAZY, and confirming that the movies,
+   * directors and actors decoded from the file match the file, that at most the cache capacity of
+   * rows are kept in memory, and that the backend returns the same lists as one reading into a RBT.
+   * 
+   * @throws IOException if the temporary test file cannot be written or read
+   */
+  @Test
+  public void testLazyMovieCatalog() throws IOException {
+    File movieFile = File.createTempFile("lazyMovies", ".csv");
+    movieFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\r\n");
+      for (int i = 0; i < 500; i++) {
+        writer.print(i + ",\"Title, \"\"" + i + "\"\"\"," + (1950 + i % 70) + ",Drama,"
+            + (70 + (i * 37) % 61) + ",Italy,Director " + (i % 9) + ",\"Actor, " + i + "\"\r\n");
+      }
+    }
+    ArrayList<Movie> movies = new ArrayList<Movie>();
+    new MappedMovieFileReader().read(movieFile.getPath(), movies::add);
+    // 1. Every row is decoded from the file with all of its fields
+    IterableMultiKeyRBT<Movie> emptyList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> lazy = new BackendDeveloperIndividual<Movie>(emptyList);
+    lazy.readFile(movieFile.getPath(), ReadMode.LAZY);
+    LazyMovieCatalog catalog = lazy.getMovieCatalog();
+    assertEquals(500, catalog.rowCount(), "Not every row was read");
+    assertEquals(0, emptyList.numKeys(), "ReadMode.LAZY added movies to the RBT");
+    assertEquals(0, catalog.cacheMisses(), "Rows were decoded while the file was read");
+    for (int row = 0; row < 500; row += 7) {
+      Movie expected = movies.get(row);
+      Movie actual = catalog.getMovie(row);
+      assertTrue(expected.getTitle().equals(actual.getTitle())
+          && expected.getGenre().equals(actual.getGenre())
+          && expected.getYear() == actual.getYear()
+          && expected.getCountry().equals(actual.getCountry())
+          && expected.getDuration() == actual.getDuration(), "Row was not decoded correctly");
+      assertEquals("Director " + (row % 9), catalog.getDirector(row),
+          "Director was not decoded correctly");
+      assertEquals("Actor, " + row, catalog.getActor(row), "Actor was not decoded correctly");
+    }
+    // 2. The cache keeps at most its capacity of rows, and evicts the least recently used row
+    try (LazyMovieCatalog smallCatalog = new LazyMovieCatalog(movieFile.getPath(), 10)) {
+      MappedMovieFileReader reader = new MappedMovieFileReader();
+      reader.readRows(movieFile.getPath(), row -> smallCatalog.addRow(reader.currentRowOffset(),
+          reader.currentRowLength(), row.toDuration()));
+      for (int row = 0; row < 20; row++) {
+        smallCatalog.getMovie(row);
+      }
+      assertEquals(10, smallCatalog.cachedRowCount(), "The cache grew past its capacity");
+      assertEquals(20, smallCatalog.cacheMisses(), "Rows were not decoded from the file");
+      smallCatalog.getActor(19);
+      assertEquals(20, smallCatalog.cacheMisses(), "A cached row was decoded again");
+      smallCatalog.getMovie(0);
+      assertEquals(21, smallCatalog.cacheMisses(), "An evicted row was not decoded again");
+    }
+    // 3. The backend returns the same lists as a backend that read the file into a RBT
+    IterableMultiKeyRBT<Movie> treeList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> tree = new BackendDeveloperIndividual<Movie>(treeList);
+    tree.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    assertEquals(tree.getMinDurationList(treeList), lazy.getMinDurationList(emptyList),
+        "getMinDurationList() is incorrect for a LazyMovieCatalog");
+    assertEquals(tree.getMaxDurationList(treeList), lazy.getMaxDurationList(emptyList),
+        "getMaxDurationList() is incorrect for a LazyMovieCatalog");
+    assertEquals(tree.getThresholdDurationList(treeList, 80, 95),
+        lazy.getThresholdDurationList(emptyList, 80, 95),
+        "getThresholdDurationList() is incorrect for a LazyMovieCatalog");
+    // 4. Reading another file in another mode after ReadMode.LAZY (or reading a file in
+    // ReadMode.LAZY after another mode) keeps the movies of both files
+    File otherFile = File.createTempFile("otherLazyMovies", ".csv");
+    otherFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(otherFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < 300; i++) {
+        writer.print(i + ",Other " + i + ",2001,Comedy," + (40 + (i * 13) % 101) + ",Spain,d,a\n");
+      }
+    }
+    tree.readFile(otherFile.getPath(), ReadMode.MAPPED);
+    lazy.readFile(otherFile.getPath(), ReadMode.PIPELINED);
+    assertEquals(null, lazy.getMovieCatalog(), "The catalog was kept after a PIPELINED read");
+    assertEquals(800, emptyList.numKeys(), "The catalog's movies were not moved into the RBT");
+    IterableMultiKeyRBT<Movie> otherList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> otherBackend =
+        new BackendDeveloperIndividual<Movie>(otherList);
+    otherBackend.readFile(movieFile.getPath(), ReadMode.SCANNER);
+    otherBackend.readFile(otherFile.getPath(), ReadMode.LAZY);
+    assertEquals(null, otherBackend.getMovieCatalog(), "A catalog was used for a non-empty RBT");
+    assertEquals(800, otherList.numKeys(), "A LAZY read after a SCANNER read lost movies");
+    for (BackendDeveloperIndividual<Movie> backend : Arrays.asList(lazy, otherBackend)) {
+      IterableMultiKeyRBT<Movie> backendList = (backend == lazy) ? emptyList : otherList;
+      assertEquals(tree.getMinDurationList(treeList), backend.getMinDurationList(backendList),
+          "getMinDurationList() is incorrect after mixing ReadMode.LAZY with another mode");
+      assertEquals(tree.getMaxDurationList(treeList), backend.getMaxDurationList(backendList),
+          "getMaxDurationList() is incorrect after mixing ReadMode.LAZY with another mode");
+      assertEquals(tree.getThresholdDurationList(treeList, 60, 95),
+          backend.getThresholdDurationList(backendList, 60, 95),
+          "getThresholdDurationList() is incorrect after mixing ReadMode.LAZY with another mode");
+    }
+    catalog.close();
+    // 5. getMovies() decodes the same movies as getMovie(), in the order asked for, and reads
+    // nearby rows in one span even when they do not fit in the cache
+    try (LazyMovieCatalog spanCatalog = new LazyMovieCatalog(movieFile.getPath(), 10)) {
+      MappedMovieFileReader reader = new MappedMovieFileReader();
+      reader.readRows(movieFile.getPath(), row -> spanCatalog.addRow(reader.currentRowOffset(),
+          reader.currentRowLength(), row.toDuration()));
+      int[] rows = {20, 3, 12, 3, 0, 19, 7};
+      Movie[] decoded = spanCatalog.getMovies(rows);
+      assertEquals(1, spanCatalog.spanReads(), "Nearby rows were not read in one span");
+      for (int i = 0; i < rows.length; i++) {
+        assertEquals(movies.get(rows[i]).getTitle(), decoded[i].getTitle(),
+            "getMovies() returned the wrong movie for row " + rows[i]);
+      }
+      decoded = spanCatalog.getMovies(new int[] {499, 250, 498});
+      assertEquals(3, spanCatalog.spanReads(), "Distant rows were not read in separate spans");
+      assertEquals(movies.get(250).getTitle(), decoded[1].getTitle(),
+          "getMovies() returned the wrong movie for a distant row");
+      Movie[] inRange = spanCatalog.getMoviesInRange(0, 1000);
+      assertEquals(500, inRange.length, "getMoviesInRange() missed movies");
+      assertEquals(4, spanCatalog.spanReads(), "Uncached rows were not read in one span");
+      assertEquals(10, spanCatalog.cachedRowCount(), "The cache grew past its capacity");
+      int position = 0;
+      for (int duration = 70; duration <= 130; duration++) {
+        for (int row = 0; row < 500; row++) {
+          if (movies.get(row).getDuration() == duration) {
+            assertEquals(movies.get(row).getTitle(), inRange[position++].getTitle(),
+                "getMoviesInRange() returned the movies out of order");
+          }
+        }
+      }
+    }
+    // 6. Inserting a movie into the tree directly after ReadMode.LAZY moves the catalog's movies
+    // into the tree, and close() closes the file of a catalog that is still in use
+    IterableMultiKeyRBT<Movie> directList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> directBackend =
+        new BackendDeveloperIndividual<Movie>(directList);
+    directBackend.readFile(movieFile.getPath(), ReadMode.LAZY);
+    directList.insertSingleKey(new Movie("Direct", "Drama", 2000, "Italy", 1));
+    assertEquals("Direct", directBackend.getMinDurationList(directList).get(0),
+        "The directly inserted movie was not found");
+    assertEquals(null, directBackend.getMovieCatalog(),
+        "The catalog was kept after a direct insert");
+    assertEquals(501, directList.numKeys(), "The catalog's movies were not moved into the RBT");
+    IterableMultiKeyRBT<Movie> mappedList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> mappedBackend =
+        new BackendDeveloperIndividual<Movie>(mappedList);
+    mappedBackend.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    mappedList.insertSingleKey(new Movie("Direct", "Drama", 2000, "Italy", 1));
+    assertEquals(mappedBackend.getThresholdDurationList(mappedList, 0, 1000),
+        directBackend.getThresholdDurationList(directList, 0, 1000),
+        "getThresholdDurationList() is incorrect after inserting into the tree directly");
+    BackendDeveloperIndividual<Movie> closedBackend =
+        new BackendDeveloperIndividual<Movie>(new IterableMultiKeyRBT<Movie>());
+    closedBackend.readFile(movieFile.getPath(), ReadMode.LAZY);
+    LazyMovieCatalog closedCatalog = closedBackend.getMovieCatalog();
+    closedBackend.close();
+    assertEquals(null, closedBackend.getMovieCatalog(), "close() kept the catalog");
+    boolean thrown = false;
+    try {
+      closedCatalog.getMovie(1);
+    } catch (java.io.UncheckedIOException e) {
+      thrown = true;
+    }
+    assertTrue(thrown, "close() did not close the catalog's file");
+  }
+
+  /**
+   * This tests MovieColumnMap by confirming that the columns of a file are found from its header,
+   * that a file with reordered and extra columns is read into the same movies as one in the filmtv
+   * layout in every ReadMode, and that a projection only reads (and only scans up to) the fields
+   * it names.
+   *
+   * @throws IOException if the temporary test files cannot be written or read
+   */
+  @Test
+  public void testMovieColumnMap() throws IOException {
+    // 1. Columns are found by name, and a header without any field names uses the filmtv layout
+    {
+      MovieColumnMap columns =
+          MovieColumnMap.fromHeader("\uFEFFDuration,notes,Title,GENRE,country,year,directors\r");
+      assertEquals(0, columns.columnOf(MovieField.DURATION), "Duration column was not found");
+      assertEquals(2, columns.columnOf(MovieField.TITLE), "Title column was not found");
+      assertEquals(3, columns.columnOf(MovieField.GENRE), "Genre column was not found");
+      assertEquals(6, columns.columnOf(MovieField.DIRECTOR), "Director column was not found");
+      assertEquals(-1, columns.columnOf(MovieField.ACTOR), "A missing column was found");
+      assertEquals(6, columns.projectedWidth(), "Movie fields should end at the year column");
+      assertTrue(MovieColumnMap.fromHeader("a,b,c") == MovieColumnMap.FILMTV,
+          "A header without field names did not use the filmtv layout");
+    }
+    // 2. Every ReadMode reads a file with reordered and extra columns into the same movies
+    File filmtvFile = File.createTempFile("filmtvMovies", ".csv");
+    File reorderedFile = File.createTempFile("reorderedMovies", ".csv");
+    filmtvFile.deleteOnExit();
+    reorderedFile.deleteOnExit();
+    try (PrintWriter filmtv = new PrintWriter(filmtvFile);
+        PrintWriter reordered = new PrintWriter(reorderedFile)) {
+      filmtv.print("id,title,year,genre,duration,country,director,actor\n");
+      reordered.print("duration,id,\"genre\",year,country,actors,title,description\n");
+      for (int i = 0; i < 300; i++) {
+        String title = "\"Title, " + i + "\"";
+        int year = 1950 + i % 70;
+        String genre = (i % 3 == 0) ? "Drama" : "Comedy";
+        int duration = 70 + (i * 37) % 61;
+        filmtv.print(i + "," + title + "," + year + "," + genre + "," + duration + ",Italy,"
+            + "Director " + i + ",Actor " + i + "\n");
+        reordered.print(duration + "," + i + "," + genre + "," + year + ",Italy,Actor " + i + ","
+            + title + ",\"A long description, with \"\"quotes\"\", commas, and more text\"\n");
+      }
+    }
+    for (ReadMode mode : ReadMode.values()) {
+      IterableMultiKeyRBT<Movie> filmtvList = new IterableMultiKeyRBT<Movie>();
+      BackendDeveloperIndividual<Movie> filmtvBackend =
+          new BackendDeveloperIndividual<Movie>(filmtvList);
+      filmtvBackend.readFile(filmtvFile.getPath(), mode);
+      IterableMultiKeyRBT<Movie> reorderedList = new IterableMultiKeyRBT<Movie>();
+      BackendDeveloperIndividual<Movie> reorderedBackend =
+          new BackendDeveloperIndividual<Movie>(reorderedList);
+      reorderedBackend.readFile(reorderedFile.getPath(), mode);
+      assertEquals(filmtvBackend.getThresholdDurationList(filmtvList, 0, 200),
+          reorderedBackend.getThresholdDurationList(reorderedList, 0, 200),
+          "The reordered file was not read correctly in " + mode);
+      assertEquals(filmtvList.size(), reorderedList.size(), "Movies were missing in " + mode);
+      if (mode == ReadMode.LAZY) {
+        LazyMovieCatalog catalog = reorderedBackend.getMovieCatalog();
+        Movie movie = catalog.getMovie(5);
+        assertEquals("Title, 5", movie.getTitle(), "Lazy title was not read from its column");
+        assertEquals("Comedy", movie.getGenre(), "Lazy genre was not read from its column");
+        assertEquals("Actor 5", catalog.getActor(5), "Lazy actor was not read from its column");
+        assertEquals("", catalog.getDirector(5), "A missing director column was not left empty");
+        catalog.close();
+        filmtvBackend.getMovieCatalog().close();
+      }
+    }
+    // 3. A projection only reads the fields it names, and only scans up to the last of them
+    {
+      MovieRowTokenizer tokenizer = new MovieRowTokenizer();
+      tokenizer.setColumns(MovieColumnMap.FILMTV.project(EnumSet.of(MovieField.DURATION)));
+      assertEquals(5, tokenizer.tokenize("1,Title,2000,Drama,95,Italy,director,actor"),
+          "Tokenizer did not stop after the duration column");
+      Movie movie = tokenizer.toMovie();
+      assertEquals(95, movie.getDuration(), "Projected duration was not read");
+      assertEquals("", movie.getTitle(), "A title that was not projected was read");
+      assertEquals(0, movie.getYear(), "A year that was not projected was read");
+
+      ArrayList<Movie> movies = new ArrayList<Movie>();
+      new MappedMovieFileReader(EnumSet.of(MovieField.TITLE, MovieField.DURATION))
+          .read(reorderedFile.getPath(), movies::add);
+      assertEquals(300, movies.size(), "Not every row was read with a projection");
+      assertEquals("Title, 7", movies.get(7).getTitle(), "Projected title was not read");
+      assertEquals(70 + (7 * 37) % 61, movies.get(7).getDuration(),
+          "Projected duration was not read");
+      assertEquals("", movies.get(7).getGenre(), "A genre that was not projected was read");
+    }
+  }
+
+  /**
+   * This tests PipelinedMovieReader by reading a stream that only returns a few bytes at a time
+   * through small blocks (so quoted rows are cut between blocks), and confirming that the same
+   * movies as the mapped file reader are read, that every stage's counters add up, and that a
+   * stream that fails or a row that cannot be parsed ends the read with an exception.
+   *
+   * @throws IOException if the temporary test file cannot be written or read
+   */
+  @Test
+  public void testPipelinedMovieReader() throws IOException {
+    File movieFile = File.createTempFile("pipelinedMovies", ".csv");
+    movieFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\r\n");
+      for (int i = 0; i < 3000; i++) {
+        writer.print(i + ",\"Title,\n\"\"" + i + "\"\"\"," + (1950 + i % 70) + ",Drama,"
+            + (70 + (i * 37) % 61) + ",Italy,Director,Actor\r\n");
+      }
+      // The last row does not end in a line break
+      writer.print("3000,Last,2000,Comedy,90,France,Director,Actor");
+    }
+    byte[] fileBytes = Files.readAllBytes(movieFile.toPath());
+    ArrayList<Movie> expected = new ArrayList<Movie>();
+    new MappedMovieFileReader().read(movieFile.getPath(), expected::add);
+    // 1. A stream that returns 7 bytes at a time, read through 64 byte blocks
+    PipelinedMovieReader reader = new PipelinedMovieReader(MovieField.MOVIE_FIELDS, 64);
+    ArrayList<Movie> movies = new ArrayList<Movie>();
+    int[] position = {0};
+    int movieCount = reader.read(new java.nio.channels.ReadableByteChannel() {
+      public int read(ByteBuffer destination) {
+        if (position[0] == fileBytes.length) {
+          return -1;
+        }
+        int length = Math.min(7, Math.min(destination.remaining(), fileBytes.length - position[0]));
+        destination.put(fileBytes, position[0], length);
+        position[0] += length;
+        return length;
+      }
+
+      public boolean isOpen() {
+        return true;
+      }
+
+      public void close() {}
+    }, movies::add);
+    assertEquals(3001, movieCount, "Not every movie was read from the stream");
+    assertEquals(expected.size(), movies.size(), "Incorrect number of movies passed to the sink");
+    for (int i = 0; i < movies.size(); i++) {
+      Movie movie = movies.get(i);
+      assertTrue(expected.get(i).getTitle().equals(movie.getTitle())
+          && expected.get(i).getDuration() == movie.getDuration()
+          && expected.get(i).getCountry().equals(movie.getCountry()),
+          "Movie " + i + " was not read correctly");
+    }
+    // 2. Every stage's counters add up
+    assertEquals(fileBytes.length, reader.getReadStage().getItemCount(),
+        "The read stage did not count every byte");
+    assertEquals(3001, reader.getParseStage().getItemCount(), "The parse stage miscounted rows");
+    assertEquals(3001, reader.getInsertStage().getItemCount(), "The insert stage miscounted");
+    assertEquals((3001 + PipelinedMovieReader.BATCH_SIZE - 1) / PipelinedMovieReader.BATCH_SIZE,
+        reader.getInsertStage().getBatchCount(), "Movies were not inserted in batches");
+    assertTrue(reader.getParseStage().getMaxQueueDepth()
+        <= reader.getParseStage().getQueueCapacity(), "A queue grew past its capacity");
+    assertEquals(0, reader.getInsertStage().getQueueDepth(), "Batches were left in the queue");
+    // 3. The backend reads an InputStream into the same tree as a file read in ReadMode.MAPPED
+    IterableMultiKeyRBT<Movie> streamList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> streamBackend =
+        new BackendDeveloperIndividual<Movie>(streamList);
+    streamBackend.readStream(new java.io.ByteArrayInputStream(fileBytes));
+    IterableMultiKeyRBT<Movie> fileList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> fileBackend = new BackendDeveloperIndividual<Movie>(fileList);
+    fileBackend.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    assertEquals(fileBackend.getThresholdDurationList(fileList, 0, 200),
+        streamBackend.getThresholdDurationList(streamList, 0, 200),
+        "readStream() did not read the same movies as readFile()");
+    assertEquals(3001, streamBackend.getPipelineReader().getInsertStage().getItemCount(),
+        "getPipelineReader() did not return the reader of the stream");
+    // 4. A stream that fails, and a row that cannot be parsed, end the read with an exception
+    try {
+      reader.read(new java.io.InputStream() {
+        private int bytesRead = 0;
+
+        public int read() throws IOException {
+          if (bytesRead == 1000) {
+            throw new IOException("The stream failed");
+          }
+          return fileBytes[bytesRead++];
+        }
+      }, movie -> {});
+      assertTrue(false, "A failed stream did not throw an IOException");
+    } catch (IOException e) {
+      assertEquals("The stream failed", e.getMessage(), "The stream's exception was not thrown");
+    }
+    try {
+      byte[] badRows = "id,title,year,genre,duration\n1,Title,2000,Drama,long\n".getBytes();
+      reader.read(new java.io.ByteArrayInputStream(badRows), movie -> {});
+      assertTrue(false, "A row that cannot be parsed did not throw a NumberFormatException");
+    } catch (NumberFormatException e) {
+      // A duration that is not a number is expected to throw a NumberFormatException
+    }
+    // 5. A last row without a line break is read with every block size, including when it ends
+    // exactly at the end of the bytes the parse stage holds
+    for (int blockSize = 1; blockSize <= 24; blockSize++) {
+      for (int titleLength = 1; titleLength <= 16; titleLength++) {
+        String title = "abcdefghijklmnop".substring(0, titleLength);
+        byte[] rowBytes = ("title,duration\nFirst,90\n" + title + ",1").getBytes();
+        ArrayList<Movie> read = new ArrayList<Movie>();
+        new PipelinedMovieReader(MovieField.MOVIE_FIELDS, blockSize)
+            .read(new java.io.ByteArrayInputStream(rowBytes), read::add);
+        assertEquals(2, read.size(), "Movies were lost with " + blockSize + " byte blocks");
+        assertEquals(title, read.get(1).getTitle(),
+            "The last row was not read with " + blockSize + " byte blocks");
+        assertEquals(1, read.get(1).getDuration(), "The last row's duration was not read");
+      }
+    }
+    // 6. A read that ends early because the sink failed does not close the stream, even while
+    // the read stage is waiting for it
+    StringBuilder rows = new StringBuilder("id,title,year,genre,duration,country,director,actor\n");
+    for (int i = 0; i < 2 * PipelinedMovieReader.BATCH_SIZE; i++) {
+      rows.append(i + ",Title,2000,Drama,90,Italy,Director,Actor\n");
+    }
+    byte[] rowBytes = rows.toString().getBytes();
+    java.util.concurrent.CountDownLatch waiting = new java.util.concurrent.CountDownLatch(1);
+    java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+    boolean[] closed = {false};
+    java.io.InputStream waitingStream = new java.io.InputStream() {
+      private int bytesRead = 0;
+
+      public int read() throws IOException {
+        if (bytesRead == rowBytes.length) {
+          waiting.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for more bytes", e);
+          }
+          return -1;
+        }
+        return rowBytes[bytesRead++];
+      }
+
+      public void close() {
+        closed[0] = true;
+      }
+    };
+    try {
+      new PipelinedMovieReader(MovieField.MOVIE_FIELDS, 64).read(waitingStream, movie -> {
+        try {
+          // Fail once the read stage is waiting for the stream
+          waiting.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        throw new IllegalStateException("The sink failed");
+      });
+      assertTrue(false, "A failed sink did not end the read");
+    } catch (IllegalStateException e) {
+      assertEquals("The sink failed", e.getMessage(), "The sink's exception was not thrown");
+    }
+    assertTrue(!closed[0], "The stream was closed when the read ended early");
+    release.countDown();
+  }
+
+  /**
+   * This tests StampedMultiKeyRBT by confirming that it answers the same queries as an
+   * IterableMultiKeyRBT holding the same movies, that its iterators are snapshots that later
+   * inserts do not change, and that threads querying it while another thread inserts movies only
+   * ever see consistent, sorted snapshots.
+   */
+  @Test
+  public void testStampedMultiKeyRBT() {
+    java.util.Random random = new java.util.Random(23);
+    StampedMultiKeyRBT<Movie> stampedTree = new StampedMultiKeyRBT<Movie>();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    ArrayList<Movie> loaded = new ArrayList<Movie>();
+    for (int i = 0; i < 2000; i++) {
+      loaded.add(new Movie("Title" + i, "Genre", 2000, "Country", 60 + random.nextInt(120)));
+    }
+    stampedTree.bulkLoad(loaded);
+    movieList.bulkLoad(loaded);
+    // 1. The trees have the same sizes, iterations, ranges and first and last KeyLists
+    assertEquals(movieList.numKeys(), stampedTree.numKeys(), "numKeys() is incorrect");
+    assertEquals(movieList.size(), stampedTree.size(), "size() is incorrect");
+    Iterator<Movie> expected = movieList.iterator();
+    for (Movie movie : stampedTree) {
+      assertTrue(expected.next() == movie, "The movies were not iterated over in order");
+    }
+    assertTrue(!expected.hasNext(), "Not every movie was iterated over");
+    Movie lowerMovie = new Movie("", "", 0, "", 100);
+    Movie upperMovie = new Movie("", "", 0, "", 110);
+    expected = movieList.rangeIterator(lowerMovie, upperMovie);
+    Iterator<Movie> actual = stampedTree.rangeIterator(lowerMovie, upperMovie);
+    while (expected.hasNext()) {
+      assertTrue(actual.next() == expected.next(), "rangeIterator() returned the wrong movie");
+    }
+    assertTrue(!actual.hasNext(), "rangeIterator() returned a movie past its upper bound");
+    assertEquals(movieList.lastKeyList().size(), stampedTree.lastKeyList().size(),
+        "lastKeyList() is the wrong size");
+    assertTrue(movieList.firstKeyList().get(0) == stampedTree.firstKeyList().get(0),
+        "firstKeyList() did not return the shortest movies");
+    assertTrue(stampedTree.contains(new KeyList<Movie>(lowerMovie)), "contains() is incorrect");
+    // 2. Iterators are snapshots, so inserting a movie does not change one that was returned
+    Iterator<Movie> snapshot = stampedTree.iteratorFrom(new Movie("", "", 0, "", 179));
+    KeyListInterface<Movie> lastKeyList = stampedTree.lastKeyList();
+    stampedTree.insertSingleKey(new Movie("Late", "Genre", 2000, "Country", 179));
+    assertEquals(movieList.lastKeyList().size(), lastKeyList.size(),
+        "An insert changed a snapshot of a KeyList");
+    int snapshotSize = 0;
+    while (snapshot.hasNext()) {
+      snapshot.next();
+      snapshotSize++;
+    }
+    assertEquals(movieList.lastKeyList().size(), snapshotSize, "An insert changed a snapshot");
+    assertEquals(movieList.lastKeyList().size() + 1, stampedTree.lastKeyList().size(),
+        "The inserted movie is missing");
+    // 3. Readers running while a writer inserts movies see sorted snapshots that never shrink
+    int readerCount = 4;
+    int insertCount = 3000;
+    boolean[] consistent = new boolean[readerCount];
+    Thread[] readers = new Thread[readerCount];
+    java.util.concurrent.atomic.AtomicBoolean writing =
+        new java.util.concurrent.atomic.AtomicBoolean(true);
+    for (int r = 0; r < readerCount; r++) {
+      int reader = r;
+      readers[r] = new Thread(() -> {
+        boolean ok = true;
+        int lastCount = 0;
+        while (writing.get()) {
+          Iterator<Movie> movies = stampedTree.rangeIterator(lowerMovie, upperMovie);
+          int count = 0;
+          int lastDuration = 100;
+          while (movies.hasNext()) {
+            int duration = movies.next().getDuration();
+            ok &= duration >= lastDuration && duration <= 110;
+            lastDuration = duration;
+            count++;
+          }
+          ok &= count >= lastCount;
+          lastCount = count;
+        }
+        consistent[reader] = ok;
+      });
+      readers[r].start();
+    }
+    for (int i = 0; i < insertCount; i++) {
+      stampedTree.insertSingleKey(new Movie("New" + i, "Genre", 2000, "Country",
+          60 + random.nextInt(120)));
+    }
+    writing.set(false);
+    for (int r = 0; r < readerCount; r++) {
+      try {
+        readers[r].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      assertTrue(consistent[r], "A reader saw an unsorted or shrinking snapshot");
+    }
+    assertEquals(loaded.size() + 1 + insertCount, stampedTree.numKeys(),
+        "Not every inserted movie is in the tree");
+  }
+
+  /**
+   * This tests PersistentMultiKeyRBT by confirming that it answers the same queries as an
+   * IterableMultiKeyRBT holding the same movies, that it stays balanced when keys are inserted in
+   * order, that snapshots keep their keys after later inserts (including duplicates appended to a
+   * shared array), and that readers iterating over snapshots while another thread inserts movies
+   * always see complete, sorted versions.
+   */
+  @Test
+  public void testPersistentMultiKeyRBT() {
+    java.util.Random random = new java.util.Random(24);
+    PersistentMultiKeyRBT<Movie> persistentTree = new PersistentMultiKeyRBT<Movie>();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    // 1. Inserting returns true only for new durations, and both trees answer the same queries
+    for (int i = 0; i < 3000; i++) {
+      Movie movie = new Movie("Title" + i, "Genre", 2000, "Country", 60 + random.nextInt(400));
+      assertEquals(movieList.insertSingleKey(movie), persistentTree.insertSingleKey(movie),
+          "insertSingleKey() did not return whether the duration was new");
+    }
+    assertEquals(movieList.numKeys(), persistentTree.numKeys(), "numKeys() is incorrect");
+    assertEquals(movieList.size(), persistentTree.size(), "size() is incorrect");
+    Iterator<Movie> expected = movieList.iterator();
+    for (Movie movie : persistentTree) {
+      assertTrue(expected.next() == movie, "The movies were not iterated over in order");
+    }
+    assertTrue(!expected.hasNext(), "Not every movie was iterated over");
+    for (int test = 0; test < 50; test++) {
+      int lower = 50 + random.nextInt(420);
+      Movie lowerMovie = new Movie("", "", 0, "", lower);
+      Movie upperMovie = new Movie("", "", 0, "", lower + random.nextInt(60));
+      expected = movieList.rangeIterator(lowerMovie, upperMovie);
+      Iterator<Movie> actual = persistentTree.rangeIterator(lowerMovie, upperMovie);
+      while (expected.hasNext()) {
+        assertTrue(actual.next() == expected.next(), "rangeIterator() returned the wrong movie");
+      }
+      assertTrue(!actual.hasNext(), "rangeIterator() returned a movie past its upper bound");
+    }
+    assertEquals(movieList.lastKeyList().size(), persistentTree.lastKeyList().size(),
+        "lastKeyList() is the wrong size");
+    assertTrue(movieList.firstKeyList().get(0) == persistentTree.firstKeyList().get(0),
+        "firstKeyList() did not return the shortest movies");
+    assertTrue(persistentTree.contains(movieList.firstKeyList()), "contains() is incorrect");
+    BackendDeveloperIndividual<Movie> backend = new BackendDeveloperIndividual<Movie>(movieList);
+    assertEquals(backend.getThresholdDurationList(movieList, 80, 95),
+        backend.getThresholdDurationList(persistentTree.snapshot(), 80, 95),
+        "getThresholdDurationList() is incorrect for a snapshot");
+    // 2. Inserting keys in order keeps the tree balanced enough to iterate over
+    {
+      PersistentMultiKeyRBT<Integer> orderedTree = new PersistentMultiKeyRBT<Integer>();
+      ArrayList<Integer> keys = new ArrayList<Integer>();
+      for (int i = 0; i < 100000; i++) {
+        keys.add(i);
+      }
+      orderedTree.bulkLoad(keys);
+      int expectedKey = 0;
+      for (int key : orderedTree) {
+        assertEquals(expectedKey++, key, "The ordered keys were not iterated over in order");
+      }
+      assertEquals(100000, expectedKey, "Not every ordered key was iterated over");
+    }
+    // 3. A snapshot keeps its keys after later inserts, and cannot be changed
+    PersistentMultiKeyRBT.Snapshot<Movie> snapshot = persistentTree.snapshot();
+    KeyListInterface<Movie> lastKeyList = snapshot.lastKeyList();
+    int lastCount = lastKeyList.size();
+    Movie lastMovie = lastKeyList.get(0);
+    for (int i = 0; i < 40; i++) {
+      persistentTree.insertSingleKey(new Movie("Late" + i, "Genre", 2000, "Country",
+          lastMovie.getDuration()));
+    }
+    assertEquals(lastCount, snapshot.lastKeyList().size(), "An insert changed a snapshot");
+    assertEquals(lastCount + 40, persistentTree.lastKeyList().size(),
+        "The inserted movies are missing");
+    int snapshotCount = 0;
+    for (Movie movie : snapshot) {
+      snapshotCount++;
+    }
+    assertEquals(3000, snapshotCount, "An insert changed the movies in a snapshot");
+    boolean thrown = false;
+    try {
+      snapshot.insertSingleKey(lastMovie);
+    } catch (UnsupportedOperationException e) {
+      thrown = true;
+    }
+    assertTrue(thrown, "Inserting into a snapshot did not throw");
+    // 4. Readers taking snapshots while a writer inserts movies see complete, sorted versions
+    int readerCount = 4;
+    boolean[] consistent = new boolean[readerCount];
+    Thread[] readers = new Thread[readerCount];
+    java.util.concurrent.atomic.AtomicBoolean writing =
+        new java.util.concurrent.atomic.AtomicBoolean(true);
+    for (int r = 0; r < readerCount; r++) {
+      int reader = r;
+      readers[r] = new Thread(() -> {
+        boolean ok = true;
+        while (writing.get()) {
+          PersistentMultiKeyRBT.Snapshot<Movie> version = persistentTree.snapshot();
+          int count = 0;
+          int lastDuration = 0;
+          for (Movie movie : version) {
+            ok &= movie.getDuration() >= lastDuration;
+            lastDuration = movie.getDuration();
+            count++;
+          }
+          ok &= count == version.numKeys();
+        }
+        consistent[reader] = ok;
+      });
+      readers[r].start();
+    }
+    for (int i = 0; i < 3000; i++) {
+      persistentTree.insertSingleKey(new Movie("New" + i, "Genre", 2000, "Country",
+          60 + random.nextInt(400)));
+    }
+    writing.set(false);
+    for (int r = 0; r < readerCount; r++) {
+      try {
+        readers[r].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      assertTrue(consistent[r], "A reader saw an incomplete or unsorted snapshot");
+    }
+    assertEquals(6040, persistentTree.numKeys(), "Not every inserted movie is in the tree");
+  }
+
+  /**
+   * This tests ConcurrentMultiKeySkipList by confirming that it answers the same queries as an
+   * IterableMultiKeyRBT holding the same movies (including the backend's queries), and that
+   * several threads inserting movies with the same durations at once neither lose nor duplicate
+   * any movie, even when they are feeds reading files into one backend.
+   *
+   * @throws IOException if the temporary test files cannot be written
+   */
+  @Test
+  public void testConcurrentMultiKeySkipList() throws IOException {
+    java.util.Random random = new java.util.Random(25);
+    ConcurrentMultiKeySkipList<Movie> skipList = new ConcurrentMultiKeySkipList<Movie>();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    // 1. Inserting returns true only for new durations, and both collections answer the same
+    // queries
+    for (int i = 0; i < 3000; i++) {
+      Movie movie = new Movie("Title" + i, "Genre", 2000, "Country", 60 + random.nextInt(400));
+      assertEquals(movieList.insertSingleKey(movie), skipList.insertSingleKey(movie),
+          "insertSingleKey() did not return whether the duration was new");
+    }
+    assertEquals(movieList.numKeys(), skipList.numKeys(), "numKeys() is incorrect");
+    assertEquals(movieList.size(), skipList.size(), "size() is incorrect");
+    Iterator<Movie> expected = movieList.iterator();
+    for (Movie movie : skipList) {
+      assertTrue(expected.next() == movie, "The movies were not iterated over in order");
+    }
+    assertTrue(!expected.hasNext(), "Not every movie was iterated over");
+    for (int test = 0; test < 50; test++) {
+      int lower = 50 + random.nextInt(420);
+      Movie lowerMovie = new Movie("", "", 0, "", lower);
+      Movie upperMovie = new Movie("", "", 0, "", lower + random.nextInt(60));
+      expected = movieList.rangeIterator(lowerMovie, upperMovie);
+      Iterator<Movie> actual = skipList.rangeIterator(lowerMovie, upperMovie);
+      while (expected.hasNext()) {
+        assertTrue(actual.next() == expected.next(), "rangeIterator() returned the wrong movie");
+      }
+      assertTrue(!actual.hasNext(), "rangeIterator() returned a movie past its upper bound");
+      expected = movieList.iteratorFrom(upperMovie);
+      actual = skipList.iteratorFrom(upperMovie);
+      while (expected.hasNext()) {
+        assertTrue(actual.next() == expected.next(), "iteratorFrom() returned the wrong movie");
+      }
+    }
+    KeyListInterface<Movie> lastKeyList = skipList.lastKeyList();
+    assertEquals(movieList.lastKeyList().size(), lastKeyList.size(),
+        "lastKeyList() is the wrong size");
+    for (int i = 0; i < lastKeyList.size(); i++) {
+      assertTrue(movieList.lastKeyList().get(i) == lastKeyList.get(i),
+          "lastKeyList() holds the wrong movies");
+    }
+    assertTrue(skipList.contains(movieList.firstKeyList())
+        && !skipList.contains(new KeyList<Movie>(new Movie("", "", 0, "", 1))),
+        "contains() is incorrect");
+    BackendDeveloperIndividual<Movie> backend = new BackendDeveloperIndividual<Movie>(movieList);
+    assertEquals(backend.getThresholdDurationList(movieList, 80, 95),
+        backend.getThresholdDurationList(skipList, 80, 95),
+        "getThresholdDurationList() is incorrect for a skip list");
+    assertEquals(backend.getMinDurationList(movieList), backend.getMinDurationList(skipList),
+        "getMinDurationList() is incorrect for a skip list");
+    // 2. Threads inserting movies with the same durations at once keep every movie exactly once
+    skipList.clear();
+    assertTrue(skipList.isEmpty() && skipList.numKeys() == 0, "clear() did not remove every key");
+    int threadCount = 4;
+    int moviesPerThread = 5000;
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      int thread = t;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < moviesPerThread; i++) {
+          skipList.insertSingleKey(new Movie("Feed" + thread + " " + i, "Genre", 2000,
+              "Country", 60 + (i * 7 + thread) % 300));
+        }
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < threadCount; t++) {
+      try {
+        threads[t].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    assertEquals(threadCount * moviesPerThread, skipList.numKeys(), "numKeys() is incorrect");
+    assertEquals(300, skipList.size(), "A duration was linked in more than once");
+    java.util.HashSet<String> titles = new java.util.HashSet<String>();
+    int lastDuration = 0;
+    for (Movie movie : skipList) {
+      assertTrue(movie.getDuration() >= lastDuration, "The movies are not sorted by duration");
+      lastDuration = movie.getDuration();
+      assertTrue(titles.add(movie.getTitle()), "A movie was iterated over twice");
+    }
+    assertEquals(threadCount * moviesPerThread, titles.size(), "A movie was lost");
+    // 3. A KeyList inserted while another thread inserts a movie with the same duration counts
+    // each of its movies once, whichever insert links the duration in
+    skipList.clear();
+    int[] keyListsInserted = new int[1];
+    Thread keyListThread = new Thread(() -> {
+      for (int duration = 1000; duration < 3000; duration++) {
+        KeyList<Movie> keyList = new KeyList<Movie>(new Movie("A", "Genre", 2000, "C", duration));
+        keyList.addKey(new Movie("B", "Genre", 2000, "C", duration));
+        keyList.addKey(new Movie("C", "Genre", 2000, "C", duration));
+        if (skipList.insert(keyList)) {
+          keyListsInserted[0]++;
+        }
+      }
+    });
+    keyListThread.start();
+    for (int duration = 1000; duration < 3000; duration++) {
+      skipList.insertSingleKey(new Movie("D", "Genre", 2000, "C", duration));
+    }
+    try {
+      keyListThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    int iteratedMovies = 0;
+    for (Movie movie : skipList) {
+      iteratedMovies++;
+    }
+    assertEquals(2000 + 3 * keyListsInserted[0], iteratedMovies,
+        "A movie was lost while a KeyList was inserted");
+    assertEquals(iteratedMovies, skipList.numKeys(), "numKeys() counted a movie twice");
+    // 4. Several feeds reading files into one backend at once add every movie, and the backend
+    // answers queries from the skip list (it keeps no duration index for concurrent writers)
+    ConcurrentMultiKeySkipList<Movie> feedList = new ConcurrentMultiKeySkipList<Movie>();
+    BackendDeveloperIndividual<Movie> feedBackend = new BackendDeveloperIndividual<Movie>(feedList);
+    assertTrue(feedBackend.getMovieTree() == feedList && feedBackend.movieList == null,
+        "The backend does not read into the skip list");
+    int feedCount = 4;
+    ArrayList<String> feedTitles = new ArrayList<String>();
+    File[] feedFiles = new File[feedCount];
+    for (int feed = 0; feed < feedCount; feed++) {
+      feedFiles[feed] = File.createTempFile("feedMovies", ".csv");
+      feedFiles[feed].deleteOnExit();
+      try (PrintWriter writer = new PrintWriter(feedFiles[feed])) {
+        writer.print("id,title,year,genre,duration,country,director,actor\n");
+        for (int i = 0; i < 1000; i++) {
+          writer.print(i + ",Feed " + feed + " movie " + i + ",2000,Drama," + (60 + (i * 7) % 120)
+              + ",Italy,d,a\n");
+          feedTitles.add("Feed " + feed + " movie " + i);
+        }
+      }
+    }
+    Thread[] feeds = new Thread[feedCount];
+    for (int feed = 0; feed < feedCount; feed++) {
+      String fileName = feedFiles[feed].getPath();
+      feeds[feed] = new Thread(() -> feedBackend.readFile(fileName, ReadMode.MAPPED));
+      feeds[feed].start();
+    }
+    for (int feed = 0; feed < feedCount; feed++) {
+      try {
+        feeds[feed].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    assertEquals(feedCount * 1000, feedList.numKeys(), "A feed's movie was lost");
+    ArrayList<String> feedThreshold = feedBackend.getThresholdDurationList(feedList, 0, 1000);
+    assertEquals(feedCount * 1000, feedThreshold.size(), "A query missed a feed's movie");
+    java.util.Collections.sort(feedTitles);
+    java.util.Collections.sort(feedThreshold);
+    assertEquals(feedTitles, feedThreshold, "A query returned the wrong movies");
+    assertEquals(feedCount * 9, feedBackend.getMinDurationList(feedList).size(),
+        "getMinDurationList() is incorrect after concurrent feeds");
+  }
+
+  /**
+   * This tests DurationBucketIndex by adding random movies (whose durations make the index grow in
+   * both directions) to it and to an IterableMultiKeyRBT, and confirming that the index's counts,
+   * ranges and next durations match the tree.
+   */
+  @Test
+  public void testDurationBucketIndex() {
+    java.util.Random random = new java.util.Random(12);
+    DurationBucketIndex index = new DurationBucketIndex();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    // 1. An empty index has no movies in any range
+    assertEquals(0, index.countInRange(0, 1000), "An empty index counted movies");
+    // 2. Add movies starting in the middle of the range of durations, so the index grows both ways
+    int[] firstDurations = {500, 300, 900};
+    for (int i = 0; i < 3000; i++) {
+      int duration = (i < firstDurations.length) ? firstDurations[i] : 1 + random.nextInt(1000);
+      Movie movie = new Movie("Title" + i, "Genre", 2000, "Country", duration);
+      index.add(movie);
+      movieList.insertSingleKey(movie);
+    }
+    assertEquals(movieList.numKeys(), index.size(), "The index does not hold every movie");
+    assertEquals(movieList.firstKeyList().iterator().next().getDuration(), index.minDuration(),
+        "minDuration() is incorrect");
+    assertEquals(movieList.lastKeyList().iterator().next().getDuration(), index.maxDuration(),
+        "maxDuration() is incorrect");
+    // 3. Ranges hold the same movies, in the same order, as the tree
+    for (int test = 0; test < 100; test++) {
+      int lower = -10 + random.nextInt(1020);
+      int upper = lower + random.nextInt(50);
+      Iterator<Movie> expected = movieList.rangeIterator(new Movie("", "", 0, "", lower),
+          new Movie("", "", 0, "", upper));
+      ArrayList<Movie> actual = new ArrayList<Movie>();
+      index.forEachInRange(lower, upper, actual::add);
+      for (Movie movie : actual) {
+        assertTrue(expected.next() == movie, "forEachInRange() returned the wrong movie");
+      }
+      assertTrue(!expected.hasNext(), "forEachInRange() did not return every movie in the range");
+      assertEquals(actual.size(), index.countInRange(lower, upper), "countInRange() is incorrect");
+      // The next duration is the duration of the first movie at or after the lower bound
+      Iterator<Movie> ceiling = movieList.rangeIterator(new Movie("", "", 0, "", lower), null);
+      if (ceiling.hasNext()) {
+        assertEquals(ceiling.next().getDuration(), index.nextDuration(lower),
+            "nextDuration() is incorrect");
+      }
+    }
+  }
+
+  /**
+   * This tests that getMinDurationList(), getMaxDurationList() and getThresholdDurationList()
+   * return the same lists when they are answered from the duration index built by readFile() as
+   * when they are answered from the RBT.
+   * 
+   * @throws IOException if the temporary test file cannot be written
+   */
+  @Test
+  public void testDurationIndexQueries() throws IOException {
+    File movieFile = File.createTempFile("indexedMovies", ".csv");
+    movieFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < 500; i++) {
+        writer.print(i + ",Title" + i + ",2000,Drama," + (70 + (i * 37) % 61) + ",Italy,d,a\n");
+      }
+    }
+    for (ReadMode mode : EnumSet.range(ReadMode.SCANNER, ReadMode.PARALLEL)) {
+      // The backend that read the file answers from its duration index
+      IterableMultiKeyRBT<Movie> indexedList = new IterableMultiKeyRBT<Movie>();
+      BackendDeveloperIndividual<Movie> indexed =
+          new BackendDeveloperIndividual<Movie>(indexedList);
+      indexed.readFile(movieFile.getPath(), mode);
+      // A tree holding the same movies that was not filled by readFile() is answered from the RBT
+      IterableMultiKeyRBT<Movie> treeList = new IterableMultiKeyRBT<Movie>();
+      for (Movie movie : indexedList) {
+        treeList.insertSingleKey(movie);
+      }
+      BackendDeveloperIndividual<Movie> tree = new BackendDeveloperIndividual<Movie>(treeList);
+
+      assertEquals(tree.getMinDurationList(treeList), indexed.getMinDurationList(indexedList),
+          "getMinDurationList() from the duration index is incorrect");
+      assertEquals(tree.getMaxDurationList(treeList), indexed.getMaxDurationList(indexedList),
+          "getMaxDurationList() from the duration index is incorrect");
+      assertEquals(tree.getThresholdDurationList(treeList, 80, 95),
+          indexed.getThresholdDurationList(indexedList, 80, 95),
+          "getThresholdDurationList() from the duration index is incorrect");
+      assertEquals(tree.getThresholdDurationList(treeList, 0, 1000),
+          indexed.getThresholdDurationList(indexedList, 0, 1000),
+          "getThresholdDurationList() from the duration index is incorrect");
+    }
+
+    // Clearing the tree and inserting other movies into it directly makes the index stale, so the
+    // queries are answered from the tree, and the next file that is read is indexed with them
+    try (PrintWriter writer = new PrintWriter(movieFile)) {
+      writer.print("id,title,year,genre,duration,country,director,actor\n");
+      writer.print("1,Old A,2000,Drama,90,Italy,d,a\n");
+      writer.print("2,Old B,2000,Drama,100,Italy,d,a\n");
+    }
+    IterableMultiKeyRBT<Movie> changedList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> changed = new BackendDeveloperIndividual<Movie>(changedList);
+    changed.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    changedList.clear();
+    changedList.insertSingleKey(new Movie("New A", "Drama", 2000, "Italy", 95));
+    changedList.insertSingleKey(new Movie("New B", "Drama", 2000, "Italy", 105));
+    assertEquals(Arrays.asList("New A"), changed.getMinDurationList(changedList),
+        "getMinDurationList() was answered from a stale duration index");
+    assertEquals(Arrays.asList("New B"), changed.getMaxDurationList(changedList),
+        "getMaxDurationList() was answered from a stale duration index");
+    assertEquals(Arrays.asList("New A", "New B"),
+        changed.getThresholdDurationList(changedList, 0, 1000),
+        "getThresholdDurationList() was answered from a stale duration index");
+    changed.readFile(movieFile.getPath(), ReadMode.MAPPED);
+    assertEquals(Arrays.asList("Old A", "New A", "Old B", "New B"),
+        changed.getThresholdDurationList(changedList, 0, 1000),
+        "The duration index did not include the movies inserted into the tree directly");
+    assertEquals(Arrays.asList("New B"), changed.getMaxDurationList(changedList),
+        "getMaxDurationList() after reading another file is incorrect");
+  }
+
   /**
    * This tests the getMinDurationList() method in the Backend Interface. When calling this method,
    * with a RBT movieList, an arrayList of movie titles that have the minimum duration should be
@@ -171,6 +1779,44 @@ public class BackendDeveloperTests {
     }
   }
 
+  /**
+   * This tests the getMaxDurationList() method in the Backend Interface. When calling this method
+   * with a RBT movieList, an arrayList of movie titles that have the maximum duration should be
+   * returned, and it should stay correct as longer movies are inserted.
+   */
+  @Test
+  public void testGetMaxDurationList() {
+    // 1. If the movieList is empty, null is returned
+    {
+      IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+      BackendDeveloperIndividual<Movie> test = new BackendDeveloperIndividual<Movie>(movieList);
+      assertTrue(test.getMaxDurationList(movieList) == null,
+          "Calling getMaxDurationList with an empty movieList did not return null");
+    }
+    // 2. Multiple movies with the maximum duration, and a longer movie inserted afterwards
+    {
+      IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+      movieList.insertSingleKey(new Movie("Title1", "Genre1", 2000, "Country1", 160));
+      movieList.insertSingleKey(new Movie("Title2", "Genre2", 2001, "Country2", 90));
+      movieList.insertSingleKey(new Movie("Title3", "Genre1", 2002, "Country1", 160));
+      movieList.insertSingleKey(new Movie("Title4", "Genre2", 2003, "Country2", 120));
+      BackendDeveloperIndividual<Movie> test = new BackendDeveloperIndividual<Movie>(movieList);
+
+      ArrayList<String> returnedList = test.getMaxDurationList(movieList);
+      assertEquals(2, returnedList.size(), "getMaxDurationList returned the wrong number of movies");
+      assertEquals("Title3", returnedList.get(0), "getMaxDurationList returned the wrong movie");
+      assertEquals("Title1", returnedList.get(1), "getMaxDurationList returned the wrong movie");
+
+      movieList.insertSingleKey(new Movie("Title5", "Genre1", 2004, "Country1", 200));
+      returnedList = test.getMaxDurationList(movieList);
+      assertEquals(1, returnedList.size(), "getMaxDurationList returned the wrong number of movies");
+      assertEquals("Title5", returnedList.get(0),
+          "getMaxDurationList did not return the newly inserted longest movie");
+      assertEquals("Title2", test.getMinDurationList(movieList).get(0),
+          "getMinDurationList did not return the shortest movie");
+    }
+  }
+
   /**
    * This method tests the getThresholdDurationList specified in the BackendInterface. The goal is
    * to return an ArrayList that contains only the movies that have a duration within and including
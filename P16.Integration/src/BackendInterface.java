@@ -50,6 +50,14 @@ public interface BackendInterface<T extends IterableMultiKeySortedCollectionInte
    * @return a list of the movie names with the shortest duration
    */
   public ArrayList<String> getMinDurationList(T movieList);
+
+  /**
+   * Using a RBT of movies, this method creates a list of movies that have the longest duration.
+   * If the RBT is null, an empty ArrayList is returned.
+   * @param movieList the RBT of movies based on their duration
+   * @return a list of the movie names with the longest duration
+   */
+  public ArrayList<String> getMaxDurationList(T movieList);
   
   /**
    * Using a RBT of movies, this method creates a list of movies that have a duration that a falls
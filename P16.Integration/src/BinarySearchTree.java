@@ -26,15 +26,11 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
 
     // up stores a reference to the node's parent
     public Node<T> up;
-    // The down array stores references to the node's children:
-    // - down[0] is the left child reference of the node,
-    // - down[1] is the right child reference of the node.
-    // The @SupressWarning("unchecked") annotation is use to supress an unchecked
-    // cast warning. Java only allows us to instantiate arrays without generic
-    // type parameters, so we use this cast here to avoid future casts of the
-    // node type's data field.
-    @SuppressWarnings("unchecked")
-    public Node<T>[] down = (Node<T>[]) new Node[2];
+    // left and right store references to the node's children. They are fields of the node
+    // itself (rather than a separate two element array), so each node is a single object and
+    // following a child reference does not read through an array first.
+    public Node<T> left;
+    public Node<T> right;
 
     public Node(T data) {
       this.data = data;
@@ -45,7 +41,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
      *         return false
      */
     public boolean isRightChild() {
-      return this.up != null && this.up.down[1] == this;
+      return this.up != null && this.up.right == this;
     }
 
   }
@@ -83,6 +79,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
       // add first node to an empty tree
       root = newNode;
       size++;
+      updateSubtreeSummaries(newNode);
       return true;
     } else {
       // insert into subtree
@@ -93,27 +90,29 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           return false;
         } else if (compare < 0) {
           // insert in left subtree
-          if (current.down[0] == null) {
+          if (current.left == null) {
             // empty space to insert into
-            current.down[0] = newNode;
+            current.left = newNode;
             newNode.up = current;
             this.size++;
+            updateSubtreeSummaries(newNode);
             return true;
           } else {
             // no empty space, keep moving down the tree
-            current = current.down[0];
+            current = current.left;
           }
         } else {
           // insert in right subtree
-          if (current.down[1] == null) {
+          if (current.right == null) {
             // empty space to insert into
-            current.down[1] = newNode;
+            current.right = newNode;
             newNode.up = current;
             this.size++;
+            updateSubtreeSummaries(newNode);
             return true;
           } else {
             // no empty space, keep moving down the tree
-            current = current.down[1];
+            current = current.right;
           }
         }
       }
@@ -136,20 +135,20 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
    */
   protected void rotate(Node<T> child, Node<T> parent) throws IllegalArgumentException {
     // Check if the relationship between nodes is correct. If not, throw an IllegalArgumentException
-    if ((parent.down[0] != child && parent.down[1] != child) || child.up != parent) {
+    if ((parent.left != child && parent.right != child) || child.up != parent) {
       throw new IllegalArgumentException("the relationship between nodes is incorrect");
     }
     // Check if it is a right child. If so, perform a left rotation
     if (child.isRightChild()) {
       // If the child has either no children or only a right child:
-      if (child.down[0] == null) {
+      if (child.left == null) {
         // Check if the parent is a root. If so, change all possible relationships between the 
         // parent and child to the new relationships after rotation
         if (root.equals(parent)) {
-          parent.down[1] = null;
+          parent.right = null;
           child.up = null;
 
-          child.down[0] = parent;
+          child.left = parent;
           parent.up = child;
           root = child;
         }
@@ -160,14 +159,14 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           // Check if the parent is a left child of its parent. If so, change all possible 
           // relationships between the parent, the parent's parent and the child to the new 
           // relationships after rotation
-          if (parentOfParent != null && parentOfParent.down[0] != null && parentOfParent.down[0].equals(parent)) {
-            parentOfParent.down[0] = null;
-            parent.down[1] = null;
+          if (parentOfParent != null && parentOfParent.left != null && parentOfParent.left.equals(parent)) {
+            parentOfParent.left = null;
+            parent.right = null;
             child.up = null;
             parent.up = null;
 
-            parentOfParent.down[0] = child;
-            child.down[0] = parent;
+            parentOfParent.left = child;
+            child.left = parent;
             parent.up = child;
             child.up = parentOfParent;
           }
@@ -178,13 +177,13 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
             return;
           }
           else {
-            parentOfParent.down[1] = null;
-            parent.down[1] = null;
+            parentOfParent.right = null;
+            parent.right = null;
             child.up = null;
             parent.up = null;
 
-            parentOfParent.down[1] = child;
-            child.down[0] = parent;
+            parentOfParent.right = child;
+            child.left = parent;
             parent.up = child;
             child.up = parentOfParent;
           }
@@ -192,16 +191,17 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
       }
       // If the child has either a left child or two children:
       // The childOfChild variable represents the child's left child
-      else if (child.down[0] != null) {
+      else if (child.left != null) {
         // Check if the parent is a root. If so, change all possible relationships between the 
         // parent, child, and the child's child to the new relationships after rotation
         if (root.equals(parent)) {
-          Node<T> childOfChild = child.down[0];
-          parent.down[1] = null;
-          child.down[0] = null;
+          Node<T> childOfChild = child.left;
+          parent.right = null;
+          child.left = null;
+          child.up = null;
 
-          child.down[0] = parent;
-          parent.down[1] = childOfChild;
+          child.left = parent;
+          parent.right = childOfChild;
           childOfChild.up = parent;
           parent.up = child;
           root = child;
@@ -212,18 +212,18 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           // Check if the parent is the left child of its parent. If so, change all possible 
           // relationships between the parent, the parent's parent, the child, and the child's child
           // to the new relationships after rotation
-          if (parentOfParent.down[0] != null && parentOfParent.down[0].equals(parent)) {
-            Node<T> childsChild = child.down[0];
-            parentOfParent.down[0] = null;
-            parent.down[1] = null;
-            child.down[0] = null;
+          if (parentOfParent.left != null && parentOfParent.left.equals(parent)) {
+            Node<T> childsChild = child.left;
+            parentOfParent.left = null;
+            parent.right = null;
+            child.left = null;
             childsChild.up = null;
             child.up = null;
             parent.up = null;
 
-            parentOfParent.down[0] = child;
-            child.down[0] = parent;
-            parent.down[1] = childsChild;
+            parentOfParent.left = child;
+            child.left = parent;
+            parent.right = childsChild;
             childsChild.up = parent;
             parent.up = child;
             child.up = parentOfParent;
@@ -232,17 +232,17 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           // relationships between the parent, the parent's parent, the child, and the child's child
           // to the new relationships after rotation
           else {
-            Node<T> childsChild = child.down[0];
-            parentOfParent.down[1] = null;
-            parent.down[1] = null;
-            child.down[0] = null;
+            Node<T> childsChild = child.left;
+            parentOfParent.right = null;
+            parent.right = null;
+            child.left = null;
             childsChild.up = null;
             child.up = null;
             parent.up = null;
 
-            parentOfParent.down[1] = child;
-            child.down[0] = parent;
-            parent.down[1] = childsChild;
+            parentOfParent.right = child;
+            child.left = parent;
+            parent.right = childsChild;
             childsChild.up = parent;
             parent.up = child;
             child.up = parentOfParent;
@@ -253,14 +253,14 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     // Otherwise, the child is a left child and a right rotation must occur:
     else {
       // If the child either has no children or has only a left child:
-      if (child.down[1] == null) {
+      if (child.right == null) {
         // Check if the parent is a root. If so, change all possible relationships between the 
         // parent and child to the new relationships after rotation
         if (root.equals(parent)) {
-          parent.down[0] = null;
+          parent.left = null;
           child.up = null;
           root = child;
-          child.down[1] = parent;
+          child.right = parent;
           parent.up = child;
         }
         // Otherwise, the parent is not a root and its parent must be considered in the rotation:
@@ -270,28 +270,28 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           // Check if the parent is the left child of its parent. If so, change all possible 
           // relationships between the parent, the parent's parent and the child to the new 
           // relationships after rotation
-          if (parentOfParent.down[0] != null && parentOfParent.down[0].equals(parent)) {
-            parentOfParent.down[0] = null;
-            parent.down[0] = null;
+          if (parentOfParent.left != null && parentOfParent.left.equals(parent)) {
+            parentOfParent.left = null;
+            parent.left = null;
             child.up = null;
             parent.up = null;
 
-            parentOfParent.down[0] = child;
-            child.down[1] = parent;
+            parentOfParent.left = child;
+            child.right = parent;
             parent.up = child;
             child.up = parentOfParent;
           }
           // Otherwise, the parent is the right child of its parent. Change all possible 
           // relationships between the parent, the parent's parent and the child to the new 
           // relationships after rotation
-          else if (parentOfParent.down[1].equals(parent)) {
-            parentOfParent.down[1] = null;
-            parent.down[0] = null;
+          else if (parentOfParent.right.equals(parent)) {
+            parentOfParent.right = null;
+            parent.left = null;
             child.up = null;
             parent.up = null;
 
-            parentOfParent.down[1] = child;
-            child.down[1] = parent;
+            parentOfParent.right = child;
+            child.right = parent;
             parent.up = child;
             child.up = parentOfParent;
           }
@@ -299,19 +299,19 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
       }
       // If child has either one right child or two children:
       // The childsChild varaible represents the child node's right child
-      else if (child.down[1] != null) {
+      else if (child.right != null) {
         // Check if the parent is a root. If so, change all possible relationships between the 
         // parent, child, and the child's child to the new relationships after rotation
         if (root.equals(parent)) {
-          Node<T> childsChild = child.down[1];
-          parent.down[0] = null;
-          child.down[1] = null;
+          Node<T> childsChild = child.right;
+          parent.left = null;
+          child.right = null;
           child.up = null;
           childsChild.up = null;
 
-          child.down[1] = parent;
-          parent.down[0] = childsChild;
-          child.down[1] = parent;
+          child.right = parent;
+          parent.left = childsChild;
+          child.right = parent;
           childsChild.up = parent;
           parent.up = child;
           root = child;
@@ -322,19 +322,19 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           // Check if the parent is the left child of its parent. If so, change all possible 
           // relationships between the parent, the parent's parent, the child, and the child's child
           // to the new relationships after rotation
-          if (parentOfParent.down[0] != null && parentOfParent.down[0].equals(parent)) {
-            Node<T> childsChild = child.down[1];
+          if (parentOfParent.left != null && parentOfParent.left.equals(parent)) {
+            Node<T> childsChild = child.right;
             Node<T> parentsParent = parent.up;
-            parentsParent.down[0] = null;
-            parent.down[0] = null;
-            child.down[1] = null;
+            parentsParent.left = null;
+            parent.left = null;
+            child.right = null;
             childsChild.up = null;
             child.up = null;
             parent.up = null;
 
-            parentsParent.down[0] = child;
-            child.down[1] = parent;
-            parent.down[0] = childsChild;
+            parentsParent.left = child;
+            child.right = parent;
+            parent.left = childsChild;
             childsChild.up = parent;
             parent.up = child;
             child.up = parentsParent;
@@ -344,17 +344,17 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
           // to the new relationships after rotation
           else {
             Node<T> parentsParent = parent.up;
-            Node<T> childsChild = child.down[1];
-            parentsParent.down[1] = null;
-            parent.down[0] = null;
-            child.down[1] = null;
+            Node<T> childsChild = child.right;
+            parentsParent.right = null;
+            parent.left = null;
+            child.right = null;
             childsChild.up = null;
             child.up = null;
             parent.up = null;
             
-            parentsParent.down[1] = child;
-            child.down[1] = parent;
-            parent.down[0] = childsChild;
+            parentsParent.right = child;
+            child.right = parent;
+            parent.left = childsChild;
             childsChild.up = parent;
             parent.up = child;
             child.up = parentsParent;
@@ -362,6 +362,32 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         }
       }
     }
+    // The parent is now below the child, so its summary is updated first
+    updateSubtreeSummary(parent);
+    updateSubtreeSummary(child);
+  }
+
+  /**
+   * Recomputes any summary of its subtree that a subclass stores in node, from node's own data and
+   * the summaries stored in its children. This is called for the two nodes of every rotation, and
+   * for every node on the path to a newly inserted node. A plain binary search tree does not store
+   * any summaries, so this does nothing.
+   * 
+   * @param node the node whose subtree summary should be recomputed
+   */
+  protected void updateSubtreeSummary(Node<T> node) {
+  }
+
+  /**
+   * Recomputes the subtree summaries of node and of every node above it, up to the root.
+   * 
+   * @param node the lowest node whose subtree changed
+   */
+  protected void updateSubtreeSummaries(Node<T> node) {
+    while (node != null) {
+      updateSubtreeSummary(node);
+      node = node.up;
+    }
   }
 
   /**
@@ -422,24 +448,74 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         // we found our value
         return current;
       } else if (compare < 0) {
-        if (current.down[0] == null) {
+        if (current.left == null) {
           // we have hit a null node and did not find our node
           return null;
         }
         // keep looking in the left subtree
-        current = current.down[0];
+        current = current.left;
       } else {
-        if (current.down[1] == null) {
+        if (current.right == null) {
           // we have hit a null node and did not find our node
           return null;
         }
         // keep looking in the right subtree
-        current = current.down[1];
+        current = current.right;
       }
     }
     return null;
   }
 
+  /**
+   * Finds the node with the smallest value in the subtree rooted at node.
+   * 
+   * @param node the root of the subtree
+   * @return the left-most node of the subtree, or null if the subtree is empty
+   */
+  protected static <T> Node<T> leftmost(Node<T> node) {
+    if (node == null) {
+      return null;
+    }
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node;
+  }
+
+  /**
+   * Finds the node with the largest value in the subtree rooted at node.
+   * 
+   * @param node the root of the subtree
+   * @return the right-most node of the subtree, or null if the subtree is empty
+   */
+  protected static <T> Node<T> rightmost(Node<T> node) {
+    if (node == null) {
+      return null;
+    }
+    while (node.right != null) {
+      node = node.right;
+    }
+    return node;
+  }
+
+  /**
+   * Finds the node that comes after node in an in-order traversal, by following the parent
+   * references of the tree. Moving through every node of the tree this way takes O(n) time.
+   * 
+   * @param node the node to find the successor of
+   * @return the next node in-order, or null if node holds the largest value in the tree
+   */
+  protected static <T> Node<T> successor(Node<T> node) {
+    if (node.right != null) {
+      return leftmost(node.right);
+    }
+    // Move up until we move up from a left child, that parent is the next node
+    while (node.isRightChild()) {
+      node = node.up;
+    }
+    return node.up;
+  }
+
   /**
    * This method performs an inorder traversal of the tree. The string representations of each data
    * value within this tree are assembled into a comma separated string within brackets (similar to
@@ -459,12 +535,12 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         if (current == null) {
           Node<T> popped = nodeStack.pop();
           sb.append(popped.data.toString());
-          if (!nodeStack.isEmpty() || popped.down[1] != null)
+          if (!nodeStack.isEmpty() || popped.right != null)
             sb.append(", ");
-          current = popped.down[1];
+          current = popped.right;
         } else {
           nodeStack.add(current);
-          current = current.down[0];
+          current = current.left;
         }
       }
     }
@@ -488,10 +564,10 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
       q.add(this.root);
       while (!q.isEmpty()) {
         Node<T> next = q.removeFirst();
-        if (next.down[0] != null)
-          q.add(next.down[0]);
-        if (next.down[1] != null)
-          q.add(next.down[1]);
+        if (next.left != null)
+          q.add(next.left);
+        if (next.right != null)
+          q.add(next.right);
         sb.append(next.data.toString());
         if (!q.isEmpty())
           sb.append(", ");
@@ -977,6 +1053,53 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     return true;
   }
 
+  /**
+   * This test method checks a left rotation at the root when the child has a left child, which
+   * must leave the child as a root with no parent. The tree used to keep the old root as the new
+   * root's parent in this case, which later made rotate() loop forever or throw.
+   * 
+   * @return true if and only if all test cases pass, false otherwise
+   */
+  public static boolean test4() {
+    // Create a Binary Search Tree whose root's right child has a left child
+    BinarySearchTree<Integer> test4BST = new BinarySearchTree<Integer>();
+    test4BST.insert(20);
+    test4BST.insert(10);
+    test4BST.insert(30);
+    test4BST.insert(25);
+    test4BST.insert(35);
+
+    // 1. Rotate the right child up to the root, its left child moves under the old root
+    {
+      Node<Integer> parent = test4BST.findNode(20);
+      Node<Integer> child = test4BST.findNode(30);
+      test4BST.rotate(child, parent);
+      if (!"[ 10, 20, 25, 30, 35 ]".equals(test4BST.toInOrderString()))
+        return false;
+      if (!"[ 30, 20, 35, 10, 25 ]".equals(test4BST.toLevelOrderString()))
+        return false;
+      // The new root has no parent, and the moved child points at the old root
+      if (test4BST.root != child || child.up != null)
+        return false;
+      if (parent.up != child || test4BST.findNode(25).up != parent)
+        return false;
+    }
+    // 2. Rotating back restores the original tree, with the old root's parent cleared again
+    {
+      Node<Integer> parent = test4BST.findNode(30);
+      Node<Integer> child = test4BST.findNode(20);
+      test4BST.rotate(child, parent);
+      if (!"[ 20, 10, 30, 25, 35 ]".equals(test4BST.toLevelOrderString()))
+        return false;
+      if (test4BST.root != child || child.up != null || parent.up != child)
+        return false;
+      if (test4BST.findNode(25).up != parent)
+        return false;
+    }
+    // Return true if all test cases pass
+    return true;
+  }
+
   /**
    * Main method to run tests. If you'd like to add additional test methods, add a line for each of
    * them.
@@ -987,6 +1110,7 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     System.out.println("Test 1 passed: " + test1());
     System.out.println("Test 2 passed: " + test2());
     System.out.println("Test 3 passed: " + test3());
+    System.out.println("Test 4 passed: " + test4());
   }
 
 }
@@ -0,0 +1,575 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class stores multiple keys per value, like IterableMultiKeyRBT, in a lock-free skip list,
+ * so any number of threads can insert keys at the same time (such as several feeds of movies being
+ * read at once) without waiting for each other. Each node of the skip list holds the keys that
+ * compare equal, in a KeyList that keys are appended to with compare-and-set, so inserting a
+ * duplicate only touches that node. A new node is linked into the bottom list of the skip list
+ * with a single compare-and-set, which is the point it becomes part of the collection, and is then
+ * linked into the index lists above it one level at a time.
+ * <p>
+ * Keys are never removed, except by clear(), which must not be called while other threads insert
+ * keys. Iterators and KeyLists are weakly consistent: they never throw because of concurrent
+ * inserts, and return every key whose insert returned before they were created, but they may or
+ * may not return keys inserted after that. numKeys() and size() are exact once every insert has
+ * returned.
+ *
+ * @author dianakotsonis
+ * @param <T> The data type for the Key being inserted into the skip list
+ */
+public class ConcurrentMultiKeySkipList<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  private static final int MAX_LEVEL = 32; // the most lists a node can be linked into
+
+  private volatile Node<T> head = new Node<T>(null, MAX_LEVEL); // links to the first node of
+                                                                // every level
+  private final LongAdder keyCount = new LongAdder(); // the number of keys (including duplicates)
+  private final LongAdder nodeCount = new LongAdder(); // the number of distinct keys
+  private final LongAdder modifications = new LongAdder(); // the number of changes made
+  private volatile Comparable<T> startPoint; // the point iterator() starts at, or null
+
+  /**
+   * This class is a node of the skip list, holding the keys with one value.
+   */
+  private static class Node<T extends Comparable<T>> {
+    private final KeyCells<T> keys; // the keys with this node's value, or null for the head
+    private final AtomicReferenceArray<Node<T>> next; // the next node on each of the node's levels
+
+    /**
+     * @param keys   the keys with this node's value, or null for the head
+     * @param levels the number of levels the node is linked into
+     */
+    private Node(KeyCells<T> keys, int levels) {
+      this.keys = keys;
+      this.next = new AtomicReferenceArray<Node<T>>(levels);
+    }
+  }
+
+  /**
+   * This class is a single key of a KeyCells list.
+   */
+  private static class Cell<T> {
+    private final T key; // the key
+    private volatile Cell<T> next; // the key inserted after this one, or null
+
+    /**
+     * @param key the key
+     */
+    private Cell(T key) {
+      this.key = key;
+    }
+  }
+
+  /**
+   * This class is a KeyList that any number of threads can append keys to at once. The keys are
+   * linked in the order they were inserted, and a key is appended by linking it after the last key
+   * with compare-and-set, retrying (and helping the tail reference catch up) if another thread
+   * appended a key first.
+   */
+  private static class KeyCells<T extends Comparable<T>> implements KeyListInterface<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Cell, Cell> NEXT =
+        AtomicReferenceFieldUpdater.newUpdater(Cell.class, Cell.class, "next");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<KeyCells, Cell> TAIL =
+        AtomicReferenceFieldUpdater.newUpdater(KeyCells.class, Cell.class, "tail");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<KeyCells> SIZE =
+        AtomicIntegerFieldUpdater.newUpdater(KeyCells.class, "size");
+
+    private final Cell<T> first; // the first key inserted
+    private volatile Cell<T> tail; // the last key, or a key shortly before it
+    private volatile int size = 1; // the number of keys that finished being appended
+
+    /**
+     * @param firstKey the first key with this list's value
+     */
+    private KeyCells(T firstKey) {
+      this.first = new Cell<T>(firstKey);
+      this.tail = this.first;
+    }
+
+    /**
+     * Appends a key to the list.
+     *
+     * @param newKey the key to append
+     * @throws IllegalArgumentException if newKey does not compare equal to the list's keys
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void addKey(T newKey) {
+      if (first.key.compareTo(newKey) != 0) {
+        throw new IllegalArgumentException("compareTo for keys in same list must return 0");
+      }
+      Cell<T> cell = new Cell<T>(newKey);
+      while (true) {
+        Cell<T> last = tail;
+        Cell<T> next = last.next;
+        if (next != null) {
+          // Another thread appended a key but has not moved the tail yet
+          TAIL.compareAndSet(this, last, next);
+        } else if (NEXT.compareAndSet(last, null, cell)) {
+          TAIL.compareAndSet(this, last, cell);
+          SIZE.incrementAndGet(this);
+          return;
+        }
+      }
+    }
+
+    /**
+     * @param key the key object to check for
+     * @return true if the list holds a key equal to key
+     */
+    @Override
+    public boolean containsKey(T key) {
+      for (Cell<T> cell = first; cell != null; cell = cell.next) {
+        if (cell.key.equals(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the number of keys that finished being appended to the list
+     */
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Returns the key at a position in the list, by walking the list from its first key.
+     *
+     * @param index the position of the key, in the order the keys were added
+     * @return the key at index
+     * @throws IndexOutOfBoundsException if the list does not have a key at index
+     */
+    @Override
+    public T get(int index) {
+      Cell<T> cell = first;
+      for (int i = 0; i < index && cell != null; i++) {
+        cell = cell.next;
+      }
+      if (index < 0 || cell == null) {
+        throw new IndexOutOfBoundsException("index " + index + " is not within " + size
+            + " keys");
+      }
+      return cell.key;
+    }
+
+    /**
+     * @param o the other KeyList
+     * @return the comparison of the first keys of the two KeyLists
+     */
+    @Override
+    public int compareTo(KeyListInterface<T> o) {
+      return first.key.compareTo(o.get(0));
+    }
+
+    /**
+     * @return a weakly consistent iterator over the keys, in the order they were added
+     */
+    @Override
+    public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        private Cell<T> cell = first; // the cell holding the next key to return
+
+        @Override
+        public boolean hasNext() {
+          return cell != null;
+        }
+
+        @Override
+        public T next() {
+          if (cell == null) {
+            throw new NoSuchElementException("there are no keys left");
+          }
+          T key = cell.key;
+          cell = cell.next;
+          return key;
+        }
+      };
+    }
+  }
+
+  /**
+   * Inserts a key. If a node with an equal key is in the skip list, the key is appended to its
+   * KeyList; otherwise a new node is linked in. This is safe to call from any number of threads.
+   *
+   * @param key object to insert
+   * @return true if the key has a value that was not in the skip list before
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public boolean insertSingleKey(T key) {
+    if (key == null) {
+      throw new NullPointerException("keys cannot be null");
+    }
+    Node<T> existing = findOrLink(key, null);
+    if (existing != null) {
+      existing.keys.addKey(key);
+    }
+    keyCount.increment();
+    modifications.increment();
+    return existing == null;
+  }
+
+  /**
+   * Inserts a new node holding every key of a KeyList, unless the skip list already has a node
+   * with its key.
+   *
+   * @param data the KeyList to insert
+   * @return true if the KeyList was inserted, false if the skip list already holds its key
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the tree.");
+    }
+    // Copy the keys with data's iterator, since get() may have to walk the list for each key
+    Iterator<T> dataKeys = data.iterator();
+    KeyCells<T> keys = new KeyCells<T>(dataKeys.next());
+    while (dataKeys.hasNext()) {
+      keys.addKey(dataKeys.next());
+    }
+    // Other threads can append to keys as soon as it is linked in, and count their own keys, so
+    // only the keys added here are counted
+    int keysAdded = keys.size();
+    if (findOrLink(data.get(0), keys) != null) {
+      return false;
+    }
+    keyCount.add(keysAdded);
+    modifications.increment();
+    return true;
+  }
+
+  /**
+   * @return the number of values in the skip list
+   */
+  @Override
+  public int numKeys() {
+    return (int) keyCount.sum();
+  }
+
+  /**
+   * Returns the number of changes made to the skip list. While other threads insert keys, this is
+   * only a snapshot of a count that keeps growing.
+   *
+   * @return the number of changes made to the skip list
+   */
+  @Override
+  public long modificationCount() {
+    return modifications.sum();
+  }
+
+  /**
+   * @return true, since insertSingleKey() is lock-free and safe from any number of threads
+   */
+  @Override
+  public boolean allowsConcurrentWriters() {
+    return true;
+  }
+
+  /**
+   * @return the number of KeyLists (distinct keys) in the skip list
+   */
+  @Override
+  public int size() {
+    return (int) nodeCount.sum();
+  }
+
+  /**
+   * @return true if the skip list holds no keys
+   */
+  @Override
+  public boolean isEmpty() {
+    return head.next.get(0) == null;
+  }
+
+  /**
+   * Removes all keys from the skip list. This must not be called while other threads insert keys.
+   */
+  @Override
+  public void clear() {
+    head = new Node<T>(null, MAX_LEVEL);
+    keyCount.reset();
+    nodeCount.reset();
+    modifications.increment();
+  }
+
+  /**
+   * Checks whether the skip list holds a KeyList equal to data.
+   *
+   * @param data a comparable for the KeyList to look for
+   * @return true if the skip list holds an equal KeyList
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    if (data == null) {
+      throw new NullPointerException("This tree cannot store null references.");
+    }
+    Node<T> pred = head;
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      Node<T> current = pred.next.get(level);
+      while (current != null) {
+        int compare = data.compareTo(current.keys);
+        if (compare == 0) {
+          return true;
+        } else if (compare < 0) {
+          break;
+        }
+        pred = current;
+        current = pred.next.get(level);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the KeyList holding the smallest key, or null if the skip list is empty
+   */
+  @Override
+  public KeyListInterface<T> firstKeyList() {
+    Node<T> first = head.next.get(0);
+    return (first == null) ? null : first.keys;
+  }
+
+  /**
+   * Returns the KeyList holding the largest key, by following the highest levels to the end of
+   * the skip list in O(log n) expected time.
+   *
+   * @return the KeyList holding the largest key, or null if the skip list is empty
+   */
+  @Override
+  public KeyListInterface<T> lastKeyList() {
+    Node<T> last = head;
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      for (Node<T> next = last.next.get(level); next != null; next = last.next.get(level)) {
+        last = next;
+      }
+    }
+    return last.keys; // the head's keys are null
+  }
+
+  /**
+   * Returns a weakly consistent iterator that does an in-order iteration over the skip list. If an
+   * iteration start point is set, the iteration starts at the smallest key that is equal to or
+   * larger than it.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iteratorFrom(this.startPoint);
+  }
+
+  /**
+   * Returns a weakly consistent iterator that does an in-order iteration over the keys that are
+   * equal to or larger than start.
+   *
+   * @param start the point to start the iteration at, or null to start at the smallest key
+   * @return the iterator over the keys from start onwards
+   */
+  @Override
+  public Iterator<T> iteratorFrom(Comparable<T> start) {
+    return new InOrderIterator(ceilingNode(start), null);
+  }
+
+  /**
+   * Sets the starting point for iterations. Future iterations will start at the starting point or
+   * the key closest to it in the skip list. Passing in null disables the starting point.
+   *
+   * @param startPoint the start point to set for iterations
+   */
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  /**
+   * Returns a weakly consistent iterator that does an in-order iteration over the keys between
+   * lowerBound and upperBound (including keys equal to either bound). The first key is found in
+   * O(log n) expected time.
+   *
+   * @param lowerBound the smallest key to iterate over, or null to start at the smallest key
+   * @param upperBound the largest key to iterate over, or null to end at the largest key
+   * @return the iterator over the keys in the range
+   */
+  @Override
+  public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    return new InOrderIterator(ceilingNode(lowerBound), upperBound);
+  }
+
+  /**
+   * This class iterates in-order over the keys of the skip list, following the bottom list from
+   * node to node and each node's KeyList from key to key.
+   */
+  private class InOrderIterator implements Iterator<T> {
+    private final Comparable<T> upperBound; // the largest key to return, or null for no limit
+    private Node<T> currentNode; // the node holding the next key to return, or null
+    private Cell<T> currentCell; // the cell holding the next key to return
+
+    /**
+     * @param firstNode  the node holding the first key to return, or null if there are no keys
+     * @param upperBound the largest key to return, or null to return every key after firstNode
+     */
+    private InOrderIterator(Node<T> firstNode, Comparable<T> upperBound) {
+      this.upperBound = upperBound;
+      moveTo(firstNode);
+    }
+
+    /**
+     * Moves the cursor to the first key of node, or ends the iteration if node is null or its keys
+     * are larger than the upper bound.
+     *
+     * @param node the node to move to
+     */
+    private void moveTo(Node<T> node) {
+      if (node != null && upperBound != null && upperBound.compareTo(node.keys.first.key) < 0) {
+        node = null;
+      }
+      currentNode = node;
+      currentCell = (node == null) ? null : node.keys.first;
+    }
+
+    /**
+     * @return true if there is another key to return
+     */
+    @Override
+    public boolean hasNext() {
+      return currentNode != null;
+    }
+
+    /**
+     * @return the next key
+     * @throws NoSuchElementException if there are no keys left
+     */
+    @Override
+    public T next() {
+      if (currentNode == null) {
+        throw new NoSuchElementException("there are no keys left");
+      }
+      T key = currentCell.key;
+      currentCell = currentCell.next;
+      if (currentCell == null) {
+        moveTo(currentNode.next.get(0));
+      }
+      return key;
+    }
+  }
+
+  /**
+   * Finds the node holding the smallest key that is equal to or larger than point.
+   *
+   * @param point the key to search for, or null for the smallest key
+   * @return the node holding the smallest key equal to or larger than point, or null if there is
+   *         no such node
+   */
+  private Node<T> ceilingNode(Comparable<T> point) {
+    Node<T> pred = head;
+    if (point == null) {
+      return pred.next.get(0);
+    }
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      Node<T> current = pred.next.get(level);
+      while (current != null && point.compareTo(current.keys.first.key) > 0) {
+        pred = current;
+        current = pred.next.get(level);
+      }
+    }
+    return pred.next.get(0);
+  }
+
+  /**
+   * Finds the node with key's value, or links a new node holding newKeys (or just key, if newKeys
+   * is null) into the skip list if there is none. The new node is part of the skip list once it
+   * is linked into the bottom list; if another thread links a node with the same value first, that
+   * node is returned instead.
+   *
+   * @param key     the value to find
+   * @param newKeys the keys of the node to link in, or null for a node holding only key
+   * @return the node that was already in the skip list, or null if the new node was linked in
+   */
+  @SuppressWarnings("unchecked")
+  private Node<T> findOrLink(T key, KeyCells<T> newKeys) {
+    Node<T> head = this.head;
+    // Most inserts are duplicates of a value already in the skip list, so look for it first
+    // without keeping the nodes the search passes through
+    Node<T> ceiling = ceilingNode(key);
+    if (ceiling != null && key.compareTo(ceiling.keys.first.key) == 0) {
+      return ceiling;
+    }
+    // Arrays of a generic type cannot be created, so wildcard arrays are cast to Node<T>[]
+    Node<T>[] preds = (Node<T>[]) new Node<?>[MAX_LEVEL];
+    Node<T>[] succs = (Node<T>[]) new Node<?>[MAX_LEVEL];
+    Node<T> node = null;
+    while (true) {
+      // 1. Find the last node before key's value, and the node after it, on every level
+      Node<T> pred = head;
+      for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+        Node<T> current = pred.next.get(level);
+        int compare = 1;
+        while (current != null && (compare = key.compareTo(current.keys.first.key)) > 0) {
+          pred = current;
+          current = pred.next.get(level);
+        }
+        if (current != null && compare == 0) {
+          return current;
+        }
+        preds[level] = pred;
+        succs[level] = current;
+      }
+      // 2. Link the new node into the bottom list, or start again if another node was linked in
+      // at its position first
+      if (node == null) {
+        node = new Node<T>((newKeys == null) ? new KeyCells<T>(key) : newKeys, randomLevels());
+      }
+      node.next.set(0, succs[0]);
+      if (preds[0].next.compareAndSet(0, succs[0], node)) {
+        break;
+      }
+    }
+    nodeCount.increment();
+    // 3. Link the node into the index lists above the bottom one, finding its neighbors on a level
+    // again whenever another node was linked in next to it first
+    for (int level = 1; level < node.next.length(); level++) {
+      while (true) {
+        node.next.set(level, succs[level]);
+        if (preds[level].next.compareAndSet(level, succs[level], node)) {
+          break;
+        }
+        Node<T> pred = preds[level];
+        Node<T> current = pred.next.get(level);
+        while (current != null && key.compareTo(current.keys.first.key) > 0) {
+          pred = current;
+          current = pred.next.get(level);
+        }
+        preds[level] = pred;
+        succs[level] = current;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return a random number of levels for a new node, which is k with probability 1 / 2^k
+   */
+  private static int randomLevels() {
+    int bits = ThreadLocalRandom.current().nextInt();
+    int levels = 1;
+    while ((bits & 1) != 0 && levels < MAX_LEVEL) {
+      levels++;
+      bits >>>= 1;
+    }
+    return levels;
+  }
+}
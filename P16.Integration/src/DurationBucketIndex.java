@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * This class indexes movies by their duration in minutes, with one bucket for every minute between
+ * the shortest and longest movie. Since movie durations only span a small range of integers, this
+ * lets duration queries be answered without walking a tree:
+ * <ul>
+ * <li>countInRange() reads two entries of a prefix-count array, so it takes O(1) time</li>
+ * <li>forEachInRange() visits the k movies in a range in O(k) time, jumping over empty minutes</li>
+ * <li>nextDuration() finds the next minute that has movies by scanning a bitset of the occupied
+ * minutes, which checks 64 minutes per word</li>
+ * </ul>
+ * Movies with the same duration are kept in the order they were added, so every query returns
+ * movies in the same order as an in-order iteration over an IterableMultiKeyRBT of the same
+ * movies.
+ *
+ * @author dianakotsonis
+ */
+public class DurationBucketIndex {
+
+  private static final int INITIAL_BUCKET_SIZE = 4; // the number of movies a bucket starts with
+  private static final int MAX_BUCKETS = 1 << 20; // the largest range of durations that is indexed
+
+  private int firstDuration; // the duration of the movies in buckets[0]
+  private Movie[][] buckets = new Movie[0][]; // the movies with each duration, in the order added
+  private int[] bucketSizes = new int[0]; // the number of movies in each bucket
+  private long[] occupied = new long[0]; // bit i is set if bucket i has any movies
+  private int[] prefixCounts; // prefixCounts[i] is the number of movies in the buckets before i,
+                              // or null if it needs to be recomputed after movies were added
+  private int size = 0; // the number of movies in the index
+
+  /**
+   * Adds a movie to the bucket for its duration, growing the range of buckets if needed.
+   *
+   * @param movie the movie to add
+   * @throws IllegalArgumentException if the durations of the movies would span more than
+   *                                  MAX_BUCKETS minutes
+   */
+  public void add(Movie movie) {
+    int duration = movie.getDuration();
+    if (size == 0 && buckets.length == 0) {
+      firstDuration = duration;
+    }
+    if (duration < firstDuration || duration >= firstDuration + buckets.length) {
+      growToInclude(duration);
+    }
+    int bucket = duration - firstDuration;
+    Movie[] bucketMovies = buckets[bucket];
+    if (bucketMovies == null) {
+      bucketMovies = new Movie[INITIAL_BUCKET_SIZE];
+      buckets[bucket] = bucketMovies;
+      occupied[bucket >>> 6] |= 1L << bucket;
+    } else if (bucketSizes[bucket] == bucketMovies.length) {
+      bucketMovies = Arrays.copyOf(bucketMovies, bucketMovies.length * 2);
+      buckets[bucket] = bucketMovies;
+    }
+    bucketMovies[bucketSizes[bucket]++] = movie;
+    size++;
+    prefixCounts = null;
+  }
+
+  /**
+   * @return the number of movies in the index
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return true if there are no movies in the index
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns the movies with a duration, in the order they were added.
+   *
+   * @param duration the duration in minutes
+   * @return the movies with the duration (empty if there are none)
+   */
+  public List<Movie> moviesWithDuration(int duration) {
+    long bucket = (long) duration - firstDuration;
+    if (bucket < 0 || bucket >= buckets.length || buckets[(int) bucket] == null) {
+      return List.of();
+    }
+    return Arrays.asList(buckets[(int) bucket]).subList(0, bucketSizes[(int) bucket]);
+  }
+
+  /**
+   * Counts the movies with a duration between lowerDuration and upperDuration (inclusive) in O(1)
+   * time. The prefix counts are recomputed first if movies were added since the last query.
+   *
+   * @param lowerDuration the shortest duration to count
+   * @param upperDuration the longest duration to count
+   * @return the number of movies in the range
+   */
+  public int countInRange(int lowerDuration, int upperDuration) {
+    if (lowerDuration > upperDuration || size == 0) {
+      return 0;
+    }
+    if (prefixCounts == null) {
+      prefixCounts = new int[buckets.length + 1];
+      for (int i = 0; i < buckets.length; i++) {
+        prefixCounts[i + 1] = prefixCounts[i] + bucketSizes[i];
+      }
+    }
+    int from = clampToBuckets((long) lowerDuration - firstDuration);
+    int to = clampToBuckets((long) upperDuration - firstDuration + 1);
+    return prefixCounts[to] - prefixCounts[from];
+  }
+
+  /**
+   * Passes every movie with a duration between lowerDuration and upperDuration (inclusive) to
+   * action, in order of duration, and in the order they were added for movies with the same
+   * duration. Empty minutes are skipped using the bitset of occupied minutes.
+   *
+   * @param lowerDuration the shortest duration to include
+   * @param upperDuration the longest duration to include
+   * @param action        receives every movie in the range
+   */
+  public void forEachInRange(int lowerDuration, int upperDuration, Consumer<Movie> action) {
+    if (lowerDuration > upperDuration) {
+      return;
+    }
+    int to = clampToBuckets((long) upperDuration - firstDuration + 1);
+    int bucket = nextOccupiedBucket(clampToBuckets((long) lowerDuration - firstDuration));
+    while (bucket >= 0 && bucket < to) {
+      Movie[] bucketMovies = buckets[bucket];
+      for (int i = 0; i < bucketSizes[bucket]; i++) {
+        action.accept(bucketMovies[i]);
+      }
+      bucket = nextOccupiedBucket(bucket + 1);
+    }
+  }
+
+  /**
+   * Finds the shortest duration that is equal to or longer than duration and has any movies.
+   *
+   * @param duration the duration to start looking from
+   * @return the next duration with movies
+   * @throws NoSuchElementException if no movie is at least that long
+   */
+  public int nextDuration(int duration) {
+    int bucket = nextOccupiedBucket(clampToBuckets((long) duration - firstDuration));
+    if (bucket < 0) {
+      throw new NoSuchElementException("no movie is " + duration + " minutes or longer");
+    }
+    return firstDuration + bucket;
+  }
+
+  /**
+   * @return the shortest duration of any movie in the index
+   * @throws NoSuchElementException if the index is empty
+   */
+  public int minDuration() {
+    if (size == 0) {
+      throw new NoSuchElementException("the index is empty");
+    }
+    return nextDuration(firstDuration);
+  }
+
+  /**
+   * @return the longest duration of any movie in the index
+   * @throws NoSuchElementException if the index is empty
+   */
+  public int maxDuration() {
+    // Scan the bitset backwards for the last occupied bucket
+    for (int word = occupied.length - 1; word >= 0; word--) {
+      if (occupied[word] != 0) {
+        return firstDuration + word * 64 + 63 - Long.numberOfLeadingZeros(occupied[word]);
+      }
+    }
+    throw new NoSuchElementException("the index is empty");
+  }
+
+  /**
+   * Finds the first bucket at or after bucket that has any movies.
+   *
+   * @param bucket the index of the bucket to start looking from
+   * @return the index of the next occupied bucket, or -1 if there is none
+   */
+  private int nextOccupiedBucket(int bucket) {
+    int word = bucket >>> 6;
+    if (word >= occupied.length) {
+      return -1;
+    }
+    // Ignore the bits of the buckets before bucket in its word
+    long bits = occupied[word] & (-1L << bucket);
+    while (bits == 0) {
+      if (++word == occupied.length) {
+        return -1;
+      }
+      bits = occupied[word];
+    }
+    return word * 64 + Long.numberOfTrailingZeros(bits);
+  }
+
+  /**
+   * @param bucket the index of a bucket, which may be outside of the buckets
+   * @return the index moved to between 0 and the number of buckets (inclusive)
+   */
+  private int clampToBuckets(long bucket) {
+    return (int) Math.max(0, Math.min(bucket, buckets.length));
+  }
+
+  /**
+   * Grows the range of buckets (at least doubling it) so that it includes duration, keeping every
+   * movie in the bucket for its duration.
+   *
+   * @param duration the duration that needs a bucket
+   * @throws IllegalArgumentException if the range would be larger than MAX_BUCKETS
+   */
+  private void growToInclude(int duration) {
+    long range = Math.max((long) firstDuration + buckets.length, (long) duration + 1)
+        - Math.min(firstDuration, duration);
+    if (range > MAX_BUCKETS) {
+      throw new IllegalArgumentException("movie durations span more than " + MAX_BUCKETS
+          + " minutes");
+    }
+    int lastDuration = firstDuration + buckets.length - 1;
+    int newFirst = firstDuration;
+    int newLength = Math.max(buckets.length * 2, 64);
+    if (duration < firstDuration) {
+      // Grow downwards, leaving the extra room below the current buckets
+      newFirst = Math.min(duration, lastDuration + 1 - newLength);
+      newLength = lastDuration + 1 - newFirst;
+    } else {
+      newLength = Math.max(newLength, duration - firstDuration + 1);
+    }
+    int shift = firstDuration - newFirst;
+    Movie[][] newBuckets = new Movie[newLength][];
+    int[] newSizes = new int[newLength];
+    System.arraycopy(buckets, 0, newBuckets, shift, buckets.length);
+    System.arraycopy(bucketSizes, 0, newSizes, shift, bucketSizes.length);
+    long[] newOccupied = new long[(newLength + 63) >>> 6];
+    for (int i = 0; i < newLength; i++) {
+      if (newBuckets[i] != null) {
+        newOccupied[i >>> 6] |= 1L << i;
+      }
+    }
+    firstDuration = newFirst;
+    buckets = newBuckets;
+    bucketSizes = newSizes;
+    occupied = newOccupied;
+  }
+}
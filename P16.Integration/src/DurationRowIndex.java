@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * This class indexes the rows of a column store (such as MovieTable) by duration. It is an int
+ * array of every row id sorted by duration, with rows of the same duration in row id order, so
+ * the rows in any range of durations are next to each other in the index. The first row in a
+ * range is found with a binary search.
+ * <p>
+ * The index is built once from a durations column and is not updated when rows are added, so it
+ * has to be rebuilt after rows are added.
+ *
+ * @author dianakotsonis
+ */
+public class DurationRowIndex {
+
+  private static final int MAX_COUNTING_RANGE = 1 << 20; // the largest range of durations that
+                                                         // is sorted with a counting sort
+
+  private final int[] durations; // the durations column the index was built from
+  private final int[] rows; // every row id, sorted by duration and then by row id
+
+  /**
+   * Builds the index of the first rowCount rows of a durations column. Rows are sorted with a
+   * counting sort when their durations span at most MAX_COUNTING_RANGE minutes, and otherwise by
+   * sorting (duration, row id) pairs packed into longs.
+   *
+   * @param durations the duration of each row
+   * @param rowCount  the number of rows to index
+   */
+  public DurationRowIndex(int[] durations, int rowCount) {
+    this.durations = durations;
+    this.rows = new int[rowCount];
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int row = 0; row < rowCount; row++) {
+      min = Math.min(min, durations[row]);
+      max = Math.max(max, durations[row]);
+    }
+    if (rowCount == 0) {
+      // There is nothing to sort
+    } else if ((long) max - min < MAX_COUNTING_RANGE) {
+      // Count the rows of every duration, then place each row after the shorter rows
+      int[] starts = new int[max - min + 2];
+      for (int row = 0; row < rowCount; row++) {
+        starts[durations[row] - min + 1]++;
+      }
+      for (int i = 1; i < starts.length; i++) {
+        starts[i] += starts[i - 1];
+      }
+      for (int row = 0; row < rowCount; row++) {
+        rows[starts[durations[row] - min]++] = row;
+      }
+    } else {
+      long[] pairs = new long[rowCount];
+      for (int row = 0; row < rowCount; row++) {
+        pairs[row] = ((long) durations[row] << 32) | row;
+      }
+      Arrays.sort(pairs);
+      for (int i = 0; i < rowCount; i++) {
+        rows[i] = (int) pairs[i];
+      }
+    }
+  }
+
+  /**
+   * @return the number of rows in the index
+   */
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * @param position a position in the index
+   * @return the row id at that position
+   */
+  public int rowAt(int position) {
+    return rows[position];
+  }
+
+  /**
+   * Finds the first position in the index whose row is at least duration minutes long.
+   *
+   * @param duration the duration to search for
+   * @return the position, or size() if every row is shorter
+   */
+  public int firstAtLeast(long duration) {
+    int low = 0;
+    int high = rows.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (durations[rows[middle]] < duration) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Finds the first position in the index whose row is longer than duration minutes, so the rows
+   * between firstAtLeast(lower) and firstAfter(upper) have a duration between lower and upper.
+   *
+   * @param duration the duration to search for
+   * @return the position, or size() if no row is longer
+   */
+  public int firstAfter(int duration) {
+    return firstAtLeast((long) duration + 1);
+  }
+
+  /**
+   * @return the shortest duration of any row
+   * @throws NoSuchElementException if the index is empty
+   */
+  public int minDuration() {
+    if (rows.length == 0) {
+      throw new NoSuchElementException("there are no rows");
+    }
+    return durations[rows[0]];
+  }
+
+  /**
+   * @return the longest duration of any row
+   * @throws NoSuchElementException if the index is empty
+   */
+  public int maxDuration() {
+    if (rows.length == 0) {
+      throw new NoSuchElementException("there are no rows");
+    }
+    return durations[rows[rows.length - 1]];
+  }
+}
@@ -11,7 +11,7 @@ import java.util.Scanner;
  */
 public class FrontendDeveloper implements FrontendInterface {
   Scanner scanner;
-  IterableMultiKeyRBT movies;
+  IterableMultiKeySortedCollectionInterface<Movie> movies;
   int num = 0; // This number allows the placeholder class to return the correct response for the
   // integration test methods
 
@@ -25,7 +25,7 @@ public class FrontendDeveloper implements FrontendInterface {
    */
   public FrontendDeveloper(Scanner userInput, BackendDeveloperIndividual backend) {
     this.scanner = userInput;
-    this.movies = backend.movieList;
+    this.movies = backend.getMovieTree();
   }
 
   /**
@@ -0,0 +1,667 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class is a Red-Black-Tree that stores multiple values per key, like IterableMultiKeyRBT,
+ * but is specialized for values that are ordered by an int (such as movies ordered by their
+ * duration). Each value's int key is computed once when it is inserted, and the tree is walked by
+ * comparing plain ints instead of calling compareTo() on KeyList and Movie objects.
+ * <p>
+ * The tree does not use node objects. Node i is described by the i-th entry of parallel arrays:
+ * its int key, its parent, left and right children, its color, and a compact array holding the
+ * values with its key (in the order they were inserted). Index 0 is an empty (black) node that
+ * every leaf points to. Inserting, looking up keys and iterating over a range of int keys do not
+ * create any objects, apart from growing the arrays and creating the iterator.
+ * <p>
+ * The methods of IterableMultiKeySortedCollectionInterface that take Comparable bounds compare
+ * them to the stored values instead of ints, since the int key of a Comparable cannot be computed
+ * (except by contains(), when it is given a KeyList whose values have int keys).
+ *
+ * @author dianakotsonis
+ * @param <T> The data type of the values being inserted into the RBT
+ */
+public class IntKeyedMultiKeyRBT<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  private static final int NIL = 0; // the index of the empty node that leaves point to
+  private static final byte RED = 0;
+  private static final byte BLACK = 1;
+  private static final int INITIAL_CAPACITY = 16; // the number of nodes the arrays start with
+  private static final int INITIAL_VALUE_CAPACITY = 2; // the number of values a node starts with
+
+  private final ToIntFunction<T> keyOf; // computes the int key of each value
+  private int[] keys; // the int key of each node
+  private int[] parents; // the index of each node's parent
+  private int[] lefts; // the index of each node's left child
+  private int[] rights; // the index of each node's right child
+  private byte[] colors; // the color of each node, RED or BLACK
+  private Object[][] values; // the values stored in each node, in the order they were inserted
+  private int[] valueCounts; // the number of values stored in each node
+  private int root = NIL; // the index of the root node
+  private int nodeCount = 0; // the number of nodes (distinct keys) in the tree
+  private int numKeys = 0; // the number of values in the tree (including duplicates)
+  private Comparable<T> startPoint; // the point the iterator should start at
+  private long modificationCount = 0; // the number of changes made to the tree
+
+  /**
+   * Creates an empty tree that orders its values by keyOf.
+   *
+   * @param keyOf computes the int key of each value. Values with the same key must compare equal
+   *              with compareTo(), and values with smaller keys must compare smaller.
+   */
+  public IntKeyedMultiKeyRBT(ToIntFunction<T> keyOf) {
+    if (keyOf == null) {
+      throw new NullPointerException("keyOf cannot be null");
+    }
+    this.keyOf = keyOf;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Inserts value into the tree. If a value with the same int key is already in the tree, value is
+   * appended to that key's values.
+   *
+   * @param value object to insert
+   * @return true if a new key was added to the tree, false if the key was already in the tree
+   * @throws NullPointerException if value is null
+   */
+  @Override
+  public boolean insertSingleKey(T value) {
+    if (value == null) {
+      throw new NullPointerException("keys cannot be null");
+    }
+    int key = keyOf.applyAsInt(value);
+    modificationCount++;
+    // Walk down the tree to the node with this key, or to the empty position where it belongs
+    int parent = NIL;
+    int current = root;
+    while (current != NIL) {
+      if (key == keys[current]) {
+        appendValue(current, value);
+        numKeys++;
+        return false;
+      }
+      parent = current;
+      current = (key < keys[current]) ? lefts[current] : rights[current];
+    }
+
+    // Link a new red node into the empty position, and rebalance the tree from it
+    int node = newNode(key, parent);
+    if (parent == NIL) {
+      root = node;
+    } else if (key < keys[parent]) {
+      lefts[parent] = node;
+    } else {
+      rights[parent] = node;
+    }
+    appendValue(node, value);
+    numKeys++;
+    enforceRBTreePropertiesAfterInsert(node);
+    return true;
+  }
+
+  /**
+   * Inserts every value stored in a KeyList into the tree.
+   *
+   * @param data the KeyList whose values should be inserted
+   * @return true if a new key was added to the tree
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the tree.");
+    }
+    boolean inserted = false;
+    for (T value : data) {
+      inserted |= insertSingleKey(value);
+    }
+    return inserted;
+  }
+
+  /**
+   * Checks if the tree stores any values that compare equal to the values in data. When data is a
+   * KeyList, the int key of its first value is compared to the nodes' keys directly, so no objects
+   * are created. Any other Comparable is compared to a view of each node's values, which is reused
+   * for every node on the way down.
+   *
+   * @param data the KeyList to search for
+   * @return true if there is a value in the tree equal to data's values
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    if (data instanceof KeyListInterface) {
+      @SuppressWarnings("unchecked")
+      KeyListInterface<T> keyList = (KeyListInterface<T>) data;
+      return keyList.size() > 0 && containsKey(keyOf.applyAsInt(keyList.get(0)));
+    }
+    int current = root;
+    ValueList view = new ValueList(current);
+    while (current != NIL) {
+      view.node = current;
+      int compare = data.compareTo(view);
+      if (compare == 0) {
+        return true;
+      }
+      current = (compare < 0) ? lefts[current] : rights[current];
+    }
+    return false;
+  }
+
+  /**
+   * Checks if the tree stores any values with the given int key, without creating any objects.
+   *
+   * @param key the int key to search for
+   * @return true if there is a value with the key in the tree
+   */
+  public boolean containsKey(int key) {
+    return findNode(key) != NIL;
+  }
+
+  /**
+   * Counts the values stored with the given int key.
+   *
+   * @param key the int key to search for
+   * @return the number of values with the key
+   */
+  public int valueCount(int key) {
+    int node = findNode(key);
+    return (node == NIL) ? 0 : valueCounts[node];
+  }
+
+  /**
+   * @return the number of nodes (distinct keys) in the tree
+   */
+  @Override
+  public int size() {
+    return this.nodeCount;
+  }
+
+  /**
+   * @return true if the tree is empty
+   */
+  @Override
+  public boolean isEmpty() {
+    return this.nodeCount == 0;
+  }
+
+  /**
+   * Removes all values from the tree.
+   */
+  @Override
+  public void clear() {
+    allocate(INITIAL_CAPACITY);
+    this.root = NIL;
+    this.nodeCount = 0;
+    this.numKeys = 0;
+    this.modificationCount++;
+  }
+
+  /**
+   * @return the number of values in the tree.
+   */
+  @Override
+  public int numKeys() {
+    return this.numKeys;
+  }
+
+  /**
+   * @return the number of changes made to the tree
+   */
+  @Override
+  public long modificationCount() {
+    return this.modificationCount;
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the tree. If an iteration start point
+   * is set, the iteration starts at the smallest value that is equal to or larger than it.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iteratorFrom(this.startPoint);
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the tree, starting at the smallest
+   * value that is equal to or larger than start. The start is kept by the iterator instead of the
+   * tree, so iterators with different starts do not affect each other.
+   *
+   * @param start the point to start the iteration at, or null to start at the smallest value
+   * @return the iterator over the values from start onwards
+   */
+  @Override
+  public Iterator<T> iteratorFrom(Comparable<T> start) {
+    return new InOrderIterator(ceilingNode(start), false, 0);
+  }
+
+  /**
+   * Sets the starting point for iterations. Future iterations will start at the starting point or
+   * the key closest to it in the tree. This setting is remembered until it is reset. Passing in
+   * null disables the starting point. iterator() is the same as iteratorFrom(startPoint).
+   *
+   * @param startPoint the start point to set for iterations
+   */
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the values between lowerBound and
+   * upperBound (including values equal to either bound). The bounds are compared to the stored
+   * values with compareTo(), so rangeIterator(int, int) should be used when the int keys of the
+   * bounds are known.
+   *
+   * @param lowerBound the smallest value to iterate over, or null to start at the smallest value
+   * @param upperBound the largest value to iterate over, or null to end at the largest value
+   * @return the iterator over the values in the range
+   */
+  @Override
+  public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    if (upperBound == null) {
+      return new InOrderIterator(ceilingNode(lowerBound), false, 0);
+    }
+    // Find the largest key whose values are all equal to or smaller than upperBound
+    int floor = NIL;
+    int current = root;
+    while (current != NIL) {
+      if (upperBound.compareTo(firstValue(current)) >= 0) {
+        floor = current;
+        current = rights[current];
+      } else {
+        current = lefts[current];
+      }
+    }
+    if (floor == NIL) {
+      return new InOrderIterator(NIL, false, 0);
+    }
+    return new InOrderIterator(ceilingNode(lowerBound), true, keys[floor]);
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the values whose int keys are between
+   * lowerKey and upperKey (inclusive). The first value is found in O(log n) time by comparing ints,
+   * and the iteration stops at the first key larger than upperKey.
+   *
+   * @param lowerKey the smallest int key to iterate over
+   * @param upperKey the largest int key to iterate over
+   * @return the iterator over the values in the range
+   */
+  public Iterator<T> rangeIterator(int lowerKey, int upperKey) {
+    int ceiling = NIL;
+    int current = root;
+    while (current != NIL) {
+      if (lowerKey <= keys[current]) {
+        ceiling = current;
+        current = lefts[current];
+      } else {
+        current = rights[current];
+      }
+    }
+    return new InOrderIterator(ceiling, true, upperKey);
+  }
+
+  /**
+   * @return the values with the smallest key, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<T> firstKeyList() {
+    int node = leftmost(root);
+    return (node == NIL) ? null : new ValueList(node);
+  }
+
+  /**
+   * @return the values with the largest key, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<T> lastKeyList() {
+    int node = root;
+    while (node != NIL && rights[node] != NIL) {
+      node = rights[node];
+    }
+    return (node == NIL) ? null : new ValueList(node);
+  }
+
+  /**
+   * This class is a read-only view of the values stored in one node of the tree, so they can be
+   * returned as a KeyListInterface.
+   */
+  private class ValueList implements KeyListInterface<T> {
+    private int node; // the index of the node whose values are viewed (only changed by
+                      // contains(), which moves one view down the tree)
+
+    /**
+     * @param node the index of the node whose values are viewed
+     */
+    private ValueList(int node) {
+      this.node = node;
+    }
+
+    /**
+     * Adds another value to the node. The value must have the node's int key.
+     *
+     * @param newKey the value to add
+     * @throws IllegalArgumentException if newKey does not have the node's key
+     */
+    @Override
+    public void addKey(T newKey) {
+      if (keyOf.applyAsInt(newKey) != keys[node]) {
+        throw new IllegalArgumentException("compareTo for keys in same list must return 0");
+      }
+      appendValue(node, newKey);
+      numKeys++;
+    }
+
+    /**
+     * @param key the value to check for
+     * @return true if the node stores a value equal to key
+     */
+    @Override
+    public boolean containsKey(T key) {
+      for (int i = 0; i < valueCounts[node]; i++) {
+        if (values[node][i].equals(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the number of values stored in the node
+     */
+    @Override
+    public int size() {
+      return valueCounts[node];
+    }
+
+    /**
+     * @param index the position of a value, in the order the values were added
+     * @return the value at index
+     * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+      if (index < 0 || index >= valueCounts[node]) {
+        throw new IndexOutOfBoundsException("index " + index + " is not within "
+            + valueCounts[node] + " values");
+      }
+      return (T) values[node][index];
+    }
+
+    /**
+     * Compares the values in this node to the values in another KeyList.
+     *
+     * @param o the other KeyList
+     * @return the result of comparing the first values of both lists
+     */
+    @Override
+    public int compareTo(KeyListInterface<T> o) {
+      return firstValue(node).compareTo(o.get(0));
+    }
+
+    /**
+     * @return an iterator over the node's values, in the order they were inserted
+     */
+    @Override
+    public Iterator<T> iterator() {
+      return new InOrderIterator(node, true, keys[node]);
+    }
+  }
+
+  /**
+   * This class iterates in-order over the values of the tree, starting at a given node. It keeps
+   * the index of the node whose values are being returned and the index of the next value within
+   * that node, and moves to the next node by following the parent indexes.
+   */
+  private class InOrderIterator implements Iterator<T> {
+    private int currentNode; // the node holding the next value, or NIL when there are no more
+    private int currentValue; // the index of the next value in currentNode
+    private final boolean bounded; // true if the iteration stops after upperKey
+    private final int upperKey; // the largest key to return, when bounded
+
+    /**
+     * @param firstNode the node holding the first value to return, or NIL if there are none
+     * @param bounded   true if the iteration should stop after the values with upperKey
+     * @param upperKey  the largest int key to return, when bounded
+     */
+    private InOrderIterator(int firstNode, boolean bounded, int upperKey) {
+      this.bounded = bounded;
+      this.upperKey = upperKey;
+      this.currentNode = (bounded && firstNode != NIL && keys[firstNode] > upperKey) ? NIL
+          : firstNode;
+    }
+
+    /**
+     * @return true if there is another value to return
+     */
+    @Override
+    public boolean hasNext() {
+      return currentNode != NIL;
+    }
+
+    /**
+     * @return the next value
+     * @throws NoSuchElementException if there are no values left
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (currentNode == NIL) {
+        throw new NoSuchElementException("there are no values left");
+      }
+      T value = (T) values[currentNode][currentValue++];
+      if (currentValue == valueCounts[currentNode]) {
+        currentValue = 0;
+        currentNode = successor(currentNode);
+        if (bounded && currentNode != NIL && keys[currentNode] > upperKey) {
+          currentNode = NIL;
+        }
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Finds the node with the given int key.
+   *
+   * @param key the key to search for
+   * @return the index of the node, or NIL if the key is not in the tree
+   */
+  private int findNode(int key) {
+    int current = root;
+    while (current != NIL && keys[current] != key) {
+      current = (key < keys[current]) ? lefts[current] : rights[current];
+    }
+    return current;
+  }
+
+  /**
+   * Finds the node holding the smallest values that are equal to or larger than point.
+   *
+   * @param point the value to search for, or null for the smallest values in the tree
+   * @return the index of the node, or NIL if there is no such node
+   */
+  private int ceilingNode(Comparable<T> point) {
+    if (point == null) {
+      return leftmost(root);
+    }
+    int ceiling = NIL;
+    int current = root;
+    while (current != NIL) {
+      if (point.compareTo(firstValue(current)) <= 0) {
+        ceiling = current;
+        current = lefts[current];
+      } else {
+        current = rights[current];
+      }
+    }
+    return ceiling;
+  }
+
+  /**
+   * @param node the index of a node
+   * @return the first value stored in the node
+   */
+  @SuppressWarnings("unchecked")
+  private T firstValue(int node) {
+    return (T) values[node][0];
+  }
+
+  /**
+   * @param node the index of the root of a subtree
+   * @return the index of the left-most node in the subtree, or NIL if it is empty
+   */
+  private int leftmost(int node) {
+    while (node != NIL && lefts[node] != NIL) {
+      node = lefts[node];
+    }
+    return node;
+  }
+
+  /**
+   * @param node the index of a node
+   * @return the index of the next node in-order, or NIL if node has the largest key
+   */
+  private int successor(int node) {
+    if (rights[node] != NIL) {
+      return leftmost(rights[node]);
+    }
+    // Move up until we move up from a left child, that parent is the next node
+    int parent = parents[node];
+    while (parent != NIL && node == rights[parent]) {
+      node = parent;
+      parent = parents[node];
+    }
+    return parent;
+  }
+
+  /**
+   * Creates a new red node with no children or values, growing the arrays if they are full.
+   *
+   * @param key    the int key of the node
+   * @param parent the index of the node's parent
+   * @return the index of the new node
+   */
+  private int newNode(int key, int parent) {
+    int node = ++nodeCount;
+    if (node == keys.length) {
+      int capacity = keys.length * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      lefts = Arrays.copyOf(lefts, capacity);
+      rights = Arrays.copyOf(rights, capacity);
+      colors = Arrays.copyOf(colors, capacity);
+      values = Arrays.copyOf(values, capacity);
+      valueCounts = Arrays.copyOf(valueCounts, capacity);
+    }
+    keys[node] = key;
+    parents[node] = parent;
+    colors[node] = RED;
+    values[node] = new Object[INITIAL_VALUE_CAPACITY];
+    return node;
+  }
+
+  /**
+   * Adds a value to the end of a node's values, growing its array if it is full.
+   *
+   * @param node  the index of the node
+   * @param value the value to add
+   */
+  private void appendValue(int node, T value) {
+    Object[] nodeValues = values[node];
+    if (valueCounts[node] == nodeValues.length) {
+      nodeValues = Arrays.copyOf(nodeValues, nodeValues.length * 2);
+      values[node] = nodeValues;
+    }
+    nodeValues[valueCounts[node]++] = value;
+  }
+
+  /**
+   * Replaces the node arrays with empty arrays.
+   *
+   * @param capacity the number of nodes the arrays can hold (including the NIL node)
+   */
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    parents = new int[capacity];
+    lefts = new int[capacity];
+    rights = new int[capacity];
+    colors = new byte[capacity];
+    values = new Object[capacity][];
+    valueCounts = new int[capacity];
+    colors[NIL] = BLACK;
+  }
+
+  /**
+   * Restores the red-black properties after node was inserted as a red leaf, by recoloring nodes
+   * while node's parent and its sibling are both red, and then rotating once or twice.
+   *
+   * @param node the index of the node that was just inserted
+   */
+  private void enforceRBTreePropertiesAfterInsert(int node) {
+    while (colors[parents[node]] == RED) {
+      int parent = parents[node];
+      int grandparent = parents[parent];
+      boolean parentIsLeftChild = lefts[grandparent] == parent;
+      int sibling = parentIsLeftChild ? rights[grandparent] : lefts[grandparent];
+      if (colors[sibling] == RED) {
+        // Case 1: the parent's sibling is red, so recolor and continue from the grandparent
+        colors[parent] = BLACK;
+        colors[sibling] = BLACK;
+        colors[grandparent] = RED;
+        node = grandparent;
+        continue;
+      }
+      if (parentIsLeftChild != (lefts[parent] == node)) {
+        // Case 3: node is on the inside, so rotate it into its parent's position first
+        rotate(node, parent);
+        node = parent;
+        parent = parents[node];
+      }
+      // Case 2: node and its parent are on the same side, so rotate the parent above the
+      // grandparent and swap their colors
+      rotate(parent, grandparent);
+      colors[parent] = BLACK;
+      colors[grandparent] = RED;
+    }
+    colors[root] = BLACK;
+  }
+
+  /**
+   * Rotates child into parent's position, making parent child's child.
+   *
+   * @param child  the index of the child being rotated up
+   * @param parent the index of child's parent
+   */
+  private void rotate(int child, int parent) {
+    int grandparent = parents[parent];
+    if (lefts[parent] == child) {
+      // Right rotation: child's right subtree becomes parent's left subtree
+      lefts[parent] = rights[child];
+      if (rights[child] != NIL) {
+        parents[rights[child]] = parent;
+      }
+      rights[child] = parent;
+    } else {
+      // Left rotation: child's left subtree becomes parent's right subtree
+      rights[parent] = lefts[child];
+      if (lefts[child] != NIL) {
+        parents[lefts[child]] = parent;
+      }
+      lefts[child] = parent;
+    }
+    parents[parent] = child;
+    parents[child] = grandparent;
+    if (grandparent == NIL) {
+      root = child;
+    } else if (lefts[grandparent] == parent) {
+      lefts[grandparent] = child;
+    } else {
+      rights[grandparent] = child;
+    }
+  }
+}
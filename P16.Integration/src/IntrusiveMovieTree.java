@@ -0,0 +1,557 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is a Red-Black-Tree of movies ordered by duration, like an IterableMultiKeyRBT of
+ * Movie objects, but it uses the Movie objects themselves as its nodes. The first movie inserted
+ * with each duration is linked into the tree through its up, downLeft and downRight fields, and
+ * stores its color in its color field. Every later movie with the same duration is appended to a
+ * chain that starts at that first movie and is linked through nextSameDuration (the first movie
+ * also remembers the end of the chain in lastSameDuration, so appending does not walk the chain).
+ * <p>
+ * Since no KeyList, node or linked list objects are created, a loaded catalog costs one object
+ * per movie plus its Strings. In exchange, a Movie can only be in one IntrusiveMovieTree at a
+ * time: inserting a movie that is already in a tree throws an IllegalArgumentException, and
+ * clear() unlinks every movie so they can be inserted again.
+ *
+ * @author dianakotsonis
+ */
+public class IntrusiveMovieTree implements IterableMultiKeySortedCollectionInterface<Movie> {
+
+  private static final byte NOT_IN_TREE = 0; // the color of a movie that is not in any tree
+  private static final byte RED = 1;
+  private static final byte BLACK = 2;
+  private static final byte CHAINED = 3; // the color of a movie in another movie's chain
+
+  private Movie root; // the root of the tree, or null if the tree is empty
+  private int size = 0; // the number of movies linked into the tree (distinct durations)
+  private int numKeys = 0; // the number of movies in the tree (including chained movies)
+  private Comparable<Movie> startPoint; // the point the iterator should start at
+  private long modificationCount = 0; // the number of changes made to the tree
+
+  /**
+   * Inserts a movie into the tree. If a movie with the same duration is already in the tree, the
+   * movie is appended to the end of that duration's chain.
+   *
+   * @param movie the movie to insert
+   * @return true if a new duration was added to the tree, false if it was already in the tree
+   * @throws NullPointerException     if movie is null
+   * @throws IllegalArgumentException if movie is already in an IntrusiveMovieTree
+   */
+  @Override
+  public boolean insertSingleKey(Movie movie) {
+    if (movie == null) {
+      throw new NullPointerException("keys cannot be null");
+    }
+    if (movie.color != NOT_IN_TREE) {
+      throw new IllegalArgumentException("movie is already in an IntrusiveMovieTree");
+    }
+    modificationCount++;
+    // Walk down the tree to the movie with this duration, or to the empty position where it belongs
+    int duration = movie.getDuration();
+    Movie parent = null;
+    Movie current = root;
+    while (current != null) {
+      if (duration == current.getDuration()) {
+        appendToChain(current, movie);
+        return false;
+      }
+      parent = current;
+      current = (duration < current.getDuration()) ? current.downLeft : current.downRight;
+    }
+
+    // Link the movie into the empty position as a red leaf, and rebalance the tree from it
+    movie.up = parent;
+    movie.color = RED;
+    movie.lastSameDuration = movie;
+    movie.sameDurationCount = 1;
+    if (parent == null) {
+      root = movie;
+    } else if (duration < parent.getDuration()) {
+      parent.downLeft = movie;
+    } else {
+      parent.downRight = movie;
+    }
+    size++;
+    numKeys++;
+    enforceRBTreePropertiesAfterInsert(movie);
+    return true;
+  }
+
+  /**
+   * Inserts every movie stored in a KeyList into the tree.
+   *
+   * @param data the KeyList whose movies should be inserted
+   * @return true if a new duration was added to the tree
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<Movie> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the tree.");
+    }
+    boolean inserted = false;
+    for (Movie movie : data) {
+      inserted |= insertSingleKey(movie);
+    }
+    return inserted;
+  }
+
+  /**
+   * Checks if the tree stores any movies that compare equal to the movies in data.
+   *
+   * @param data the KeyList to search for
+   * @return true if there is a movie in the tree equal to data's movies
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<Movie>> data) {
+    Movie current = root;
+    while (current != null) {
+      int compare = data.compareTo(new DurationList(current));
+      if (compare == 0) {
+        return true;
+      }
+      current = (compare < 0) ? current.downLeft : current.downRight;
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of movies linked into the tree (the number of distinct durations)
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return true if the tree is empty
+   */
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Removes all movies from the tree, unlinking every movie so that it can be inserted into a tree
+   * again. This visits every movie, so it takes O(n) time.
+   */
+  @Override
+  public void clear() {
+    // Unlink the tree without recursion, by rotating every left child up until there is none,
+    // and then moving on to the right child
+    Movie current = root;
+    while (current != null) {
+      if (current.downLeft != null) {
+        Movie left = current.downLeft;
+        current.downLeft = left.downRight;
+        left.downRight = current;
+        current = left;
+        continue;
+      }
+      Movie next = current.downRight;
+      Movie chained = current;
+      while (chained != null) {
+        Movie nextChained = chained.nextSameDuration;
+        chained.up = null;
+        chained.downRight = null;
+        chained.nextSameDuration = null;
+        chained.lastSameDuration = null;
+        chained.sameDurationCount = 0;
+        chained.color = NOT_IN_TREE;
+        chained = nextChained;
+      }
+      current = next;
+    }
+    this.root = null;
+    this.size = 0;
+    this.numKeys = 0;
+    this.modificationCount++;
+  }
+
+  /**
+   * @return the number of movies in the tree.
+   */
+  @Override
+  public int numKeys() {
+    return this.numKeys;
+  }
+
+  /**
+   * @return the number of changes made to the tree
+   */
+  @Override
+  public long modificationCount() {
+    return this.modificationCount;
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the tree. Movies with the same
+   * duration are returned in the order they were inserted. If an iteration start point is set,
+   * the iteration starts at the shortest movie that is equal to or longer than it.
+   */
+  @Override
+  public Iterator<Movie> iterator() {
+    return iteratorFrom(this.startPoint);
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the tree, starting at the shortest
+   * movie that is equal to or longer than start. The start is kept by the iterator instead of the
+   * tree, so iterators with different starts do not affect each other.
+   *
+   * @param start the point to start the iteration at, or null to start at the shortest movie
+   * @return the iterator over the movies from start onwards
+   */
+  @Override
+  public Iterator<Movie> iteratorFrom(Comparable<Movie> start) {
+    return new InOrderIterator(ceilingMovie(start), null);
+  }
+
+  /**
+   * Sets the starting point for iterations. Future iterations will start at the starting point or
+   * the key closest to it in the tree. This setting is remembered until it is reset. Passing in
+   * null disables the starting point. iterator() is the same as iteratorFrom(startPoint).
+   *
+   * @param startPoint the start point to set for iterations
+   */
+  @Override
+  public void setIterationStartPoint(Comparable<Movie> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the movies between lowerBound and
+   * upperBound (including movies equal to either bound). The first movie is found in O(log n)
+   * time, and the iteration stops at the first duration larger than upperBound.
+   *
+   * @param lowerBound the shortest movie to iterate over, or null to start at the shortest movie
+   * @param upperBound the longest movie to iterate over, or null to end at the longest movie
+   * @return the iterator over the movies in the range
+   */
+  @Override
+  public Iterator<Movie> rangeIterator(Comparable<Movie> lowerBound,
+      Comparable<Movie> upperBound) {
+    return new InOrderIterator(ceilingMovie(lowerBound), upperBound);
+  }
+
+  /**
+   * @return the movies with the shortest duration, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<Movie> firstKeyList() {
+    Movie first = leftmost(root);
+    return (first == null) ? null : new DurationList(first);
+  }
+
+  /**
+   * @return the movies with the longest duration, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<Movie> lastKeyList() {
+    Movie last = root;
+    while (last != null && last.downRight != null) {
+      last = last.downRight;
+    }
+    return (last == null) ? null : new DurationList(last);
+  }
+
+  /**
+   * This class is a view of the chain of movies that have the same duration, so they can be
+   * returned as a KeyListInterface. Its size() is counted on the chain's first movie, so it takes
+   * O(1) time, but get() walks the chain (see get()).
+   */
+  private class DurationList implements KeyListInterface<Movie> {
+    private final Movie first; // the movie linked into the tree for this duration
+
+    /**
+     * @param first the movie linked into the tree for the duration being viewed
+     */
+    private DurationList(Movie first) {
+      this.first = first;
+    }
+
+    /**
+     * Appends another movie with the same duration to the chain.
+     *
+     * @param newKey the movie to add
+     * @throws IllegalArgumentException if newKey has a different duration, or is already in an
+     *                                  IntrusiveMovieTree
+     */
+    @Override
+    public void addKey(Movie newKey) {
+      if (first.compareTo(newKey) != 0) {
+        throw new IllegalArgumentException("compareTo for keys in same list must return 0");
+      }
+      if (newKey.color != NOT_IN_TREE) {
+        throw new IllegalArgumentException("movie is already in an IntrusiveMovieTree");
+      }
+      appendToChain(first, newKey);
+    }
+
+    /**
+     * @param key the movie to check for
+     * @return true if the chain holds a movie equal to key
+     */
+    @Override
+    public boolean containsKey(Movie key) {
+      for (Movie movie = first; movie != null; movie = movie.nextSameDuration) {
+        if (movie.equals(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the number of movies in the chain
+     */
+    @Override
+    public int size() {
+      return first.sameDurationCount;
+    }
+
+    /**
+     * Returns the movie at a position in the chain by walking the chain from its first movie, so
+     * this takes O(index) time. It is meant for reading the first movies of the chain: to visit
+     * every movie, use iterator() instead, since calling get() for every index takes O(k^2) time
+     * for a chain of k movies.
+     *
+     * @param index the position of a movie, in the order the movies were inserted
+     * @return the movie at index
+     * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+     */
+    @Override
+    public Movie get(int index) {
+      Movie movie = (index < 0) ? null : first;
+      for (int i = 0; i < index && movie != null; i++) {
+        movie = movie.nextSameDuration;
+      }
+      if (movie == null) {
+        throw new IndexOutOfBoundsException("index " + index + " is not within " + size()
+            + " movies");
+      }
+      return movie;
+    }
+
+    /**
+     * Compares the movies in this chain to the movies in another KeyList.
+     *
+     * @param o the other KeyList
+     * @return the result of comparing the first movies of both lists
+     */
+    @Override
+    public int compareTo(KeyListInterface<Movie> o) {
+      return first.compareTo(o.get(0));
+    }
+
+    /**
+     * @return an iterator over the chain, in the order the movies were inserted
+     */
+    @Override
+    public Iterator<Movie> iterator() {
+      return new InOrderIterator(first, first);
+    }
+  }
+
+  /**
+   * This class iterates in-order over the movies of the tree. It keeps the next movie to return and
+   * the movie linked into the tree for its duration, and moves to the next duration by following
+   * the up references once it reaches the end of a chain.
+   */
+  private class InOrderIterator implements Iterator<Movie> {
+    private Movie current; // the next movie to return, or null when there are no more
+    private Movie currentFirst; // the movie linked into the tree for current's duration
+    private final Comparable<Movie> upperBound; // the largest movie to return, or null
+
+    /**
+     * @param first      the movie linked into the tree for the first duration to return, or null
+     *                   if there are none
+     * @param upperBound the iteration stops after the movies equal to upperBound (or null to
+     *                   iterate to the end of the tree)
+     */
+    private InOrderIterator(Movie first, Comparable<Movie> upperBound) {
+      this.upperBound = upperBound;
+      this.current = inBounds(first) ? first : null;
+      this.currentFirst = this.current;
+    }
+
+    /**
+     * @return true if there is another movie to return
+     */
+    @Override
+    public boolean hasNext() {
+      return current != null;
+    }
+
+    /**
+     * @return the next movie
+     * @throws NoSuchElementException if there are no movies left
+     */
+    @Override
+    public Movie next() {
+      if (current == null) {
+        throw new NoSuchElementException("there are no movies left");
+      }
+      Movie movie = current;
+      current = current.nextSameDuration;
+      if (current == null) {
+        currentFirst = successor(currentFirst);
+        current = inBounds(currentFirst) ? currentFirst : null;
+      }
+      return movie;
+    }
+
+    /**
+     * @param first a movie linked into the tree, or null
+     * @return true if first is not null and not larger than upperBound
+     */
+    private boolean inBounds(Movie first) {
+      return first != null && (upperBound == null || upperBound.compareTo(first) >= 0);
+    }
+  }
+
+  /**
+   * Appends a movie to the end of the chain of movies with the same duration.
+   *
+   * @param first the movie linked into the tree for the duration
+   * @param movie the movie to append
+   */
+  private void appendToChain(Movie first, Movie movie) {
+    first.lastSameDuration.nextSameDuration = movie;
+    first.lastSameDuration = movie;
+    first.sameDurationCount++;
+    movie.color = CHAINED;
+    numKeys++;
+  }
+
+  /**
+   * Finds the movie linked into the tree for the shortest duration that is equal to or larger than
+   * point.
+   *
+   * @param point the movie to search for, or null for the shortest duration in the tree
+   * @return the movie, or null if there is no such duration
+   */
+  private Movie ceilingMovie(Comparable<Movie> point) {
+    if (point == null) {
+      return leftmost(root);
+    }
+    Movie ceiling = null;
+    Movie current = root;
+    while (current != null) {
+      if (point.compareTo(current) <= 0) {
+        ceiling = current;
+        current = current.downLeft;
+      } else {
+        current = current.downRight;
+      }
+    }
+    return ceiling;
+  }
+
+  /**
+   * @param movie the root of a subtree
+   * @return the left-most movie in the subtree, or null if it is empty
+   */
+  private static Movie leftmost(Movie movie) {
+    while (movie != null && movie.downLeft != null) {
+      movie = movie.downLeft;
+    }
+    return movie;
+  }
+
+  /**
+   * @param movie a movie linked into the tree
+   * @return the movie linked into the tree for the next duration, or null if movie is the longest
+   */
+  private static Movie successor(Movie movie) {
+    if (movie.downRight != null) {
+      return leftmost(movie.downRight);
+    }
+    // Move up until we move up from a left child, that parent is the next movie
+    Movie parent = movie.up;
+    while (parent != null && movie == parent.downRight) {
+      movie = parent;
+      parent = movie.up;
+    }
+    return parent;
+  }
+
+  /**
+   * @param movie a movie linked into the tree, or null for an empty subtree
+   * @return true if movie is red (empty subtrees are black)
+   */
+  private static boolean isRed(Movie movie) {
+    return movie != null && movie.color == RED;
+  }
+
+  /**
+   * Restores the red-black properties after movie was linked into the tree as a red leaf, by
+   * recoloring movies while movie's parent and its sibling are both red, and then rotating once or
+   * twice.
+   *
+   * @param movie the movie that was just linked into the tree
+   */
+  private void enforceRBTreePropertiesAfterInsert(Movie movie) {
+    while (isRed(movie.up)) {
+      Movie parent = movie.up;
+      Movie grandparent = parent.up;
+      boolean parentIsLeftChild = grandparent.downLeft == parent;
+      Movie sibling = parentIsLeftChild ? grandparent.downRight : grandparent.downLeft;
+      if (isRed(sibling)) {
+        // Case 1: the parent's sibling is red, so recolor and continue from the grandparent
+        parent.color = BLACK;
+        sibling.color = BLACK;
+        grandparent.color = RED;
+        movie = grandparent;
+        continue;
+      }
+      if (parentIsLeftChild != (parent.downLeft == movie)) {
+        // Case 3: movie is on the inside, so rotate it into its parent's position first
+        rotate(movie, parent);
+        movie = parent;
+        parent = movie.up;
+      }
+      // Case 2: movie and its parent are on the same side, so rotate the parent above the
+      // grandparent and swap their colors
+      rotate(parent, grandparent);
+      parent.color = BLACK;
+      grandparent.color = RED;
+    }
+    root.color = BLACK;
+  }
+
+  /**
+   * Rotates child into parent's position, making parent child's child.
+   *
+   * @param child  the movie being rotated up
+   * @param parent child's parent
+   */
+  private void rotate(Movie child, Movie parent) {
+    Movie grandparent = parent.up;
+    if (parent.downLeft == child) {
+      // Right rotation: child's right subtree becomes parent's left subtree
+      parent.downLeft = child.downRight;
+      if (child.downRight != null) {
+        child.downRight.up = parent;
+      }
+      child.downRight = parent;
+    } else {
+      // Left rotation: child's left subtree becomes parent's right subtree
+      parent.downRight = child.downLeft;
+      if (child.downLeft != null) {
+        child.downLeft.up = parent;
+      }
+      child.downLeft = parent;
+    }
+    parent.up = child;
+    child.up = grandparent;
+    if (grandparent == null) {
+      root = child;
+    } else if (grandparent.downLeft == parent) {
+      grandparent.downLeft = child;
+    } else {
+      grandparent.downRight = child;
+    }
+  }
+}
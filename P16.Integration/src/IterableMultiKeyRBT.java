@@ -6,11 +6,20 @@
 // Lecturer: Gary Dahl
 // Notes to Grader: NA
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import java.util.Stack;
 
 /**
  * This class creates an Iterable Multi-Key Red-Black-Tree that can have multiple keys stored into
@@ -29,38 +38,126 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
   private KeyList<T> keyList; // the most recently inserted node's KeyList object. It is updated
                               // with each call to insertSingleKey() and is used in our JUnit test
                               // methods
+  private Node<KeyListInterface<T>> firstNode; // the node holding the smallest key, or null
+  private Node<KeyListInterface<T>> lastNode; // the node holding the largest key, or null
+  private ToIntFunction<T> measure; // the value of each key that is summed in every subtree, or
+                                    // null if subtree sums are not kept
+  private long modificationCount; // the number of changes made to the tree
+
+  /**
+   * A RBT node that also stores the number of keys in its subtree, which rank(), select() and
+   * countInRange() are computed from.
+   *
+   * @param <T> The data type of the node
+   */
+  protected static class CountedNode<T> extends RBTNode<T> {
+    public int subtreeKeys = 0; // the number of keys stored in this node's subtree
+
+    /**
+     * Creates a node holding data, with no children.
+     *
+     * @param data the KeyList stored in the node
+     */
+    public CountedNode(T data) {
+      super(data);
+    }
+  }
+
+  /**
+   * A counted node that also stores the sum of the measures of the keys in its subtree. Only a
+   * tree with a measure (see setMeasure()) creates these nodes, so the nodes of every other tree
+   * do not carry the sum.
+   *
+   * @param <T> The data type of the node
+   */
+  protected static class MeasuredNode<T> extends CountedNode<T> {
+    public long subtreeSum = 0; // the total measure of the keys stored in this node's subtree
+
+    /**
+     * Creates a node holding data, with no children.
+     *
+     * @param data the KeyList stored in the node
+     */
+    public MeasuredNode(T data) {
+      super(data);
+    }
+  }
 
   /**
    * Inserts value into tree that can store multiple objects per key by keeping lists of objects in
    * each node of the tree.
+   * <p>
+   * The tree is only walked down once: the walk either ends at the node holding the key's
+   * duplicates, whose KeyList the key is added to, or at the empty position where a new node for
+   * the key is linked in and the tree is rebalanced from.
    * 
    * @param key object to insert
    * @return true if obj was inserted
+   * @throws NullPointerException if key is null
    */
   @Override
   public boolean insertSingleKey(T key) {
-    // 1. Create a KeyList object with the new Key
-    KeyList<T> keyList = new KeyList<>(key);
+    if (key == null) {
+      throw new NullPointerException("keys cannot be null");
+    }
+    modificationCount++;
+    // 1. Walk down the tree once, looking for a node with this key value or the empty position
+    // where a node with this key value belongs
+    Node<KeyListInterface<T>> parent = null;
+    Node<KeyListInterface<T>> current = this.root;
+    int compare = 0;
+    boolean smallestKey = true; // true while the walk has only moved to left children
+    boolean largestKey = true; // true while the walk has only moved to right children
+    while (current != null) {
+      compare = key.compareTo(current.data.get(0));
+      if (compare == 0) {
+        // 2. If the key value is already in the tree, add the key to the node's KeyList, increment
+        // the number of keys, and return false
+        KeyList<T> duplicateList = (KeyList<T>) current.data;
+        duplicateList.addKey(key);
+        numKeys++;
+        // The node's subtree (and every subtree above it) now holds one more key
+        this.updateSubtreeSummaries(current);
+        this.keyList = duplicateList;
+        return false;
+      }
+      parent = current;
+      if (compare < 0) {
+        largestKey = false;
+        current = current.left;
+      } else {
+        smallestKey = false;
+        current = current.right;
+      }
+    }
 
-    // 2. Check if the tree already contains a node with this key value
-    if (this.findNode(keyList) == null) {
-      // If this key is not already in the tree, insert its KeyList object, increment the number of
-      // keys, and return true
-      this.insert(keyList);
-      this.keyList = keyList;
-      numKeys++;
-      return true;
+    // 3. If this key is not already in the tree, link a new node holding a new KeyList into the
+    // empty position, rebalance the tree from there, increment the number of keys, and return true
+    KeyList<T> keyList = new KeyList<>(key);
+    RBTNode<KeyListInterface<T>> newNode = createNode(keyList);
+    newNode.up = parent;
+    if (parent == null) {
+      this.root = newNode;
+    } else if (compare < 0) {
+      parent.left = newNode;
     } else {
-      // If the key value is already in the tree, find the node that contains its duplicate and
-      // extract its data (the KeyList object within the node)
-      Node<KeyListInterface<T>> duplicateNode = (Node<KeyListInterface<T>>) this.findNode(keyList);
-      KeyList<T> duplicateList = (KeyList<T>) duplicateNode.data;
-      // Add the key to this duplicate KeyList, increment the number of keys, and return false
-      duplicateList.addKey(key);
-      numKeys++;
-      this.keyList = duplicateList;
-      return false;
+      parent.right = newNode;
+    }
+    this.size++;
+    this.updateSubtreeSummaries(newNode);
+    this.enforceRBTreePropertiesAfterInsert(newNode);
+    ((RBTNode<KeyListInterface<T>>) this.root).blackHeight = 1;
+    this.keyList = keyList;
+    numKeys++;
+    // If the new key is the smallest or largest key, update the cached node references.
+    // Rotations do not change which node holds the smallest or largest key.
+    if (smallestKey) {
+      firstNode = newNode;
+    }
+    if (largestKey) {
+      lastNode = newNode;
     }
+    return true;
   }
 
   /**
@@ -72,174 +169,356 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
   }
 
   /**
-   * Returns an iterator that does an in-order iteration over the tree.
+   * @return the number of changes made to the tree by insertSingleKey(), insert(), bulkLoad() and
+   *         clear()
+   */
+  @Override
+  public long modificationCount() {
+    return this.modificationCount;
+  }
+
+  /**
+   * Inserts a KeyList into the tree as a new node (see RedBlackTree.insert()), and counts the
+   * change.
+   * 
+   * @param data the KeyList to insert
+   * @return true if the KeyList was inserted
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) throws NullPointerException {
+    modificationCount++;
+    return super.insert(data);
+  }
+
+  /**
+   * Returns the KeyList holding the smallest key in the tree in O(1) time, using a reference to its
+   * node that is kept up to date by insertSingleKey().
+   * 
+   * @return the KeyList holding the smallest key, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<T> firstKeyList() {
+    return (firstNode == null) ? null : firstNode.data;
+  }
+
+  /**
+   * Returns the KeyList holding the largest key in the tree in O(1) time, using a reference to its
+   * node that is kept up to date by insertSingleKey().
+   * 
+   * @return the KeyList holding the largest key, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<T> lastKeyList() {
+    return (lastNode == null) ? null : lastNode.data;
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the tree. If an iteration start point
+   * is set, the iteration starts at the smallest key that is equal to or larger than it.
+   * <p>
+   * The iterator keeps a cursor into the KeyList of the node it is on, and moves to the next node
+   * by following the tree's parent references, so iterating over the whole tree takes O(n) time
+   * and does not copy any KeyList objects or nodes.
    */
   @Override
   public Iterator<T> iterator() {
-    // Call the getStartStack() method to obtain an initial stack that the iterator can use
-    Stack<Node<KeyListInterface<T>>> initialStack = getStartStack();
-    // Initialize a new iterator object, define it's hasNext() and next() methods
-    Iterator<T> iterator = new Iterator<T>() {
-
-      /**
-       * This method returns true if the initialStack is not empty and is not null, false otherwise
-       * 
-       * @return true if the iterator has a next value, false if not
-       */
-      @Override
-      public boolean hasNext() {
-        if (initialStack == null || initialStack.isEmpty()) {
-          return false;
+    return iteratorFrom(this.startPoint);
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the tree, starting at the smallest key
+   * that is equal to or larger than start. The start is kept by the iterator instead of the tree,
+   * so iterators with different starts do not affect each other, and any number of threads can
+   * iterate over the tree at the same time as long as it is not changed.
+   * 
+   * @param start the point to start the iteration at, or null to start at the smallest key
+   * @return the iterator over the keys from start onwards
+   */
+  @Override
+  public Iterator<T> iteratorFrom(Comparable<T> start) {
+    return new InOrderIterator(ceilingNode(start), null);
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the keys between lowerBound and
+   * upperBound (including keys equal to either bound). The iterator finds the first key in O(log n)
+   * time and stops as soon as it reaches a key larger than upperBound, so iterating over k keys
+   * takes O(log n + k) time.
+   * 
+   * @param lowerBound the smallest key to iterate over, or null to start at the smallest key
+   * @param upperBound the largest key to iterate over, or null to end at the largest key
+   * @return the iterator over the keys in the range
+   */
+  @Override
+  public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    return new InOrderIterator(ceilingNode(lowerBound), upperBound);
+  }
+
+  /**
+   * Returns a spliterator over the keys that iterator() returns, in the same order. It knows
+   * exactly how many keys it covers, and splits them into two halves that differ in size by at
+   * most one key, so stream() and parallelStream() can divide the tree evenly between threads.
+   * 
+   * @return the spliterator over the keys of the tree, starting at the iteration start point
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    int first = (this.startPoint == null) ? 0 : rank(this.startPoint);
+    return new KeySpliterator(first, this.numKeys);
+  }
+
+  /**
+   * This class iterates in-order over the keys of the tree, starting at a given node. It keeps a
+   * reference to the node whose keys are being returned and the position of the next key to return
+   * in that node's KeyList.
+   */
+  private class InOrderIterator implements Iterator<T> {
+    private Node<KeyListInterface<T>> currentNode; // the node holding the next key to return
+    private int currentIndex; // the position of the next key in currentNode's KeyList
+    private Comparable<T> upperBound; // the largest key to return, or null for no limit
+
+    /**
+     * Creates an iterator that starts at the first key of firstNode, and stops before the first
+     * key that is larger than upperBound
+     * 
+     * @param firstNode  the node holding the first key to return, or null if there are no keys
+     * @param upperBound the largest key to return, or null to return every key after firstNode
+     */
+    private InOrderIterator(Node<KeyListInterface<T>> firstNode, Comparable<T> upperBound) {
+      this.upperBound = upperBound;
+      moveTo(firstNode);
+    }
+
+    /**
+     * Moves the cursor to the first key of node, or ends the iteration if node is null or its keys
+     * are larger than the upper bound
+     * 
+     * @param node the node to move to
+     */
+    private void moveTo(Node<KeyListInterface<T>> node) {
+      currentIndex = 0;
+      if (node != null && upperBound != null && upperBound.compareTo(node.data.get(0)) < 0) {
+        node = null;
+      }
+      currentNode = node;
+    }
+
+    /**
+     * This method returns true if there is another key to return
+     * 
+     * @return true if the iterator has a next value, false if not
+     */
+    @Override
+    public boolean hasNext() {
+      return currentNode != null;
+    }
+
+    /**
+     * This method returns the next key in the current node's KeyList. Once the KeyList has no keys
+     * left, the cursor moves to the first key of the next node in-order.
+     * 
+     * @return T the next key
+     * @throws NoSuchElementException if there are no keys left
+     */
+    @Override
+    public T next() {
+      if (currentNode == null) {
+        throw new NoSuchElementException("there are no keys left");
+      }
+      T returnValue = currentNode.data.get(currentIndex++);
+      if (currentIndex == currentNode.data.size()) {
+        moveTo(successor(currentNode));
+      }
+      return returnValue;
+    }
+  }
+
+  /**
+   * This class splits and traverses the keys at positions [position, end) of the in-order sequence
+   * of the tree's keys (including duplicates). A spliterator does not look at the tree until it
+   * starts returning keys: it then walks down from the root to its first key using the key count
+   * of each subtree, the same way as select(), and keeps a cursor into the KeyList of the node it
+   * is on, like InOrderIterator. Splitting only divides the range of positions, so it takes O(1)
+   * time, and each half finds its first key in O(log n) time without visiting the keys before it.
+   * <p>
+   * The tree must not be changed while a spliterator over it is in use.
+   */
+  private class KeySpliterator implements Spliterator<T> {
+    private int position; // the position of the next key to return
+    private final int end; // the position after the last key to return
+    private Node<KeyListInterface<T>> currentNode; // the node holding the next key, or null if
+                                                   // the cursor has not been placed yet
+    private int currentIndex; // the position of the next key in currentNode's KeyList
+
+    /**
+     * @param position the position of the first key to return
+     * @param end      the position after the last key to return
+     */
+    private KeySpliterator(int position, int end) {
+      this.position = position;
+      this.end = end;
+    }
+
+    /**
+     * Places the cursor on the key at the current position, by walking down from the root and
+     * skipping the subtrees whose keys are all before it.
+     */
+    private void placeCursor() {
+      int index = position;
+      Node<KeyListInterface<T>> node = root;
+      while (true) {
+        int leftKeys = subtreeKeys(node.left);
+        if (index < leftKeys) {
+          node = node.left;
+          continue;
         }
-        return true;
-      }
-
-      /**
-       * This method returns the next value at the top of the stack, and updates the stack
-       * 
-       * @return T the value at the top of the stack
-       */
-      @Override
-      public T next() {
-        while (hasNext()) {
-          // If the next node in stack has a right child/subtree, pop and return the next value from
-          // the stack and add any node that must be traversed through to get to the smallest node
-          // in the right subtree.
-          if (initialStack.peek().down[1] != null) {
-            Node<KeyListInterface<T>> rightChild = initialStack.peek().down[1];
-            Node<KeyListInterface<T>> currentNode = rightChild;
-            Node<KeyListInterface<T>> nodeToReturn = initialStack.pop();
-
-            // Add the right child, and any node that must be traversed through to get to the
-            // smallest (leftmost) child in the right subtree
-            initialStack.push(rightChild);
-            while (currentNode.down[0] != null) {
-              currentNode = currentNode.down[0];
-              initialStack.push(currentNode);
-            }
-
-            // Once the stack is updated, use the iterator for the KeyList object to return the
-            // value stored in the KeyList object
-            KeyList<T> toReturnList = (KeyList<T>) nodeToReturn.data;
-            Iterator<T> listIterator = toReturnList.iterator();
-            T returnValue = listIterator.next();
-
-            // If there are multiple (duplicate) values in the KeyList object, update the KeyList
-            // object so it only contains the remaining values (everything except for the first
-            // value), and add this new KeyList object to the top of the stack
-            if (listIterator.hasNext()) {
-              T nextKeyReturn = listIterator.next();
-              KeyList<T> newKeyList = new KeyList<T>(nextKeyReturn);
-              while (listIterator.hasNext()) {
-                newKeyList.addKey(listIterator.next());
-
-              }
-              Node<KeyListInterface<T>> newNode = new Node<KeyListInterface<T>>(newKeyList);
-              initialStack.push(newNode);
-            }
-            return returnValue;
-          } else {
-            // If the next node does not have a right child/subtree, pop it off the stack and save
-            // its value
-            Node<KeyListInterface<T>> nodeToReturn = initialStack.pop();
-
-            // Once the stack is updated, use the iterator for the KeyList object to return the
-            // value stored in the KeyList object
-            KeyList<T> toReturnList = (KeyList<T>) nodeToReturn.data;
-            Iterator<T> listIterator = toReturnList.iterator();
-            T returnValue = listIterator.next();
-
-            // If there are multiple (duplicate) values in the KeyList object, update the KeyList
-            // object so it only contains the remaining values (everything except for the first
-            // value), and add this new KeyList object to the top of the stack
-            if (listIterator.hasNext()) {
-              T nextKeyReturn = listIterator.next();
-              KeyList<T> newKeyList = new KeyList<T>(nextKeyReturn);
-              while (listIterator.hasNext()) {
-                newKeyList.addKey(listIterator.next());
-              }
-              Node<KeyListInterface<T>> newNode = new Node<KeyListInterface<T>>(newKeyList);
-              initialStack.push(newNode);
-            }
-            return returnValue;
-          }
+        index -= leftKeys;
+        if (index < node.data.size()) {
+          break;
         }
+        index -= node.data.size();
+        node = node.right;
+      }
+      currentNode = node;
+      currentIndex = index;
+    }
+
+    /**
+     * Passes the next key to action and moves the cursor past it.
+     * 
+     * @param action receives the next key
+     * @return false if there were no keys left, true otherwise
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (position >= end) {
+        return false;
+      }
+      if (currentNode == null) {
+        placeCursor();
+      }
+      T key = currentNode.data.get(currentIndex++);
+      if (currentIndex == currentNode.data.size()) {
+        currentNode = successor(currentNode);
+        currentIndex = 0;
+      }
+      position++;
+      action.accept(key);
+      return true;
+    }
+
+    /**
+     * Passes every key that is left to action, in order, one KeyList at a time.
+     * 
+     * @param action receives every key that is left
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      if (position >= end) {
+        return;
+      }
+      if (currentNode == null) {
+        placeCursor();
+      }
+      Node<KeyListInterface<T>> node = currentNode;
+      int index = currentIndex;
+      int remaining = end - position;
+      position = end;
+      currentNode = null;
+      while (true) {
+        KeyListInterface<T> keys = node.data;
+        int stop = Math.min(keys.size(), index + remaining);
+        remaining -= stop - index;
+        for (; index < stop; index++) {
+          action.accept(keys.get(index));
+        }
+        if (remaining == 0) {
+          return;
+        }
+        node = successor(node);
+        index = 0;
+      }
+    }
+
+    /**
+     * Splits off the first half of the keys that are left, which this spliterator will no longer
+     * return.
+     * 
+     * @return a spliterator over the first half of the keys, or null if fewer than 2 are left
+     */
+    @Override
+    public Spliterator<T> trySplit() {
+      int middle = (position + end) >>> 1;
+      if (middle <= position) {
         return null;
       }
-    };
-    // Return the iterator object when this method is called
-    return iterator;
+      KeySpliterator firstHalf = new KeySpliterator(position, middle);
+      firstHalf.currentNode = this.currentNode;
+      firstHalf.currentIndex = this.currentIndex;
+      this.position = middle;
+      this.currentNode = null;
+      return firstHalf;
+    }
+
+    /**
+     * @return the exact number of keys that are left
+     */
+    @Override
+    public long estimateSize() {
+      return end - position;
+    }
+
+    /**
+     * @return ORDERED, SORTED, NONNULL, SIZED and SUBSIZED, since the keys are returned in sorted
+     *         order, are never null, and every spliterator split from this one knows its size
+     */
+    @Override
+    public int characteristics() {
+      return ORDERED | SORTED | NONNULL | SIZED | SUBSIZED;
+    }
+
+    /**
+     * @return null, since the keys are sorted by their natural order
+     */
+    @Override
+    public Comparator<? super T> getComparator() {
+      return null;
+    }
   }
 
   /**
-   * This method creates the starting Stack object of Nodes for the iterator method to use when
-   * implementing an in-order iteration. If the tree is null, null is returned.
-   * <p>
-   * If no iteration start point is set (the field that stores the start point is set to null), the
-   * stack is initialized with the nodes on the path from the root node to (and including) the node
-   * with the smallest key in the tree
-   * <p>
-   * If the iteration start point is set, then the stack is initialized with all the nodes with keys
-   * equal to or larger than the start point along the path of the search for the start point.
+   * Finds the node holding the smallest key in the tree that is equal to or larger than point. If
+   * point is null, the node holding the smallest key in the tree is returned.
    * 
-   * @return a Stack object that contains the Nodes in the tree (nodes inserted depend on startPoint
-   *         value)
-   */
-  protected Stack<Node<KeyListInterface<T>>> getStartStack() {
-    // Create a Stack object
-    Stack<Node<KeyListInterface<T>>> initialStack = new Stack<Node<KeyListInterface<T>>>();
-    // If the root of the tree is null, the tree is also null, so null is returned.
-    if (this.root == null) {
-      return null;
+   * @param point the key to search for, or null for the smallest key
+   * @return the node holding the smallest key equal to or larger than point, or null if there is
+   *         no such node
+   */
+  protected Node<KeyListInterface<T>> ceilingNode(Comparable<T> point) {
+    if (point == null) {
+      return leftmost(this.root);
     }
-    if (startPoint == null) {
-      // If the startPoint is not initialized, add all nodes on the path starting from the root to
-      // the smallest element in the tree (the left-most node)
-      Node<KeyListInterface<T>> currentNode = this.root;
-      initialStack.push(currentNode);
-      while (currentNode.down[0] != null) {
-        currentNode = currentNode.down[0];
-        initialStack.push(currentNode);
-      }
-      // return the stack object
-      return initialStack;
-    } else {
-      // Otherwise, the startPoint is initialized and all nodes greater than or equal to the
-      // startPoint on the path to finding the startPoint are added to the stack
-      Node<KeyListInterface<T>> currentNode = this.root;
-      while (currentNode != null) {
-        // Save the KeyList data stored in the currentNode, use it to call the iterator() method in
-        // the KeyList class
-        KeyList<T> currentKeyList = (KeyList<T>) currentNode.data;
-        Iterator<T> keyListIterator = currentKeyList.iterator();
-        // Save the data stored within the KeyList object
-        T currentKey = keyListIterator.next();
-
-        if (this.startPoint.compareTo(currentKey) == 0) {
-          // If the startPoint is equal to the current key, add the key to the stack and return the
-          // stack
-          initialStack.push(currentNode);
-          return initialStack;
-        } else if (this.startPoint.compareTo(currentKey) < 0) {
-          // If the startPoint is less than the current key, add the key to the stack and update the
-          // current key to become the current key's left child
-          initialStack.push(currentNode);
-          currentNode = currentNode.down[0];
-        } else if (this.startPoint.compareTo(currentKey) > 0) {
-          // If the start point is greater than the current key, update the current key to become
-          // the current key's right child.
-          currentNode = currentNode.down[1];
-        }
+    Node<KeyListInterface<T>> ceiling = null;
+    Node<KeyListInterface<T>> currentNode = this.root;
+    while (currentNode != null) {
+      // Compare the point with the first key stored in the current node's KeyList
+      T currentKey = currentNode.data.get(0);
+      if (point.compareTo(currentKey) <= 0) {
+        // The current key is a candidate, but there may be a smaller one in the left subtree
+        ceiling = currentNode;
+        currentNode = currentNode.left;
+      } else {
+        currentNode = currentNode.right;
       }
     }
-    // Return the stack object
-    return initialStack;
+    return ceiling;
   }
 
   /**
    * Sets the starting point for iterations. Future iterations will start at the starting point or
    * the key closest to it in the tree. This setting is remembered until it is reset. Passing in
-   * null disables the starting point.
+   * null disables the starting point. iterator() is the same as iteratorFrom(startPoint).
    * 
    * @param startPoint the start point to set for iterations
    */
@@ -248,6 +527,309 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
     this.startPoint = startPoint;
   }
 
+  /**
+   * Inserts every key in the collection into the tree at once. The keys (along with any keys that
+   * are already in the tree) are sorted, equal keys are grouped into KeyList objects, and a
+   * perfectly balanced Red Black Tree is built from the groups in linear time after the sort. This
+   * is much faster than calling insertSingleKey() for every key, and results in the same in-order
+   * iteration: keys that compare equal are kept in the order they were inserted.
+   * 
+   * @param keys the keys to insert into the tree
+   * @throws NullPointerException if keys or any key in it is null
+   */
+  @SuppressWarnings("unchecked")
+  public void bulkLoad(Collection<T> keys) {
+    // Collect the keys already in the tree first, so they stay ahead of any new duplicates. This
+    // iterates from the smallest key rather than with iterator(), which skips the keys before the
+    // iteration start point
+    T[] sortedKeys = (T[]) new Comparable<?>[this.numKeys + keys.size()];
+    int count = 0;
+    Iterator<T> existingKeys = iteratorFrom(null);
+    while (existingKeys.hasNext()) {
+      sortedKeys[count++] = existingKeys.next();
+    }
+    T lastKey = null;
+    for (T key : keys) {
+      if (key == null) {
+        throw new NullPointerException("keys cannot be null");
+      }
+      sortedKeys[count++] = key;
+      lastKey = key;
+    }
+    // Arrays.parallelSort is stable, so duplicates stay in insertion order
+    Arrays.parallelSort(sortedKeys, 0, count);
+    buildFromSortedKeys(sortedKeys, count);
+    if (lastKey != null) {
+      this.keyList = (KeyList<T>) this.findNode(new KeyList<>(lastKey)).data;
+    }
+  }
+
+  /**
+   * Replaces the contents of the tree with the first count keys of sortedKeys, which must already
+   * be in sorted order. Equal keys are grouped into one KeyList object per node, and the nodes are
+   * linked into a perfectly balanced tree. Every node is black except for the nodes on the deepest
+   * level, which are red when the tree has more than one node. Because every empty child position
+   * in a tree built this way is on one of its two deepest levels, this keeps every path from the
+   * root to an empty child position at the same number of black nodes.
+   * 
+   * @param sortedKeys the keys to build the tree from, in sorted order
+   * @param count      the number of keys from sortedKeys to use
+   */
+  protected void buildFromSortedKeys(T[] sortedKeys, int count) {
+    // Group equal keys into KeyList objects
+    ArrayList<KeyList<T>> keyLists = new ArrayList<>();
+    KeyList<T> currentList = null;
+    for (int i = 0; i < count; i++) {
+      if (currentList != null && sortedKeys[i - 1].compareTo(sortedKeys[i]) == 0) {
+        currentList.addKey(sortedKeys[i]);
+      } else {
+        currentList = new KeyList<>(sortedKeys[i]);
+        keyLists.add(currentList);
+      }
+    }
+
+    // Link the KeyList objects into a balanced tree, and make sure its root is black
+    int nodeCount = keyLists.size();
+    int redDepth = 31 - Integer.numberOfLeadingZeros(Math.max(nodeCount, 1));
+    this.root = buildBalancedSubtree(keyLists, 0, nodeCount, 0, redDepth, null);
+    if (this.root != null) {
+      ((RBTNode<KeyListInterface<T>>) this.root).blackHeight = 1;
+    }
+    this.size = nodeCount;
+    this.numKeys = count;
+    this.modificationCount++;
+    this.firstNode = leftmost(this.root);
+    this.lastNode = rightmost(this.root);
+  }
+
+  /**
+   * Builds a balanced subtree from the KeyList objects between from and to, using the middle one as
+   * the subtree's root.
+   * 
+   * @param keyLists the sorted KeyList objects of the whole tree
+   * @param from     the index of the first KeyList in this subtree
+   * @param to       the index (exclusive) of the last KeyList in this subtree
+   * @param depth    the depth of the subtree's root in the tree
+   * @param redDepth the depth of the deepest level of the tree, where the nodes are red
+   * @param parent   the parent of the subtree's root
+   * @return the root of the subtree, or null if the subtree is empty
+   */
+  private RBTNode<KeyListInterface<T>> buildBalancedSubtree(ArrayList<KeyList<T>> keyLists,
+      int from, int to, int depth, int redDepth, RBTNode<KeyListInterface<T>> parent) {
+    if (from >= to) {
+      return null;
+    }
+    int middle = (from + to) >>> 1;
+    RBTNode<KeyListInterface<T>> node = createNode(keyLists.get(middle));
+    node.up = parent;
+    node.blackHeight = (byte) ((depth == redDepth) ? 0 : 1);
+    node.left = buildBalancedSubtree(keyLists, from, middle, depth + 1, redDepth, node);
+    node.right = buildBalancedSubtree(keyLists, middle + 1, to, depth + 1, redDepth, node);
+    updateSubtreeSummary(node);
+    return node;
+  }
+
+  /**
+   * Sets the measure of each key that is summed in every subtree, so averageInRange() can be used.
+   * Keys that compare equal must have the same measure (for example, movies that are compared by
+   * duration can be measured by their duration). Only the nodes of a tree with a measure store a
+   * subtree sum, so the nodes of any keys already in the tree are replaced (and their sums
+   * computed), which takes O(n) time. The measure is best set while the tree is empty.
+   * 
+   * @param measure the value of each key to sum, or null to stop keeping subtree sums
+   */
+  public void setMeasure(ToIntFunction<T> measure) {
+    this.measure = measure;
+    this.root = replaceNodes(this.root, null);
+    this.firstNode = leftmost(this.root);
+    this.lastNode = rightmost(this.root);
+  }
+
+  /**
+   * Creates the node holding a KeyList: a MeasuredNode if the tree has a measure, or a CountedNode
+   * otherwise.
+   * 
+   * @param data the KeyList to store in the node
+   * @return the new red node
+   */
+  @Override
+  protected RBTNode<KeyListInterface<T>> createNode(KeyListInterface<T> data) {
+    return (measure == null) ? new CountedNode<>(data) : new MeasuredNode<>(data);
+  }
+
+  /**
+   * Replaces every node in a subtree with a node created by createNode(), keeping its KeyList,
+   * color and position, and computes the new nodes' subtree summaries, children before parents.
+   * 
+   * @param node   the root of the subtree, or null
+   * @param parent the new parent of the subtree's root
+   * @return the root of the new subtree, or null if the subtree is empty
+   */
+  private RBTNode<KeyListInterface<T>> replaceNodes(Node<KeyListInterface<T>> node,
+      RBTNode<KeyListInterface<T>> parent) {
+    if (node == null) {
+      return null;
+    }
+    RBTNode<KeyListInterface<T>> newNode = createNode(node.data);
+    newNode.blackHeight = ((RBTNode<KeyListInterface<T>>) node).blackHeight;
+    newNode.up = parent;
+    newNode.left = replaceNodes(node.left, newNode);
+    newNode.right = replaceNodes(node.right, newNode);
+    updateSubtreeSummary(newNode);
+    return newNode;
+  }
+
+  /**
+   * Recomputes the number of keys, and the sum of their measures, stored in node's subtree from the
+   * values stored in its children.
+   * 
+   * @param node the node whose subtree key count and sum should be recomputed
+   */
+  @Override
+  protected void updateSubtreeSummary(Node<KeyListInterface<T>> node) {
+    int keyCount = node.data.size();
+    ((CountedNode<KeyListInterface<T>>) node).subtreeKeys =
+        keyCount + subtreeKeys(node.left) + subtreeKeys(node.right);
+    if (measure != null) {
+      long keySum = (long) measure.applyAsInt(node.data.get(0)) * keyCount;
+      ((MeasuredNode<KeyListInterface<T>>) node).subtreeSum =
+          keySum + subtreeSum(node.left) + subtreeSum(node.right);
+    }
+  }
+
+  /**
+   * @param node the root of a subtree, or null
+   * @return the number of keys stored in the subtree
+   */
+  private static <T> int subtreeKeys(Node<T> node) {
+    return (node == null) ? 0 : ((CountedNode<T>) node).subtreeKeys;
+  }
+
+  /**
+   * @param node the root of a subtree, or null
+   * @return the sum of the measures of the keys stored in the subtree
+   */
+  private static <T> long subtreeSum(Node<T> node) {
+    return (node == null) ? 0 : ((MeasuredNode<T>) node).subtreeSum;
+  }
+
+  /**
+   * Returns the rank of key: the number of keys in the tree (including duplicates) that are
+   * smaller than it. This takes O(log n) time.
+   * 
+   * @param key the key to find the rank of (it does not need to be in the tree)
+   * @return the number of keys smaller than key
+   */
+  public int rank(Comparable<T> key) {
+    return (int) sumBelow(key, false, false);
+  }
+
+  /**
+   * Returns the key at a position in the in-order sequence of the tree's keys (including
+   * duplicates), so select(0) is the smallest key and select(numKeys() / 2) is the median. This
+   * takes O(log n) time.
+   * 
+   * @param index the position of the key, starting at 0
+   * @return the key at position index
+   * @throws IndexOutOfBoundsException if index is negative or not smaller than numKeys()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= this.numKeys) {
+      throw new IndexOutOfBoundsException("index " + index + " is not within " + this.numKeys
+          + " keys");
+    }
+    Node<KeyListInterface<T>> currentNode = this.root;
+    while (true) {
+      int leftKeys = subtreeKeys(currentNode.left);
+      if (index < leftKeys) {
+        currentNode = currentNode.left;
+        continue;
+      }
+      index -= leftKeys;
+      if (index < currentNode.data.size()) {
+        // The key is in this node's KeyList
+        return currentNode.data.get(index);
+      }
+      index -= currentNode.data.size();
+      currentNode = currentNode.right;
+    }
+  }
+
+  /**
+   * Counts the keys (including duplicates) between lowerBound and upperBound, including keys equal
+   * to either bound, in O(log n) time. Passing in null for a bound leaves that end of the range
+   * open.
+   * 
+   * @param lowerBound the smallest key to count, or null to count from the smallest key
+   * @param upperBound the largest key to count, or null to count up to the largest key
+   * @return the number of keys in the range
+   */
+  public int countInRange(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    long count = sumBelow(upperBound, true, false) - sumBelow(lowerBound, false, false);
+    return (int) Math.max(count, 0);
+  }
+
+  /**
+   * Averages the measure of the keys (including duplicates) between lowerBound and upperBound,
+   * including keys equal to either bound, in O(log n) time. Passing in null for a bound leaves
+   * that end of the range open.
+   * 
+   * @param lowerBound the smallest key to include, or null to start at the smallest key
+   * @param upperBound the largest key to include, or null to end at the largest key
+   * @return the average measure of the keys in the range, or NaN if there are no keys in it
+   * @throws IllegalStateException if this tree was created without a measure
+   */
+  public double averageInRange(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    if (measure == null) {
+      throw new IllegalStateException("this tree was created without a measure to average");
+    }
+    int count = countInRange(lowerBound, upperBound);
+    if (count == 0) {
+      return Double.NaN;
+    }
+    long sum = sumBelow(upperBound, true, true) - sumBelow(lowerBound, false, true);
+    return (double) sum / count;
+  }
+
+  /**
+   * Counts the keys that are smaller than bound (or smaller than or equal to bound), or sums their
+   * measures, by adding up the subtree values to the left of the path to bound.
+   * 
+   * @param bound      the bound to count below, or null for no keys (or all keys if inclusive)
+   * @param inclusive  true if keys equal to bound are included
+   * @param sumMeasure true to sum the keys' measures, false to count the keys
+   * @return the number of keys, or the sum of their measures, below bound
+   */
+  private long sumBelow(Comparable<T> bound, boolean inclusive, boolean sumMeasure) {
+    if (bound == null) {
+      if (!inclusive) {
+        return 0;
+      }
+      return sumMeasure ? subtreeSum(this.root) : subtreeKeys(this.root);
+    }
+    long total = 0;
+    Node<KeyListInterface<T>> currentNode = this.root;
+    while (currentNode != null) {
+      int compare = bound.compareTo(currentNode.data.get(0));
+      if (compare > 0 || (compare == 0 && inclusive)) {
+        // This node's keys and its left subtree are all below the bound
+        if (sumMeasure) {
+          total += subtreeSum(currentNode) - subtreeSum(currentNode.right);
+        } else {
+          total += subtreeKeys(currentNode) - subtreeKeys(currentNode.right);
+        }
+        currentNode = (compare == 0) ? null : currentNode.right;
+      } else if (compare == 0) {
+        // Only the left subtree is below the bound
+        total += sumMeasure ? subtreeSum(currentNode.left) : subtreeKeys(currentNode.left);
+        currentNode = null;
+      } else {
+        currentNode = currentNode.left;
+      }
+    }
+    return total;
+  }
+
   /**
    * This method clears the RedBlackTree and sets the numKeys value to 0
    * 
@@ -257,6 +839,9 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
   public void clear() {
     super.clear();
     this.numKeys = 0;
+    this.modificationCount++;
+    this.firstNode = null;
+    this.lastNode = null;
   }
 
   /**
@@ -507,6 +1092,15 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
       boolean expected16 = false;
       boolean actual16 = testIterator.hasNext();
       assertEquals(expected16, actual16, "hasNext returned incorrect boolean value");
+
+      // Confirm that next() throws once every key was returned, like every other tree's iterator
+      boolean thrown = false;
+      try {
+        testIterator.next();
+      } catch (NoSuchElementException e) {
+        thrown = true;
+      }
+      assertTrue(thrown, "next() did not throw a NoSuchElementException after the last key");
     }
     // 2. Confirm that the iterator returns a correct in-order traversal if there are mulitple
     // duplicates
@@ -587,6 +1181,304 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
     }
   }
 
+  /**
+   * This method tests that the iterator() method returns every key of nodes that hold large groups
+   * of duplicates in insertion order, including when an iteration start point is set.
+   */
+  @Test
+  public void testIteratorWithManyDuplicates() {
+    // Create a RBT where each of three keys has 500 duplicates, inserted in alternating order
+    IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+    for (int i = 0; i < 500; i++) {
+      testTree.insertSingleKey(130);
+      testTree.insertSingleKey(110);
+      testTree.insertSingleKey(120);
+    }
+    // 1. Confirm that iterating over the whole tree returns every duplicate in order
+    {
+      Iterator<Integer> testIterator = testTree.iterator();
+      for (int expectedKey = 110; expectedKey <= 130; expectedKey += 10) {
+        for (int i = 0; i < 500; i++) {
+          assertTrue(testIterator.hasNext(), "hasNext returned false before the last key");
+          assertEquals(expectedKey, (int) testIterator.next(),
+              "Duplicate keys were not returned in order from the iterator() method");
+        }
+      }
+      assertTrue(!testIterator.hasNext(), "hasNext returned true after the last key");
+    }
+    // 2. Confirm that iterating from a start point in the middle returns the remaining duplicates
+    {
+      testTree.setIterationStartPoint(115);
+      int count = 0;
+      for (int key : testTree) {
+        assertTrue(key >= 120, "A key smaller than the start point was returned");
+        count++;
+      }
+      assertEquals(1000, count, "Iterator did not return every key after the start point");
+    }
+  }
+
+  /**
+   * This method tests rank(), select(), countInRange() and averageInRange() by comparing them to a
+   * sorted array of the same keys, after random inserts (with many duplicates, so rotations and
+   * duplicate appends both happen) and after bulkLoad().
+   */
+  @Test
+  public void testOrderStatistics() {
+    Random random = new Random(9);
+    IterableMultiKeyRBT<Integer> insertedTree = new IterableMultiKeyRBT<Integer>();
+    IterableMultiKeyRBT<Integer> loadedTree = new IterableMultiKeyRBT<Integer>();
+    insertedTree.setMeasure(Integer::intValue);
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    for (int i = 0; i < 2000; i++) {
+      int key = 60 + random.nextInt(120);
+      insertedTree.insertSingleKey(key);
+      keys.add(key);
+    }
+    loadedTree.bulkLoad(keys);
+    // Setting the measure after the keys are loaded recomputes every subtree sum
+    loadedTree.setMeasure(Integer::intValue);
+    Integer[] sortedKeys = keys.toArray(new Integer[0]);
+    Arrays.sort(sortedKeys);
+
+    for (IterableMultiKeyRBT<Integer> testTree : Arrays.asList(insertedTree, loadedTree)) {
+      // 1. The root's summary covers every key
+      MeasuredNode<KeyListInterface<Integer>> root =
+          (MeasuredNode<KeyListInterface<Integer>>) testTree.root;
+      long expectedSum = 0;
+      for (int key : sortedKeys) {
+        expectedSum += key;
+      }
+      assertEquals(sortedKeys.length, root.subtreeKeys, "The root's subtree key count is wrong");
+      assertEquals(expectedSum, root.subtreeSum, "The root's subtree sum is wrong");
+      // 2. select() returns every key in sorted order, and rank() counts the smaller keys
+      for (int i = 0; i < sortedKeys.length; i++) {
+        assertEquals(sortedKeys[i], testTree.select(i), "select() returned the wrong key");
+        int expectedRank = 0;
+        while (sortedKeys[expectedRank] < sortedKeys[i]) {
+          expectedRank++;
+        }
+        assertEquals(expectedRank, testTree.rank(sortedKeys[i]), "rank() is wrong");
+      }
+      // 3. countInRange() and averageInRange() match counting and averaging the sorted keys
+      for (int test = 0; test < 200; test++) {
+        int lower = 50 + random.nextInt(140);
+        int upper = lower + random.nextInt(40);
+        int expectedCount = 0;
+        long rangeSum = 0;
+        for (int key : sortedKeys) {
+          if (key >= lower && key <= upper) {
+            expectedCount++;
+            rangeSum += key;
+          }
+        }
+        assertEquals(expectedCount, testTree.countInRange(lower, upper),
+            "countInRange() returned the wrong count");
+        if (expectedCount > 0) {
+          assertEquals((double) rangeSum / expectedCount, testTree.averageInRange(lower, upper),
+              1e-9, "averageInRange() returned the wrong average");
+        } else {
+          assertTrue(Double.isNaN(testTree.averageInRange(lower, upper)),
+              "averageInRange() of an empty range is not NaN");
+        }
+      }
+      assertEquals(sortedKeys.length, testTree.countInRange(null, null),
+          "countInRange() with open bounds did not count every key");
+      assertEquals(0, testTree.countInRange(150, 100),
+          "countInRange() with a lower bound above the upper bound is not 0");
+    }
+    // 4. Trees without a measure can count, but not average
+    IterableMultiKeyRBT<Integer> unmeasuredTree = new IterableMultiKeyRBT<Integer>();
+    unmeasuredTree.insertSingleKey(5);
+    unmeasuredTree.insertSingleKey(5);
+    assertEquals(2, unmeasuredTree.countInRange(5, 5), "countInRange() without a measure is wrong");
+    try {
+      unmeasuredTree.averageInRange(null, null);
+      assertTrue(false, "averageInRange() without a measure did not throw an exception");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    // 5. Only the nodes of a tree with a measure carry a subtree sum, and setting or removing the
+    // measure replaces every node without changing the tree
+    assertTrue(!(unmeasuredTree.root instanceof MeasuredNode),
+        "A tree without a measure created a node with a subtree sum");
+    for (int key = 0; key < 100; key++) {
+      unmeasuredTree.insertSingleKey(key);
+    }
+    String levelOrder = unmeasuredTree.toLevelOrderString();
+    unmeasuredTree.setMeasure(Integer::intValue);
+    assertTrue(unmeasuredTree.root instanceof MeasuredNode,
+        "Setting a measure did not replace the nodes");
+    assertEquals(levelOrder, unmeasuredTree.toLevelOrderString(),
+        "Setting a measure changed the shape of the tree");
+    assertEquals(4960 / 102.0, unmeasuredTree.averageInRange(null, null), 1e-9,
+        "averageInRange() after setting the measure is wrong");
+    assertEquals(0, unmeasuredTree.firstKeyList().get(0), "firstKeyList() was not updated");
+    assertEquals(99, unmeasuredTree.lastKeyList().get(0), "lastKeyList() was not updated");
+    unmeasuredTree.setMeasure(null);
+    assertTrue(!(unmeasuredTree.root instanceof MeasuredNode),
+        "Removing the measure did not replace the nodes");
+    assertEquals(50, unmeasuredTree.countInRange(50, null),
+        "countInRange() after removing the measure is wrong");
+  }
+
+  /**
+   * This method tests KeyList with enough duplicates that its array grows several times and
+   * containsKey() switches to its HashSet, confirming that the keys stay in the order they were
+   * added and that containsKey() and get() are still correct.
+   */
+  @Test
+  public void testKeyListWithManyDuplicates() {
+    // Use keys that compare equal but are different objects, so containsKey() compares identity
+    KeyList<Movie> keyList = null;
+    Movie[] movies = new Movie[1000];
+    for (int i = 0; i < movies.length; i++) {
+      movies[i] = new Movie("Title" + i, "Genre", 2000, "Country", 120);
+      if (keyList == null) {
+        keyList = new KeyList<Movie>(movies[i]);
+      } else {
+        keyList.addKey(movies[i]);
+      }
+      // 1. Before and after the HashSet is created, every added key is found
+      if (i == 10 || i == 500) {
+        for (int j = 0; j <= i; j++) {
+          assertTrue(keyList.containsKey(movies[j]), "containsKey() did not find an added key");
+        }
+        assertTrue(!keyList.containsKey(new Movie("Title0", "Genre", 2000, "Country", 120)),
+            "containsKey() found a key that was not added");
+      }
+    }
+    // 2. size(), get() and the iterator return the keys in the order they were added
+    assertEquals(movies.length, keyList.size(), "size() is incorrect");
+    int index = 0;
+    for (Movie movie : keyList) {
+      assertTrue(movie == movies[index], "The iterator did not return the keys in order");
+      assertTrue(keyList.get(index) == movies[index], "get() did not return the keys in order");
+      index++;
+    }
+    assertEquals(movies.length, index, "The iterator did not return every key");
+    // 3. Keys that do not compare equal cannot be added
+    try {
+      keyList.addKey(new Movie("Title", "Genre", 2000, "Country", 121));
+      assertTrue(false, "addKey() did not reject a key with a different duration");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    // 4. containsKey() only reads the list, so many threads can call it at once
+    KeyList<Movie> sharedList = keyList;
+    assertTrue(IntStream.range(0, movies.length).parallel()
+        .allMatch(i -> sharedList.containsKey(movies[i])),
+        "containsKey() did not find an added key when called from many threads");
+  }
+
+  /**
+   * This method tests firstKeyList() and lastKeyList() by confirming that they return the KeyLists
+   * of the smallest and largest keys after inserts that rotate the tree, after duplicates are
+   * inserted, after bulkLoad(), and after clear().
+   */
+  @Test
+  public void testFirstAndLastKeyList() {
+    // 1. An empty tree has no first or last KeyList
+    {
+      IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+      assertTrue(testTree.firstKeyList() == null && testTree.lastKeyList() == null,
+          "An empty tree returned a first or last KeyList");
+    }
+    // 2. Inserting new smallest and largest keys (which rotate the tree) and duplicates of them
+    {
+      IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+      int[] keys = {50, 40, 30, 60, 70, 80, 20, 30, 80, 10, 90, 10};
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int key : keys) {
+        testTree.insertSingleKey(key);
+        min = Math.min(min, key);
+        max = Math.max(max, key);
+        assertEquals(min, (int) testTree.firstKeyList().iterator().next(),
+            "firstKeyList() did not return the smallest key");
+        assertEquals(max, (int) testTree.lastKeyList().iterator().next(),
+            "lastKeyList() did not return the largest key");
+        assertTrue(testTree.firstKeyList() == leftmost(testTree.root).data,
+            "firstKeyList() is not the KeyList of the left-most node");
+        assertTrue(testTree.lastKeyList() == rightmost(testTree.root).data,
+            "lastKeyList() is not the KeyList of the right-most node");
+      }
+      // Both 10s should be in the first KeyList
+      int count = 0;
+      for (int key : testTree.firstKeyList()) {
+        assertEquals(10, key, "firstKeyList() contains a key that is not the smallest");
+        count++;
+      }
+      assertEquals(2, count, "firstKeyList() does not contain every duplicate smallest key");
+    }
+    // 3. bulkLoad() and clear()
+    {
+      IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+      testTree.insertSingleKey(50);
+      testTree.bulkLoad(Arrays.asList(70, 20, 90, 40));
+      assertEquals(20, (int) testTree.firstKeyList().iterator().next(),
+          "firstKeyList() was not updated by bulkLoad()");
+      assertEquals(90, (int) testTree.lastKeyList().iterator().next(),
+          "lastKeyList() was not updated by bulkLoad()");
+      testTree.clear();
+      assertTrue(testTree.firstKeyList() == null && testTree.lastKeyList() == null,
+          "clear() did not remove the first and last KeyList");
+      testTree.insertSingleKey(5);
+      assertEquals(5, (int) testTree.firstKeyList().iterator().next(),
+          "firstKeyList() was not updated by an insert after clear()");
+      assertEquals(5, (int) testTree.lastKeyList().iterator().next(),
+          "lastKeyList() was not updated by an insert after clear()");
+    }
+  }
+
+  /**
+   * This method tests rangeIterator() by confirming that it only returns the keys (including
+   * duplicates) between its bounds, and that bounds which are not keys in the tree, or are null,
+   * are handled correctly.
+   */
+  @Test
+  public void testRangeIterator() {
+    // Create a RBT with duplicates
+    IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+    int[] keys = {120, 130, 110, 105, 125, 130, 110, 140};
+    for (int key : keys) {
+      testTree.insertSingleKey(key);
+    }
+    // 1. Both bounds are keys in the tree
+    {
+      Iterator<Integer> testIterator = testTree.rangeIterator(110, 125);
+      int[] expectedKeys = {110, 110, 120, 125};
+      for (int expectedKey : expectedKeys) {
+        assertEquals(expectedKey, (int) testIterator.next(), "rangeIterator returned a wrong key");
+      }
+      assertTrue(!testIterator.hasNext(), "rangeIterator returned a key past its upper bound");
+    }
+    // 2. Neither bound is a key in the tree
+    {
+      Iterator<Integer> testIterator = testTree.rangeIterator(106, 129);
+      int[] expectedKeys = {110, 110, 120, 125};
+      for (int expectedKey : expectedKeys) {
+        assertEquals(expectedKey, (int) testIterator.next(), "rangeIterator returned a wrong key");
+      }
+      assertTrue(!testIterator.hasNext(), "rangeIterator returned a key past its upper bound");
+    }
+    // 3. No keys are in the range, and open ended ranges
+    {
+      assertTrue(!testTree.rangeIterator(111, 119).hasNext(),
+          "rangeIterator returned a key for an empty range");
+      assertTrue(!testTree.rangeIterator(141, null).hasNext(),
+          "rangeIterator returned a key past the largest key");
+      Iterator<Integer> testIterator = testTree.rangeIterator(null, 105);
+      assertEquals(105, (int) testIterator.next(), "rangeIterator returned a wrong key");
+      assertTrue(!testIterator.hasNext(), "rangeIterator returned a key past its upper bound");
+      int count = 0;
+      for (Iterator<Integer> all = testTree.rangeIterator(null, null); all.hasNext(); all.next()) {
+        count++;
+      }
+      assertEquals(keys.length, count, "rangeIterator with no bounds did not return every key");
+    }
+  }
+
   /**
    * This method tests setting different starting points for the iterator() method, and confirms
    * that the iterator() method starts from the correct node based on the starting point. Note: If
@@ -722,6 +1614,246 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
     }
   }
 
+  /**
+   * This method tests bulkLoad() by confirming that loading keys (including duplicates) all at once
+   * creates a valid Red Black Tree with the same size, number of keys, and in-order iteration as
+   * inserting the same keys one at a time with insertSingleKey().
+   */
+  @Test
+  public void testBulkLoad() {
+    // 1. Bulk load many random keys (with duplicates) into an empty tree
+    {
+      Random random = new Random(400);
+      ArrayList<Integer> keys = new ArrayList<Integer>();
+      IterableMultiKeyRBT<Integer> expectedTree = new IterableMultiKeyRBT<Integer>();
+      for (int i = 0; i < 1000; i++) {
+        int key = random.nextInt(300);
+        keys.add(key);
+        expectedTree.insertSingleKey(key);
+      }
+      IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+      testTree.bulkLoad(keys);
+
+      // Confirm the size, number of keys and iteration order match incremental insertion
+      assertEquals(expectedTree.size(), testTree.size(), "Bulk loaded tree has the wrong size");
+      assertEquals(expectedTree.numKeys(), testTree.numKeys(),
+          "Bulk loaded tree has the wrong number of keys");
+      Iterator<Integer> expectedIterator = expectedTree.iterator();
+      for (int key : testTree) {
+        assertEquals((int) expectedIterator.next(), key, "Bulk loaded tree iterates incorrectly");
+      }
+      // Confirm the tree satisfies the Red Black Tree properties
+      RBTNode<KeyListInterface<Integer>> root = (RBTNode<KeyListInterface<Integer>>) testTree.root;
+      assertEquals(1, root.blackHeight, "Root of a bulk loaded tree is not black");
+      assertTrue(blackNodesToLeaves(root) > 0, "Bulk loaded tree is not a valid Red Black Tree");
+    }
+    // 2. Bulk load keys into a tree that already holds keys, then keep inserting into it
+    {
+      IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+      testTree.insertSingleKey(120);
+      testTree.insertSingleKey(110);
+      testTree.bulkLoad(Arrays.asList(130, 110, 105));
+      testTree.insertSingleKey(125);
+      assertEquals(6, testTree.numKeys(), "Bulk loaded tree has the wrong number of keys");
+      assertEquals(5, testTree.size(), "Bulk loaded tree has the wrong size");
+      Iterator<Integer> testIterator = testTree.iterator();
+      int[] expectedKeys = {105, 110, 110, 120, 125, 130};
+      for (int expectedKey : expectedKeys) {
+        assertEquals(expectedKey, (int) testIterator.next(),
+            "Bulk loaded tree iterates incorrectly");
+      }
+    }
+    // 3. Bulk load keys into a tree with an iteration start point set, which must keep the keys
+    // before the start point
+    {
+      IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+      for (int key : new int[] {10, 20, 30, 40}) {
+        testTree.insertSingleKey(key);
+      }
+      testTree.setIterationStartPoint(25);
+      testTree.bulkLoad(Arrays.asList(5, 50));
+      assertEquals(6, testTree.numKeys(), "Bulk load dropped keys before the start point");
+      assertEquals(6, testTree.size(), "Bulk loaded tree has the wrong size");
+      // The start point still applies to iterator(), and iteratorFrom(null) sees every key
+      Iterator<Integer> testIterator = testTree.iterator();
+      for (int expectedKey : new int[] {30, 40, 50}) {
+        assertEquals(expectedKey, (int) testIterator.next(),
+            "Bulk loaded tree ignores its start point");
+      }
+      assertTrue(!testIterator.hasNext(), "Bulk loaded tree has too many keys after 25");
+      testIterator = testTree.iteratorFrom(null);
+      for (int expectedKey : new int[] {5, 10, 20, 30, 40, 50}) {
+        assertEquals(expectedKey, (int) testIterator.next(),
+            "Bulk loaded tree iterates incorrectly");
+      }
+    }
+  }
+
+  /**
+   * This method tests iteratorFrom() by confirming that each iterator starts at its own start
+   * point without changing the tree's iteration start point, that iterators with different starts
+   * can be used at the same time, and that several threads can iterate over the same tree at once.
+   */
+  @Test
+  public void testIteratorFrom() {
+    Random random = new Random(22);
+    IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+    ArrayList<Integer> sortedKeys = new ArrayList<Integer>();
+    for (int i = 0; i < 2000; i++) {
+      int key = random.nextInt(400);
+      testTree.insertSingleKey(key);
+      sortedKeys.add(key);
+    }
+    sortedKeys.sort(null);
+    // 1. iteratorFrom() starts at the smallest key equal to or larger than its start, and does not
+    // use or change the start point used by iterator()
+    testTree.setIterationStartPoint(300);
+    Iterator<Integer> fromStart = testTree.iteratorFrom(100);
+    assertEquals(sortedKeys.get(testTree.rank(100)), fromStart.next(),
+        "iteratorFrom() did not start at its start point");
+    assertTrue(testTree.iterator().next() >= 300, "iteratorFrom() changed the start point");
+    assertEquals(sortedKeys.get(0), testTree.iteratorFrom(null).next(),
+        "iteratorFrom(null) did not start at the smallest key");
+    assertTrue(!testTree.iteratorFrom(400).hasNext(), "iteratorFrom() past every key has keys");
+    testTree.setIterationStartPoint(null);
+    // 2. Iterators with different starts can be used at the same time
+    Iterator<Integer> first = testTree.iteratorFrom(50);
+    Iterator<Integer> second = testTree.iteratorFrom(250);
+    int firstPosition = testTree.rank(50);
+    int secondPosition = testTree.rank(250);
+    while (second.hasNext()) {
+      assertEquals(sortedKeys.get(firstPosition++), first.next(), "The first iterator is wrong");
+      assertEquals(sortedKeys.get(secondPosition++), second.next(), "The second iterator is wrong");
+    }
+    // 3. Several threads iterating from different starts at once each see their own keys
+    int threadCount = 4;
+    long[] sums = new long[threadCount];
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      int thread = t;
+      threads[t] = new Thread(() -> {
+        for (int round = 0; round < 20; round++) {
+          Iterator<Integer> keys = testTree.iteratorFrom(thread * 100);
+          long sum = 0;
+          while (keys.hasNext()) {
+            sum += keys.next();
+          }
+          sums[thread] = sum;
+        }
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < threadCount; t++) {
+      try {
+        threads[t].join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      long expectedSum = 0;
+      for (int key : sortedKeys.subList(testTree.rank(t * 100), sortedKeys.size())) {
+        expectedSum += key;
+      }
+      assertEquals(expectedSum, sums[t], "A thread iterating from its own start saw wrong keys");
+    }
+  }
+
+  /**
+   * This method tests spliterator(), stream() and parallelStream() by confirming that splitting a
+   * tree's spliterator again and again gives halves of equal size (with exact size estimates) that
+   * together return every key in order, and that parallel streams reduce to the same results as
+   * iterating over the tree.
+   */
+  @Test
+  public void testSpliterator() {
+    Random random = new Random(21);
+    IterableMultiKeyRBT<Integer> testTree = new IterableMultiKeyRBT<Integer>();
+    ArrayList<Integer> expectedKeys = new ArrayList<Integer>();
+    for (int i = 0; i < 3000; i++) {
+      testTree.insertSingleKey(random.nextInt(500));
+    }
+    for (int key : testTree) {
+      expectedKeys.add(key);
+    }
+    // 1. The spliterator reports its characteristics and the exact number of keys
+    Spliterator<Integer> spliterator = testTree.spliterator();
+    int expectedCharacteristics = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL
+        | Spliterator.SIZED | Spliterator.SUBSIZED;
+    assertEquals(expectedCharacteristics, spliterator.characteristics(),
+        "The spliterator has the wrong characteristics");
+    assertEquals(3000, spliterator.getExactSizeIfKnown(), "The spliterator has the wrong size");
+    // 2. Splitting every spliterator down to single keys keeps the halves balanced, and the
+    // first halves followed by the second halves return every key in order
+    ArrayList<Integer> splitKeys = new ArrayList<Integer>();
+    ArrayList<Spliterator<Integer>> toSplit = new ArrayList<Spliterator<Integer>>();
+    toSplit.add(spliterator);
+    while (!toSplit.isEmpty()) {
+      Spliterator<Integer> secondHalf = toSplit.remove(toSplit.size() - 1);
+      long size = secondHalf.estimateSize();
+      Spliterator<Integer> firstHalf = secondHalf.trySplit();
+      if (firstHalf == null) {
+        assertTrue(size < 2, "A spliterator with 2 or more keys did not split");
+        secondHalf.forEachRemaining(splitKeys::add);
+        continue;
+      }
+      assertEquals(size, firstHalf.estimateSize() + secondHalf.estimateSize(),
+          "Splitting lost or duplicated keys");
+      assertTrue(Math.abs(firstHalf.estimateSize() - secondHalf.estimateSize()) <= 1,
+          "A spliterator was not split into balanced halves");
+      toSplit.add(secondHalf);
+      toSplit.add(firstHalf);
+    }
+    assertEquals(expectedKeys, splitKeys, "The split spliterators returned the wrong keys");
+    // 3. tryAdvance() and splitting can be mixed, and the start point is respected
+    testTree.setIterationStartPoint(250);
+    spliterator = testTree.spliterator();
+    ArrayList<Integer> mixedKeys = new ArrayList<Integer>();
+    spliterator.tryAdvance(mixedKeys::add);
+    Spliterator<Integer> firstHalf = spliterator.trySplit();
+    while (firstHalf.tryAdvance(mixedKeys::add)) {
+      // keep taking keys from the first half
+    }
+    spliterator.forEachRemaining(mixedKeys::add);
+    int start = testTree.rank(250);
+    assertEquals(expectedKeys.subList(start, expectedKeys.size()), mixedKeys,
+        "The spliterator did not start at the iteration start point");
+    // 4. Parallel streams reduce to the same results as iterating over the tree
+    testTree.setIterationStartPoint(null);
+    long expectedSum = 0;
+    for (int key : expectedKeys) {
+      expectedSum += key;
+    }
+    assertEquals(expectedSum, testTree.parallelStream().mapToLong(Integer::longValue).sum(),
+        "The parallel stream summed the keys incorrectly");
+    assertEquals(expectedKeys.size(), testTree.stream().count(), "The stream has the wrong size");
+    assertEquals(0, new IterableMultiKeyRBT<Integer>().parallelStream().count(),
+        "The stream of an empty tree is not empty");
+  }
+
+  /**
+   * Counts the black nodes on the paths from node down to its empty child positions.
+   * 
+   * @param node the root of the subtree to check
+   * @return the number of black nodes on every path, or -1 if the paths have different numbers of
+   *         black nodes or a red node has a red child
+   */
+  private static <K> int blackNodesToLeaves(RBTNode<K> node) {
+    if (node == null) {
+      return 1;
+    }
+    RBTNode<K> left = node.getDownLeft();
+    RBTNode<K> right = node.getDownRight();
+    if (node.blackHeight == 0 && ((left != null && left.blackHeight == 0)
+        || (right != null && right.blackHeight == 0))) {
+      return -1;
+    }
+    int leftCount = blackNodesToLeaves(left);
+    int rightCount = blackNodesToLeaves(right);
+    if (leftCount < 0 || leftCount != rightCount) {
+      return -1;
+    }
+    return leftCount + node.blackHeight;
+  }
+
   /**
    * This main method calls the JUnit test methods to confirm they work correctly
    * 
@@ -731,7 +1863,15 @@ public class IterableMultiKeyRBT<T extends Comparable<T>> extends RedBlackTree<K
     IterableMultiKeyRBT<Integer> test = new IterableMultiKeyRBT<Integer>();
     test.testInsertingSingleKey();
     test.testIterator();
+    test.testIteratorWithManyDuplicates();
     test.testSetIterationStartPoint();
+    test.testRangeIterator();
+    test.testFirstAndLastKeyList();
+    test.testOrderStatistics();
+    test.testKeyListWithManyDuplicates();
+    test.testBulkLoad();
+    test.testIteratorFrom();
+    test.testSpliterator();
   }
 
 }
@@ -1,4 +1,6 @@
 import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This interfaces extends the SortedCollectionInterface to allow storing multiple values for a single key,
@@ -20,16 +22,87 @@ public interface IterableMultiKeySortedCollectionInterface<T extends Comparable<
     public int numKeys();
 
     /**
-     * Returns an iterator that does an in-order iteration over the tree.
+     * Returns the number of changes made to the tree so far. Every method that changes the keys
+     * in the tree (such as insertSingleKey(), insert() and clear()) increases it, so anything kept
+     * alongside the tree, like an index of its keys, can remember the count it was built at and
+     * tell whether the tree was changed since.
+     * @return the number of changes made to the tree
+     */
+    public long modificationCount();
+
+    /**
+     * Returns whether insertSingleKey() can be called by several threads at once without the
+     * callers synchronizing. Anything kept alongside a tree that allows concurrent writers (like an
+     * index of its keys) cannot assume that it sees every change in the order it was made.
+     * @return true if several threads can insert keys into the tree at once
+     */
+    public default boolean allowsConcurrentWriters() {
+        return false;
+    }
+
+    /**
+     * Returns an iterator that does an in-order iteration over the tree. Like the iterators
+     * returned by iteratorFrom() and rangeIterator(), its next() method throws a
+     * NoSuchElementException once every key was returned (hasNext() returns false then).
      */
     public Iterator<T> iterator();
 
+    /**
+     * Returns an iterator that does an in-order iteration over the tree, starting at start
+     * or the key closest to it in the tree. The start is only used by the returned iterator,
+     * so iterators with different starts can be used at the same time (including by
+     * different threads, as long as the tree is not changed while they are in use).
+     * @param start the point to start the iteration at, or null to start at the smallest key
+     * @return the iterator over the keys from start onwards
+     */
+    public Iterator<T> iteratorFrom(Comparable<T> start);
+
     /**
      * Sets the starting point for iterations. Future iterations will start at the
      * starting point or the key closest to it in the tree. This setting is remembered
-     * until it is reset. Passing in null disables the starting point.
+     * until it is reset. Passing in null disables the starting point. It is shared by
+     * every caller of iterator(), so iteratorFrom() should be used to iterate from a
+     * start point without affecting other users of the tree.
      * @param startPoint the start point to set for iterations
      */
     public void setIterationStartPoint(Comparable<T> startPoint);
 
+    /**
+     * Returns an iterator that does an in-order iteration over only the keys between
+     * lowerBound and upperBound, including keys equal to either bound. The iteration
+     * start point is not used. Passing in null for a bound leaves that end of the range open.
+     * @param lowerBound the smallest key to iterate over, or null to start at the smallest key
+     * @param upperBound the largest key to iterate over, or null to end at the largest key
+     */
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound);
+
+    /**
+     * Returns the list of keys that are equal to the smallest key in the tree.
+     * @return the KeyList holding the smallest key, or null if the tree is empty
+     */
+    public KeyListInterface<T> firstKeyList();
+
+    /**
+     * Returns the list of keys that are equal to the largest key in the tree.
+     * @return the KeyList holding the largest key, or null if the tree is empty
+     */
+    public KeyListInterface<T> lastKeyList();
+
+    /**
+     * Returns a sequential stream over the keys that iterator() returns, in the same order.
+     * @return the stream over the keys
+     */
+    public default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a possibly parallel stream over the keys that iterator() returns. How well the work
+     * is divided between threads depends on how evenly the tree's spliterator() splits.
+     * @return the parallel stream over the keys
+     */
+    public default Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
 }
\ No newline at end of file
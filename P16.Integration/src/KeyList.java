@@ -1,14 +1,30 @@
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 /**
  * This class allows us to store lists of keys in the nodes of our tree.
+ * <p>
+ * The keys are stored in an array that doubles in size when it is full, so iterating over them
+ * reads consecutive array slots instead of following links. When a list grows past HASH_THRESHOLD
+ * keys, addKey() also adds its keys to a HashSet (which is kept up to date from then on), so
+ * containsKey() does not have to compare key to every key in the list. The set is only ever
+ * changed by addKey(), so containsKey() never writes to the list, and any number of threads can
+ * call it on a list that is not being added to. Lists with at most HASH_THRESHOLD keys do not pay
+ * for the HashSet.
  */
 public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
 
-    // stores a list of values for the same key
-    protected List<T> keyList;
+    // the number of keys a list can hold before its keys are also added to a HashSet
+    private static final int HASH_THRESHOLD = 32;
+
+    // stores the values for the same key, in the order they were added
+    protected Object[] keys;
+    // the number of values stored in keys
+    protected int size;
+    // holds every value once the list holds more than HASH_THRESHOLD values, or null
+    private HashSet<T> keySet;
 
     /**
      * Create a new KeyList and adds the first value with a specific key to it.
@@ -16,8 +32,8 @@ public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
      */
     public KeyList(T firstKey) {
         if (firstKey == null) throw new NullPointerException("keys cannot be null");
-        keyList = new LinkedList<>();
-        keyList.add(firstKey);
+        keys = new Object[] {firstKey};
+        size = 1;
     }
 
     /**
@@ -25,19 +41,63 @@ public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
      * @param newKey new object that maps to the same key as all objects in the list
      */
     public void addKey(T newKey) {
-        if (keyList.get(0).compareTo(newKey) != 0) {
+        if (get(0).compareTo(newKey) != 0) {
             throw new IllegalArgumentException("compareTo for keys in same list must return 0");
         }
-        keyList.add(newKey);
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = newKey;
+        if (keySet != null) {
+            keySet.add(newKey);
+        } else if (size > HASH_THRESHOLD) {
+            keySet = new HashSet<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                keySet.add(get(i));
+            }
+        }
     }
 
 	/*
-	* Checks of the KeyList contains key.
+	* Checks of the KeyList contains key. This only reads the list.
 	* @return true if this KeyList contains key, false if not
 	*/
 	@Override
     public boolean containsKey(T key) {
-        return this.keyList.contains(key);
+        if (keySet != null) {
+            return keySet.contains(key);
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of objects stored in the list.
+     * @return the number of objects with this list's key
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the object at a position in the list.
+     * @param index the position of the object, in the order the objects were added
+     * @return the object at index
+     * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " is not within " + size
+                + " keys");
+        }
+        return (T) keys[index];
     }
 
     /**
@@ -50,7 +110,7 @@ public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
      */
     @Override
     public int compareTo(KeyListInterface<T> o) {
-        return keyList.get(0).compareTo(o.iterator().next());
+        return get(0).compareTo(o.get(0));
     }
 
     /**
@@ -59,7 +119,23 @@ public class KeyList<T extends Comparable<T>> implements KeyListInterface<T> {
      */
     @Override
     public Iterator<T> iterator() {
-        return keyList.iterator();
+        return new Iterator<T>() {
+            private int index = 0; // the position of the next object to return
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (index >= size) {
+                    throw new NoSuchElementException("there are no keys left");
+                }
+                return (T) keys[index++];
+            }
+        };
     }
 
 }
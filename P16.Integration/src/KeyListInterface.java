@@ -15,4 +15,16 @@ public interface KeyListInterface<T extends Comparable<T>> extends Comparable<Ke
      */
     public boolean containsKey(T key);
 
+    /**
+     * @return the number of objects stored in the list.
+     */
+    public int size();
+
+    /**
+     * Returns the object at a position in the list.
+     * @param index the position of the object, in the order the objects were added
+     * @return the object at index
+     */
+    public T get(int index);
+
 }
\ No newline at end of file
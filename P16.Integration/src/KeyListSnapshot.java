@@ -0,0 +1,136 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is a read-only snapshot of the keys a KeyList held when it was taken. It shares the
+ * KeyList's array of keys instead of copying it: keys are only ever appended to a KeyList (after
+ * its last key, or to a larger copy of the array), so the keys before size in the array never
+ * change, and the snapshot stays the same however many keys are added to the KeyList later.
+ *
+ * @author dianakotsonis
+ * @param <T> The data type of the keys in the snapshot
+ */
+public class KeyListSnapshot<T extends Comparable<T>> implements KeyListInterface<T> {
+
+  private final Object[] keys; // the KeyList's array of keys when the snapshot was taken
+  private final int size; // the number of keys the KeyList held when the snapshot was taken
+
+  /**
+   * Creates a snapshot of the first size keys in an array that is only ever appended to.
+   *
+   * @param keys the KeyList's array of keys
+   * @param size the number of keys the KeyList holds
+   */
+  KeyListSnapshot(Object[] keys, int size) {
+    this.keys = keys;
+    this.size = size;
+  }
+
+  /**
+   * Takes a snapshot of a KeyList. A KeyList's array is shared, and the keys of any other
+   * KeyListInterface are copied.
+   *
+   * @param keyList the KeyList to take a snapshot of, or null
+   * @return the snapshot of the keys keyList holds now, or null if keyList is null
+   */
+  public static <T extends Comparable<T>> KeyListSnapshot<T> of(KeyListInterface<T> keyList) {
+    if (keyList == null) {
+      return null;
+    }
+    if (keyList instanceof KeyListSnapshot) {
+      return (KeyListSnapshot<T>) keyList;
+    }
+    if (keyList instanceof KeyList) {
+      KeyList<T> list = (KeyList<T>) keyList;
+      return new KeyListSnapshot<T>(list.keys, list.size);
+    }
+    // Copy the keys with the list's iterator, since get() may have to walk the list for each key
+    Object[] keys = new Object[keyList.size()];
+    int count = 0;
+    Iterator<T> iterator = keyList.iterator();
+    while (count < keys.length && iterator.hasNext()) {
+      keys[count++] = iterator.next();
+    }
+    return new KeyListSnapshot<T>(keys, count);
+  }
+
+  /**
+   * Snapshots cannot be changed, so this always throws.
+   *
+   * @param newKey the key that is not added
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void addKey(T newKey) {
+    throw new UnsupportedOperationException("a snapshot of a KeyList cannot be changed");
+  }
+
+  /**
+   * @param key the key object to check for
+   * @return true if the snapshot holds a key equal to key
+   */
+  @Override
+  public boolean containsKey(T key) {
+    for (int i = 0; i < size; i++) {
+      if (keys[i].equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of keys in the snapshot
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index the position of the key, in the order the keys were added
+   * @return the key at index
+   * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public T get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index " + index + " is not within " + size + " keys");
+    }
+    return (T) keys[index];
+  }
+
+  /**
+   * @param o the other KeyList
+   * @return the comparison of the first keys of the two KeyLists
+   */
+  @Override
+  public int compareTo(KeyListInterface<T> o) {
+    return get(0).compareTo(o.get(0));
+  }
+
+  /**
+   * @return an iterator over the keys in the snapshot, in the order they were added
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int index = 0; // the position of the next key to return
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (index >= size) {
+          throw new NoSuchElementException("there are no keys left");
+        }
+        return (T) keys[index++];
+      }
+    };
+  }
+}
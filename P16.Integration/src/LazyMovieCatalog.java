@@ -0,0 +1,401 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * This class is a catalog of the movies in a csv file that only keeps two things in memory for
+ * every movie: its duration, and where its row is in the file. Durations are enough to pick the
+ * movies a query is about, so every other property (including the director and actor, which Movie
+ * objects do not keep) is only decoded from the file when a movie is first asked for.
+ * <p>
+ * Decoded rows are kept in a least recently used cache that holds at most cacheCapacity rows, so
+ * repeatedly asking for the same movies does not read the file again, while the memory used by
+ * decoded rows stays bounded. getMovies() decodes many rows at once: the rows that are not cached
+ * are read in order of where they are in the file, and rows that are close together are read in
+ * one span instead of with one read each. The catalog keeps the file open until close() is
+ * called, and the file must not be changed while the catalog is in use. A catalog is not thread
+ * safe.
+ *
+ * @author dianakotsonis
+ */
+public class LazyMovieCatalog implements Closeable {
+
+  private static final int INITIAL_CAPACITY = 1024; // the number of rows the arrays start with
+  private static final int MAX_SPAN_GAP = 4096; // the most bytes between two rows read in one span
+  private static final int MAX_SPAN_LENGTH = 1 << 20; // the most bytes read in one span, unless
+                                                      // a single row is longer
+
+  private final FileChannel channel; // the open csv file the rows are decoded from
+  private final MovieRowTokenizer tokenizer = new MovieRowTokenizer(); // decodes fetched rows
+  private final LinkedHashMap<Integer, DecodedRow> cache; // recently decoded rows, least
+                                                          // recently used first
+  private ByteBuffer rowBuffer = ByteBuffer.allocate(256); // reused buffer spans are read into
+  private int rowCount = 0; // the number of rows in the catalog
+  private int[] durations = new int[INITIAL_CAPACITY]; // the duration of each row
+  private long[] rowOffsets = new long[INITIAL_CAPACITY]; // where each row starts in the file
+  private int[] rowLengths = new int[INITIAL_CAPACITY]; // the number of bytes in each row
+  private DurationRowIndex rowsByDuration; // every row id sorted by duration, or null if it
+                                           // needs to be rebuilt after rows were added
+  private long cacheMisses = 0; // the number of rows that were decoded from the file
+  private long spanReads = 0; // the number of spans of the file that were read to decode rows
+
+  /**
+   * Opens a catalog of the movies in a file. No rows are added until addRow() is called for them.
+   *
+   * @param fileName      the csv file the rows are in
+   * @param cacheCapacity the largest number of decoded rows to keep in memory
+   * @throws IOException              if the file cannot be opened
+   * @throws IllegalArgumentException if cacheCapacity is less than 1
+   */
+  public LazyMovieCatalog(String fileName, int cacheCapacity) throws IOException {
+    if (cacheCapacity < 1) {
+      throw new IllegalArgumentException("cacheCapacity must be at least 1");
+    }
+    this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    this.cache = new LinkedHashMap<Integer, DecodedRow>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, DecodedRow> eldest) {
+        return size() > cacheCapacity;
+      }
+    };
+  }
+
+  /**
+   * Adds a row of the file to the catalog.
+   *
+   * @param offset   the position in the file where the row starts
+   * @param length   the number of bytes in the row, not counting its line break
+   * @param duration the duration of the movie in the row
+   * @return the row id of the row
+   */
+  public int addRow(long offset, int length, int duration) {
+    if (rowCount == durations.length) {
+      int capacity = durations.length * 2;
+      durations = Arrays.copyOf(durations, capacity);
+      rowOffsets = Arrays.copyOf(rowOffsets, capacity);
+      rowLengths = Arrays.copyOf(rowLengths, capacity);
+    }
+    durations[rowCount] = duration;
+    rowOffsets[rowCount] = offset;
+    rowLengths[rowCount] = length;
+    rowsByDuration = null;
+    return rowCount++;
+  }
+
+  /**
+   * Sets which column each field of the file's rows is in (see MovieColumnMap), and which fields of
+   * the Movies returned by getMovie() are decoded. The cache is cleared, since the rows in it were
+   * decoded with the old column map.
+   *
+   * @param columns the column map of the file
+   */
+  public void setColumns(MovieColumnMap columns) {
+    tokenizer.setColumns(columns);
+    cache.clear();
+  }
+
+  /**
+   * @return the number of rows in the catalog
+   */
+  public int rowCount() {
+    return this.rowCount;
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the movie's duration (read from memory, not the file)
+   */
+  public int getDuration(int row) {
+    return durations[checkRow(row)];
+  }
+
+  /**
+   * Returns the movie in a row, decoding it from the file unless it is in the cache.
+   *
+   * @param row the row id of a movie
+   * @return the movie in the row
+   * @throws UncheckedIOException if the row cannot be read from the file
+   */
+  public Movie getMovie(int row) {
+    return decodedRow(row).movie;
+  }
+
+  /**
+   * Returns the movies in several rows. The rows that are not in the cache are decoded from the
+   * file in as few reads as possible: they are read in order of where they are in the file, and
+   * rows with at most MAX_SPAN_GAP bytes between them are read in one span of the file (of at most
+   * MAX_SPAN_LENGTH bytes). Since rows are added in the order they are in the file, this is the
+   * order of their row ids.
+   *
+   * @param rows the row ids of the movies
+   * @return the movies in the rows, in the same order as their row ids
+   * @throws UncheckedIOException if a row cannot be read from the file
+   */
+  public Movie[] getMovies(int[] rows) {
+    Movie[] movies = new Movie[rows.length];
+    long[] missed = new long[rows.length]; // the row id and position of every uncached row
+    int missedCount = 0;
+    for (int position = 0; position < rows.length; position++) {
+      DecodedRow decoded = cache.get(checkRow(rows[position]));
+      if (decoded != null) {
+        movies[position] = decoded.movie;
+      } else {
+        missed[missedCount++] = ((long) rows[position] << 32) | position;
+      }
+    }
+    Arrays.sort(missed, 0, missedCount);
+    int spanFirst = 0;
+    while (spanFirst < missedCount) {
+      long spanStart = rowOffsets[(int) (missed[spanFirst] >>> 32)];
+      long spanEnd = spanStart;
+      int spanLast = spanFirst;
+      while (spanLast < missedCount) {
+        int row = (int) (missed[spanLast] >>> 32);
+        long rowEnd = rowOffsets[row] + rowLengths[row];
+        if (spanLast > spanFirst && (rowOffsets[row] < spanStart
+            || rowOffsets[row] > spanEnd + MAX_SPAN_GAP || rowEnd - spanStart > MAX_SPAN_LENGTH)) {
+          break;
+        }
+        spanEnd = Math.max(spanEnd, rowEnd);
+        spanLast++;
+      }
+      try {
+        readSpan(spanStart, (int) (spanEnd - spanStart));
+      } catch (IOException e) {
+        throw new UncheckedIOException("rows at " + spanStart + " could not be read", e);
+      }
+      for (int i = spanFirst; i < spanLast; i++) {
+        int row = (int) (missed[i] >>> 32);
+        movies[(int) missed[i]] = decode(row, (int) (rowOffsets[row] - spanStart)).movie;
+      }
+      spanFirst = spanLast;
+    }
+    return movies;
+  }
+
+  /**
+   * Returns the movies with a duration between lowerDuration and upperDuration (inclusive), in
+   * order of duration, and in the order they were added for movies with the same duration. The
+   * rows are decoded the same way as getMovies().
+   *
+   * @param lowerDuration the shortest duration to include
+   * @param upperDuration the longest duration to include
+   * @return the movies in the range
+   * @throws UncheckedIOException if a row cannot be read from the file
+   */
+  public Movie[] getMoviesInRange(int lowerDuration, int upperDuration) {
+    if (lowerDuration > upperDuration) {
+      return new Movie[0];
+    }
+    DurationRowIndex index = durationIndex();
+    int start = index.firstAtLeast(lowerDuration);
+    int[] rows = new int[index.firstAfter(upperDuration) - start];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = index.rowAt(start + i);
+    }
+    return getMovies(rows);
+  }
+
+  /**
+   * Returns the director of the movie in a row, decoding it from the file unless it is in the
+   * cache.
+   *
+   * @param row the row id of a movie
+   * @return the movie's director, or "" if the row has none
+   * @throws UncheckedIOException if the row cannot be read from the file
+   */
+  public String getDirector(int row) {
+    return decodedRow(row).director;
+  }
+
+  /**
+   * Returns the actor of the movie in a row, decoding it from the file unless it is in the cache.
+   *
+   * @param row the row id of a movie
+   * @return the movie's actor, or "" if the row has none
+   * @throws UncheckedIOException if the row cannot be read from the file
+   */
+  public String getActor(int row) {
+    return decodedRow(row).actor;
+  }
+
+  /**
+   * @return the number of rows that were decoded from the file because they were not cached
+   */
+  public long cacheMisses() {
+    return this.cacheMisses;
+  }
+
+  /**
+   * @return the number of spans of the file that were read to decode rows (one for every row
+   *         decoded by getMovie(), and one for every group of nearby rows decoded by getMovies())
+   */
+  public long spanReads() {
+    return this.spanReads;
+  }
+
+  /**
+   * @return the number of decoded rows in the cache
+   */
+  public int cachedRowCount() {
+    return this.cache.size();
+  }
+
+  /**
+   * @return the shortest duration of any movie in the catalog
+   * @throws NoSuchElementException if the catalog is empty
+   */
+  public int minDuration() {
+    return durationIndex().minDuration();
+  }
+
+  /**
+   * @return the longest duration of any movie in the catalog
+   * @throws NoSuchElementException if the catalog is empty
+   */
+  public int maxDuration() {
+    return durationIndex().maxDuration();
+  }
+
+  /**
+   * Passes the row id of every movie with a duration between lowerDuration and upperDuration
+   * (inclusive) to action, in order of duration, and in the order they were added for movies with
+   * the same duration. No rows are decoded from the file.
+   *
+   * @param lowerDuration the shortest duration to include
+   * @param upperDuration the longest duration to include
+   * @param action        receives the row id of every movie in the range
+   */
+  public void forEachRowInRange(int lowerDuration, int upperDuration, IntConsumer action) {
+    if (lowerDuration > upperDuration) {
+      return;
+    }
+    DurationRowIndex index = durationIndex();
+    int end = index.firstAfter(upperDuration);
+    for (int position = index.firstAtLeast(lowerDuration); position < end; position++) {
+      action.accept(index.rowAt(position));
+    }
+  }
+
+  /**
+   * Closes the file. Rows that are in the cache can still be read afterwards.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * This class holds the properties of a row that was decoded from the file.
+   */
+  private static class DecodedRow {
+    private final Movie movie; // the movie in the row
+    private final String director; // the director column of the row
+    private final String actor; // the actor column of the row
+
+    /**
+     * @param movie    the movie in the row
+     * @param director the director column of the row
+     * @param actor    the actor column of the row
+     */
+    private DecodedRow(Movie movie, String director, String actor) {
+      this.movie = movie;
+      this.director = director;
+      this.actor = actor;
+    }
+  }
+
+  /**
+   * Returns a row from the cache, or reads it from the file and decodes every one of its fields
+   * (adding it to the cache, and removing the least recently used row if the cache is full).
+   *
+   * @param row the row id of a movie
+   * @return the decoded row
+   * @throws UncheckedIOException if the row cannot be read from the file
+   */
+  private DecodedRow decodedRow(int row) {
+    DecodedRow decoded = cache.get(checkRow(row));
+    if (decoded != null) {
+      return decoded;
+    }
+    try {
+      readSpan(rowOffsets[row], rowLengths[row]);
+    } catch (IOException e) {
+      throw new UncheckedIOException("row " + row + " could not be read", e);
+    }
+    return decode(row, 0);
+  }
+
+  /**
+   * Reads a span of the file into the start of the rowBuffer (growing the buffer first if the span
+   * does not fit).
+   *
+   * @param offset the position in the file where the span starts
+   * @param length the number of bytes in the span
+   * @throws IOException if the span cannot be read, or the file ends before it does
+   */
+  private void readSpan(long offset, int length) throws IOException {
+    if (length > rowBuffer.capacity()) {
+      rowBuffer = ByteBuffer.allocate(Math.max(length, rowBuffer.capacity() * 2));
+    }
+    rowBuffer.clear().limit(length);
+    while (rowBuffer.hasRemaining()) {
+      if (channel.read(rowBuffer, offset + rowBuffer.position()) < 0) {
+        throw new IOException("the file ended before position " + (offset + length));
+      }
+    }
+    spanReads++;
+  }
+
+  /**
+   * Decodes every field of a row that was read into the rowBuffer, and adds it to the cache
+   * (removing the least recently used row if the cache is full).
+   *
+   * @param row   the row id of a movie
+   * @param start the position in the rowBuffer where the row starts
+   * @return the decoded row
+   */
+  private DecodedRow decode(int row, int start) {
+    tokenizer.tokenizeAllFields(rowBuffer, start, start + rowLengths[row]);
+    DecodedRow decoded = new DecodedRow(tokenizer.toMovie(),
+        tokenizer.stringValue(MovieField.DIRECTOR), tokenizer.stringValue(MovieField.ACTOR));
+    cache.put(row, decoded);
+    cacheMisses++;
+    return decoded;
+  }
+
+  /**
+   * @param row a row id
+   * @return row, if it is a row of the catalog
+   * @throws IndexOutOfBoundsException if row is not a row of the catalog
+   */
+  private int checkRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new IndexOutOfBoundsException("row " + row + " is not within " + rowCount + " rows");
+    }
+    return row;
+  }
+
+  /**
+   * Returns the duration index, rebuilding it first if rows were added since it was built.
+   *
+   * @return the index of every row id, sorted by duration and then by row id
+   */
+  private DurationRowIndex durationIndex() {
+    if (rowsByDuration == null) {
+      rowsByDuration = new DurationRowIndex(durations, rowCount);
+    }
+    return rowsByDuration;
+  }
+}
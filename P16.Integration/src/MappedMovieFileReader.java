@@ -0,0 +1,397 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * This class reads a movie csv file (formatted the same as "filmtv_movies - ENG.csv") by mapping it
+ * into memory with a FileChannel, and tokenizing each row directly from the mapped bytes with a
+ * MovieRowTokenizer. Unlike the Scanner based reader, no String is created for a whole line: only
+ * the title, genre and country of each row are decoded into Strings, and the year and duration are
+ * read straight from the bytes as ints.
+ * <p>
+ * Files larger than a single mapping (2GB) are read through consecutive mapped windows. A row that
+ * crosses the end of a window is re-read at the start of the next window.
+ * <p>
+ * The first line of the file is read as a header, and its column names decide which column each
+ * MovieField is read from (see MovieColumnMap). Only the fields in the reader's projection are
+ * read, and each row is only split up to the last projected column.
+ * <p>
+ * readParallel() splits the file into byte ranges that start and end on row boundaries, and
+ * parses every range on its own worker thread. The movies are still handed to the sink in the
+ * order they appear in the file, so the RBT built from them is the same as a sequential read.
+ *
+ * @author dianakotsonis
+ */
+public class MappedMovieFileReader {
+
+  // The largest region of the file that is mapped at one time
+  private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+  // The largest byte range parsed by one parallel task (leaves room in a window for a long row)
+  private static final long MAX_CHUNK_SIZE = 1L << 30;
+  // The number of byte ranges the file is split into for each worker thread
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final Set<MovieField> projection; // the fields that are read from every row
+  private MovieColumnMap columns = MovieColumnMap.FILMTV; // the columns of the last file read
+  private MovieRowTokenizer tokenizer = new MovieRowTokenizer(); // splits each row into fields
+  private long rowOffset; // the position in the file of the row passed to the row sink
+  private int rowLength; // the number of bytes (without the line break) in that row
+
+  /**
+   * Creates a reader that reads every field that Movie objects keep.
+   */
+  public MappedMovieFileReader() {
+    this(MovieField.MOVIE_FIELDS);
+  }
+
+  /**
+   * Creates a reader that only reads some fields of every row. The other fields of the Movies it
+   * creates are left empty (or 0).
+   *
+   * @param projection the fields to read from every row
+   */
+  public MappedMovieFileReader(Set<MovieField> projection) {
+    this.projection = projection;
+  }
+
+  /**
+   * Reads every movie row of the file (after the header line), and passes the Movie objects
+   * created from them to movieSink in the order they appear in the file.
+   *
+   * @param fileName  the name of the file to read from
+   * @param movieSink receives every Movie read from the file
+   * @return the number of movies read from the file
+   * @throws IOException if the file cannot be opened or read
+   */
+  public int read(String fileName, Consumer<Movie> movieSink) throws IOException {
+    return readRows(fileName, tokenizer -> movieSink.accept(tokenizer.toMovie()));
+  }
+
+  /**
+   * Reads every movie row of the file (after the header line), and passes the tokenizer holding
+   * each row to rowSink in the order they appear in the file. This lets a row be stored without
+   * creating a Movie object for it. The tokenizer is reused for the next row once rowSink returns.
+   * While rowSink handles a row, currentRowOffset() and currentRowLength() give where the row is
+   * in the file.
+   *
+   * @param fileName the name of the file to read from
+   * @param rowSink  receives the tokenizer holding every row read from the file
+   * @return the number of rows read from the file
+   * @throws IOException if the file cannot be opened or read
+   */
+  public int readRows(String fileName, Consumer<MovieRowTokenizer> rowSink) throws IOException {
+    int rowCount = 0;
+    boolean titleLine = true;
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long windowStart = 0;
+      while (windowStart < fileSize) {
+        long windowSize = Math.min(MAX_WINDOW_SIZE, fileSize - windowStart);
+        boolean lastWindow = windowStart + windowSize == fileSize;
+        MappedByteBuffer window =
+            channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+
+        int limit = window.limit();
+        int rowStart = 0;
+        while (rowStart < limit) {
+          int rowEnd = findRowEnd(window, rowStart, limit);
+          if (rowEnd == limit && !lastWindow) {
+            // This row continues into the next window, so map the next window starting from it
+            break;
+          }
+          if (titleLine) {
+            titleLine = false;
+            columns = readColumns(window, rowStart, rowEnd);
+            tokenizer.setColumns(columns);
+          } else if (!MovieRowTokenizer.isBlankRow(window, rowStart, rowEnd)) {
+            tokenizer.tokenize(window, rowStart, rowEnd);
+            rowOffset = windowStart + rowStart;
+            rowLength = rowEnd - rowStart;
+            rowSink.accept(tokenizer);
+            rowCount++;
+          }
+          rowStart = rowEnd + 1;
+        }
+        if (rowStart == 0) {
+          throw new IOException("A row in " + fileName + " is larger than a mapped window");
+        }
+        windowStart += rowStart;
+      }
+    }
+    return rowCount;
+  }
+
+  /**
+   * @return the column map read from the header of the last file read, with this reader's
+   *         projection (or the filmtv layout if no file was read)
+   */
+  public MovieColumnMap getColumns() {
+    return this.columns;
+  }
+
+  /**
+   * @return the position in the file of the row being passed to the row sink by readRows()
+   */
+  public long currentRowOffset() {
+    return this.rowOffset;
+  }
+
+  /**
+   * @return the number of bytes in the row being passed to the row sink by readRows(), not
+   *         counting its line break
+   */
+  public int currentRowLength() {
+    return this.rowLength;
+  }
+
+  /**
+   * Reads every movie row of the file (after the header line) using threadCount worker threads,
+   * and passes the Movie objects created from them to movieSink in the order they appear in the
+   * file. movieSink is only called from the calling thread.
+   * <p>
+   * The file is split into byte ranges in three parallel passes: the quotation marks in every
+   * range are counted, so it is known whether each range starts inside of a quoted field; then
+   * each range's start is moved forward to the first line break that is not inside of quotes;
+   * finally the header is read, and every range is mapped and tokenized on its own with the
+   * header's column map. While later ranges are still being parsed, the movies of earlier ranges
+   * are handed to movieSink.
+   *
+   * @param fileName    the name of the file to read from
+   * @param threadCount the number of worker threads to parse the file with
+   * @param movieSink   receives every Movie read from the file
+   * @return the number of movies read from the file
+   * @throws IOException if the file cannot be opened or read
+   */
+  public int readParallel(String fileName, int threadCount, Consumer<Movie> movieSink)
+      throws IOException {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("threadCount must be at least 1");
+    }
+    ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      int chunkCount = (int) Math.max(threadCount * CHUNKS_PER_THREAD,
+          (fileSize + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+      chunkCount = (int) Math.max(1, Math.min(chunkCount, fileSize));
+
+      // 1. Split the file into chunks of (about) equal size, and count the quotes in each one
+      long[] nominalStarts = new long[chunkCount + 1];
+      for (int i = 0; i <= chunkCount; i++) {
+        nominalStarts[i] = fileSize * i / chunkCount;
+      }
+      List<Future<Boolean>> quoteParities = new ArrayList<>();
+      for (int i = 0; i < chunkCount; i++) {
+        long from = nominalStarts[i];
+        long to = nominalStarts[i + 1];
+        quoteParities.add(workers.submit(() -> hasOddQuoteCount(channel, from, to)));
+      }
+
+      // 2. Move the start of every chunk (except the first) past the end of the row it starts in
+      List<Future<Long>> rowStarts = new ArrayList<>();
+      boolean inQuotes = false;
+      for (int i = 0; i < chunkCount; i++) {
+        if (i == 0) {
+          rowStarts.add(workers.submit(() -> 0L));
+        } else {
+          long from = nominalStarts[i];
+          boolean startsInQuotes = inQuotes;
+          rowStarts.add(workers.submit(() -> nextRowStart(channel, from, fileSize, startsInQuotes)));
+        }
+        inQuotes ^= waitFor(quoteParities.get(i));
+      }
+      long[] chunkStarts = new long[chunkCount + 1];
+      for (int i = 0; i < chunkCount; i++) {
+        chunkStarts[i] = waitFor(rowStarts.get(i));
+      }
+      chunkStarts[chunkCount] = fileSize;
+
+      // 3. Read the header, then parse the rows of every chunk on the workers with its column
+      // map, and pass them to movieSink in file order
+      MappedByteBuffer firstChunk = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          Math.min(chunkStarts[1], MAX_WINDOW_SIZE));
+      MovieColumnMap fileColumns =
+          readColumns(firstChunk, 0, findRowEnd(firstChunk, 0, firstChunk.limit()));
+      columns = fileColumns;
+      // Every chunk encodes genres and countries with this reader's dictionaries
+      StringDictionary genres = tokenizer.getGenres();
+      StringDictionary countries = tokenizer.getCountries();
+      List<Future<List<Movie>>> chunkMovies = new ArrayList<>();
+      for (int i = 0; i < chunkCount; i++) {
+        long from = chunkStarts[i];
+        long to = chunkStarts[i + 1];
+        boolean skipTitleLine = i == 0;
+        chunkMovies.add(workers.submit(() -> readChunk(channel, from, to, skipTitleLine,
+            fileColumns, genres, countries)));
+      }
+      int rowCount = 0;
+      for (Future<List<Movie>> movies : chunkMovies) {
+        for (Movie movie : waitFor(movies)) {
+          movieSink.accept(movie);
+          rowCount++;
+        }
+      }
+      return rowCount;
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Counts the quotation marks between from and to in the file.
+   *
+   * @param channel the channel of the file being read
+   * @param from    the position of the first byte to look at
+   * @param to      the position (exclusive) of the last byte to look at
+   * @return true if there is an odd number of quotation marks in the range
+   * @throws IOException if the file cannot be read
+   */
+  private static boolean hasOddQuoteCount(FileChannel channel, long from, long to)
+      throws IOException {
+    MappedByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    boolean odd = false;
+    for (int i = 0; i < range.limit(); i++) {
+      if (range.get(i) == '"') {
+        odd = !odd;
+      }
+    }
+    return odd;
+  }
+
+  /**
+   * Finds where the first row starting at or after position from begins, which is right after the
+   * first line break that is not inside of quotes.
+   *
+   * @param channel  the channel of the file being read
+   * @param from     the position in the file to start looking from
+   * @param fileSize the size of the file
+   * @param inQuotes true if position from is inside of a quoted field
+   * @return the position of the start of the next row, or fileSize if there are no more rows
+   * @throws IOException if the file cannot be read
+   */
+  private static long nextRowStart(FileChannel channel, long from, long fileSize,
+      boolean inQuotes) throws IOException {
+    while (from < fileSize) {
+      long windowSize = Math.min(MAX_CHUNK_SIZE, fileSize - from);
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, from, windowSize);
+      for (int i = 0; i < window.limit(); i++) {
+        byte currentByte = window.get(i);
+        if (currentByte == '"') {
+          inQuotes = !inQuotes;
+        } else if (currentByte == '\n' && !inQuotes) {
+          return from + i + 1;
+        }
+      }
+      from += windowSize;
+    }
+    return fileSize;
+  }
+
+  /**
+   * Maps the rows between from and to, and creates a Movie object for each of them.
+   *
+   * @param channel       the channel of the file being read
+   * @param from          the position of the first row in the chunk
+   * @param to            the position right after the line break of the last row in the chunk
+   * @param skipTitleLine true if the first row is the file's title line
+   * @param columns       the column map of the file
+   * @param genres        the dictionary shared by every chunk to encode genres with
+   * @param countries     the dictionary shared by every chunk to encode countries with
+   * @return the movies in the chunk, in file order
+   * @throws IOException if the file cannot be read
+   */
+  private static List<Movie> readChunk(FileChannel channel, long from, long to,
+      boolean skipTitleLine, MovieColumnMap columns, StringDictionary genres,
+      StringDictionary countries) throws IOException {
+    List<Movie> movies = new ArrayList<>();
+    if (to - from > MAX_WINDOW_SIZE) {
+      throw new IOException("A row in the file is larger than a mapped window");
+    }
+    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    MovieRowTokenizer tokenizer = new MovieRowTokenizer(genres, countries);
+    tokenizer.setColumns(columns);
+    int limit = chunk.limit();
+    int rowStart = 0;
+    while (rowStart < limit) {
+      int rowEnd = findRowEnd(chunk, rowStart, limit);
+      if (skipTitleLine) {
+        skipTitleLine = false;
+      } else if (!MovieRowTokenizer.isBlankRow(chunk, rowStart, rowEnd)) {
+        tokenizer.tokenize(chunk, rowStart, rowEnd);
+        movies.add(tokenizer.toMovie());
+      }
+      rowStart = rowEnd + 1;
+    }
+    return movies;
+  }
+
+  /**
+   * Waits for a worker's task to finish, and passes along any exception it threw.
+   *
+   * @param task the task to wait for
+   * @return the result of the task
+   * @throws IOException if the task threw an IOException or was interrupted
+   */
+  private static <R> R waitFor(Future<R> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading the file", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Builds the column map of a file from its header line, with this reader's projection.
+   *
+   * @param window      the mapped bytes of the file
+   * @param headerStart the index of the first byte of the header line
+   * @param headerEnd   the index of the line break ending the header line
+   * @return the column map of the file
+   */
+  private MovieColumnMap readColumns(MappedByteBuffer window, int headerStart, int headerEnd) {
+    String header = StandardCharsets.UTF_8
+        .decode(window.slice(headerStart, headerEnd - headerStart)).toString();
+    return MovieColumnMap.fromHeader(header).project(projection);
+  }
+
+  /**
+   * Finds the end of the row that starts at rowStart. Line breaks inside of quotes are part of the
+   * row.
+   *
+   * @param window   the mapped bytes of the file
+   * @param rowStart the index of the first byte in the row
+   * @param limit    the number of bytes in the window
+   * @return the index of the line break ending the row, or limit if the row is not ended in window
+   */
+  private static int findRowEnd(MappedByteBuffer window, int rowStart, int limit) {
+    boolean inQuotes = false;
+    for (int i = rowStart; i < limit; i++) {
+      byte currentByte = window.get(i);
+      if (currentByte == '"') {
+        inQuotes = !inQuotes;
+      } else if (currentByte == '\n' && !inQuotes) {
+        return i;
+      }
+    }
+    return limit;
+  }
+}
@@ -10,17 +10,28 @@
  */
 public class Movie implements BackendMovieInterface, Comparable<Movie>{
 
-  // These are properties of the Movie
+  // These are properties of the Movie. Movies read from the same file share one String for each
+  // distinct genre and country (see MovieRowTokenizer), so these only hold references to them.
   private String title;
   private String genre;
   private int year;
   private String country;
   private int duration;
+  // These are the codes of the genre and country in the dictionaries of the backend that read the
+  // movie (see encodeWith()), or -1 if no backend encoded it
+  private int genreCode = -1;
+  private int countryCode = -1;
 
   // These are references to the Movie's parent and children in the Red Black tree.
   protected Movie downLeft; // The Movie object's left child in the RBT
   protected Movie downRight; // The movie object's right child in the RBT
   protected Movie up; // The movie object's parent in the RBT
+  // These are only used by IntrusiveMovieTree, which stores Movie objects as its own nodes
+  protected Movie nextSameDuration; // The next movie with the same duration, in insertion order
+  protected Movie lastSameDuration; // The last movie with this duration (only set on the first)
+  protected int sameDurationCount; // The number of movies with this duration (only set on the
+                                   // first)
+  protected byte color; // The movie's color in the RBT, or 0 if it is not in an IntrusiveMovieTree
 
 
   /**
@@ -85,6 +96,47 @@ public class Movie implements BackendMovieInterface, Comparable<Movie>{
     return this.duration;
   }
 
+  /**
+   * Accessor method for the code of the movie genre
+   * 
+   * @return the code of the genre in the dictionary it was last encoded with, or -1 if it was
+   *         never encoded
+   */
+  public int getGenreCode() {
+    return this.genreCode;
+  }
+
+  /**
+   * Accessor method for the code of the movie country
+   * 
+   * @return the code of the country in the dictionary it was last encoded with, or -1 if it was
+   *         never encoded
+   */
+  public int getCountryCode() {
+    return this.countryCode;
+  }
+
+  /**
+   * Encodes the movie's genre and country with a pair of dictionaries (such as the ones of the
+   * backend the movie is read into), so the movie can be filtered by its codes without comparing
+   * Strings. The genre and country are replaced by the dictionaries' copies of them, so every movie
+   * encoded with the same dictionaries shares one String for each distinct value. A null genre or
+   * country keeps the code -1.
+   * 
+   * @param genres    the dictionary to encode the genre with
+   * @param countries the dictionary to encode the country with
+   */
+  public void encodeWith(StringDictionary genres, StringDictionary countries) {
+    if (this.genre != null) {
+      this.genreCode = genres.encode(this.genre);
+      this.genre = genres.decode(this.genreCode);
+    }
+    if (this.country != null) {
+      this.countryCode = countries.encode(this.country);
+      this.country = countries.decode(this.countryCode);
+    }
+  }
+
   @Override
   public int compareTo(Movie o) {
     Movie objectComparing = (Movie) o;
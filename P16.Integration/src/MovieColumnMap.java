@@ -0,0 +1,142 @@
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * This class records which column of a movie csv file each MovieField is in, and which of the
+ * fields (the projection) should be read from every row. It is built once per file from the
+ * file's header line, so files whose columns are in a different order, or that have extra
+ * columns, are read the same way as "filmtv_movies - ENG.csv".
+ * <p>
+ * A MovieRowTokenizer only scans each row up to the last projected column, so the columns after
+ * it (such as long descriptions) are skipped without being split into fields, and fields that
+ * are not projected are not decoded. A column map cannot be changed once it is created, so one
+ * map can be shared by the tokenizers of several threads.
+ *
+ * @author dianakotsonis
+ */
+public class MovieColumnMap {
+
+  /**
+   * The columns of "filmtv_movies - ENG.csv", projecting the fields that Movie objects keep.
+   */
+  public static final MovieColumnMap FILMTV = createFilmtvMap();
+
+  private final int[] columns; // the column of each field (by ordinal), or -1 if it is missing
+  private final boolean[] projected; // true for each field (by ordinal) that should be read
+  private final int projectedWidth; // the number of columns up to the last projected field
+  private final int fieldWidth; // the number of columns up to the last field in the file
+
+  /**
+   * @param columns   the column of each field (by ordinal), or -1 if it is missing
+   * @param projected true for each field (by ordinal) that should be read
+   */
+  private MovieColumnMap(int[] columns, boolean[] projected) {
+    this.columns = columns;
+    this.projected = projected;
+    int projectedWidth = 0;
+    int fieldWidth = 0;
+    for (MovieField field : MovieField.values()) {
+      int column = columns[field.ordinal()];
+      fieldWidth = Math.max(fieldWidth, column + 1);
+      if (projected[field.ordinal()]) {
+        projectedWidth = Math.max(projectedWidth, column + 1);
+      }
+    }
+    this.projectedWidth = projectedWidth;
+    this.fieldWidth = fieldWidth;
+  }
+
+  /**
+   * Builds the column map of a file from its header line, projecting the fields that Movie
+   * objects keep. Each column is matched to a field by its name (ignoring case), and columns that
+   * do not name a field are ignored. If the header does not name any field, the file is assumed to
+   * have the columns of "filmtv_movies - ENG.csv".
+   *
+   * @param header the first line of the file
+   * @return the column map of the file
+   */
+  public static MovieColumnMap fromHeader(CharSequence header) {
+    MovieRowTokenizer tokenizer = new MovieRowTokenizer();
+    int columnCount = tokenizer.tokenizeAllColumns(header);
+    int[] columns = new int[MovieField.values().length];
+    Arrays.fill(columns, -1);
+    boolean namesAField = false;
+    for (int column = 0; column < columnCount; column++) {
+      String name = tokenizer.stringField(column);
+      if (column == 0 && !name.isEmpty() && name.charAt(0) == '\uFEFF') {
+        // Leave out the byte order mark some programs start a UTF-8 file with
+        name = name.substring(1);
+      }
+      for (MovieField field : MovieField.values()) {
+        if (columns[field.ordinal()] < 0 && field.isNamedBy(name)) {
+          columns[field.ordinal()] = column;
+          namesAField = true;
+        }
+      }
+    }
+    if (!namesAField) {
+      return FILMTV;
+    }
+    MovieColumnMap unprojected = new MovieColumnMap(columns, new boolean[columns.length]);
+    return unprojected.project(MovieField.MOVIE_FIELDS);
+  }
+
+  /**
+   * Creates a column map with the same columns as this one that only reads the given fields.
+   * Fields that are not in the file are never read.
+   *
+   * @param fields the fields that should be read from every row
+   * @return the projected column map
+   */
+  public MovieColumnMap project(Set<MovieField> fields) {
+    boolean[] newProjection = new boolean[projected.length];
+    for (MovieField field : fields) {
+      newProjection[field.ordinal()] = columns[field.ordinal()] >= 0;
+    }
+    return new MovieColumnMap(columns, newProjection);
+  }
+
+  /**
+   * @param field a movie field
+   * @return the column of the field, or -1 if the file does not have it
+   */
+  public int columnOf(MovieField field) {
+    return columns[field.ordinal()];
+  }
+
+  /**
+   * @param field a movie field
+   * @return true if the field should be read from every row
+   */
+  public boolean isProjected(MovieField field) {
+    return projected[field.ordinal()];
+  }
+
+  /**
+   * @return the number of columns that have to be split to read every projected field
+   */
+  public int projectedWidth() {
+    return this.projectedWidth;
+  }
+
+  /**
+   * @return the number of columns that have to be split to read every field in the file, whether
+   *         it is projected or not
+   */
+  public int fieldWidth() {
+    return this.fieldWidth;
+  }
+
+  /**
+   * @return the column map of "filmtv_movies - ENG.csv", projecting the fields Movie objects keep
+   */
+  private static MovieColumnMap createFilmtvMap() {
+    int[] columns = new int[MovieField.values().length];
+    boolean[] projected = new boolean[columns.length];
+    for (MovieField field : MovieField.values()) {
+      columns[field.ordinal()] = field.getDefaultColumn();
+      projected[field.ordinal()] = MovieField.MOVIE_FIELDS.contains(field);
+    }
+    return new MovieColumnMap(columns, projected);
+  }
+}
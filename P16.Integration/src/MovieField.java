@@ -0,0 +1,57 @@
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * This enum lists the properties of a movie that can be read from a movie csv file. Each field
+ * knows the names its column can have in a file's header line, and where its column is in the
+ * "filmtv_movies - ENG.csv" layout, which is used for files whose header does not name any field.
+ *
+ * @author dianakotsonis
+ */
+public enum MovieField {
+  TITLE(1, "title"), YEAR(2, "year"), GENRE(3, "genre"), DURATION(4, "duration"),
+  COUNTRY(5, "country"), DIRECTOR(6, "director", "directors"), ACTOR(7, "actor", "actors");
+
+  /**
+   * The fields that Movie objects keep, which are the fields read when no projection is given.
+   */
+  public static final Set<MovieField> MOVIE_FIELDS =
+      Collections.unmodifiableSet(EnumSet.range(TITLE, COUNTRY));
+
+  private final int defaultColumn; // the field's column in the filmtv layout
+  private final String[] headerNames; // the lower case names of the field's column in a header
+
+  /**
+   * @param defaultColumn the field's column in the filmtv layout
+   * @param headerNames   the lower case names of the field's column in a header
+   */
+  MovieField(int defaultColumn, String... headerNames) {
+    this.defaultColumn = defaultColumn;
+    this.headerNames = headerNames;
+  }
+
+  /**
+   * @return the position of this field's column in the "filmtv_movies - ENG.csv" layout
+   */
+  public int getDefaultColumn() {
+    return this.defaultColumn;
+  }
+
+  /**
+   * Checks whether a column name in a header line names this field. Names are compared ignoring
+   * case and the spaces around them.
+   *
+   * @param columnName the name of a column in a header line
+   * @return true if the column holds this field
+   */
+  public boolean isNamedBy(String columnName) {
+    String name = columnName.trim();
+    for (String headerName : headerNames) {
+      if (headerName.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,564 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class splits one row of a movie csv file (formatted the same as "filmtv_movies - ENG.csv")
+ * into its comma separated fields. A tokenizer is meant to be reused for every row of a file: it
+ * walks each row once and only records where every field starts and ends, so no Strings are
+ * created while tokenizing. Number fields are decoded straight to ints, and only the fields that a
+ * Movie keeps (title, genre and country) are turned into Strings.
+ * <p>
+ * Which column each field is in comes from a MovieColumnMap (the filmtv layout unless
+ * setColumns() is called with the map built from a file's header). A row is only scanned up to the
+ * last column the map projects, and fields that are not projected are left empty (or 0) in the
+ * Movies created from it.
+ * <p>
+ * Genres and countries only have a few distinct values, so they are encoded with a genre and a
+ * country dictionary instead of creating a String for every row, and every Movie created by the
+ * tokenizer shares the dictionary's String for its genre and country. The dictionaries belong to
+ * the tokenizer (or to the reader that shares them between its tokenizers, or to the MovieTable
+ * rows are appended to), so they are dropped along with it. Each tokenizer remembers the code of
+ * the bytes of every genre and country it has read, so a value that was read before is encoded
+ * by hashing its bytes, without creating a String or locking the dictionary.
+ * <p>
+ * Quoted fields follow RFC-4180: a field that starts with a quotation mark may contain commas, and
+ * two quotation marks in a row ("") inside of it stand for one quotation mark. The surrounding
+ * quotation marks are not part of the field's value.
+ * <p>
+ * Rows can be tokenized from a String (the Scanner reader) or from a range of bytes in a
+ * ByteBuffer (the mapped file reader).
+ *
+ * @author dianakotsonis
+ */
+public class MovieRowTokenizer {
+
+  private static final int INITIAL_FIELD_CAPACITY = 8; // the number of fields the arrays start with
+
+  private MovieColumnMap columns = MovieColumnMap.FILMTV; // the column of each field of a row
+  private CharSequence chars; // the row being tokenized, when it was given as characters
+  private ByteBuffer bytes; // the buffer holding the row, when it was given as bytes
+  private int fieldCount; // the number of fields found in the current row
+  private int[] fieldStarts = new int[INITIAL_FIELD_CAPACITY]; // where each field's value starts
+  private int[] fieldEnds = new int[INITIAL_FIELD_CAPACITY]; // where (exclusive) each value ends
+  private boolean[] fieldEscaped = new boolean[INITIAL_FIELD_CAPACITY]; // true if a value has ""
+  private byte[] scratch = new byte[256]; // reused buffer for decoding Strings out of bytes
+  private CodeCache genreCodes; // the code of each genre read, in the genre dictionary
+  private CodeCache countryCodes; // the code of each country read, in the country dictionary
+
+  /**
+   * Creates a tokenizer with its own genre and country dictionaries.
+   */
+  public MovieRowTokenizer() {
+    this(new StringDictionary(), new StringDictionary());
+  }
+
+  /**
+   * Creates a tokenizer that encodes genres and countries with the given dictionaries, so the
+   * Movies created by several tokenizers (such as one per thread of a parallel read) share their
+   * Strings.
+   *
+   * @param genres    the dictionary to encode genres with
+   * @param countries the dictionary to encode countries with
+   */
+  public MovieRowTokenizer(StringDictionary genres, StringDictionary countries) {
+    this.genreCodes = new CodeCache(genres);
+    this.countryCodes = new CodeCache(countries);
+  }
+
+  /**
+   * @return the dictionary the tokenizer encodes genres with
+   */
+  public StringDictionary getGenres() {
+    return this.genreCodes.dictionary;
+  }
+
+  /**
+   * @return the dictionary the tokenizer encodes countries with
+   */
+  public StringDictionary getCountries() {
+    return this.countryCodes.dictionary;
+  }
+
+  /**
+   * Sets which column each field of the following rows is in, and which fields are read from them.
+   *
+   * @param columns the column map of the file the rows are from
+   */
+  public void setColumns(MovieColumnMap columns) {
+    this.columns = columns;
+  }
+
+  /**
+   * @return the column map rows are tokenized with
+   */
+  public MovieColumnMap getColumns() {
+    return this.columns;
+  }
+
+  /**
+   * Checks whether a row that was read as a String (without its "\n" line break) is blank, that
+   * is, whether it holds nothing but the carriage return of a "\r\n" line break. Every read mode
+   * skips blank rows instead of turning them into empty movies.
+   *
+   * @param row the row to check
+   * @return true if the row has no characters, false otherwise
+   */
+  public static boolean isBlankRow(CharSequence row) {
+    return row.length() == 0 || (row.length() == 1 && row.charAt(0) == '\r');
+  }
+
+  /**
+   * Checks whether the UTF-8 encoded row between start and end of the buffer is blank, that is,
+   * whether it holds nothing but the carriage return of a "\r\n" line break.
+   *
+   * @param buffer the buffer holding the row
+   * @param start  the index of the first byte of the row
+   * @param end    the index of the line break ending the row
+   * @return true if the row has no characters, false otherwise
+   */
+  public static boolean isBlankRow(ByteBuffer buffer, int start, int end) {
+    return end == start || (end == start + 1 && buffer.get(start) == '\r');
+  }
+
+  /**
+   * Checks whether a row that was read as a String is inside a quoted field at the end of one of
+   * its lines, which means the line break after that line belongs to the field and the row
+   * continues on the next line. Only the given line is scanned, starting from the quote state at
+   * the end of the row's previous line, so joining the lines of a row takes linear time.
+   *
+   * @param line     the line of the row to check
+   * @param inQuotes true if the row's previous line ended inside a quoted field
+   * @return true if the row is inside a quoted field at the end of line, false otherwise
+   */
+  public static boolean endsInsideQuotes(CharSequence line, boolean inQuotes) {
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) == '"') {
+        inQuotes = !inQuotes;
+      }
+    }
+    return inQuotes;
+  }
+
+  /**
+   * Tokenizes a row that was read as a String (without its "\n" line break), up to the last
+   * projected column. The carriage return of a "\r\n" line break at the end of the row is left
+   * out, the same as for rows tokenized from bytes.
+   *
+   * @param row the row to tokenize
+   * @return the number of fields found in the row
+   */
+  public int tokenize(CharSequence row) {
+    this.chars = row;
+    this.bytes = null;
+    int end = row.length();
+    if (end > 0 && row.charAt(end - 1) == '\r') {
+      end--;
+    }
+    return split(0, end, columns.projectedWidth());
+  }
+
+  /**
+   * Tokenizes every column of a row that was read as a String, such as a header line.
+   *
+   * @param row the row to tokenize
+   * @return the number of fields found in the row
+   */
+  public int tokenizeAllColumns(CharSequence row) {
+    this.chars = row;
+    this.bytes = null;
+    int end = row.length();
+    if (end > 0 && row.charAt(end - 1) == '\r') {
+      end--;
+    }
+    return split(0, end, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Tokenizes the UTF-8 encoded row between start and end of the buffer, up to the last projected
+   * column. The buffer's position is not changed.
+   *
+   * @param buffer the buffer holding the row
+   * @param start  the index of the first byte of the row
+   * @param end    the index of the line break ending the row
+   * @return the number of fields found in the row
+   */
+  public int tokenize(ByteBuffer buffer, int start, int end) {
+    this.chars = null;
+    this.bytes = buffer;
+    // Leave out the carriage return of a "\r\n" line break
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    return split(start, end, columns.projectedWidth());
+  }
+
+  /**
+   * Tokenizes a row the same way as tokenize(buffer, start, end), but up to the last column of any
+   * field, so fields that are not projected (such as the director and actor, which Movie objects
+   * do not keep) can be read with stringValue().
+   *
+   * @param buffer the buffer holding the row
+   * @param start  the index of the first byte of the row
+   * @param end    the index of the line break ending the row
+   * @return the number of fields found in the row
+   */
+  public int tokenizeAllFields(ByteBuffer buffer, int start, int end) {
+    this.chars = null;
+    this.bytes = buffer;
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    return split(start, end, columns.fieldWidth());
+  }
+
+  /**
+   * @return the number of fields found in the current row
+   */
+  public int fieldCount() {
+    return this.fieldCount;
+  }
+
+  /**
+   * Creates a Movie object from the current row. Properties that are missing from the row, or are
+   * not projected, are left empty (or 0).
+   *
+   * @return the Movie object described by the current row
+   * @throws NumberFormatException if the year or duration field is not a valid integer
+   */
+  public Movie toMovie() {
+    String title = projectedString(MovieField.TITLE);
+    int year = projectedInt(MovieField.YEAR);
+    String genre = genreCodes.dictionary.decode(projectedCode(MovieField.GENRE, genreCodes));
+    int duration = projectedInt(MovieField.DURATION);
+    String country =
+        countryCodes.dictionary.decode(projectedCode(MovieField.COUNTRY, countryCodes));
+    return new Movie(title, genre, year, country, duration);
+  }
+
+  /**
+   * Reads only the duration of the current row, without creating any Strings.
+   *
+   * @return the duration of the current row, or 0 if it is missing
+   * @throws NumberFormatException if the duration field is not a valid integer
+   */
+  public int toDuration() {
+    int column = columns.columnOf(MovieField.DURATION);
+    return (column >= 0 && column < fieldCount) ? intField(column) : 0;
+  }
+
+  /**
+   * Returns the value of a field of the current row as a String, whether it is projected or not.
+   *
+   * @param field the field to read
+   * @return the value of the field, or "" if the row does not have it (or it was not tokenized)
+   */
+  public String stringValue(MovieField field) {
+    int column = columns.columnOf(field);
+    return (column >= 0 && column < fieldCount) ? stringField(column) : "";
+  }
+
+  /**
+   * Adds the current row to a MovieTable, without creating a Movie object. Properties that are
+   * missing from the row, or are not projected, are left empty (or 0). The genre and country are
+   * encoded with the table's dictionaries, which the tokenizer uses from then on.
+   *
+   * @param table the table to add the row to
+   * @return the row id of the row in the table
+   * @throws NumberFormatException if the year or duration field is not a valid integer
+   */
+  public int appendTo(MovieTable table) {
+    if (genreCodes.dictionary != table.getGenres()) {
+      genreCodes = new CodeCache(table.getGenres());
+    }
+    if (countryCodes.dictionary != table.getCountries()) {
+      countryCodes = new CodeCache(table.getCountries());
+    }
+    String title = projectedString(MovieField.TITLE);
+    int year = projectedInt(MovieField.YEAR);
+    int genreCode = projectedCode(MovieField.GENRE, genreCodes);
+    int duration = projectedInt(MovieField.DURATION);
+    int countryCode = projectedCode(MovieField.COUNTRY, countryCodes);
+    return table.addRow(title, genreCode, year, countryCode, duration);
+  }
+
+  /**
+   * Returns the value of a field as a String, with its quotes removed.
+   *
+   * @param field the index of the field in the current row
+   * @return the String value of the field
+   */
+  public String stringField(int field) {
+    int start = fieldStarts[field];
+    int end = fieldEnds[field];
+    if (chars != null) {
+      String value = chars.subSequence(start, end).toString();
+      return fieldEscaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+    if (end - start > scratch.length) {
+      scratch = new byte[Math.max(end - start, scratch.length * 2)];
+    }
+    int length = 0;
+    if (fieldEscaped[field]) {
+      // Copy the value into the scratch buffer one byte at a time, skipping the first quote of
+      // every escaped ("") quote
+      for (int i = start; i < end; i++) {
+        byte currentByte = bytes.get(i);
+        scratch[length++] = currentByte;
+        if (currentByte == '"') {
+          i++;
+        }
+      }
+    } else {
+      length = end - start;
+      bytes.get(start, scratch, 0, length);
+    }
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decodes the digits of a field into an int without creating a String.
+   *
+   * @param field the index of the field in the current row
+   * @return the int value of the field
+   * @throws NumberFormatException if the field is not a valid integer
+   */
+  public int intField(int field) {
+    int start = fieldStarts[field];
+    int end = fieldEnds[field];
+    boolean negative = start < end && charAt(start) == '-';
+    if (negative) {
+      start++;
+    }
+    if (start == end || end - start > 9) {
+      throw new NumberFormatException("Field " + field + " is not a valid integer");
+    }
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Field " + field + " is not a valid integer");
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * @param field a Movie property
+   * @return the column of the field in the current row, or -1 if the field is not projected or
+   *         the row does not have it
+   */
+  private int projectedColumn(MovieField field) {
+    int column = columns.columnOf(field);
+    return (columns.isProjected(field) && column < fieldCount) ? column : -1;
+  }
+
+  /**
+   * @param field a Movie property that holds text
+   * @return the value of the field, or "" if it is not projected or missing
+   */
+  private String projectedString(MovieField field) {
+    int column = projectedColumn(field);
+    return column >= 0 ? stringField(column) : "";
+  }
+
+  /**
+   * @param field a Movie property that holds a number
+   * @return the value of the field, or 0 if it is not projected or missing
+   * @throws NumberFormatException if the field is not a valid integer
+   */
+  private int projectedInt(MovieField field) {
+    int column = projectedColumn(field);
+    return column >= 0 ? intField(column) : 0;
+  }
+
+  /**
+   * Encodes the value of a low cardinality field with a dictionary. A field that is not projected
+   * or is missing from the row is encoded as an empty String.
+   *
+   * @param movieField a Movie property with few distinct values
+   * @param cache      the codes of the values this tokenizer has read from the field
+   * @return the code of the field's value
+   */
+  private int projectedCode(MovieField movieField, CodeCache cache) {
+    int field = projectedColumn(movieField);
+    if (field < 0) {
+      return cache.dictionary.encode("");
+    }
+    if (chars != null || fieldEscaped[field]) {
+      // The value has to be turned into a String to be unescaped (or was read as a String)
+      return cache.dictionary.encode(stringField(field));
+    }
+    // Copy the value into the scratch buffer, and look its bytes up in the cache
+    int length = fieldEnds[field] - fieldStarts[field];
+    if (length > scratch.length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    bytes.get(fieldStarts[field], scratch, 0, length);
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + scratch[i];
+    }
+    int code = cache.find(scratch, length, hash);
+    if (code < 0) {
+      code = cache.dictionary.encode(new String(scratch, 0, length, StandardCharsets.UTF_8));
+      cache.add(scratch, length, hash, code);
+    }
+    return code;
+  }
+
+  /**
+   * This class is a hash table from the UTF-8 bytes of the values read from one field to their
+   * codes in a dictionary, using open addressing. It stops growing after MAX_SIZE values, so a
+   * field with many distinct values falls back to encoding Strings with the dictionary.
+   */
+  private static class CodeCache {
+    private static final int MAX_SIZE = 4096; // the largest number of values that are cached
+
+    private final StringDictionary dictionary; // the dictionary the codes belong to
+    private byte[][] keys = new byte[64][]; // the bytes of the value in each slot, or null
+    private int[] hashes = new int[64]; // the hash of the bytes in each slot
+    private int[] codes = new int[64]; // the code of the value in each slot
+    private int size = 0; // the number of values in the table
+
+    /**
+     * @param dictionary the dictionary the cached codes belong to
+     */
+    private CodeCache(StringDictionary dictionary) {
+      this.dictionary = dictionary;
+    }
+
+    /**
+     * @param value  an array starting with the bytes of a value
+     * @param length the number of bytes in the value
+     * @param hash   the hash of the value's bytes
+     * @return the code of the value, or -1 if it is not cached
+     */
+    private int find(byte[] value, int length, int hash) {
+      int mask = keys.length - 1;
+      for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+        if (hashes[slot] == hash
+            && Arrays.equals(keys[slot], 0, keys[slot].length, value, 0, length)) {
+          return codes[slot];
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Caches the code of a value that is not cached yet, doubling the table when it is half full.
+     *
+     * @param value  an array starting with the bytes of the value
+     * @param length the number of bytes in the value
+     * @param hash   the hash of the value's bytes
+     * @param code   the value's code in the dictionary
+     */
+    private void add(byte[] value, int length, int hash, int code) {
+      if (size == MAX_SIZE) {
+        return;
+      }
+      if (2 * (size + 1) > keys.length) {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCodes = codes;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[keys.length];
+        codes = new int[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+          if (oldKeys[i] != null) {
+            place(oldKeys[i], oldHashes[i], oldCodes[i]);
+          }
+        }
+      }
+      place(Arrays.copyOf(value, length), hash, code);
+      size++;
+    }
+
+    /**
+     * Stores a value in the first empty slot at or after the slot of its hash.
+     *
+     * @param key  the bytes of the value
+     * @param hash the hash of the bytes
+     * @param code the value's code
+     */
+    private void place(byte[] key, int hash, int code) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      hashes[slot] = hash;
+      codes[slot] = code;
+    }
+  }
+
+  /**
+   * Records where each field of the row between start and end begins and ends. Only the first
+   * maxFields fields are recorded, the rest of the row is not scanned. The field arrays grow when a
+   * row has more fields than they hold.
+   *
+   * @param start the index of the first character of the row
+   * @param end   the index (exclusive) of the last character of the row
+   * @return the number of fields found
+   */
+  private int split(int start, int end, int maxFields) {
+    fieldCount = 0;
+    int position = start;
+    while (fieldCount < maxFields) {
+      int valueStart = position;
+      int valueEnd;
+      boolean escaped = false;
+      if (position < end && charAt(position) == '"') {
+        // A quoted field runs until a quotation mark that is not followed by another one
+        valueStart = position + 1;
+        position = valueStart;
+        while (position < end) {
+          if (charAt(position) == '"') {
+            if (position + 1 < end && charAt(position + 1) == '"') {
+              escaped = true;
+              position += 2;
+              continue;
+            }
+            break;
+          }
+          position++;
+        }
+        valueEnd = position;
+        // Skip past the closing quote, to the comma ending the field
+        while (position < end && charAt(position) != ',') {
+          position++;
+        }
+      } else {
+        while (position < end && charAt(position) != ',') {
+          position++;
+        }
+        valueEnd = position;
+      }
+      if (fieldCount == fieldStarts.length) {
+        fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+        fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        fieldEscaped = Arrays.copyOf(fieldEscaped, fieldCount * 2);
+      }
+      fieldStarts[fieldCount] = valueStart;
+      fieldEnds[fieldCount] = valueEnd;
+      fieldEscaped[fieldCount] = escaped;
+      fieldCount++;
+      if (position >= end) {
+        break;
+      }
+      // Move past the comma to the start of the next field
+      position++;
+    }
+    return fieldCount;
+  }
+
+  /**
+   * @param index the index of a character in the current row
+   * @return the character (or byte) at index
+   */
+  private int charAt(int index) {
+    return chars != null ? chars.charAt(index) : bytes.get(index);
+  }
+}
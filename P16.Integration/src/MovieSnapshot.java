@@ -0,0 +1,200 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class saves an RBT of Movie objects to a compact binary snapshot file, and loads it back
+ * without parsing a csv file or rebalancing the tree for every movie. A snapshot file contains:
+ * <ul>
+ * <li>a header: the magic number, the format version, the number of movies, the number of strings
+ * and a CRC32 checksum of everything after the header</li>
+ * <li>a string table that holds every distinct title, genre and country once, each as its length
+ * in bytes followed by its UTF-8 bytes (a null String is stored as the length -1)</li>
+ * <li>one record per movie, in the RBT's in-order sequence: the string table indexes of its title,
+ * genre and country, followed by its year and duration</li>
+ * </ul>
+ * Snapshots written by a different format version, or whose contents do not match the checksum,
+ * are rejected when they are loaded.
+ *
+ * @author dianakotsonis
+ */
+public class MovieSnapshot {
+
+  private static final int MAGIC = 0x4D56544D; // "MVTM", marks a file as a MovieTimer snapshot
+  private static final int VERSION = 1; // the version of the snapshot format written by save()
+  private static final int CHECKSUM_POSITION = 16; // where the checksum is stored in the header
+  private static final int HEADER_SIZE = 24; // the number of bytes before the string table
+
+  /**
+   * Writes every movie in movieList to a snapshot file. Every movie is written, even if movieList
+   * has an iteration start point set.
+   *
+   * @param movieList the RBT of movies to save
+   * @param fileName  the name of the snapshot file to write
+   * @throws IOException if the file cannot be written
+   */
+  public static void save(IterableMultiKeyRBT<Movie> movieList, String fileName)
+      throws IOException {
+    // Build the string table, giving each distinct String an index the first time it is seen
+    HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    ArrayList<String> strings = new ArrayList<String>();
+    Iterator<Movie> movies = movieList.iteratorFrom(null);
+    while (movies.hasNext()) {
+      Movie movie = movies.next();
+      addString(movie.getTitle(), stringIndexes, strings);
+      addString(movie.getGenre(), stringIndexes, strings);
+      addString(movie.getCountry(), stringIndexes, strings);
+    }
+
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      CRC32 checksum = new CRC32();
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+          Channels.newOutputStream(channel), 1 << 16));
+      // Write the header with an empty checksum, which is filled in after the contents
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(movieList.numKeys());
+      output.writeInt(strings.size());
+      output.writeLong(0);
+      output.flush();
+
+      // Write the string table and the movie records, computing their checksum as they are written
+      DataOutputStream contents = new DataOutputStream(new BufferedOutputStream(
+          new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 1 << 16));
+      for (String string : strings) {
+        if (string == null) {
+          contents.writeInt(-1);
+          continue;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        contents.writeInt(bytes.length);
+        contents.write(bytes);
+      }
+      movies = movieList.iteratorFrom(null);
+      while (movies.hasNext()) {
+        Movie movie = movies.next();
+        contents.writeInt(stringIndexes.get(movie.getTitle()));
+        contents.writeInt(stringIndexes.get(movie.getGenre()));
+        contents.writeInt(stringIndexes.get(movie.getCountry()));
+        contents.writeInt(movie.getYear());
+        contents.writeInt(movie.getDuration());
+      }
+      contents.flush();
+
+      ByteBuffer checksumBytes = ByteBuffer.allocate(8).putLong(0, checksum.getValue());
+      channel.write(checksumBytes, CHECKSUM_POSITION);
+    }
+  }
+
+  /**
+   * Replaces the contents of movieList with the movies in a snapshot file. The file is mapped into
+   * memory and its checksum is verified before anything is read from it. Since the movies are
+   * stored in sorted order, the tree is then built in linear time with buildFromSortedKeys().
+   *
+   * @param fileName  the name of the snapshot file to read
+   * @param movieList the RBT to load the movies into
+   * @throws IOException if the file cannot be read, is not a snapshot, was written by a different
+   *                     version, or does not match its checksum
+   */
+  public static void load(String fileName, IterableMultiKeyRBT<Movie> movieList)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(fileName + " is too large to be a movie snapshot");
+      }
+      ByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (snapshot.remaining() < HEADER_SIZE || snapshot.getInt() != MAGIC) {
+        throw new IOException(fileName + " is not a movie snapshot");
+      }
+      int version = snapshot.getInt();
+      if (version != VERSION) {
+        throw new IOException(
+            fileName + " is a version " + version + " snapshot, expected version " + VERSION);
+      }
+      int movieCount = snapshot.getInt();
+      int stringCount = snapshot.getInt();
+      long expectedChecksum = snapshot.getLong();
+      CRC32 checksum = new CRC32();
+      checksum.update(snapshot.slice());
+      if (checksum.getValue() != expectedChecksum || movieCount < 0 || stringCount < 0) {
+        throw new IOException(fileName + " does not match its checksum");
+      }
+
+      String[] strings = new String[stringCount];
+      byte[] bytes = new byte[256];
+      for (int i = 0; i < stringCount; i++) {
+        int length = snapshot.getInt();
+        if (length == -1) {
+          // A null String, so strings[i] stays null
+          continue;
+        } else if (length < 0) {
+          throw new IOException(fileName + " stores a string with a negative length");
+        }
+        if (length > bytes.length) {
+          bytes = new byte[length];
+        }
+        snapshot.get(bytes, 0, length);
+        strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+      Movie[] movies = new Movie[movieCount];
+      for (int i = 0; i < movieCount; i++) {
+        String title = readString(snapshot, strings);
+        String genre = readString(snapshot, strings);
+        String country = readString(snapshot, strings);
+        int year = snapshot.getInt();
+        int duration = snapshot.getInt();
+        movies[i] = new Movie(title, genre, year, country, duration);
+        if (i > 0 && movies[i - 1].compareTo(movies[i]) > 0) {
+          throw new IOException(fileName + " does not store its movies in sorted order");
+        }
+      }
+      movieList.buildFromSortedKeys(movies, movieCount);
+    } catch (BufferUnderflowException | NegativeArraySizeException e) {
+      throw new IOException(fileName + " ended before all of its movies were read", e);
+    }
+  }
+
+  /**
+   * Gives a String the next index in the string table, if it is not in the table yet.
+   *
+   * @param string        the String to add
+   * @param stringIndexes the index of every String already in the table
+   * @param strings       the Strings in the table, in index order
+   */
+  private static void addString(String string, HashMap<String, Integer> stringIndexes,
+      ArrayList<String> strings) {
+    if (!stringIndexes.containsKey(string)) {
+      stringIndexes.put(string, strings.size());
+      strings.add(string);
+    }
+  }
+
+  /**
+   * Reads a string table index, and returns the String it refers to.
+   *
+   * @param contents the snapshot's contents, positioned at the index
+   * @param strings  the string table
+   * @return the String at the index that was read
+   * @throws IOException if the index is not in the string table
+   */
+  private static String readString(ByteBuffer contents, String[] strings) throws IOException {
+    int index = contents.getInt();
+    if (index < 0 || index >= strings.length) {
+      throw new IOException("snapshot refers to a string that is not in its string table");
+    }
+    return strings[index];
+  }
+}
@@ -0,0 +1,382 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * This class stores a catalog of movies as columns instead of as Movie objects. Every movie is a
+ * row, identified by an int row id (the order it was added in), and each property is kept in its
+ * own array:
+ * <ul>
+ * <li>durations and years are int arrays</li>
+ * <li>genres and countries are int codes into the table's own StringDictionaries, so each
+ * distinct genre and country String is stored once per table, and is dropped with the table</li>
+ * <li>titles are almost all distinct, so instead of a dictionary they are packed one after another
+ * into a single UTF-8 byte array, with an int array of where each title starts</li>
+ * </ul>
+ * A catalog of n movies is therefore held in a few arrays, instead of n Movie objects and 3n
+ * Strings. Movie objects are only created when getMovie() is called for a row.
+ * <p>
+ * The duration index is a DurationRowIndex of every row id sorted by duration (with rows of the
+ * same duration in the order they were added). It is rebuilt the first time it is needed after
+ * rows were added. Range queries find the first row with a binary search and return a RowCursor
+ * over the following row ids, which only reads the columns that were requested.
+ *
+ * @author dianakotsonis
+ */
+public class MovieTable {
+
+  /**
+   * The columns of the table, which are requested when a RowCursor is created.
+   */
+  public enum Column {
+    TITLE, GENRE, YEAR, COUNTRY, DURATION
+  }
+
+  private static final int INITIAL_CAPACITY = 1024; // the number of rows the columns start with
+
+  private int rowCount = 0; // the number of rows in the table
+  private int[] durations = new int[INITIAL_CAPACITY]; // the duration of each row
+  private int[] years = new int[INITIAL_CAPACITY]; // the year of each row
+  private int[] genreCodes = new int[INITIAL_CAPACITY]; // the code of each row's genre
+  private int[] countryCodes = new int[INITIAL_CAPACITY]; // the code of each row's country
+  private int[] titleStarts = new int[INITIAL_CAPACITY + 1]; // where each row's title starts in
+                                                             // titleBytes (and where it ends)
+  private byte[] titleBytes = new byte[INITIAL_CAPACITY * 16]; // every title, encoded in UTF-8
+  private final StringDictionary genres = new StringDictionary(); // the distinct genres
+  private final StringDictionary countries = new StringDictionary(); // the distinct countries
+  private DurationRowIndex rowsByDuration; // every row id sorted by duration, or null if it
+                                           // needs to be rebuilt after rows were added
+
+  /**
+   * Adds a movie to the end of the table.
+   *
+   * @param title    the title of the movie
+   * @param genre    the genre of the movie
+   * @param year     the year the movie was released
+   * @param country  the country the movie is from
+   * @param duration the movie runtime (in minutes)
+   * @return the row id of the movie
+   * @throws NullPointerException  if title, genre or country is null
+   * @throws IllegalStateException if the titles would take up more than 2GB
+   */
+  public int addRow(String title, String genre, int year, String country, int duration) {
+    return addRow(title, genres.encode(genre), year, countries.encode(country), duration);
+  }
+
+  /**
+   * Adds a movie whose genre and country were already encoded with getGenres() and getCountries()
+   * to the end of the table.
+   *
+   * @param title       the title of the movie
+   * @param genreCode   the code of the movie's genre
+   * @param year        the year the movie was released
+   * @param countryCode the code of the movie's country
+   * @param duration    the movie runtime (in minutes)
+   * @return the row id of the movie
+   * @throws NullPointerException  if title is null
+   * @throws IllegalStateException if the titles would take up more than 2GB
+   */
+  public int addRow(String title, int genreCode, int year, int countryCode, int duration) {
+    byte[] encodedTitle = title.getBytes(StandardCharsets.UTF_8);
+    int titleStart = titleStarts[rowCount];
+    if (encodedTitle.length > Integer.MAX_VALUE - 8 - titleStart) {
+      throw new IllegalStateException("the titles of the table do not fit in one array");
+    }
+    if (rowCount + 1 == titleStarts.length) {
+      int capacity = durations.length * 2;
+      durations = Arrays.copyOf(durations, capacity);
+      years = Arrays.copyOf(years, capacity);
+      genreCodes = Arrays.copyOf(genreCodes, capacity);
+      countryCodes = Arrays.copyOf(countryCodes, capacity);
+      titleStarts = Arrays.copyOf(titleStarts, capacity + 1);
+    }
+    if (titleStart + encodedTitle.length > titleBytes.length) {
+      long capacity = Math.max((long) titleBytes.length * 2, titleStart + encodedTitle.length);
+      titleBytes = Arrays.copyOf(titleBytes, (int) Math.min(capacity, Integer.MAX_VALUE - 8));
+    }
+    System.arraycopy(encodedTitle, 0, titleBytes, titleStart, encodedTitle.length);
+    int row = rowCount++;
+    titleStarts[rowCount] = titleStart + encodedTitle.length;
+    durations[row] = duration;
+    years[row] = year;
+    genreCodes[row] = genreCode;
+    countryCodes[row] = countryCode;
+    rowsByDuration = null;
+    return row;
+  }
+
+  /**
+   * @return the number of rows in the table
+   */
+  public int rowCount() {
+    return this.rowCount;
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the movie's duration
+   */
+  public int getDuration(int row) {
+    return durations[checkRow(row)];
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the movie's year
+   */
+  public int getYear(int row) {
+    return years[checkRow(row)];
+  }
+
+  /**
+   * Decodes a movie's title from the title column. This creates a new String every time.
+   *
+   * @param row the row id of a movie
+   * @return the movie's title
+   */
+  public String getTitle(int row) {
+    checkRow(row);
+    return new String(titleBytes, titleStarts[row], titleStarts[row + 1] - titleStarts[row],
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the movie's genre
+   */
+  public String getGenre(int row) {
+    return genres.decode(genreCodes[checkRow(row)]);
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the movie's country
+   */
+  public String getCountry(int row) {
+    return countries.decode(countryCodes[checkRow(row)]);
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the code of the movie's genre in getGenres()
+   */
+  public int getGenreCode(int row) {
+    return genreCodes[checkRow(row)];
+  }
+
+  /**
+   * @param row the row id of a movie
+   * @return the code of the movie's country in getCountries()
+   */
+  public int getCountryCode(int row) {
+    return countryCodes[checkRow(row)];
+  }
+
+  /**
+   * @return the dictionary of the genres in the table
+   */
+  public StringDictionary getGenres() {
+    return this.genres;
+  }
+
+  /**
+   * @return the dictionary of the countries in the table
+   */
+  public StringDictionary getCountries() {
+    return this.countries;
+  }
+
+  /**
+   * Creates a Movie object from a row of the table. The Movie is not kept by the table, so a new
+   * one is created every time, but it shares the table's genre and country Strings.
+   *
+   * @param row the row id of a movie
+   * @return a Movie holding the row's properties
+   */
+  public Movie getMovie(int row) {
+    return new Movie(getTitle(row), getGenre(row), getYear(row), getCountry(row),
+        getDuration(row));
+  }
+
+  /**
+   * @return the shortest duration of any movie in the table
+   * @throws NoSuchElementException if the table is empty
+   */
+  public int minDuration() {
+    if (rowCount == 0) {
+      throw new NoSuchElementException("the table is empty");
+    }
+    return durationIndex().minDuration();
+  }
+
+  /**
+   * @return the longest duration of any movie in the table
+   * @throws NoSuchElementException if the table is empty
+   */
+  public int maxDuration() {
+    if (rowCount == 0) {
+      throw new NoSuchElementException("the table is empty");
+    }
+    return durationIndex().maxDuration();
+  }
+
+  /**
+   * Counts the movies with a duration between lowerDuration and upperDuration (inclusive).
+   *
+   * @param lowerDuration the shortest duration to count
+   * @param upperDuration the longest duration to count
+   * @return the number of movies in the range
+   */
+  public int countInRange(int lowerDuration, int upperDuration) {
+    if (lowerDuration > upperDuration) {
+      return 0;
+    }
+    DurationRowIndex index = durationIndex();
+    return index.firstAfter(upperDuration) - index.firstAtLeast(lowerDuration);
+  }
+
+  /**
+   * Returns a cursor over the movies with a duration between lowerDuration and upperDuration
+   * (inclusive), in order of duration, and in the order they were added for movies with the same
+   * duration. Only the requested columns can be read from the cursor.
+   *
+   * @param lowerDuration the shortest duration to include
+   * @param upperDuration the longest duration to include
+   * @param columns       the columns that will be read from the cursor
+   * @return the cursor, positioned before the first movie in the range
+   */
+  public RowCursor rangeCursor(int lowerDuration, int upperDuration, Column... columns) {
+    DurationRowIndex index = durationIndex();
+    int from = index.firstAtLeast(lowerDuration);
+    int to = (lowerDuration > upperDuration) ? from : index.firstAfter(upperDuration);
+    return new RowCursor(index, from, to, columns);
+  }
+
+  /**
+   * This class walks over a range of the duration index one row at a time. next() moves it to the
+   * next row, and the getters read the requested columns of that row. Reading a column that was not
+   * requested when the cursor was created throws an IllegalStateException.
+   */
+  public class RowCursor {
+    private final DurationRowIndex rows; // the duration index the cursor walks over
+    private int position; // the position of the current row in rows
+    private final int end; // the position (exclusive) of the last row in the range
+    private final boolean[] projected = new boolean[Column.values().length]; // requested columns
+
+    /**
+     * @param rows    the duration index
+     * @param from    the position of the first row in the range
+     * @param end     the position (exclusive) of the last row in the range
+     * @param columns the columns that can be read
+     */
+    private RowCursor(DurationRowIndex rows, int from, int end, Column[] columns) {
+      this.rows = rows;
+      this.position = from - 1;
+      this.end = end;
+      for (Column column : columns) {
+        projected[column.ordinal()] = true;
+      }
+    }
+
+    /**
+     * Moves the cursor to the next row in the range.
+     *
+     * @return true if the cursor is on a row, false if there are no rows left
+     */
+    public boolean next() {
+      if (position < end) {
+        position++;
+      }
+      return position < end;
+    }
+
+    /**
+     * @return the number of rows left in the range after the current one
+     */
+    public int remaining() {
+      return Math.max(0, end - position - 1);
+    }
+
+    /**
+     * @return the row id of the current row
+     * @throws NoSuchElementException if the cursor is not on a row
+     */
+    public int getRow() {
+      if (position < 0 || position >= end) {
+        throw new NoSuchElementException("the cursor is not on a row");
+      }
+      return rows.rowAt(position);
+    }
+
+    /**
+     * @return the title of the current row
+     */
+    public String getTitle() {
+      return MovieTable.this.getTitle(projectedRow(Column.TITLE));
+    }
+
+    /**
+     * @return the genre of the current row
+     */
+    public String getGenre() {
+      return MovieTable.this.getGenre(projectedRow(Column.GENRE));
+    }
+
+    /**
+     * @return the year of the current row
+     */
+    public int getYear() {
+      return years[projectedRow(Column.YEAR)];
+    }
+
+    /**
+     * @return the country of the current row
+     */
+    public String getCountry() {
+      return MovieTable.this.getCountry(projectedRow(Column.COUNTRY));
+    }
+
+    /**
+     * @return the duration of the current row
+     */
+    public int getDuration() {
+      return durations[projectedRow(Column.DURATION)];
+    }
+
+    /**
+     * @param column the column being read
+     * @return the row id of the current row
+     * @throws IllegalStateException if column was not requested when the cursor was created
+     */
+    private int projectedRow(Column column) {
+      if (!projected[column.ordinal()]) {
+        throw new IllegalStateException("the " + column + " column was not requested");
+      }
+      return getRow();
+    }
+  }
+
+  /**
+   * @param row a row id
+   * @return row, if it is a row of the table
+   * @throws IndexOutOfBoundsException if row is not a row of the table
+   */
+  private int checkRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new IndexOutOfBoundsException("row " + row + " is not within " + rowCount + " rows");
+    }
+    return row;
+  }
+
+  /**
+   * Returns the duration index, rebuilding it first if rows were added since it was built.
+   *
+   * @return the index of every row id, sorted by duration and then by row id
+   */
+  private DurationRowIndex durationIndex() {
+    if (rowsByDuration == null) {
+      rowsByDuration = new DurationRowIndex(durations, rowCount);
+    }
+    return rowsByDuration;
+  }
+}
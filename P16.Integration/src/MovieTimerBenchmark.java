@@ -0,0 +1,677 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class times the backend's operations on a large movie csv file, so different
+ * implementations can be compared on the same data. If no file is given, a csv file formatted the
+ * same as "filmtv_movies - ENG.csv" is generated with random movies.
+ * <p>
+ * Usage: java MovieTimerBenchmark [rowCount] [fileName]
+ *
+ * @author dianakotsonis
+ */
+public class MovieTimerBenchmark {
+
+  private static final String[] GENRES = {"Drama", "Comedy", "Thriller", "Action", "Animation",
+      "Horror", "Romantic", "Documentary", "Western", "Adventure"};
+  private static final String[] COUNTRIES = {"United States", "Italy", "France", "Germany",
+      "United Kingdom", "Japan", "Spain", "Greece", "Canada", "India"};
+
+  /**
+   * Writes a csv file of randomly generated movies (with the same columns as the Kaggle filmtv
+   * data set).
+   *
+   * @param fileName the name of the file to write
+   * @param rowCount the number of movies to write
+   * @throws IOException if the file cannot be written
+   */
+  public static void generateMovieFile(String fileName, int rowCount) throws IOException {
+    Random random = new Random(400);
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+      writer.write("id,title,year,genre,duration,country,director,actor\n");
+      for (int i = 0; i < rowCount; i++) {
+        writer.write(i + ",\"Movie, number " + i + "\"," + (1920 + random.nextInt(104)) + ","
+            + GENRES[random.nextInt(GENRES.length)] + "," + (60 + random.nextInt(120)) + ","
+            + COUNTRIES[random.nextInt(COUNTRIES.length)] + ",director" + (i % 5000) + ",actor "
+            + (i % 7000) + "\n");
+      }
+    }
+  }
+
+  /**
+   * Reads the file into a new RBT with the given ReadMode, and prints how many rows per second
+   * were read.
+   *
+   * @param fileName the file to read
+   * @param mode     the way the file is read
+   */
+  private static void timeReadFile(String fileName, ReadMode mode) {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> backend = new BackendDeveloperIndividual<Movie>(movieList);
+    long start = System.nanoTime();
+    backend.readFile(fileName, mode);
+    long elapsed = System.nanoTime() - start;
+    int rowCount = movieList.numKeys();
+    if (mode == ReadMode.TABLE) {
+      rowCount = backend.getMovieTable().rowCount();
+    } else if (mode == ReadMode.LAZY) {
+      rowCount = backend.getMovieCatalog().rowCount();
+      try {
+        backend.getMovieCatalog().close();
+      } catch (IOException e) {
+        System.out.println("File could not be closed");
+      }
+    }
+    System.out.printf("readFile %-8s %,12d rows %10.1f ms %,14.0f rows/sec%n", mode, rowCount,
+        elapsed / 1e6, rowCount / (elapsed / 1e9));
+  }
+
+  /**
+   * Builds a RBT from the same movies by calling insertSingleKey() for every movie, by inserting
+   * every movie into an IntKeyedMultiKeyRBT, and by calling bulkLoad() once, and prints how long
+   * each took.
+   *
+   * @param fileName the file to read the movies from
+   */
+  private static void timeBulkLoad(String fileName) {
+    ArrayList<Movie> movies = new ArrayList<Movie>();
+    try {
+      new MappedMovieFileReader().read(fileName, movies::add);
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+      return;
+    }
+    IterableMultiKeyRBT<Movie> insertedList = new IterableMultiKeyRBT<Movie>();
+    long start = System.nanoTime();
+    for (Movie movie : movies) {
+      insertedList.insertSingleKey(movie);
+    }
+    long insertTime = System.nanoTime() - start;
+
+    IntKeyedMultiKeyRBT<Movie> intKeyedList = new IntKeyedMultiKeyRBT<Movie>(Movie::getDuration);
+    start = System.nanoTime();
+    for (Movie movie : movies) {
+      intKeyedList.insertSingleKey(movie);
+    }
+    long intKeyedTime = System.nanoTime() - start;
+
+    IterableMultiKeyRBT<Movie> loadedList = new IterableMultiKeyRBT<Movie>();
+    start = System.nanoTime();
+    loadedList.bulkLoad(movies);
+    long bulkLoadTime = System.nanoTime() - start;
+    System.out.printf("insertSingleKey %,12d movies %10.1f ms%n", insertedList.numKeys(),
+        insertTime / 1e6);
+    System.out.printf("int keyed RBT   %,12d movies %10.1f ms%n", intKeyedList.numKeys(),
+        intKeyedTime / 1e6);
+    System.out.printf("bulkLoad        %,12d movies %10.1f ms%n", loadedList.numKeys(),
+        bulkLoadTime / 1e6);
+  }
+
+  /**
+   * Prints how many keys per second insertSingleKey() inserts into an empty IterableMultiKeyRBT and
+   * an empty IntKeyedMultiKeyRBT when most keys are not duplicates, so almost every insert links a
+   * new node and rebalances the tree. (The movies in a csv file have few distinct durations, so
+   * inserting them mostly appends to KeyLists.)
+   *
+   * @param keyCount the number of random keys to insert
+   */
+  private static void timeInsert(int keyCount) {
+    Random random = new Random(400);
+    Integer[] keys = new Integer[keyCount];
+    for (int i = 0; i < keyCount; i++) {
+      keys[i] = random.nextInt();
+    }
+    IterableMultiKeyRBT<Integer> keyList = new IterableMultiKeyRBT<Integer>();
+    long start = System.nanoTime();
+    for (Integer key : keys) {
+      keyList.insertSingleKey(key);
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("insert new keys %,12d keys   %10.1f ms %,14.0f keys/sec%n", keyList.numKeys(),
+        elapsed / 1e6, keyList.numKeys() / (elapsed / 1e9));
+
+    IntKeyedMultiKeyRBT<Integer> intKeyedList = new IntKeyedMultiKeyRBT<Integer>(Integer::intValue);
+    start = System.nanoTime();
+    for (Integer key : keys) {
+      intKeyedList.insertSingleKey(key);
+    }
+    elapsed = System.nanoTime() - start;
+    System.out.printf("int keyed RBT   %,12d keys   %10.1f ms %,14.0f keys/sec%n",
+        intKeyedList.numKeys(), elapsed / 1e6, intKeyedList.numKeys() / (elapsed / 1e9));
+  }
+
+  /**
+   * Prints how many bytes of heap the RBT uses per movie (not counting the Movie objects
+   * themselves), by measuring the heap before and after inserting the movies into an empty RBT.
+   * Then prints how many bytes per movie a whole catalog held in an IntrusiveMovieTree, in a
+   * MovieTable, and in a LazyMovieCatalog uses (including the Movie objects and their Strings, or
+   * the columns).
+   *
+   * @param fileName the csv file to read the movies from
+   */
+  private static void measureMemory(String fileName) {
+    ArrayList<Movie> movies = new ArrayList<Movie>();
+    try {
+      new MappedMovieFileReader().read(fileName, movies::add);
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+      return;
+    }
+    long before = usedMemory();
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    for (Movie movie : movies) {
+      movieList.insertSingleKey(movie);
+    }
+    long after = usedMemory();
+    System.out.printf("RBT memory      %,12d movies %10.1f bytes/movie%n", movieList.numKeys(),
+        (double) (after - before) / movieList.numKeys());
+
+    movieList = null;
+    movies = null;
+    measureIntrusiveTreeMemory(fileName);
+    measureReadModeMemory(fileName, ReadMode.TABLE);
+    measureReadModeMemory(fileName, ReadMode.LAZY);
+  }
+
+  /**
+   * Prints how many bytes per movie a whole catalog held in an IntrusiveMovieTree uses. The
+   * intrusive tree stores its links in the Movie objects, so it is measured from before the movies
+   * are created (and its bytes per movie include the movies themselves). Each catalog is measured
+   * in its own method, so nothing from an earlier measurement is still reachable when the next one
+   * starts.
+   *
+   * @param fileName the csv file to read the movies from
+   */
+  private static void measureIntrusiveTreeMemory(String fileName) {
+    long before = usedMemory();
+    IntrusiveMovieTree movieTree = new IntrusiveMovieTree();
+    try {
+      new MappedMovieFileReader().read(fileName, movieTree::insertSingleKey);
+    } catch (IOException e) {
+      System.out.println("File is invalid");
+      return;
+    }
+    long after = usedMemory();
+    System.out.printf("intrusive tree  %,12d movies %10.1f bytes/movie (with the movies)%n",
+        movieTree.numKeys(), (double) (after - before) / movieTree.numKeys());
+  }
+
+  /**
+   * Prints how many bytes per movie a whole catalog read with ReadMode.TABLE or ReadMode.LAZY uses
+   * (including the table's columns, or the lazy catalog's durations and row positions).
+   *
+   * @param fileName the csv file to read the movies from
+   * @param readMode TABLE or LAZY
+   */
+  private static void measureReadModeMemory(String fileName, ReadMode readMode) {
+    IterableMultiKeyRBT<Movie> emptyList = new IterableMultiKeyRBT<Movie>();
+    long before = usedMemory();
+    BackendDeveloperIndividual<Movie> backend = new BackendDeveloperIndividual<Movie>(emptyList);
+    backend.readFile(fileName, readMode);
+    long after = usedMemory();
+    if (readMode == ReadMode.TABLE) {
+      int rowCount = backend.getMovieTable().rowCount();
+      System.out.printf("movie table     %,12d movies %10.1f bytes/movie (with the movies)%n",
+          rowCount, (double) (after - before) / rowCount);
+    } else {
+      LazyMovieCatalog catalog = backend.getMovieCatalog();
+      System.out.printf("lazy catalog    %,12d movies %10.1f bytes/movie%n", catalog.rowCount(),
+          (double) (after - before) / catalog.rowCount());
+      try {
+        catalog.close();
+      } catch (IOException e) {
+        System.out.println("File could not be closed");
+      }
+    }
+  }
+
+  /**
+   * Prints how many bytes of heap each node of a RBT uses, by measuring the heap before and after
+   * inserting random keys that are almost all distinct (so almost every key gets its own node),
+   * first into a RBT without a measure and then into one with a measure (whose nodes also store a
+   * subtree sum). The keys themselves are created before the first measurement, so they are not
+   * counted.
+   *
+   * @param keyCount the number of random keys to insert
+   */
+  private static void measureNodeMemory(int keyCount) {
+    Random random = new Random(400);
+    Integer[] keys = new Integer[keyCount];
+    for (int i = 0; i < keyCount; i++) {
+      keys[i] = random.nextInt();
+    }
+    measureNodeMemory(keys, false);
+    measureNodeMemory(keys, true);
+  }
+
+  /**
+   * Prints how many bytes of heap each node of a RBT of keys uses. Each tree is measured in its own
+   * call, so the first tree is no longer reachable when the second one is measured.
+   *
+   * @param keys     the keys to insert
+   * @param measured true to give the RBT a measure before inserting the keys
+   */
+  private static void measureNodeMemory(Integer[] keys, boolean measured) {
+    long before = usedMemory();
+    IterableMultiKeyRBT<Integer> keyList = new IterableMultiKeyRBT<Integer>();
+    if (measured) {
+      keyList.setMeasure(Integer::intValue);
+    }
+    for (Integer key : keys) {
+      keyList.insertSingleKey(key);
+    }
+    long after = usedMemory();
+    System.out.printf("RBT node memory %,12d nodes  %10.1f bytes/node%s%n", keyList.size(),
+        (double) (after - before) / keyList.size(), measured ? " (with a measure)" : "");
+  }
+
+  /**
+   * @return the number of bytes of heap in use, after asking the JVM to collect garbage
+   */
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Prints how long summing the durations of every movie in a RBT of the movies in the file takes
+   * with an in-order iterator, a sequential stream, and a parallel stream (which is reduced by the
+   * common fork-join pool, so it can only be faster with more than one core).
+   *
+   * @param fileName the csv file to read the movies from
+   */
+  private static void timeIteration(String fileName) {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    new BackendDeveloperIndividual<Movie>(movieList).readFile(fileName, ReadMode.MAPPED);
+    long start = System.nanoTime();
+    long durationTotal = 0;
+    for (Movie movie : movieList) {
+      durationTotal += movie.getDuration();
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("iterator        %,12d movies %10.1f ms (duration total %,d)%n",
+        movieList.numKeys(), elapsed / 1e6, durationTotal);
+
+    start = System.nanoTime();
+    durationTotal = movieList.stream().mapToLong(Movie::getDuration).sum();
+    elapsed = System.nanoTime() - start;
+    System.out.printf("stream          %,12d movies %10.1f ms (duration total %,d)%n",
+        movieList.numKeys(), elapsed / 1e6, durationTotal);
+
+    start = System.nanoTime();
+    durationTotal = movieList.parallelStream().mapToLong(Movie::getDuration).sum();
+    elapsed = System.nanoTime() - start;
+    System.out.printf("parallelStream  %,12d movies %10.1f ms (duration total %,d, %d threads)%n",
+        movieList.numKeys(), elapsed / 1e6, durationTotal,
+        ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  /**
+   * Prints how many range queries per second 1, 4, 16 and 64 reader threads answer while another
+   * thread inserts a movie every millisecond, both for a StampedMultiKeyRBT and for an
+   * IterableMultiKeyRBT that every reader and the writer synchronize on.
+   *
+   * @param fileName the csv file to read the movies from
+   */
+  private static void timeConcurrentReads(String fileName) {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    new BackendDeveloperIndividual<Movie>(movieList).readFile(fileName, ReadMode.MAPPED);
+    StampedMultiKeyRBT<Movie> stampedTree = new StampedMultiKeyRBT<Movie>();
+    stampedTree.bulkLoad(toList(movieList));
+    for (int readerCount : new int[] {1, 4, 16, 64}) {
+      QueryLoad synchronizedLoad = runQueryLoad(movieList, movieList, readerCount, 1);
+      QueryLoad stampedLoad = runQueryLoad(stampedTree, null, readerCount, 1);
+      System.out.printf("%2d readers      synchronized %,10.0f queries/s   stamped %,10.0f "
+          + "queries/s%n", readerCount, synchronizedLoad.queryRate(), stampedLoad.queryRate());
+    }
+  }
+
+  /**
+   * Prints the latency of range queries made by 4 reader threads while another thread inserts
+   * movies as fast as it can, for an IterableMultiKeyRBT that every reader and the writer
+   * synchronize on, a StampedMultiKeyRBT, and a PersistentMultiKeyRBT (whose readers never wait
+   * for the writer).
+   *
+   * @param fileName the csv file to read the movies from
+   */
+  private static void timeSnapshotReads(String fileName) {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    new BackendDeveloperIndividual<Movie>(movieList).readFile(fileName, ReadMode.MAPPED);
+    ArrayList<Movie> movies = toList(movieList);
+    StampedMultiKeyRBT<Movie> stampedTree = new StampedMultiKeyRBT<Movie>();
+    stampedTree.bulkLoad(movies);
+    PersistentMultiKeyRBT<Movie> persistentTree = new PersistentMultiKeyRBT<Movie>();
+    persistentTree.bulkLoad(movies);
+    printLatencies("synchronized", runQueryLoad(movieList, movieList, 4, 0));
+    printLatencies("stamped", runQueryLoad(stampedTree, null, 4, 0));
+    printLatencies("persistent", runQueryLoad(persistentTree, null, 4, 0));
+  }
+
+  /**
+   * Prints how long 1, 2, 4 and 8 threads take to insert every movie in the file (each thread
+   * inserting an equal share of them) into a ConcurrentMultiKeySkipList, and into an
+   * IterableMultiKeyRBT that every thread synchronizes on.
+   *
+   * @param fileName the csv file to read the movies from
+   */
+  private static void timeConcurrentInserts(String fileName) {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    new BackendDeveloperIndividual<Movie>(movieList).readFile(fileName, ReadMode.MAPPED);
+    ArrayList<Movie> movies = toList(movieList);
+    // Shuffle the movies, so the inserts are not made in order of duration
+    Collections.shuffle(movies, new Random(25));
+    for (int threadCount : new int[] {1, 2, 4, 8}) {
+      IterableMultiKeyRBT<Movie> synchronizedTree = new IterableMultiKeyRBT<Movie>();
+      double synchronizedTime = timeInserts(synchronizedTree, synchronizedTree, movies,
+          threadCount);
+      ConcurrentMultiKeySkipList<Movie> skipList = new ConcurrentMultiKeySkipList<Movie>();
+      double skipListTime = timeInserts(skipList, null, movies, threadCount);
+      System.out.printf("%d inserters     synchronized %10.1f ms   skip list %10.1f ms%n",
+          threadCount, synchronizedTime / 1e6, skipListTime / 1e6);
+    }
+  }
+
+  /**
+   * Inserts every movie into a tree, with threadCount threads that each insert every
+   * threadCount-th movie.
+   *
+   * @param tree        the tree to insert the movies into
+   * @param monitor     the object every insert synchronizes on, or null for none
+   * @param movies      the movies to insert
+   * @param threadCount the number of threads inserting movies
+   * @return the nanoseconds it took until every thread was done
+   */
+  private static double timeInserts(IterableMultiKeySortedCollectionInterface<Movie> tree,
+      Object monitor, ArrayList<Movie> movies, int threadCount) {
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      int first = t;
+      threads[t] = new Thread(() -> {
+        for (int i = first; i < movies.size(); i += threadCount) {
+          if (monitor == null) {
+            tree.insertSingleKey(movies.get(i));
+          } else {
+            synchronized (monitor) {
+              tree.insertSingleKey(movies.get(i));
+            }
+          }
+        }
+      });
+    }
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * @param label the name of the tree that was queried
+   * @param load  the results of querying it
+   */
+  private static void printLatencies(String label, QueryLoad load) {
+    System.out.printf("%-15s p50 %8.1f us  p99 %8.1f us  max %9.1f us  (%,d queries, %,.0f "
+        + "inserts/s)%n", label, load.latency(0.5) / 1e3, load.latency(0.99) / 1e3,
+        load.latency(1) / 1e3, load.latencies.length, load.insertCount / load.seconds);
+  }
+
+  /**
+   * @param movieList a RBT of movies
+   * @return the movies in the RBT, in order
+   */
+  private static ArrayList<Movie> toList(IterableMultiKeyRBT<Movie> movieList) {
+    ArrayList<Movie> movies = new ArrayList<Movie>(movieList.numKeys());
+    for (Movie movie : movieList) {
+      movies.add(movie);
+    }
+    return movies;
+  }
+
+  /**
+   * This class holds what reader and writer threads did during a run of runQueryLoad().
+   */
+  private static class QueryLoad {
+    private final long[] latencies; // the nanoseconds every query took, sorted
+    private final long insertCount; // the number of movies the writer inserted
+    private final double seconds; // how long the threads ran for
+
+    /**
+     * @param latencies   the nanoseconds every query took, sorted
+     * @param insertCount the number of movies the writer inserted
+     * @param seconds     how long the threads ran for
+     */
+    private QueryLoad(long[] latencies, long insertCount, double seconds) {
+      this.latencies = latencies;
+      this.insertCount = insertCount;
+      this.seconds = seconds;
+    }
+
+    /**
+     * @return the number of queries the readers answered per second
+     */
+    private double queryRate() {
+      return latencies.length / seconds;
+    }
+
+    /**
+     * @param fraction the fraction of queries that were at least as fast, from 0 to 1
+     * @return the latency of the query at that fraction, in nanoseconds
+     */
+    private long latency(double fraction) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      return latencies[(int) Math.min(latencies.length - 1, fraction * latencies.length)];
+    }
+  }
+
+  /**
+   * Runs reader threads that count the movies in random ranges of two minutes, and a writer
+   * thread that inserts movies, for half a second, timing every query.
+   *
+   * @param tree        the tree to query and insert into
+   * @param monitor     the object every query and insert synchronizes on, or null for none
+   * @param readerCount the number of reader threads
+   * @param insertPause the milliseconds the writer sleeps after each insert, or 0 to insert
+   *                    movies as fast as it can
+   * @return what the readers and the writer did
+   */
+  private static QueryLoad runQueryLoad(IterableMultiKeySortedCollectionInterface<Movie> tree,
+      Object monitor, int readerCount, int insertPause) {
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong insertCount = new AtomicLong();
+    long[][] readerLatencies = new long[readerCount][];
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (int r = 0; r < readerCount; r++) {
+      int reader = r;
+      Random random = new Random(r);
+      threads.add(new Thread(() -> {
+        long[] latencies = new long[1024];
+        int queries = 0;
+        while (running.get()) {
+          int lower = 60 + random.nextInt(120);
+          Movie lowerMovie = new Movie("", "", 0, "", lower);
+          Movie upperMovie = new Movie("", "", 0, "", lower + 1);
+          long start = System.nanoTime();
+          if (monitor == null) {
+            countMovies(tree.rangeIterator(lowerMovie, upperMovie));
+          } else {
+            synchronized (monitor) {
+              countMovies(tree.rangeIterator(lowerMovie, upperMovie));
+            }
+          }
+          if (queries == latencies.length) {
+            latencies = Arrays.copyOf(latencies, queries * 2);
+          }
+          latencies[queries++] = System.nanoTime() - start;
+        }
+        readerLatencies[reader] = Arrays.copyOf(latencies, queries);
+      }));
+    }
+    threads.add(new Thread(() -> {
+      Random random = new Random(readerCount);
+      for (int i = 0; running.get(); i++) {
+        Movie movie = new Movie("New" + i, "Genre", 2000, "Country", 60 + random.nextInt(120));
+        if (monitor == null) {
+          tree.insertSingleKey(movie);
+        } else {
+          synchronized (monitor) {
+            tree.insertSingleKey(movie);
+          }
+        }
+        insertCount.incrementAndGet();
+        if (insertPause > 0) {
+          try {
+            Thread.sleep(insertPause);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }));
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    try {
+      Thread.sleep(500);
+      running.set(false);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      running.set(false);
+      Thread.currentThread().interrupt();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long[] latencies = new long[0];
+    for (long[] readerLatency : readerLatencies) {
+      if (readerLatency != null) {
+        int count = latencies.length;
+        latencies = Arrays.copyOf(latencies, count + readerLatency.length);
+        System.arraycopy(readerLatency, 0, latencies, count, readerLatency.length);
+      }
+    }
+    Arrays.sort(latencies);
+    return new QueryLoad(latencies, insertCount.get(), seconds);
+  }
+
+  /**
+   * @param movies an iterator over movies
+   * @return the number of movies the iterator returned
+   */
+  private static int countMovies(Iterator<Movie> movies) {
+    int count = 0;
+    while (movies.hasNext()) {
+      movies.next();
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Saves the movies in the file to a snapshot, and prints how long loading the snapshot takes
+   * compared to reading the csv file.
+   *
+   * @param fileName the csv file to read the movies from
+   * @throws IOException if the snapshot cannot be written or read
+   */
+  private static void timeSnapshot(String fileName) throws IOException {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    long start = System.nanoTime();
+    new BackendDeveloperIndividual<Movie>(movieList).readFile(fileName, ReadMode.MAPPED);
+    long readTime = System.nanoTime() - start;
+
+    File snapshot = File.createTempFile("movies", ".snapshot");
+    snapshot.deleteOnExit();
+    MovieSnapshot.save(movieList, snapshot.getPath());
+    IterableMultiKeyRBT<Movie> loadedList = new IterableMultiKeyRBT<Movie>();
+    start = System.nanoTime();
+    MovieSnapshot.load(snapshot.getPath(), loadedList);
+    long loadTime = System.nanoTime() - start;
+    System.out.printf("readFile MAPPED %,12d movies %10.1f ms%n", movieList.numKeys(),
+        readTime / 1e6);
+    System.out.printf("snapshot load   %,12d movies %10.1f ms (%,d bytes)%n",
+        loadedList.numKeys(), loadTime / 1e6, snapshot.length());
+  }
+
+  /**
+   * Reads the file through a FileInputStream (the same way a stream piped into stdin is read) with
+   * readStream(), and prints how long it took and the counters of every stage of the pipeline.
+   *
+   * @param fileName the csv file to read the movies from
+   * @throws IOException if the file cannot be read
+   */
+  private static void timePipeline(String fileName) throws IOException {
+    IterableMultiKeyRBT<Movie> movieList = new IterableMultiKeyRBT<Movie>();
+    BackendDeveloperIndividual<Movie> backend = new BackendDeveloperIndividual<Movie>(movieList);
+    long start = System.nanoTime();
+    try (FileInputStream in = new FileInputStream(fileName)) {
+      backend.readStream(in);
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("readStream      %,12d movies %10.1f ms%n", movieList.numKeys(),
+        elapsed / 1e6);
+    PipelinedMovieReader reader = backend.getPipelineReader();
+    System.out.println("  " + reader.getReadStage());
+    System.out.println("  " + reader.getParseStage());
+    System.out.println("  " + reader.getInsertStage());
+  }
+
+  /**
+   * Runs the benchmark
+   *
+   * @param args optionally the number of rows to generate, and the csv file to read
+   * @throws IOException if the generated file or a snapshot cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    String fileName;
+    if (args.length > 1) {
+      fileName = args[1];
+    } else {
+      File generated = File.createTempFile("movies", ".csv");
+      generated.deleteOnExit();
+      fileName = generated.getPath();
+      generateMovieFile(fileName, rowCount);
+    }
+
+    // Run every read mode twice, so the second round is measured with a warmed up JVM
+    for (int round = 0; round < 2; round++) {
+      for (ReadMode mode : ReadMode.values()) {
+        timeReadFile(fileName, mode);
+      }
+      timePipeline(fileName);
+      timeBulkLoad(fileName);
+      timeInsert(rowCount);
+      measureMemory(fileName);
+      measureNodeMemory(rowCount);
+      timeSnapshot(fileName);
+      timeIteration(fileName);
+      timeConcurrentReads(fileName);
+      timeSnapshotReads(fileName);
+      timeConcurrentInserts(fileName);
+    }
+  }
+}
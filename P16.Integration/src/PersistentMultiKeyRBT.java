@@ -0,0 +1,633 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is a persistent Red-Black-Tree that stores multiple keys per node, like
+ * IterableMultiKeyRBT, but never changes a node after it is published. Inserting a key copies only
+ * the nodes on the path from the root down to the key's node, rebalancing the copies the same way
+ * as a functional Red-Black-Tree, and then publishes the new root (as a new Snapshot) in a volatile
+ * field. Every earlier version of the tree stays valid after later inserts.
+ * <p>
+ * snapshot() pins the current version: a Snapshot can be iterated and queried by any number of
+ * threads without any locking, and always holds the same keys however many are inserted after it
+ * was taken. Versions that no Snapshot refers to any more are reclaimed by the garbage collector.
+ * Writers are serialized by a lock. The read methods of this class each read the current version,
+ * so a sequence of reads that should see the same version should be made on one Snapshot.
+ * <p>
+ * The keys that compare equal are stored in an array that is shared between versions. Inserting
+ * a duplicate appends it to the array (or to a larger copy of it) and copies the node with the new
+ * key count, so older versions, which only read the keys before their own count, do not change.
+ *
+ * @author dianakotsonis
+ * @param <T> The data type for the Key being inserted into the tree
+ */
+public class PersistentMultiKeyRBT<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  // More than the number of nodes on any path from the root of a Red Black Tree with fewer than
+  // 2^31 nodes, which is the most nodes an iterator's path can hold
+  private static final int MAX_HEIGHT = 64;
+
+  private final Object writeLock = new Object(); // serializes writers
+  private volatile Snapshot<T> current = new Snapshot<T>(null, 0, 0, 0); // the latest version
+  private volatile Comparable<T> startPoint; // the point iterator() starts at, or null
+  private boolean addedNode; // set by insert() when it creates a node for a new key
+
+  /**
+   * This class is an immutable node of the tree, which can be shared by many versions.
+   */
+  private static class Node {
+    private final Object[] keys; // the keys with this node's value, in the order they were
+                                 // inserted (the array is shared with the node's other versions)
+    private final int keyCount; // the number of keys in the array that belong to this version
+    private final Node left; // the left child, or null
+    private final Node right; // the right child, or null
+    private final boolean red; // true if the node is red, false if it is black
+
+    /**
+     * @param keys     the keys with this node's value, shared with the node's other versions
+     * @param keyCount the number of keys in the array that belong to this version
+     * @param left     the left child, or null
+     * @param right    the right child, or null
+     * @param red      true if the node is red, false if it is black
+     */
+    private Node(Object[] keys, int keyCount, Node left, Node right, boolean red) {
+      this.keys = keys;
+      this.keyCount = keyCount;
+      this.left = left;
+      this.right = right;
+      this.red = red;
+    }
+  }
+
+  /**
+   * This class is one version of the tree. It cannot be changed, so it can be shared between any
+   * number of threads, and the methods that would change it throw UnsupportedOperationException.
+   * KeyLists returned by a snapshot are snapshots of the keys as well (see KeyListSnapshot).
+   *
+   * @param <T> The data type of the keys in the tree
+   */
+  public static class Snapshot<T extends Comparable<T>>
+      implements IterableMultiKeySortedCollectionInterface<T> {
+    private final Node root; // the root of this version, or null if it is empty
+    private final int numKeys; // the number of keys in this version (including duplicates)
+    private final int size; // the number of nodes in this version
+    private final long version; // the number of changes made to the tree before this version
+
+    /**
+     * @param root    the root of this version, or null if it is empty
+     * @param numKeys the number of keys in this version (including duplicates)
+     * @param size    the number of nodes in this version
+     * @param version the number of changes made to the tree before this version
+     */
+    private Snapshot(Node root, int numKeys, int size, long version) {
+      this.root = root;
+      this.numKeys = numKeys;
+      this.size = size;
+      this.version = version;
+    }
+
+    /**
+     * @return the number of values in this version
+     */
+    @Override
+    public int numKeys() {
+      return this.numKeys;
+    }
+
+    /**
+     * @return the number of changes made to the tree before this version, which never changes
+     */
+    @Override
+    public long modificationCount() {
+      return this.version;
+    }
+
+    /**
+     * @return the number of KeyLists (distinct keys) in this version
+     */
+    @Override
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * @return true if this version holds no keys
+     */
+    @Override
+    public boolean isEmpty() {
+      return this.root == null;
+    }
+
+    /**
+     * Checks whether this version holds a KeyList equal to data.
+     *
+     * @param data a comparable for the KeyList to look for
+     * @return true if this version holds an equal KeyList
+     * @throws NullPointerException if data is null
+     */
+    @Override
+    public boolean contains(Comparable<KeyListInterface<T>> data) {
+      if (data == null) {
+        throw new NullPointerException("This tree cannot store null references.");
+      }
+      Node node = this.root;
+      while (node != null) {
+        int compare = data.compareTo(new KeyListSnapshot<T>(node.keys, node.keyCount));
+        if (compare == 0) {
+          return true;
+        }
+        node = (compare < 0) ? node.left : node.right;
+      }
+      return false;
+    }
+
+    /**
+     * @return the KeyList holding the smallest key, or null if this version is empty
+     */
+    @Override
+    public KeyListInterface<T> firstKeyList() {
+      Node node = this.root;
+      while (node != null && node.left != null) {
+        node = node.left;
+      }
+      return (node == null) ? null : new KeyListSnapshot<T>(node.keys, node.keyCount);
+    }
+
+    /**
+     * @return the KeyList holding the largest key, or null if this version is empty
+     */
+    @Override
+    public KeyListInterface<T> lastKeyList() {
+      Node node = this.root;
+      while (node != null && node.right != null) {
+        node = node.right;
+      }
+      return (node == null) ? null : new KeyListSnapshot<T>(node.keys, node.keyCount);
+    }
+
+    /**
+     * Returns an iterator that does an in-order iteration over this version. A snapshot does not
+     * have an iteration start point, so every key is iterated over.
+     */
+    @Override
+    public Iterator<T> iterator() {
+      return iteratorFrom(null);
+    }
+
+    /**
+     * Returns an iterator that does an in-order iteration over the keys of this version that are
+     * equal to or larger than start.
+     *
+     * @param start the point to start the iteration at, or null to start at the smallest key
+     * @return the iterator over the keys from start onwards
+     */
+    @Override
+    public Iterator<T> iteratorFrom(Comparable<T> start) {
+      return new InOrderIterator<T>(this.root, start, null);
+    }
+
+    /**
+     * Returns an iterator that does an in-order iteration over the keys of this version between
+     * lowerBound and upperBound (including keys equal to either bound), in O(log n + k) time for k
+     * keys.
+     *
+     * @param lowerBound the smallest key to iterate over, or null to start at the smallest key
+     * @param upperBound the largest key to iterate over, or null to end at the largest key
+     * @return the iterator over the keys in the range
+     */
+    @Override
+    public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound) {
+      return new InOrderIterator<T>(this.root, lowerBound, upperBound);
+    }
+
+    /**
+     * Snapshots cannot be changed, so this always throws.
+     *
+     * @param key the key that is not inserted
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean insertSingleKey(T key) {
+      throw new UnsupportedOperationException("a snapshot of the tree cannot be changed");
+    }
+
+    /**
+     * Snapshots cannot be changed, so this always throws.
+     *
+     * @param data the KeyList that is not inserted
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean insert(KeyListInterface<T> data) {
+      throw new UnsupportedOperationException("a snapshot of the tree cannot be changed");
+    }
+
+    /**
+     * Snapshots cannot be changed, so this always throws.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+      throw new UnsupportedOperationException("a snapshot of the tree cannot be changed");
+    }
+
+    /**
+     * Snapshots are shared between threads, so they do not keep an iteration start point, and this
+     * always throws. iteratorFrom() iterates from a start point instead.
+     *
+     * @param startPoint the start point that is not set
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setIterationStartPoint(Comparable<T> startPoint) {
+      throw new UnsupportedOperationException("use iteratorFrom() to iterate over a snapshot");
+    }
+  }
+
+  /**
+   * This class iterates in-order over the keys of a version, between a lower and an upper bound.
+   * Nodes do not refer to their parents, so it keeps the path of nodes whose keys (and right
+   * subtrees) are still to be returned, with the node holding the next keys at the top.
+   */
+  private static class InOrderIterator<T extends Comparable<T>> implements Iterator<T> {
+    private final Node[] path = new Node[MAX_HEIGHT]; // the nodes still to be returned
+    private int depth = 0; // the number of nodes on the path
+    private final Comparable<T> upperBound; // the largest key to return, or null for no limit
+    private Node currentNode; // the node holding the next key to return, or null
+    private int currentIndex; // the position of the next key in currentNode's keys
+
+    /**
+     * @param root       the root of the version to iterate over
+     * @param lowerBound the smallest key to return, or null to start at the smallest key
+     * @param upperBound the largest key to return, or null for no limit
+     */
+    private InOrderIterator(Node root, Comparable<T> lowerBound, Comparable<T> upperBound) {
+      this.upperBound = upperBound;
+      // Walk down to the smallest key that is at least lowerBound, keeping the nodes on the way
+      // whose keys are at least lowerBound
+      Node node = root;
+      while (node != null) {
+        if (lowerBound == null || lowerBound.compareTo(firstKey(node)) <= 0) {
+          path[depth++] = node;
+          node = node.left;
+        } else {
+          node = node.right;
+        }
+      }
+      moveToNextNode();
+    }
+
+    /**
+     * Moves the cursor to the first key of the node at the top of the path, or ends the iteration
+     * if the path is empty or the node's keys are larger than the upper bound.
+     */
+    private void moveToNextNode() {
+      currentIndex = 0;
+      if (depth == 0) {
+        currentNode = null;
+        return;
+      }
+      Node node = path[--depth];
+      if (upperBound != null && upperBound.compareTo(firstKey(node)) < 0) {
+        currentNode = null;
+        depth = 0;
+        return;
+      }
+      for (Node child = node.right; child != null; child = child.left) {
+        path[depth++] = child;
+      }
+      currentNode = node;
+    }
+
+    /**
+     * @return true if there is another key to return
+     */
+    @Override
+    public boolean hasNext() {
+      return currentNode != null;
+    }
+
+    /**
+     * @return the next key
+     * @throws NoSuchElementException if there are no keys left
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (currentNode == null) {
+        throw new NoSuchElementException("there are no keys left");
+      }
+      T key = (T) currentNode.keys[currentIndex++];
+      if (currentIndex == currentNode.keyCount) {
+        moveToNextNode();
+      }
+      return key;
+    }
+  }
+
+  /**
+   * Returns the current version of the tree. The snapshot keeps the keys it holds now however
+   * many keys are inserted afterwards, and can be read by any number of threads without locking.
+   *
+   * @return the current version of the tree
+   */
+  public Snapshot<T> snapshot() {
+    return this.current;
+  }
+
+  /**
+   * Inserts a key by copying the path from the root to the key's node, and publishes the new
+   * version of the tree.
+   *
+   * @param key object to insert
+   * @return true if the key has a value that was not in the tree before
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public boolean insertSingleKey(T key) {
+    if (key == null) {
+      throw new NullPointerException("keys cannot be null");
+    }
+    synchronized (writeLock) {
+      Snapshot<T> version = this.current;
+      addedNode = false;
+      Node root = blacken(insert(version.root, key));
+      this.current = new Snapshot<T>(root, version.numKeys + 1,
+          version.size + (addedNode ? 1 : 0), version.version + 1);
+      return addedNode;
+    }
+  }
+
+  /**
+   * Inserts every key of a KeyList into a new node, and publishes the new version of the tree.
+   *
+   * @param data the KeyList to insert
+   * @return true if the KeyList was inserted, false if the tree already holds its key
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) {
+    if (data == null) {
+      throw new NullPointerException("Cannot insert data value null into the tree.");
+    }
+    synchronized (writeLock) {
+      if (this.current.contains(data)) {
+        return false;
+      }
+      insertAll(data);
+      return true;
+    }
+  }
+
+  /**
+   * Inserts every key in the collection, and publishes a single new version of the tree holding
+   * all of them, so no snapshot holds only some of the keys.
+   *
+   * @param keys the keys to insert into the tree
+   * @throws NullPointerException if keys or any key in it is null
+   */
+  public void bulkLoad(Collection<T> keys) {
+    for (T key : keys) {
+      if (key == null) {
+        throw new NullPointerException("keys cannot be null");
+      }
+    }
+    synchronized (writeLock) {
+      insertAll(keys);
+    }
+  }
+
+  /**
+   * Publishes an empty version of the tree. Snapshots that were taken earlier keep their keys.
+   */
+  @Override
+  public void clear() {
+    synchronized (writeLock) {
+      this.current = new Snapshot<T>(null, 0, 0, this.current.version + 1);
+    }
+  }
+
+  /**
+   * @return the number of values in the current version
+   */
+  @Override
+  public int numKeys() {
+    return this.current.numKeys();
+  }
+
+  /**
+   * @return the number of changes made to the tree, which is the version of the current snapshot
+   */
+  @Override
+  public long modificationCount() {
+    return this.current.modificationCount();
+  }
+
+  /**
+   * @return true, since writers are serialized by a lock
+   */
+  @Override
+  public boolean allowsConcurrentWriters() {
+    return true;
+  }
+
+  /**
+   * @return the number of KeyLists (distinct keys) in the current version
+   */
+  @Override
+  public int size() {
+    return this.current.size();
+  }
+
+  /**
+   * @return true if the current version holds no keys
+   */
+  @Override
+  public boolean isEmpty() {
+    return this.current.isEmpty();
+  }
+
+  /**
+   * @param data a comparable for the KeyList to look for
+   * @return true if the current version holds an equal KeyList
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    return this.current.contains(data);
+  }
+
+  /**
+   * @return the KeyList holding the smallest key in the current version, or null if it is empty
+   */
+  @Override
+  public KeyListInterface<T> firstKeyList() {
+    return this.current.firstKeyList();
+  }
+
+  /**
+   * @return the KeyList holding the largest key in the current version, or null if it is empty
+   */
+  @Override
+  public KeyListInterface<T> lastKeyList() {
+    return this.current.lastKeyList();
+  }
+
+  /**
+   * Returns an iterator that does an in-order iteration over the current version. If an iteration
+   * start point is set, the iteration starts at the smallest key equal to or larger than it.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iteratorFrom(this.startPoint);
+  }
+
+  /**
+   * @param start the point to start the iteration at, or null to start at the smallest key
+   * @return an iterator over the keys of the current version from start onwards
+   */
+  @Override
+  public Iterator<T> iteratorFrom(Comparable<T> start) {
+    return this.current.iteratorFrom(start);
+  }
+
+  /**
+   * Sets the starting point for iterations. Future iterations will start at the starting point or
+   * the key closest to it in the tree. Passing in null disables the starting point.
+   *
+   * @param startPoint the start point to set for iterations
+   */
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  /**
+   * @param lowerBound the smallest key to iterate over, or null to start at the smallest key
+   * @param upperBound the largest key to iterate over, or null to end at the largest key
+   * @return an iterator over the keys of the current version in the range
+   */
+  @Override
+  public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    return this.current.rangeIterator(lowerBound, upperBound);
+  }
+
+  /**
+   * Inserts keys into the current version, and publishes one new version holding all of them.
+   * Must be called while holding writeLock.
+   *
+   * @param keys the keys to insert
+   */
+  private void insertAll(Iterable<T> keys) {
+    Snapshot<T> version = this.current;
+    Node root = version.root;
+    int numKeys = version.numKeys;
+    int size = version.size;
+    for (T key : keys) {
+      addedNode = false;
+      root = blacken(insert(root, key));
+      numKeys++;
+      size += addedNode ? 1 : 0;
+    }
+    this.current = new Snapshot<T>(root, numKeys, size, version.version + 1);
+  }
+
+  /**
+   * Inserts a key into the subtree rooted at node, copying every node on the path to the key's
+   * node and rebalancing the copies. The nodes of the subtree are not changed.
+   *
+   * @param node the root of the subtree, or null
+   * @param key  the key to insert
+   * @return the root of the new version of the subtree (which may be red with a red child, which
+   *         the caller rebalances)
+   */
+  private Node insert(Node node, T key) {
+    if (node == null) {
+      addedNode = true;
+      return new Node(new Object[] {key}, 1, null, null, true);
+    }
+    int compare = key.compareTo(firstKey(node));
+    if (compare < 0) {
+      return balance(node.keys, node.keyCount, insert(node.left, key), node.right, node.red);
+    } else if (compare > 0) {
+      return balance(node.keys, node.keyCount, node.left, insert(node.right, key), node.red);
+    }
+    Object[] keys = node.keys;
+    if (node.keyCount == keys.length) {
+      keys = Arrays.copyOf(keys, keys.length * 2);
+    }
+    // Versions that share the array only read the keys before their own count, and only the
+    // latest version is ever appended to, so this position is not used by any other version
+    keys[node.keyCount] = key;
+    return new Node(keys, node.keyCount + 1, node.left, node.right, node.red);
+  }
+
+  /**
+   * Creates a node, rebalancing it if it is black and has a red child with a red child: the three
+   * nodes are replaced by a red node with two black children, in the same order.
+   *
+   * @param keys     the keys of the node
+   * @param keyCount the number of keys of the node
+   * @param left     the new left child
+   * @param right    the new right child
+   * @param red      true if the node is red
+   * @return the new node, or the root of the rebalanced nodes
+   */
+  private static Node balance(Object[] keys, int keyCount, Node left, Node right, boolean red) {
+    if (!red) {
+      if (isRed(left) && isRed(left.left)) {
+        return new Node(left.keys, left.keyCount, blacken(left.left),
+            new Node(keys, keyCount, left.right, right, false), true);
+      }
+      if (isRed(left) && isRed(left.right)) {
+        Node middle = left.right;
+        return new Node(middle.keys, middle.keyCount,
+            new Node(left.keys, left.keyCount, left.left, middle.left, false),
+            new Node(keys, keyCount, middle.right, right, false), true);
+      }
+      if (isRed(right) && isRed(right.left)) {
+        Node middle = right.left;
+        return new Node(middle.keys, middle.keyCount,
+            new Node(keys, keyCount, left, middle.left, false),
+            new Node(right.keys, right.keyCount, middle.right, right.right, false), true);
+      }
+      if (isRed(right) && isRed(right.right)) {
+        return new Node(right.keys, right.keyCount,
+            new Node(keys, keyCount, left, right.left, false), blacken(right.right), true);
+      }
+    }
+    return new Node(keys, keyCount, left, right, red);
+  }
+
+  /**
+   * @param node a node, or null
+   * @return true if node is a red node
+   */
+  private static boolean isRed(Node node) {
+    return node != null && node.red;
+  }
+
+  /**
+   * @param node a node, or null
+   * @return node if it is black or null, or a black copy of it
+   */
+  private static Node blacken(Node node) {
+    if (node == null || !node.red) {
+      return node;
+    }
+    return new Node(node.keys, node.keyCount, node.left, node.right, false);
+  }
+
+  /**
+   * @param node a node
+   * @return the first key inserted into node
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T firstKey(Node node) {
+    return (T) node.keys[0];
+  }
+}
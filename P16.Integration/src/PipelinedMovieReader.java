@@ -0,0 +1,578 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * This class reads a movie csv file from any InputStream or ReadableByteChannel (such as stdin, or
+ * a pipe from another process), so movies can be read from data that is not in a file. Reading,
+ * parsing and inserting the movies run as three stages of a pipeline, so waiting for the stream
+ * overlaps with tokenizing rows and inserting movies:
+ * <ol>
+ * <li>the read stage (a worker thread) fills blocks of bytes from the stream, and passes every
+ * full block to the parse stage</li>
+ * <li>the parse stage (a second worker thread) cuts the blocks into rows (a row may continue in
+ * the next block), tokenizes them with a MovieRowTokenizer, and passes the Movies on in batches
+ * of BATCH_SIZE</li>
+ * <li>the insert stage (the calling thread) hands every Movie to the movie sink, in the order they
+ * appear in the stream</li>
+ * </ol>
+ * The stages are connected by bounded queues, so a slow stage makes the stages before it wait
+ * instead of buffering the whole stream. The blocks are reused: the parse stage returns every
+ * block to the read stage once its rows were copied out. The first row of the stream is read as a
+ * header (see MovieColumnMap), and only the fields in the reader's projection are read.
+ * <p>
+ * Every stage has a StageCounters that counts the items it handled, the time it was busy and the
+ * time it waited for the other stages, and the depth of the queue it takes its input from (for
+ * the read stage, the queue of empty blocks). The counters can be read from any thread while a
+ * stream is being read. A reader reads one stream at a time.
+ * <p>
+ * The worker threads are never interrupted, since interrupting a thread that is blocked reading
+ * an interruptible channel (such as the channel Channels.newChannel() wraps an InputStream in)
+ * closes the channel and the stream under it. If a read ends early because a stage failed, the
+ * other stages are stopped through their queues instead, and a read stage that is waiting for the
+ * stream stops as soon as its read returns (on a daemon thread, so it never keeps the JVM alive).
+ *
+ * @author dianakotsonis
+ */
+public class PipelinedMovieReader {
+
+  /**
+   * The number of movies the parse stage passes to the insert stage at a time.
+   */
+  public static final int BATCH_SIZE = 1024;
+
+  private static final int DEFAULT_BLOCK_SIZE = 1 << 18; // the bytes read from the stream at once
+  private static final int BLOCK_COUNT = 8; // the number of blocks shared by the read and parse
+                                            // stages
+  private static final int BATCH_QUEUE_CAPACITY = 16; // the most batches waiting to be inserted
+  private static final ByteBuffer END_OF_BLOCKS = ByteBuffer.allocate(0); // the last block
+  private static final ByteBuffer READ_FAILED = ByteBuffer.allocate(0); // the last block, when
+                                                                        // the stream failed
+  private static final List<Movie> END_OF_BATCHES = new ArrayList<Movie>(0); // the last batch
+
+  private final Set<MovieField> projection; // the fields that are read from every row
+  private final int blockSize; // the number of bytes in every block
+  private final StageCounters readStage = new StageCounters("read", "bytes");
+  private final StageCounters parseStage = new StageCounters("parse", "rows");
+  private final StageCounters insertStage = new StageCounters("insert", "movies");
+
+  /**
+   * Creates a reader that reads every field that Movie objects keep.
+   */
+  public PipelinedMovieReader() {
+    this(MovieField.MOVIE_FIELDS, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a reader that only reads some fields of every row. The other fields of the Movies it
+   * creates are left empty (or 0).
+   *
+   * @param projection the fields to read from every row
+   */
+  public PipelinedMovieReader(Set<MovieField> projection) {
+    this(projection, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a reader that only reads some fields of every row, reading the stream blockSize bytes
+   * at a time.
+   *
+   * @param projection the fields to read from every row
+   * @param blockSize  the number of bytes in every block read from the stream
+   * @throws IllegalArgumentException if blockSize is less than 1
+   */
+  public PipelinedMovieReader(Set<MovieField> projection, int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be at least 1");
+    }
+    this.projection = projection;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Reads every movie row of a stream (after the header line) the same way as read(channel,
+   * movieSink). The stream is not closed.
+   *
+   * @param in        the stream to read from
+   * @param movieSink receives every Movie read from the stream, on the calling thread
+   * @return the number of movies read from the stream
+   * @throws IOException if the stream cannot be read
+   */
+  public int read(InputStream in, Consumer<Movie> movieSink) throws IOException {
+    return read(Channels.newChannel(in), movieSink);
+  }
+
+  /**
+   * Reads every movie row of a channel (after the header line), and passes the Movie objects
+   * created from them to movieSink in the order they appear in the channel. movieSink is only
+   * called from the calling thread. The channel is not closed.
+   *
+   * @param channel   the channel to read from
+   * @param movieSink receives every Movie read from the channel, on the calling thread
+   * @return the number of movies read from the channel
+   * @throws IOException           if the channel cannot be read
+   * @throws NumberFormatException if the year or duration of a row is not a valid integer
+   */
+  public int read(ReadableByteChannel channel, Consumer<Movie> movieSink) throws IOException {
+    readStage.reset(BLOCK_COUNT);
+    parseStage.reset(BLOCK_COUNT + 3);
+    insertStage.reset(BATCH_QUEUE_CAPACITY);
+    BlockingQueue<ByteBuffer> freeBlocks = new ArrayBlockingQueue<ByteBuffer>(BLOCK_COUNT);
+    for (int i = 0; i < BLOCK_COUNT; i++) {
+      freeBlocks.add(ByteBuffer.allocate(blockSize));
+    }
+    // Room for every block (and the block stopStages() wakes the read stage with), the read
+    // stage's last block, and the READ_FAILED added by stopStages(), so adding never waits
+    BlockingQueue<ByteBuffer> fullBlocks = new ArrayBlockingQueue<ByteBuffer>(BLOCK_COUNT + 3);
+    BlockingQueue<List<Movie>> batches =
+        new ArrayBlockingQueue<List<Movie>>(BATCH_QUEUE_CAPACITY);
+    readStage.inputQueue = freeBlocks;
+    parseStage.inputQueue = fullBlocks;
+    insertStage.inputQueue = batches;
+
+    AtomicBoolean stopped = new AtomicBoolean(false); // set if the read ends before the stages do
+    ExecutorService workers = Executors.newFixedThreadPool(2, task -> {
+      Thread worker = new Thread(task, "pipelined-movie-reader");
+      worker.setDaemon(true);
+      return worker;
+    });
+    boolean finished = false;
+    try {
+      Future<?> readTask = workers.submit(() -> {
+        readBlocks(channel, freeBlocks, fullBlocks, stopped);
+        return null;
+      });
+      Future<?> parseTask = workers.submit(() -> {
+        parseBlocks(fullBlocks, freeBlocks, batches, stopped);
+        return null;
+      });
+
+      // Insert the batches on this thread until the parse stage passes the last one
+      int movieCount = 0;
+      while (true) {
+        long waitStart = System.nanoTime();
+        List<Movie> batch = take(batches);
+        long busyStart = System.nanoTime();
+        insertStage.blockedNanos += busyStart - waitStart;
+        insertStage.recordQueueDepth(batches.size());
+        if (batch == END_OF_BATCHES) {
+          break;
+        }
+        for (Movie movie : batch) {
+          movieSink.accept(movie);
+        }
+        movieCount += batch.size();
+        insertStage.itemCount += batch.size();
+        insertStage.batchCount++;
+        insertStage.busyNanos += System.nanoTime() - busyStart;
+      }
+      // The parse stage has finished, and unless it failed it read the read stage's last block,
+      // so the read stage has finished too
+      waitFor(parseTask);
+      waitFor(readTask);
+      finished = true;
+      return movieCount;
+    } finally {
+      if (!finished) {
+        stopStages(stopped, freeBlocks, fullBlocks, batches);
+      }
+      workers.shutdown();
+    }
+  }
+
+  /**
+   * @return the counters of the stage that reads blocks of bytes from the stream
+   */
+  public StageCounters getReadStage() {
+    return this.readStage;
+  }
+
+  /**
+   * @return the counters of the stage that tokenizes rows into movies
+   */
+  public StageCounters getParseStage() {
+    return this.parseStage;
+  }
+
+  /**
+   * @return the counters of the stage that passes movies to the movie sink
+   */
+  public StageCounters getInsertStage() {
+    return this.insertStage;
+  }
+
+  /**
+   * This class counts the work done by one stage of the pipeline. Each counter is only written by
+   * the thread running the stage, and can be read by any thread.
+   */
+  public static class StageCounters {
+    private final String name; // the name of the stage
+    private final String unit; // what the items handled by the stage are
+    private volatile long itemCount; // the number of items the stage handled
+    private volatile long batchCount; // the number of blocks or batches the stage handled
+    private volatile long busyNanos; // the time the stage spent working
+    private volatile long blockedNanos; // the time the stage spent waiting for the other stages
+    private volatile int maxQueueDepth; // the most entries seen waiting in the input queue
+    private volatile int queueCapacity; // the capacity of the input queue, or 0 if it has none
+    private volatile BlockingQueue<?> inputQueue; // the queue the stage takes its input from
+
+    /**
+     * @param name the name of the stage
+     * @param unit what the items handled by the stage are
+     */
+    private StageCounters(String name, String unit) {
+      this.name = name;
+      this.unit = unit;
+    }
+
+    /**
+     * @return the number of items the stage handled (bytes, rows or movies)
+     */
+    public long getItemCount() {
+      return this.itemCount;
+    }
+
+    /**
+     * @return the number of blocks or batches the stage handled
+     */
+    public long getBatchCount() {
+      return this.batchCount;
+    }
+
+    /**
+     * @return the time the stage spent working, in nanoseconds
+     */
+    public long getBusyNanos() {
+      return this.busyNanos;
+    }
+
+    /**
+     * @return the time the stage spent waiting for the other stages (or the stream), in
+     *         nanoseconds
+     */
+    public long getBlockedNanos() {
+      return this.blockedNanos;
+    }
+
+    /**
+     * @return the number of items the stage handles per second of the time it was busy
+     */
+    public double getThroughput() {
+      long busy = this.busyNanos;
+      return busy == 0 ? 0 : itemCount / (busy / 1e9);
+    }
+
+    /**
+     * @return the number of entries waiting in the stage's input queue right now
+     */
+    public int getQueueDepth() {
+      BlockingQueue<?> queue = this.inputQueue;
+      return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the most entries seen waiting in the stage's input queue
+     */
+    public int getMaxQueueDepth() {
+      return this.maxQueueDepth;
+    }
+
+    /**
+     * @return the capacity of the stage's input queue, or 0 if the stage has no input queue
+     */
+    public int getQueueCapacity() {
+      return this.queueCapacity;
+    }
+
+    /**
+     * @return a summary of the stage's counters
+     */
+    @Override
+    public String toString() {
+      return String.format("%-6s %,14d %-6s %,14.0f %s/sec busy %8.1f ms blocked %8.1f ms "
+          + "queue %d/%d (max %d)", name, itemCount, unit, getThroughput(), unit, busyNanos / 1e6,
+          blockedNanos / 1e6, getQueueDepth(), queueCapacity, maxQueueDepth);
+    }
+
+    /**
+     * Clears the counters before a stream is read.
+     *
+     * @param queueCapacity the capacity of the stage's input queue, or 0 if it has none
+     */
+    private void reset(int queueCapacity) {
+      itemCount = 0;
+      batchCount = 0;
+      busyNanos = 0;
+      blockedNanos = 0;
+      maxQueueDepth = 0;
+      this.queueCapacity = queueCapacity;
+      inputQueue = null;
+    }
+
+    /**
+     * Records the depth of the stage's input queue after taking an entry from it.
+     *
+     * @param depth the number of entries left in the queue
+     */
+    private void recordQueueDepth(int depth) {
+      if (depth > maxQueueDepth) {
+        maxQueueDepth = depth;
+      }
+    }
+  }
+
+  /**
+   * Stops the read and parse stages of a read that ended early, without interrupting them: sets
+   * stopped, which both stages check whenever they take from or add to a queue, and wakes any stage
+   * that is waiting for a queue. A read stage that is waiting for the channel stops once its read
+   * returns.
+   *
+   * @param stopped    the flag the stages check
+   * @param freeBlocks the queue the read stage may be waiting to take from
+   * @param fullBlocks the queue the parse stage may be waiting to take from
+   * @param batches    the queue the parse stage may be waiting to add to
+   */
+  private static void stopStages(AtomicBoolean stopped, BlockingQueue<ByteBuffer> freeBlocks,
+      BlockingQueue<ByteBuffer> fullBlocks, BlockingQueue<List<Movie>> batches) {
+    stopped.set(true);
+    freeBlocks.offer(ByteBuffer.allocate(0));
+    fullBlocks.offer(READ_FAILED);
+    batches.clear();
+  }
+
+  /**
+   * The read stage: fills free blocks from the channel and passes them to the parse stage, until
+   * the channel ends or the read is stopped. END_OF_BLOCKS is always passed last, or READ_FAILED if
+   * the channel could not be read (or the read was stopped).
+   *
+   * @param channel    the channel to read from
+   * @param freeBlocks the blocks that can be filled
+   * @param fullBlocks receives every filled block
+   * @param stopped    set if the read ended early, and the stage should stop
+   * @throws IOException if the channel cannot be read
+   */
+  private void readBlocks(ReadableByteChannel channel, BlockingQueue<ByteBuffer> freeBlocks,
+      BlockingQueue<ByteBuffer> fullBlocks, AtomicBoolean stopped) throws IOException {
+    boolean ended = false;
+    try {
+      while (!ended) {
+        long waitStart = System.nanoTime();
+        ByteBuffer block = take(freeBlocks);
+        if (stopped.get()) {
+          break;
+        }
+        long busyStart = System.nanoTime();
+        readStage.blockedNanos += busyStart - waitStart;
+        readStage.recordQueueDepth(freeBlocks.size());
+        block.clear();
+        // Fill the whole block unless the channel ends (time spent inside read() is counted as
+        // busy, since it includes copying the bytes)
+        while (block.hasRemaining()) {
+          if (channel.read(block) < 0) {
+            ended = true;
+            break;
+          }
+        }
+        block.flip();
+        readStage.itemCount += block.remaining();
+        readStage.batchCount++;
+        readStage.busyNanos += System.nanoTime() - busyStart;
+        put(fullBlocks, block);
+      }
+    } finally {
+      // fullBlocks has room for every block and the last block, so this never waits
+      fullBlocks.offer(ended ? END_OF_BLOCKS : READ_FAILED);
+    }
+  }
+
+  /**
+   * The parse stage: copies the bytes of every block after the unfinished row of the block before
+   * it, tokenizes every finished row, and passes the movies on in batches. The first row is read
+   * as the header. END_OF_BATCHES is always passed last, unless the read was stopped. If the read
+   * stage failed, the unfinished row at the end is left out.
+   *
+   * @param fullBlocks the blocks filled by the read stage
+   * @param freeBlocks receives every block once its bytes were copied
+   * @param batches    receives the batches of movies
+   * @param stopped    set if the read ended early, and the stage should stop
+   * @throws IOException if the thread is interrupted while waiting for a queue
+   */
+  private void parseBlocks(BlockingQueue<ByteBuffer> fullBlocks,
+      BlockingQueue<ByteBuffer> freeBlocks, BlockingQueue<List<Movie>> batches,
+      AtomicBoolean stopped) throws IOException {
+    try {
+      MovieRowTokenizer tokenizer = new MovieRowTokenizer();
+      byte[] pending = new byte[blockSize * 2]; // the unfinished row, followed by the new block
+      ByteBuffer pendingBuffer = ByteBuffer.wrap(pending);
+      int pendingLength = 0; // the number of bytes in pending
+      int scanned = 0; // the number of bytes of the unfinished row that were already scanned
+      boolean inQuotes = false; // true if the scanned part of the unfinished row ends in quotes
+      boolean header = true; // true until the header row was read
+      List<Movie> batch = new ArrayList<Movie>(BATCH_SIZE);
+      boolean ended = false;
+      while (!ended) {
+        long waitStart = System.nanoTime();
+        ByteBuffer block = take(fullBlocks);
+        long busyStart = System.nanoTime();
+        parseStage.blockedNanos += busyStart - waitStart;
+        parseStage.recordQueueDepth(fullBlocks.size());
+        if (block == READ_FAILED || stopped.get()) {
+          // The rest of the stream is missing, so the unfinished row is not a whole row
+          break;
+        }
+        ended = block == END_OF_BLOCKS;
+        if (pendingLength + block.remaining() > pending.length) {
+          byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + block.remaining())];
+          System.arraycopy(pending, 0, grown, 0, pendingLength);
+          pending = grown;
+          pendingBuffer = ByteBuffer.wrap(pending);
+        }
+        int blockLength = block.remaining();
+        block.get(pending, pendingLength, blockLength);
+        pendingLength += blockLength;
+        if (!ended) {
+          freeBlocks.offer(block);
+        }
+
+        // Tokenize every row that ends in the bytes that are now pending
+        int rowStart = 0;
+        int position = rowStart + scanned;
+        while (position < pendingLength || (ended && rowStart < pendingLength)) {
+          int rowEnd = -1;
+          for (; position < pendingLength; position++) {
+            byte currentByte = pending[position];
+            if (currentByte == '"') {
+              inQuotes = !inQuotes;
+            } else if (currentByte == '\n' && !inQuotes) {
+              rowEnd = position;
+              break;
+            }
+          }
+          if (rowEnd < 0) {
+            if (!ended) {
+              break;
+            }
+            // The last row of the stream does not end in a line break
+            rowEnd = pendingLength;
+          }
+          if (header) {
+            header = false;
+            String headerLine =
+                new String(pending, rowStart, rowEnd - rowStart, StandardCharsets.UTF_8);
+            tokenizer.setColumns(MovieColumnMap.fromHeader(headerLine).project(projection));
+          } else if (!MovieRowTokenizer.isBlankRow(pendingBuffer, rowStart, rowEnd)) {
+            tokenizer.tokenize(pendingBuffer, rowStart, rowEnd);
+            batch.add(tokenizer.toMovie());
+            parseStage.itemCount++;
+            if (batch.size() == BATCH_SIZE) {
+              long putStart = System.nanoTime();
+              parseStage.busyNanos += putStart - busyStart;
+              put(batches, batch);
+              if (stopped.get()) {
+                return;
+              }
+              busyStart = System.nanoTime();
+              parseStage.blockedNanos += busyStart - putStart;
+              batch = new ArrayList<Movie>(BATCH_SIZE);
+            }
+          }
+          // A last row without a line break ends at pendingLength, so there is no byte to skip
+          rowStart = Math.min(rowEnd + 1, pendingLength);
+          position = rowStart;
+          inQuotes = false;
+        }
+        // Move the unfinished row to the start of pending
+        if (rowStart > 0) {
+          pendingLength -= rowStart;
+          System.arraycopy(pending, rowStart, pending, 0, pendingLength);
+        }
+        scanned = position - rowStart;
+        parseStage.batchCount++;
+        parseStage.busyNanos += System.nanoTime() - busyStart;
+      }
+      if (!batch.isEmpty()) {
+        put(batches, batch);
+      }
+    } finally {
+      if (stopped.get()) {
+        // Nobody is waiting for the last batch, so it is only added if there is room
+        batches.offer(END_OF_BATCHES);
+      } else {
+        try {
+          put(batches, END_OF_BATCHES);
+        } catch (IOException e) {
+          // The thread was interrupted, so nobody is waiting for the last batch
+        }
+      }
+    }
+  }
+
+  /**
+   * Takes the next entry from a queue, waiting for one if it is empty.
+   *
+   * @param queue the queue to take from
+   * @return the entry
+   * @throws IOException if the thread is interrupted while waiting
+   */
+  private static <E> E take(BlockingQueue<E> queue) throws IOException {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading the stream", e);
+    }
+  }
+
+  /**
+   * Adds an entry to a queue, waiting for room if it is full.
+   *
+   * @param queue the queue to add to
+   * @param entry the entry to add
+   * @throws IOException if the thread is interrupted while waiting
+   */
+  private static <E> void put(BlockingQueue<E> queue, E entry) throws IOException {
+    try {
+      queue.put(entry);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading the stream", e);
+    }
+  }
+
+  /**
+   * Waits for a stage to finish, and passes along any exception it threw.
+   *
+   * @param task the stage to wait for
+   * @throws IOException if the stage threw an IOException or the thread was interrupted
+   */
+  private static void waitFor(Future<?> task) throws IOException {
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading the stream", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+/**
+ * The different ways BackendDeveloperIndividual.readFile() can ingest a movie csv file. Every mode
+ * reads the same file format. Every mode except TABLE and LAZY fills the same RBT, so they can be
+ * compared against each other on the same file.
+ *
+ * @author dianakotsonis
+ */
+public enum ReadMode {
+  SCANNER, // reads the file line by line using java.util.Scanner
+  MAPPED, // maps the file into memory and tokenizes the rows directly from the mapped bytes
+  PARALLEL, // maps the file and tokenizes ranges of rows on every available core
+  TABLE, // maps the file and stores the rows in a MovieTable's columns instead of the RBT
+  LAZY, // only keeps each row's duration and position, and decodes rows from the file when needed
+  PIPELINED // reads, parses and inserts the rows on separate threads (see PipelinedMovieReader)
+}
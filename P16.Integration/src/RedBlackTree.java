@@ -28,7 +28,7 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
    * @param <T> The data type of the Red Black Tree Node
    */
   protected static class RBTNode<T> extends Node<T> {
-    public int blackHeight = 0; // the color of the Red Black Tree node, either Red (0) or Black(1)
+    public byte blackHeight = 0; // the color of the Red Black Tree node, either Red (0) or Black(1)
 
     /**
      * This constructor creates a RBT Node using the data given
@@ -54,7 +54,7 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
      * @return the left child node
      */
     public RBTNode<T> getDownLeft() {
-      return (RBTNode<T>) this.down[0];
+      return (RBTNode<T>) this.left;
     }
 
     /**
@@ -63,7 +63,7 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
      * @return the right child node
      */
     public RBTNode<T> getDownRight() {
-      return (RBTNode<T>) this.down[1];
+      return (RBTNode<T>) this.right;
     }
   }
 
@@ -80,73 +80,58 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
    */
   protected void enforceRBTreePropertiesAfterInsert(RBTNode<T> redNode) {
 
-    // If the red node's parent is black, or the Red Node or parent node are null, then there is
-    // no need to enforce tree properties. Return
-    if (redNode == null || redNode.getUp() == null || redNode.getUp().blackHeight == 1) {
-      return;
-    }
-
-    // Store the red node's surrounding connections in RBT Nodes
-    RBTNode<T> parentNode = redNode.getUp(); // the parent of the red Node
-    RBTNode<T> parentsParentNode = parentNode.getUp(); // The parent of the parent node
-    RBTNode<T> siblingNode = null; // The sibling of the parent node
-
-    // Check if the parent is a left child of its parent. If so, store the sibling node as the
-    // right child of the parent's parent
-    if (parentsParentNode.getDownLeft() != null
-        && parentsParentNode.getDownLeft().equals(parentNode)) {
-      siblingNode = parentsParentNode.getDownRight();
-    }
-    // Otherwise, store the sibling node as the left child of the parent's parent
-    else {
-      siblingNode = parentsParentNode.getDownLeft();
-    }
-
-    // Case 1: If the sibling is red, implement case 1 (change the parent's parent node to red and
-    // the parent and sibling nodes to black)
-    if (siblingNode != null && siblingNode.blackHeight == 0) {
-      parentNode.blackHeight = 1;
-      parentsParentNode.blackHeight = 0;
-      siblingNode.blackHeight = 1;
-      // Check if the parentsParent node has a parent that is red. If so, recursively call this
-      // method to handle the new red node violation
-      if (parentsParentNode.getUp() != null && parentsParentNode.getUp().blackHeight == 0) {
-        enforceRBTreePropertiesAfterInsert(parentsParentNode);
+    // Repeat while the red node has a red parent. If the red node's parent is black, or the red
+    // node or parent node are null, then there is no need to enforce tree properties.
+    while (redNode != null && redNode.getUp() != null && redNode.getUp().blackHeight == 0) {
+
+      // Store the red node's surrounding connections in RBT Nodes
+      RBTNode<T> parentNode = redNode.getUp(); // the parent of the red Node
+      RBTNode<T> parentsParentNode = parentNode.getUp(); // The parent of the parent node
+      // Check if the parent is a left child of its parent. If so, the sibling node is the right
+      // child of the parent's parent. Otherwise, it is the left child of the parent's parent
+      boolean parentIsLeftChild = parentsParentNode.getDownLeft() == parentNode;
+      RBTNode<T> siblingNode = parentIsLeftChild ? parentsParentNode.getDownRight()
+          : parentsParentNode.getDownLeft(); // The sibling of the parent node
+
+      // Case 1: If the sibling is red, implement case 1 (change the parent's parent node to red and
+      // the parent and sibling nodes to black)
+      if (siblingNode != null && siblingNode.blackHeight == 0) {
+        parentNode.blackHeight = 1;
+        parentsParentNode.blackHeight = 0;
+        siblingNode.blackHeight = 1;
+        // The parent's parent is now red, so continue with it in case its parent is also red
+        redNode = parentsParentNode;
       }
-    }
-    // Otherwise, the sibling is black and the case is either case 2 or 3
-    else {
-      if (parentsParentNode.getDownLeft() != null
-          && parentsParentNode.getDownLeft().equals(parentNode)) {
-        // If the parent and child are both left children of their parents, implement case 2: 
-        // Rotate the parent and its parent, then swap their colors
-        if (parentNode.getDownLeft() != null && parentNode.getDownLeft().equals(redNode)) {
-          rotate(parentNode, parentsParentNode);
-          parentNode.blackHeight = 1;
-          parentsParentNode.blackHeight = 0;
-        } else {
-          // Otherwise, rotate the parent and child nodes, then recursively call this method to 
-          // handle the violation as a case 2
-          rotate(redNode, parentNode);
-          enforceRBTreePropertiesAfterInsert(parentNode);
-        }
+      // Otherwise, the sibling is black and the case is either case 2 or 3
+      else if (parentIsLeftChild == (parentNode.getDownLeft() == redNode)) {
+        // If the parent and child are both left children (or both right children) of their
+        // parents, implement case 2: Rotate the parent and its parent, then swap their colors.
+        // This resolves the violation.
+        rotate(parentNode, parentsParentNode);
+        parentNode.blackHeight = 1;
+        parentsParentNode.blackHeight = 0;
+        return;
       } else {
-        if (parentNode.getDownRight() != null && parentNode.getDownRight().equals(redNode)) {
-          // If the parent and child are both right children of their parents, implement case 2: 
-          // Rotate the parent and its parent then swap their colors
-          rotate(parentNode, parentsParentNode);
-          parentNode.blackHeight = 1;
-          parentsParentNode.blackHeight = 0;
-        } else {
-          // Otherwise, rotate the parent and child nodes, then recursively call this method to 
-          // handle the violation as a case 2
-          rotate(redNode, parentNode);
-          enforceRBTreePropertiesAfterInsert(parentNode);
-        }
+        // Otherwise, rotate the parent and child nodes, then continue with the parent (which is
+        // now the red node's child) to handle the violation as a case 2
+        rotate(redNode, parentNode);
+        redNode = parentNode;
       }
     }
   }
 
+  /**
+   * Creates the node that insert() links into the tree for data. Subclasses that store more in each
+   * node (such as IterableMultiKeyRBT's subtree summaries) override this to create their own kind
+   * of node, so trees that do not need those fields do not pay for them.
+   * 
+   * @param data the data to store in the node
+   * @return the new red node
+   */
+  protected RBTNode<T> createNode(T data) {
+    return new RBTNode<>(data);
+  }
+
   /**
    * This method inserts into the Red Black Tree
    * @overrides the insert method in the BinarySearchTree class
@@ -155,7 +140,7 @@ public class RedBlackTree<T extends Comparable<T>> extends BinarySearchTree<T> {
   @Override
   public boolean insert(T data) throws NullPointerException {
     // Create a RBT Node for the data
-    RBTNode<T> newNode = new RBTNode<>(data);
+    RBTNode<T> newNode = createNode(data);
     // Insert the new node using the BinarySearchTree insert method
     if (insertHelper(newNode)) {
       // If the insert occurs, call the enforceRBTreeProperties method to fix any violations within
@@ -0,0 +1,394 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class makes an IterableMultiKeyRBT safe to share between threads when it is read much more
+ * often than it is changed, such as a movie catalog that is loaded once and then queried by many
+ * threads while new movies occasionally arrive. Writers are serialized by the write lock of a
+ * StampedLock. Readers do not lock in the common case: they read the tree under an optimistic
+ * stamp, and only read it again under the read lock if a writer ran while they were reading.
+ * <p>
+ * A read that overlaps a write can see the tree part way through a rotation, so every optimistic
+ * read is bounded: it gives up once it has taken more steps than a consistent tree could need, and
+ * any exception it throws is ignored, since the read is repeated under the read lock either way.
+ * Iterators and KeyLists are snapshots taken while the stamp is valid, so each one is consistent
+ * and can be used without holding any lock. Taking a snapshot does not copy the keys: since keys
+ * are only ever appended to a KeyList, the snapshot of a KeyList shares its array of keys and only
+ * remembers how many keys it had, so later inserts do not change the snapshot.
+ *
+ * @author dianakotsonis
+ * @param <T> The data type for the Key being inserted into the tree
+ */
+public class StampedMultiKeyRBT<T extends Comparable<T>>
+    implements IterableMultiKeySortedCollectionInterface<T> {
+
+  // More than the number of nodes on any path from the root of a Red Black Tree with fewer than
+  // 2^31 nodes, so an optimistic walk down the tree that takes more steps saw an inconsistent tree
+  private static final int MAX_HEIGHT = 64;
+  // Thrown by an optimistic read that took more steps than a consistent tree could need
+  private static final IllegalStateException INCONSISTENT_READ =
+      new IllegalStateException("an optimistic read saw the tree part way through a write");
+
+  private final IterableMultiKeyRBT<T> tree = new IterableMultiKeyRBT<T>(); // the guarded tree
+  private final StampedLock lock = new StampedLock(); // serializes writers and validates readers
+  private volatile Comparable<T> startPoint; // the point iterator() starts at, or null
+
+  /**
+   * This interface is a read of the tree that can be done optimistically, which is given a limit
+   * on the number of steps it may take.
+   */
+  private interface TreeRead<R> {
+    /**
+     * @param steps the steps the read may take
+     * @return the result of the read
+     * @throws IllegalStateException if the read takes more steps than it was given
+     */
+    R read(Steps steps);
+  }
+
+  /**
+   * This class counts down the steps a read of the tree may take.
+   */
+  private static class Steps {
+    private long left; // the number of steps the read may still take
+
+    /**
+     * @param limit the number of steps the read may take
+     */
+    private Steps(long limit) {
+      this.left = limit;
+    }
+
+    /**
+     * Takes a step.
+     *
+     * @throws IllegalStateException if no steps are left
+     */
+    private void take() {
+      if (--left < 0) {
+        throw INCONSISTENT_READ;
+      }
+    }
+  }
+
+  /**
+   * Inserts a key into the tree, holding the write lock.
+   *
+   * @param key object to insert
+   * @return true if the key has a value that was not in the tree before
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public boolean insertSingleKey(T key) {
+    long stamp = lock.writeLock();
+    try {
+      return tree.insertSingleKey(key);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Inserts a KeyList into the tree, holding the write lock.
+   *
+   * @param data the KeyList to insert
+   * @return true if the KeyList was inserted
+   * @throws NullPointerException     if data is null
+   * @throws IllegalArgumentException if the tree already holds a KeyList with the same key
+   */
+  @Override
+  public boolean insert(KeyListInterface<T> data) {
+    long stamp = lock.writeLock();
+    try {
+      return tree.insert(data);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Inserts every key in the collection into the tree at once (see IterableMultiKeyRBT.bulkLoad()),
+   * holding the write lock.
+   *
+   * @param keys the keys to insert into the tree
+   * @throws NullPointerException if keys or any key in it is null
+   */
+  public void bulkLoad(Collection<T> keys) {
+    long stamp = lock.writeLock();
+    try {
+      tree.bulkLoad(keys);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Removes all keys from the tree, holding the write lock.
+   */
+  @Override
+  public void clear() {
+    long stamp = lock.writeLock();
+    try {
+      tree.clear();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * @return the number of values in the tree
+   */
+  @Override
+  public int numKeys() {
+    return read(steps -> tree.numKeys());
+  }
+
+  /**
+   * @return the number of changes made to the tree
+   */
+  @Override
+  public long modificationCount() {
+    return read(steps -> tree.modificationCount());
+  }
+
+  /**
+   * @return true, since writers are serialized by the write lock
+   */
+  @Override
+  public boolean allowsConcurrentWriters() {
+    return true;
+  }
+
+  /**
+   * @return the number of KeyLists (distinct keys) in the tree
+   */
+  @Override
+  public int size() {
+    return read(steps -> tree.size());
+  }
+
+  /**
+   * @return true if the tree holds no keys
+   */
+  @Override
+  public boolean isEmpty() {
+    return read(steps -> tree.isEmpty());
+  }
+
+  /**
+   * Checks whether the tree holds a KeyList equal to data.
+   *
+   * @param data a comparable for the KeyList to look for
+   * @return true if the tree holds an equal KeyList
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<KeyListInterface<T>> data) {
+    if (data == null) {
+      throw new NullPointerException("This tree cannot store null references.");
+    }
+    return read(steps -> {
+      BinarySearchTree.Node<KeyListInterface<T>> node = tree.root;
+      while (node != null) {
+        steps.take();
+        int compare = data.compareTo(node.data);
+        if (compare == 0) {
+          return true;
+        }
+        node = (compare < 0) ? node.left : node.right;
+      }
+      return false;
+    });
+  }
+
+  /**
+   * @return a snapshot of the KeyList holding the smallest key, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<T> firstKeyList() {
+    return read(steps -> KeyListSnapshot.of(tree.firstKeyList()));
+  }
+
+  /**
+   * @return a snapshot of the KeyList holding the largest key, or null if the tree is empty
+   */
+  @Override
+  public KeyListInterface<T> lastKeyList() {
+    return read(steps -> KeyListSnapshot.of(tree.lastKeyList()));
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the keys in the tree, in order. If an iteration start
+   * point is set, the snapshot starts at the smallest key that is equal to or larger than it.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iteratorFrom(this.startPoint);
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the keys in the tree that are equal to or larger than
+   * start, in order.
+   *
+   * @param start the point to start the iteration at, or null to start at the smallest key
+   * @return the iterator over the keys from start onwards
+   */
+  @Override
+  public Iterator<T> iteratorFrom(Comparable<T> start) {
+    return rangeIterator(start, null);
+  }
+
+  /**
+   * Sets the point iterator() starts at. Passing in null disables the starting point.
+   *
+   * @param startPoint the start point to set for iterations
+   */
+  @Override
+  public void setIterationStartPoint(Comparable<T> startPoint) {
+    this.startPoint = startPoint;
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the keys between lowerBound and upperBound (including
+   * keys equal to either bound), in order. The snapshot is taken when this method is called, which
+   * takes O(log n + m) time for m KeyLists in the range.
+   *
+   * @param lowerBound the smallest key to iterate over, or null to start at the smallest key
+   * @param upperBound the largest key to iterate over, or null to end at the largest key
+   * @return the iterator over the keys in the range
+   */
+  @Override
+  public Iterator<T> rangeIterator(Comparable<T> lowerBound, Comparable<T> upperBound) {
+    ArrayList<KeyListSnapshot<T>> keyLists =
+        read(steps -> snapshotRange(lowerBound, upperBound, steps));
+    return new SnapshotIterator<T>(keyLists);
+  }
+
+  /**
+   * Reads the tree optimistically, and reads it again under the read lock if a writer held the
+   * write lock at any point during the optimistic read (or before it started).
+   *
+   * @param treeRead the read to do
+   * @return the result of a read that did not overlap any write
+   */
+  private <R> R read(TreeRead<R> treeRead) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        // A consistent walk over every node visits each node at most twice, and each walk down
+        // the tree takes at most MAX_HEIGHT steps
+        R result = treeRead.read(new Steps(2L * tree.size() + 4 * MAX_HEIGHT));
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // The read saw the tree part way through a write, so it is read again below
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return treeRead.read(new Steps(Long.MAX_VALUE));
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Takes snapshots of the KeyLists between lowerBound and upperBound (including KeyLists whose
+   * keys are equal to either bound) in order, walking down the tree to the first of them and then
+   * from node to node the same way as IterableMultiKeyRBT's iterator, counting every step.
+   *
+   * @param lowerBound the smallest key to include, or null to start at the smallest key
+   * @param upperBound the largest key to include, or null to end at the largest key
+   * @param steps      the steps the walk may take
+   * @return the snapshots of the KeyLists in the range
+   * @throws IllegalStateException if the walk takes more steps than it was given
+   */
+  private ArrayList<KeyListSnapshot<T>> snapshotRange(Comparable<T> lowerBound,
+      Comparable<T> upperBound, Steps steps) {
+    // 1. Walk down the tree to the node holding the smallest key that is at least lowerBound
+    BinarySearchTree.Node<KeyListInterface<T>> node = tree.root;
+    BinarySearchTree.Node<KeyListInterface<T>> ceiling = null;
+    while (node != null) {
+      steps.take();
+      if (lowerBound == null || lowerBound.compareTo(node.data.get(0)) <= 0) {
+        ceiling = node;
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+    // 2. Take a snapshot of every node's KeyList from there on, until its keys are larger than
+    // upperBound
+    ArrayList<KeyListSnapshot<T>> keyLists = new ArrayList<KeyListSnapshot<T>>();
+    node = ceiling;
+    while (node != null) {
+      KeyListInterface<T> keyList = node.data;
+      if (upperBound != null && upperBound.compareTo(keyList.get(0)) < 0) {
+        break;
+      }
+      keyLists.add(KeyListSnapshot.of(keyList));
+      if (node.right != null) {
+        node = node.right;
+        steps.take();
+        while (node.left != null) {
+          node = node.left;
+          steps.take();
+        }
+      } else {
+        while (node.up != null && node == node.up.right) {
+          node = node.up;
+          steps.take();
+        }
+        node = node.up;
+        steps.take();
+      }
+    }
+    return keyLists;
+  }
+
+  /**
+   * This class iterates over the keys of a sequence of KeyList snapshots, in order.
+   */
+  private static class SnapshotIterator<T extends Comparable<T>> implements Iterator<T> {
+    private final ArrayList<KeyListSnapshot<T>> keyLists; // the snapshots to iterate over
+    private int listIndex = 0; // the position of the snapshot holding the next key
+    private int keyIndex = 0; // the position of the next key in its snapshot
+
+    /**
+     * @param keyLists the snapshots to iterate over, in order
+     */
+    private SnapshotIterator(ArrayList<KeyListSnapshot<T>> keyLists) {
+      this.keyLists = keyLists;
+    }
+
+    /**
+     * @return true if there is another key to return
+     */
+    @Override
+    public boolean hasNext() {
+      return listIndex < keyLists.size();
+    }
+
+    /**
+     * @return the next key
+     * @throws NoSuchElementException if there are no keys left
+     */
+    @Override
+    public T next() {
+      if (listIndex >= keyLists.size()) {
+        throw new NoSuchElementException("there are no keys left");
+      }
+      KeyListSnapshot<T> keyList = keyLists.get(listIndex);
+      T key = keyList.get(keyIndex++);
+      if (keyIndex == keyList.size()) {
+        listIndex++;
+        keyIndex = 0;
+      }
+      return key;
+    }
+  }
+}
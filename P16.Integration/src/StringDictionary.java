@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class gives every distinct String it is given a small int code, so a column of Strings with
+ * few distinct values (such as genres or countries) can be stored as ints. Codes are given out in
+ * the order the Strings are first seen, starting at 0, and each distinct String is stored once.
+ * <p>
+ * A dictionary can be shared by threads: looking up a String that already has a code does not
+ * lock, and only giving out a new code is synchronized.
+ *
+ * @author dianakotsonis
+ */
+public class StringDictionary {
+
+  private final ConcurrentHashMap<String, Integer> codes =
+      new ConcurrentHashMap<String, Integer>(); // the code of each value
+  private volatile String[] values = new String[16]; // the value of each code
+  private volatile int size = 0; // the number of distinct values
+
+  /**
+   * Returns the code of a value, giving it the next code if it is not in the dictionary yet.
+   *
+   * @param value the String to encode
+   * @return the code of value
+   * @throws NullPointerException if value is null
+   */
+  public int encode(String value) {
+    if (value == null) {
+      throw new NullPointerException("values cannot be null");
+    }
+    Integer code = codes.get(value);
+    return (code != null) ? code : addValue(value);
+  }
+
+  /**
+   * Returns the code of a value without adding it to the dictionary.
+   *
+   * @param value the String to look up
+   * @return the code of value, or -1 if it is not in the dictionary
+   */
+  public int codeOf(String value) {
+    Integer code = (value == null) ? null : codes.get(value);
+    return (code == null) ? -1 : code;
+  }
+
+  /**
+   * Returns the value with a code. This is the same String object every time it is called with
+   * the same code.
+   *
+   * @param code the code of the value
+   * @return the value with the code
+   * @throws IndexOutOfBoundsException if no value has the code
+   */
+  public String decode(int code) {
+    String[] currentValues = values;
+    if (code < 0 || code >= currentValues.length || currentValues[code] == null) {
+      throw new IndexOutOfBoundsException("code " + code + " is not within " + size + " values");
+    }
+    return currentValues[code];
+  }
+
+  /**
+   * @return the number of distinct values in the dictionary
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Gives a value the next code, unless another thread gave it a code first. The value is stored
+   * in values before its code is published in codes, so any thread that finds the code can also
+   * decode it.
+   *
+   * @param value the String to add
+   * @return the code of value
+   */
+  private synchronized int addValue(String value) {
+    Integer code = codes.get(value);
+    if (code != null) {
+      return code;
+    }
+    String[] newValues = values;
+    if (size == newValues.length) {
+      newValues = Arrays.copyOf(newValues, size * 2);
+    }
+    newValues[size] = value;
+    values = newValues;
+    codes.put(value, size);
+    return size++;
+  }
+}